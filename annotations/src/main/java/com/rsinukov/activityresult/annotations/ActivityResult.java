@@ -9,4 +9,9 @@ public @interface ActivityResult
     Class type();
     boolean isRequired() default true;
     Class<? extends CustomBundler> parcel() default EmptyBundler.class;
+    /**
+     * Lets toIntent() move a large value to the installed MappedResultStore and put only its token
+     * into the Intent.
+     */
+    boolean offload() default false;
 }
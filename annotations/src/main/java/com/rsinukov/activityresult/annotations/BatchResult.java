@@ -0,0 +1,11 @@
+package com.rsinukov.activityresult.annotations;
+
+/**
+ * Adds a Batch class to the generated Result class of the annotated activity. A Batch packs many
+ * results into one Bundle column by column: a primitive array per primitive field, a deduplicated
+ * string column per String field and a presence bitmap per optional primitive or wrapper field.
+ * Its getters read single values of a row without creating the Result.
+ */
+public @interface BatchResult
+{
+}
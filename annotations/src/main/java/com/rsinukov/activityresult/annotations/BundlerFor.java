@@ -0,0 +1,18 @@
+package com.rsinukov.activityresult.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Registers the annotated {@link com.rsinukov.activityresult.CustomBundler} as the default bundler
+ * of a type. With the activityresult.bundlerRegistry processor option, every @ActivityResult of
+ * exactly that type without an explicit parcel() uses one shared instance of it.
+ */
+@Target(ElementType.TYPE)
+public @interface BundlerFor
+{
+    /**
+     * The type the bundler writes and reads.
+     */
+    Class<?> value();
+}
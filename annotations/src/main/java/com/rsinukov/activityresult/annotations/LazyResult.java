@@ -0,0 +1,10 @@
+package com.rsinukov.activityresult.annotations;
+
+/**
+ * Makes the generated Result class of the annotated activity decode its fields lazily.
+ * with(Intent) keeps a reference to the Intent, whose extras must not change until the fields are
+ * read, and every getter decodes its field on first access. Lazy Result classes are not thread safe.
+ */
+public @interface LazyResult
+{
+}
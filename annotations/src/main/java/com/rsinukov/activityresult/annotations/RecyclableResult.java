@@ -0,0 +1,16 @@
+package com.rsinukov.activityresult.annotations;
+
+/**
+ * Makes the generated Result class of the annotated activity recyclable. with(Intent) and
+ * Builder.build() take instances from a small per-class pool, with(Intent, reuse) decodes into an
+ * existing instance and recycle() returns an instance to the pool. A recycled instance must not be
+ * used anymore, which is checked. The pool has no lock: it belongs to the thread that initializes
+ * the Result class, usually the main thread, and other threads allocate new instances.
+ */
+public @interface RecyclableResult
+{
+    /**
+     * Maximum number of recycled instances kept by the pool.
+     */
+    int poolSize() default 4;
+}
@@ -0,0 +1,18 @@
+package com.rsinukov.activityresult.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * The request code the annotated activity is started with. The result dispatcher generated with the
+ * activityresult.dispatcher processor option routes results with this code to the Result class of
+ * the activity.
+ */
+@Target(ElementType.TYPE)
+public @interface RequestCode
+{
+    /**
+     * A request code between 0 and 65535, as startActivityForResult() only keeps the lower 16 bits.
+     */
+    int value();
+}
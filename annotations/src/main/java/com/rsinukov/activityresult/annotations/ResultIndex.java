@@ -0,0 +1,25 @@
+package com.rsinukov.activityresult.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Lists the activities of a module that have generated Result classes, so a result dispatcher
+ * generated in another module can route to them. Index classes are generated with the
+ * activityresult.index processor option and are not meant to be written by hand.
+ */
+@Target(ElementType.TYPE)
+public @interface ResultIndex
+{
+    /**
+     * The request code of activities without {@link RequestCode}.
+     */
+    int NO_REQUEST_CODE = -1;
+
+    Class<?>[] activities();
+
+    /**
+     * The request codes of the activities, in the same order.
+     */
+    int[] requestCodes();
+}
@@ -0,0 +1,10 @@
+package com.rsinukov.activityresult.annotations;
+
+/**
+ * Makes the generated Result class of the annotated activity write only the optional fields that
+ * are set, and decode only the keys that are present in the extras instead of looking up every
+ * declared field. Cannot be combined with {@link LazyResult}.
+ */
+public @interface SparseResult
+{
+}
@@ -0,0 +1,17 @@
+package com.rsinukov.activityresult.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link com.rsinukov.activityresult.CustomBundler} that keeps state between calls.
+ * Generated Result classes share one instance of every other bundler, but create a new instance
+ * of a stateful bundler for each with() and toIntent() call.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface StatefulBundler
+{
+}
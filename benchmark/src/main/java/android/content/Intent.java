@@ -0,0 +1,291 @@
+package android.content;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * JVM stand-in for the Android class. Like the platform Intent, {@link #getExtras()} returns a
+ * copy of the extras and {@link #putExtras(Bundle)} copies the given Bundle.
+ */
+public class Intent implements Parcelable {
+
+    private Bundle extras;
+
+    public Bundle getExtras() {
+        return extras != null ? new Bundle(extras) : null;
+    }
+
+    public Intent putExtras(Bundle bundle) {
+        if (extras == null) {
+            extras = new Bundle();
+        }
+        extras.putAll(bundle);
+        return this;
+    }
+
+    public boolean hasExtra(String name) {
+        return extras != null && extras.containsKey(name);
+    }
+
+    private Bundle extras() {
+        if (extras == null) {
+            extras = new Bundle();
+        }
+        return extras;
+    }
+
+    public Intent putExtra(String name, boolean value) {
+        extras().putBoolean(name, value);
+        return this;
+    }
+
+    public boolean getBooleanExtra(String name, boolean defaultValue) {
+        return extras == null ? defaultValue : extras.getBoolean(name, defaultValue);
+    }
+
+    public Intent putExtra(String name, boolean[] value) {
+        extras().putBooleanArray(name, value);
+        return this;
+    }
+
+    public boolean[] getBooleanArrayExtra(String name) {
+        return extras == null ? null : extras.getBooleanArray(name);
+    }
+
+    public Intent putExtra(String name, byte value) {
+        extras().putByte(name, value);
+        return this;
+    }
+
+    public byte getByteExtra(String name, byte defaultValue) {
+        return extras == null ? defaultValue : extras.getByte(name, defaultValue);
+    }
+
+    public Intent putExtra(String name, byte[] value) {
+        extras().putByteArray(name, value);
+        return this;
+    }
+
+    public byte[] getByteArrayExtra(String name) {
+        return extras == null ? null : extras.getByteArray(name);
+    }
+
+    public Intent putExtra(String name, char value) {
+        extras().putChar(name, value);
+        return this;
+    }
+
+    public char getCharExtra(String name, char defaultValue) {
+        return extras == null ? defaultValue : extras.getChar(name, defaultValue);
+    }
+
+    public Intent putExtra(String name, char[] value) {
+        extras().putCharArray(name, value);
+        return this;
+    }
+
+    public char[] getCharArrayExtra(String name) {
+        return extras == null ? null : extras.getCharArray(name);
+    }
+
+    public Intent putExtra(String name, short value) {
+        extras().putShort(name, value);
+        return this;
+    }
+
+    public short getShortExtra(String name, short defaultValue) {
+        return extras == null ? defaultValue : extras.getShort(name, defaultValue);
+    }
+
+    public Intent putExtra(String name, short[] value) {
+        extras().putShortArray(name, value);
+        return this;
+    }
+
+    public short[] getShortArrayExtra(String name) {
+        return extras == null ? null : extras.getShortArray(name);
+    }
+
+    public Intent putExtra(String name, int value) {
+        extras().putInt(name, value);
+        return this;
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        return extras == null ? defaultValue : extras.getInt(name, defaultValue);
+    }
+
+    public Intent putExtra(String name, int[] value) {
+        extras().putIntArray(name, value);
+        return this;
+    }
+
+    public int[] getIntArrayExtra(String name) {
+        return extras == null ? null : extras.getIntArray(name);
+    }
+
+    public Intent putExtra(String name, long value) {
+        extras().putLong(name, value);
+        return this;
+    }
+
+    public long getLongExtra(String name, long defaultValue) {
+        return extras == null ? defaultValue : extras.getLong(name, defaultValue);
+    }
+
+    public Intent putExtra(String name, long[] value) {
+        extras().putLongArray(name, value);
+        return this;
+    }
+
+    public long[] getLongArrayExtra(String name) {
+        return extras == null ? null : extras.getLongArray(name);
+    }
+
+    public Intent putExtra(String name, float value) {
+        extras().putFloat(name, value);
+        return this;
+    }
+
+    public float getFloatExtra(String name, float defaultValue) {
+        return extras == null ? defaultValue : extras.getFloat(name, defaultValue);
+    }
+
+    public Intent putExtra(String name, float[] value) {
+        extras().putFloatArray(name, value);
+        return this;
+    }
+
+    public float[] getFloatArrayExtra(String name) {
+        return extras == null ? null : extras.getFloatArray(name);
+    }
+
+    public Intent putExtra(String name, double value) {
+        extras().putDouble(name, value);
+        return this;
+    }
+
+    public double getDoubleExtra(String name, double defaultValue) {
+        return extras == null ? defaultValue : extras.getDouble(name, defaultValue);
+    }
+
+    public Intent putExtra(String name, double[] value) {
+        extras().putDoubleArray(name, value);
+        return this;
+    }
+
+    public double[] getDoubleArrayExtra(String name) {
+        return extras == null ? null : extras.getDoubleArray(name);
+    }
+
+    public Intent putExtra(String name, String value) {
+        extras().putString(name, value);
+        return this;
+    }
+
+    public String getStringExtra(String name) {
+        return extras == null ? null : extras.getString(name);
+    }
+
+    public Intent putExtra(String name, CharSequence value) {
+        extras().putCharSequence(name, value);
+        return this;
+    }
+
+    public CharSequence getCharSequenceExtra(String name) {
+        return extras == null ? null : extras.getCharSequence(name);
+    }
+
+    public Intent putExtra(String name, Bundle value) {
+        extras().putBundle(name, value);
+        return this;
+    }
+
+    public Bundle getBundleExtra(String name) {
+        return extras == null ? null : extras.getBundle(name);
+    }
+
+    public Intent putExtra(String name, Serializable value) {
+        extras().putSerializable(name, value);
+        return this;
+    }
+
+    public Serializable getSerializableExtra(String name) {
+        return extras == null ? null : extras.getSerializable(name);
+    }
+
+    public Intent putExtra(String name, String[] value) {
+        extras().putStringArray(name, value);
+        return this;
+    }
+
+    public String[] getStringArrayExtra(String name) {
+        return extras == null ? null : extras.getStringArray(name);
+    }
+
+    public Intent putExtra(String name, CharSequence[] value) {
+        extras().putCharSequenceArray(name, value);
+        return this;
+    }
+
+    public CharSequence[] getCharSequenceArrayExtra(String name) {
+        return extras == null ? null : extras.getCharSequenceArray(name);
+    }
+
+    public Intent putExtra(String name, Parcelable[] value) {
+        extras().putParcelableArray(name, value);
+        return this;
+    }
+
+    public Parcelable[] getParcelableArrayExtra(String name) {
+        return extras == null ? null : extras.getParcelableArray(name);
+    }
+
+    public Intent putStringArrayListExtra(String name, ArrayList<String> value) {
+        extras().putStringArrayList(name, value);
+        return this;
+    }
+
+    public ArrayList<String> getStringArrayListExtra(String name) {
+        return extras == null ? null : extras.getStringArrayList(name);
+    }
+
+    public Intent putIntegerArrayListExtra(String name, ArrayList<Integer> value) {
+        extras().putIntegerArrayList(name, value);
+        return this;
+    }
+
+    public ArrayList<Integer> getIntegerArrayListExtra(String name) {
+        return extras == null ? null : extras.getIntegerArrayList(name);
+    }
+
+    public Intent putCharSequenceArrayListExtra(String name, ArrayList<CharSequence> value) {
+        extras().putCharSequenceArrayList(name, value);
+        return this;
+    }
+
+    public ArrayList<CharSequence> getCharSequenceArrayListExtra(String name) {
+        return extras == null ? null : extras.getCharSequenceArrayList(name);
+    }
+
+    public Intent putExtra(String name, Parcelable value) {
+        extras().putParcelable(name, value);
+        return this;
+    }
+
+    public <T extends Parcelable> T getParcelableExtra(String name) {
+        return extras == null ? null : extras.<T>getParcelable(name);
+    }
+
+    public Intent putParcelableArrayListExtra(String name, ArrayList<? extends Parcelable> value) {
+        extras().putParcelableArrayList(name, value);
+        return this;
+    }
+
+    public <T extends Parcelable> ArrayList<T> getParcelableArrayListExtra(String name) {
+        return extras == null ? null : extras.<T>getParcelableArrayList(name);
+    }
+}
@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android interface. Benchmarks never write to a real Parcel.
+ */
+public interface Parcelable {
+}
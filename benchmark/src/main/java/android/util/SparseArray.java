@@ -0,0 +1,23 @@
+package android.util;
+
+import java.util.TreeMap;
+
+/**
+ * JVM stand-in for the Android class, backed by a sorted map.
+ */
+public class SparseArray<E> {
+
+    private final TreeMap<Integer, E> values = new TreeMap<Integer, E>();
+
+    public E get(int key) {
+        return values.get(key);
+    }
+
+    public void put(int key, E value) {
+        values.put(key, value);
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,54 @@
+package com.rsinukov.activityresult.benchmark;
+
+import com.rsinukov.activityresult.benchmark.compact.CompactLargeActivityResult;
+import com.rsinukov.activityresult.benchmark.fixtures.LargeActivityResult;
+import com.rsinukov.activityresult.runtime.FieldDescriptor;
+import com.rsinukov.activityresult.runtime.ResultCodec;
+import com.rsinukov.activityresult.runtime.ResultValues;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Prints the class file size and the method count of the large fixture generated inline and in the
+ * compact mode, including nested classes, and the one-time size of the shared runtime classes.
+ * <p>
+ * Run with {@code java -cp benchmark/target/benchmarks.jar com.rsinukov.activityresult.benchmark.BytecodeSize}.
+ */
+public class BytecodeSize {
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("class\tbytes\tmethods");
+        print("inline", LargeActivityResult.class);
+        print("compact", CompactLargeActivityResult.class);
+        print("runtime (shared)", FieldDescriptor.class, ResultValues.class, ResultCodec.class);
+    }
+
+    private static void print(String name, Class<?>... classes) throws IOException {
+        long[] totals = new long[2];
+        for (Class<?> clazz : classes) {
+            add(clazz, totals);
+        }
+        System.out.println(name + "\t" + totals[0] + "\t" + totals[1]);
+    }
+
+    private static void add(Class<?> clazz, long[] totals) throws IOException {
+        String resource = "/" + clazz.getName().replace('.', '/') + ".class";
+        InputStream in = clazz.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Can not find " + resource);
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                totals[0] += read;
+            }
+        } finally {
+            in.close();
+        }
+        totals[1] += clazz.getDeclaredMethods().length + clazz.getDeclaredConstructors().length;
+        for (Class<?> nested : clazz.getDeclaredClasses()) {
+            add(nested, totals);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.rsinukov.activityresult.benchmark;
+
+import android.content.Intent;
+import com.rsinukov.activityresult.benchmark.compact.CompactLargeActivityResult;
+import com.rsinukov.activityresult.benchmark.fixtures.BundlerActivityResult;
+import com.rsinukov.activityresult.benchmark.fixtures.LargeActivityResult;
+import com.rsinukov.activityresult.benchmark.fixtures.Point;
+import com.rsinukov.activityresult.benchmark.fixtures.SmallActivityResult;
+import com.rsinukov.activityresult.benchmark.fixtures.SparseLargeActivityResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the code generated for the fixtures in {@code com.rsinukov.activityresult.benchmark.fixtures}.
+ * <p>
+ * Run with {@code java -jar benchmark/target/benchmarks.jar -prof gc} to get ns/op together with
+ * the bytes allocated per operation ({@code gc.alloc.rate.norm}). The {@code Compact} benchmarks use
+ * the same fields as the large fixture, generated with the compact mode; {@link BytecodeSize} compares
+ * the size of both classes. The {@code FewSet} benchmarks decode the large fixture with only the
+ * required fields and one optional field, densely and sparsely; {@code SparseKeyWalk} decodes the same
+ * Intent without the presence mask.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultBenchmark {
+
+    private SmallActivityResult smallResult;
+    private LargeActivityResult largeResult;
+    private BundlerActivityResult bundlerResult;
+    private CompactLargeActivityResult compactResult;
+
+    private Intent smallIntent;
+    private Intent largeIntent;
+    private Intent bundlerIntent;
+    private Intent compactIntent;
+    private Intent largeFewSetIntent;
+    private Intent sparseFewSetIntent;
+    private Intent sparseKeyWalkIntent;
+
+    @Setup
+    public void setUp() {
+        smallResult = new SmallActivityResult.Builder(42L, "title")
+                .setPosition(7)
+                .build();
+        largeResult = createLargeBuilder().build();
+        bundlerResult = new BundlerActivityResult.Builder(new Point(1, 2), new Point(3, 4))
+                .setCenter(new Point(2, 3))
+                .build();
+        compactResult = createCompactBuilder().build();
+
+        smallIntent = smallResult.toIntent();
+        largeIntent = largeResult.toIntent();
+        bundlerIntent = bundlerResult.toIntent();
+        compactIntent = compactResult.toIntent();
+
+        largeFewSetIntent = new LargeActivityResult.Builder(42L, "title", 1).setPosition(7).build().toIntent();
+        sparseFewSetIntent = new SparseLargeActivityResult.Builder(42L, "title", 1).setPosition(7).build().toIntent();
+        android.os.Bundle extras = sparseFewSetIntent.getExtras();
+        extras.remove("activityresult.sparseMask0");
+        sparseKeyWalkIntent = new Intent().putExtras(extras);
+    }
+
+    private static LargeActivityResult.Builder createLargeBuilder() {
+        return new LargeActivityResult.Builder(42L, "title", 1)
+                .setSubtitle("subtitle")
+                .setDescription("description")
+                .setPosition(7)
+                .setOffset(1024L)
+                .setRatio(0.5f)
+                .setAmount(99.99d)
+                .setSelected(true)
+                .setFlags((byte) 3)
+                .setVersion((short) 2)
+                .setInitial('a')
+                .setCount(12)
+                .setTimestamp(1234567890L)
+                .setIds(new long[]{1L, 2L, 3L, 4L})
+                .setPositions(new int[]{1, 2, 3, 4})
+                .setTags(new String[]{"a", "b", "c"})
+                .setNames(new ArrayList<String>(Arrays.asList("first", "second")))
+                .setExtras(new android.os.Bundle());
+    }
+
+    private static CompactLargeActivityResult.Builder createCompactBuilder() {
+        return new CompactLargeActivityResult.Builder(42L, "title", 1)
+                .setSubtitle("subtitle")
+                .setDescription("description")
+                .setPosition(7)
+                .setOffset(1024L)
+                .setRatio(0.5f)
+                .setAmount(99.99d)
+                .setSelected(true)
+                .setFlags((byte) 3)
+                .setVersion((short) 2)
+                .setInitial('a')
+                .setCount(12)
+                .setTimestamp(1234567890L)
+                .setIds(new long[]{1L, 2L, 3L, 4L})
+                .setPositions(new int[]{1, 2, 3, 4})
+                .setTags(new String[]{"a", "b", "c"})
+                .setNames(new ArrayList<String>(Arrays.asList("first", "second")))
+                .setExtras(new android.os.Bundle());
+    }
+
+    @Benchmark
+    public SmallActivityResult withIntentSmall() {
+        return SmallActivityResult.with(smallIntent);
+    }
+
+    @Benchmark
+    public LargeActivityResult withIntentLarge() {
+        return LargeActivityResult.with(largeIntent);
+    }
+
+    @Benchmark
+    public LargeActivityResult withIntentLargeFewSet() {
+        return LargeActivityResult.with(largeFewSetIntent);
+    }
+
+    @Benchmark
+    public SparseLargeActivityResult withIntentLargeSparseFewSet() {
+        return SparseLargeActivityResult.with(sparseFewSetIntent);
+    }
+
+    @Benchmark
+    public SparseLargeActivityResult withIntentLargeSparseKeyWalk() {
+        return SparseLargeActivityResult.with(sparseKeyWalkIntent);
+    }
+
+    @Benchmark
+    public Intent toIntentSmall() {
+        return smallResult.toIntent();
+    }
+
+    @Benchmark
+    public Intent toIntentLarge() {
+        return largeResult.toIntent();
+    }
+
+    @Benchmark
+    public LargeActivityResult builderBuildLarge() {
+        return createLargeBuilder().build();
+    }
+
+    @Benchmark
+    public CompactLargeActivityResult withIntentLargeCompact() {
+        return CompactLargeActivityResult.with(compactIntent);
+    }
+
+    @Benchmark
+    public Intent toIntentLargeCompact() {
+        return compactResult.toIntent();
+    }
+
+    @Benchmark
+    public CompactLargeActivityResult builderBuildLargeCompact() {
+        return createCompactBuilder().build();
+    }
+
+    @Benchmark
+    public BundlerActivityResult withIntentCustomBundler() {
+        return BundlerActivityResult.with(bundlerIntent);
+    }
+
+    @Benchmark
+    public Intent toIntentCustomBundler() {
+        return bundlerResult.toIntent();
+    }
+}
@@ -0,0 +1,12 @@
+package com.rsinukov.activityresult.benchmark.fixtures;
+
+import com.rsinukov.activityresult.annotations.ActivityResult;
+import com.rsinukov.activityresult.annotations.ActivityResults;
+
+@ActivityResults({
+        @ActivityResult(name = "start", type = Point.class, parcel = PointBundler.class),
+        @ActivityResult(name = "end", type = Point.class, parcel = PointBundler.class),
+        @ActivityResult(name = "center", type = Point.class, parcel = PointBundler.class, isRequired = false)
+})
+public class BundlerActivity {
+}
@@ -0,0 +1,12 @@
+package com.rsinukov.activityresult.benchmark.fixtures;
+
+public class Point {
+
+    public final int x;
+    public final int y;
+
+    public Point(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+}
@@ -0,0 +1,19 @@
+package com.rsinukov.activityresult.benchmark.fixtures;
+
+import android.os.Bundle;
+import com.rsinukov.activityresult.CustomBundler;
+
+public class PointBundler implements CustomBundler<Point> {
+
+    @Override
+    public void put(String key, Point value, Bundle bundle) {
+        bundle.putIntArray(key, new int[]{value.x, value.y});
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Bundle bundle) {
+        int[] values = bundle.getIntArray(key);
+        return (T) new Point(values[0], values[1]);
+    }
+}
@@ -0,0 +1,12 @@
+package com.rsinukov.activityresult.benchmark.fixtures;
+
+import com.rsinukov.activityresult.annotations.ActivityResult;
+import com.rsinukov.activityresult.annotations.ActivityResults;
+
+@ActivityResults({
+        @ActivityResult(name = "id", type = long.class),
+        @ActivityResult(name = "title", type = String.class),
+        @ActivityResult(name = "position", type = int.class, isRequired = false)
+})
+public class SmallActivity {
+}
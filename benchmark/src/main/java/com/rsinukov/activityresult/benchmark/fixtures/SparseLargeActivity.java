@@ -0,0 +1,33 @@
+package com.rsinukov.activityresult.benchmark.fixtures;
+
+import com.rsinukov.activityresult.annotations.ActivityResult;
+import com.rsinukov.activityresult.annotations.ActivityResults;
+import com.rsinukov.activityresult.annotations.SparseResult;
+
+import java.util.ArrayList;
+
+@SparseResult
+@ActivityResults({
+        @ActivityResult(name = "id", type = long.class),
+        @ActivityResult(name = "title", type = String.class),
+        @ActivityResult(name = "status", type = int.class),
+        @ActivityResult(name = "subtitle", type = String.class, isRequired = false),
+        @ActivityResult(name = "description", type = CharSequence.class, isRequired = false),
+        @ActivityResult(name = "position", type = int.class, isRequired = false),
+        @ActivityResult(name = "offset", type = long.class, isRequired = false),
+        @ActivityResult(name = "ratio", type = float.class, isRequired = false),
+        @ActivityResult(name = "amount", type = double.class, isRequired = false),
+        @ActivityResult(name = "selected", type = boolean.class, isRequired = false),
+        @ActivityResult(name = "flags", type = byte.class, isRequired = false),
+        @ActivityResult(name = "version", type = short.class, isRequired = false),
+        @ActivityResult(name = "initial", type = char.class, isRequired = false),
+        @ActivityResult(name = "count", type = Integer.class, isRequired = false),
+        @ActivityResult(name = "timestamp", type = Long.class, isRequired = false),
+        @ActivityResult(name = "ids", type = long[].class, isRequired = false),
+        @ActivityResult(name = "positions", type = int[].class, isRequired = false),
+        @ActivityResult(name = "tags", type = String[].class, isRequired = false),
+        @ActivityResult(name = "names", type = ArrayList.class, isRequired = false),
+        @ActivityResult(name = "extras", type = android.os.Bundle.class, isRequired = false)
+})
+public class SparseLargeActivity {
+}
@@ -2,6 +2,14 @@ package com.rsinukov.activityresult.processor;
 
 import com.rsinukov.activityresult.annotations.ActivityResult;
 import com.rsinukov.activityresult.annotations.ActivityResults;
+import com.rsinukov.activityresult.annotations.BatchResult;
+import com.rsinukov.activityresult.annotations.LazyResult;
+import com.rsinukov.activityresult.annotations.RecyclableResult;
+import com.rsinukov.activityresult.annotations.RequestCode;
+import com.rsinukov.activityresult.annotations.ResultIndex;
+import com.rsinukov.activityresult.annotations.SparseResult;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.TypeSpec;
 
 import javax.lang.model.element.Name;
 import javax.lang.model.element.TypeElement;
@@ -13,12 +21,59 @@ public class AnnotatedClass {
     private final Set<FieldToGenerate> optionalFields = new HashSet<FieldToGenerate>();
     private final Set<FieldToGenerate> requiredFields = new HashSet<FieldToGenerate>();
     private final Name simpleName;
+    private final TypeElement element;
+    private final ClassName resultClassName;
+    private final boolean isLazy;
+    private final boolean isSparse;
+    private final boolean isBatched;
+    private final int poolSize;
+    private final int requestCode;
+    private final List<TypeSpec> generatedBundlers = new ArrayList<TypeSpec>();
+    private final Set<TypeElement> registeredBundlers = new LinkedHashSet<TypeElement>();
 
     public AnnotatedClass(TypeElement activityElement)
             throws IllegalStateException {
 
+        this.element = activityElement;
         this.name = activityElement.getQualifiedName();
         this.simpleName = activityElement.getSimpleName();
+        this.resultClassName = ResultProcessor.getResultClassName(activityElement);
+        this.isLazy = activityElement.getAnnotation(LazyResult.class) != null;
+        this.isSparse = activityElement.getAnnotation(SparseResult.class) != null;
+        this.isBatched = activityElement.getAnnotation(BatchResult.class) != null;
+        if (isLazy && isSparse) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "@%s and @%s cannot be combined in class %s",
+                            LazyResult.class.getSimpleName(),
+                            SparseResult.class.getSimpleName(),
+                            activityElement.getQualifiedName().toString()
+                    )
+            );
+        }
+        RecyclableResult recyclable = activityElement.getAnnotation(RecyclableResult.class);
+        this.poolSize = recyclable != null ? recyclable.poolSize() : 0;
+        if (recyclable != null && poolSize < 1) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "poolSize() in @%s for class %s must be positive",
+                            RecyclableResult.class.getSimpleName(),
+                            activityElement.getQualifiedName().toString()
+                    )
+            );
+        }
+
+        RequestCode requestCodeAnnotation = activityElement.getAnnotation(RequestCode.class);
+        this.requestCode = requestCodeAnnotation != null ? requestCodeAnnotation.value() : ResultIndex.NO_REQUEST_CODE;
+        if (requestCodeAnnotation != null && (requestCode < 0 || requestCode > 0xffff)) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "@%s of %s must be between 0 and 65535",
+                            RequestCode.class.getSimpleName(),
+                            activityElement.getQualifiedName().toString()
+                    )
+            );
+        }
 
         ActivityResult annotation = activityElement.getAnnotation(ActivityResult.class);
         ActivityResults annotationsArray = activityElement.getAnnotation(ActivityResults.class);
@@ -87,4 +142,84 @@ public class AnnotatedClass {
     public Name getSimpleName() {
         return simpleName;
     }
+
+    /**
+     * @return true if fields of the generated Result class are decoded on first access.
+     */
+    public boolean isLazy() {
+        return isLazy;
+    }
+
+    /**
+     * @return true if the generated Result class writes only set optional fields and decodes only
+     * present keys.
+     */
+    public boolean isSparse() {
+        return isSparse;
+    }
+
+    /**
+     * @return true if the generated Result class has a Batch class.
+     */
+    public boolean isBatched() {
+        return isBatched;
+    }
+
+    /**
+     * @return true if instances of the generated Result class are pooled.
+     */
+    public boolean isRecyclable() {
+        return poolSize > 0;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return the request code of the activity, {@link ResultIndex#NO_REQUEST_CODE} if it has none.
+     */
+    public int getRequestCode() {
+        return requestCode;
+    }
+
+    public void addGeneratedBundler(TypeSpec bundler) {
+        generatedBundlers.add(bundler);
+    }
+
+    /**
+     * @return the bundlers the processor generated for fields of this class.
+     */
+    public List<TypeSpec> getGeneratedBundlers() {
+        return generatedBundlers;
+    }
+
+    /**
+     * @return the name of the generated Result class, resolved on the compiler thread so that the
+     * code generation workers do not touch the element.
+     */
+    public ClassName getResultClassName() {
+        return resultClassName;
+    }
+
+    /**
+     * @return the annotated activity.
+     */
+    public TypeElement getElement() {
+        return element;
+    }
+
+    public void addRegisteredBundler(TypeElement bundler) {
+        registeredBundlers.add(bundler);
+    }
+
+    /**
+     * @return the activity and the registered bundlers the generated Result class uses.
+     */
+    public List<TypeElement> getOriginatingElements() {
+        List<TypeElement> elements = new ArrayList<TypeElement>(registeredBundlers.size() + 1);
+        elements.add(element);
+        elements.addAll(registeredBundlers);
+        return elements;
+    }
 }
@@ -0,0 +1,121 @@
+package com.rsinukov.activityresult.processor;
+
+import com.rsinukov.activityresult.annotations.BundlerFor;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Default bundlers registered with {@link BundlerFor}, keyed by the erasure of the type they bundle.
+ * Every bundler is validated once when it is indexed, errors are reported on the bundler and do
+ * not stop the others from being indexed. The first bundler registered for a type wins. Registrations
+ * of earlier rounds are kept, since Result classes of later rounds may use them.
+ */
+public class BundlerRegistry {
+
+    private final Types typeUtils;
+    private final TypeCache typeCache;
+    private final Messager messager;
+    private final Map<String, TypeElement> bundlers = new HashMap<String, TypeElement>();
+
+    public BundlerRegistry(Types typeUtils, TypeCache typeCache, Messager messager) {
+        this.typeUtils = typeUtils;
+        this.typeCache = typeCache;
+        this.messager = messager;
+    }
+
+    public void index(Iterable<? extends Element> bundlerElements) {
+        for (Element element : bundlerElements) {
+            try {
+                register((TypeElement) element);
+            } catch (IllegalArgumentException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, e.getMessage(), element);
+            }
+        }
+    }
+
+    /**
+     * @return the bundler registered for the type, null if there is none.
+     */
+    public TypeElement getBundler(TypeMirror type) {
+        if (type == null || bundlers.isEmpty()) {
+            return null;
+        }
+        return bundlers.get(typeUtils.erasure(type).toString());
+    }
+
+    private void register(TypeElement bundler) {
+        String bundlerName = bundler.getQualifiedName().toString();
+        if (bundler.getKind() != ElementKind.CLASS || bundler.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new IllegalArgumentException(
+                    String.format("@%s is only allowed on concrete classes. Error in %s",
+                            BundlerFor.class.getSimpleName(), bundlerName)
+            );
+        }
+        TypeMirror customBundler = typeCache.getType(ResultProcessor.CUSTOM_BUNDLER.toString());
+        if (!typeUtils.isAssignable(bundler.asType(), typeUtils.erasure(customBundler))) {
+            throw new IllegalArgumentException(
+                    String.format("The %s must implement %s to be registered with @%s",
+                            bundlerName, ResultProcessor.CUSTOM_BUNDLER.simpleName(), BundlerFor.class.getSimpleName())
+            );
+        }
+        if (!bundler.getModifiers().contains(Modifier.PUBLIC)) {
+            throw new IllegalArgumentException(
+                    String.format("The %s must be a public class to be a valid CustomBundler", bundlerName)
+            );
+        }
+        if (!hasPublicEmptyConstructor(bundler)) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "The %s must provide a public empty default constructor to be a valid CustomBundler",
+                            bundlerName
+                    )
+            );
+        }
+
+        String type = getBundledType(bundler).toString();
+        TypeElement previous = bundlers.get(type);
+        if (previous == null) {
+            bundlers.put(type, bundler);
+        } else if (!previous.getQualifiedName().contentEquals(bundlerName)) {
+            throw new IllegalArgumentException(
+                    String.format("Both %s and %s are registered with @%s for %s",
+                            previous.getQualifiedName(), bundlerName, BundlerFor.class.getSimpleName(), type)
+            );
+        }
+    }
+
+    private TypeMirror getBundledType(TypeElement bundler) {
+        try {
+            bundler.getAnnotation(BundlerFor.class).value();
+        } catch (MirroredTypeException mte) {
+            return typeUtils.erasure(mte.getTypeMirror());
+        }
+        throw new IllegalArgumentException(
+                String.format("Could not get the type of @%s in %s",
+                        BundlerFor.class.getSimpleName(), bundler.getQualifiedName())
+        );
+    }
+
+    private static boolean hasPublicEmptyConstructor(TypeElement bundler) {
+        for (Element e : bundler.getEnclosedElements()) {
+            if (e.getKind() == ElementKind.CONSTRUCTOR) {
+                ExecutableElement c = (ExecutableElement) e;
+                if (c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
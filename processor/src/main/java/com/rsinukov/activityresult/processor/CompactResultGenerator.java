@@ -0,0 +1,264 @@
+package com.rsinukov.activityresult.processor;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.lang.model.element.Modifier;
+import java.util.List;
+
+/**
+ * Generates a Result class in the compact mode. Its fields are described by a static array of
+ * FieldDescriptors and kept in ResultValues, so with(Intent) and toIntent() are single calls into
+ * the shared ResultCodec and the class only adds typed accessors and the Builder.
+ */
+public class CompactResultGenerator {
+
+    private static final ClassName FIELD_DESCRIPTOR = ClassName.get(ResultProcessor.RUNTIME_PACKAGE, "FieldDescriptor");
+    private static final ClassName RESULT_VALUES = ClassName.get(ResultProcessor.RUNTIME_PACKAGE, "ResultValues");
+    private static final ClassName RESULT_CODEC = ClassName.get(ResultProcessor.RUNTIME_PACKAGE, "ResultCodec");
+
+    private final TypeName intentType;
+    private final TypeName bundleType;
+
+    public CompactResultGenerator(TypeName intentType, TypeName bundleType) {
+        this.intentType = intentType;
+        this.bundleType = bundleType;
+    }
+
+    /**
+     * @return false if the class uses a feature that needs the inline code: lazy decoding, sparse
+     * reads, recycling, offloaded fields or bundlers that can not be shared.
+     */
+    public static boolean isSupported(AnnotatedClass annotatedClass, List<FieldToGenerate> allFields) {
+        if (annotatedClass.isLazy() || annotatedClass.isSparse() || annotatedClass.isRecyclable()) {
+            return false;
+        }
+        for (FieldToGenerate field : allFields) {
+            if (field.isOffload() || field.isStatefulBundler()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param directIntent whether to read and write the typed Intent extras and add writeTo(Intent), as
+     * inline classes do in the direct Intent mode.
+     */
+    public TypeSpec.Builder createResultClass(
+            AnnotatedClass annotatedClass,
+            ClassName resultClassName,
+            List<FieldToGenerate> allFields,
+            boolean directIntent
+    ) {
+        TypeSpec.Builder resultClass = TypeSpec.classBuilder(resultClassName.simpleName())
+                .addModifiers(Modifier.PUBLIC);
+        ClassName builderClassName = resultClassName.nestedClass("Builder");
+        TypeSpec.Builder builder = TypeSpec.classBuilder("Builder")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+        MethodSpec.Builder builderConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC);
+
+        int[] slots = new int[allFields.size()];
+        int primitiveCount = 0;
+        int objectCount = 0;
+        int presenceBitCount = 0;
+        CodeBlock.Builder descriptors = CodeBlock.builder().add("new $T[]{\n$>", FIELD_DESCRIPTOR);
+        for (int i = 0; i < allFields.size(); i++) {
+            FieldToGenerate field = allFields.get(i);
+            if (i > 0) {
+                descriptors.add(",\n");
+            }
+            if (field.getStorageTypeName().isPrimitive()) {
+                slots[i] = primitiveCount++;
+                if (field.hasPresenceBit()) {
+                    presenceBitCount = Math.max(presenceBitCount, field.getPresenceBit() + 1);
+                    descriptors.add("$T.optional($S, $T.$L, $L, $L)", FIELD_DESCRIPTOR, field.getName(),
+                            FIELD_DESCRIPTOR, getTypeConstant(field), slots[i], field.getPresenceBit());
+                } else {
+                    descriptors.add("$T.value($S, $T.$L, $L)", FIELD_DESCRIPTOR, field.getName(),
+                            FIELD_DESCRIPTOR, getTypeConstant(field), slots[i]);
+                }
+            } else {
+                slots[i] = objectCount++;
+                if (field.hasCustomBundler()) {
+                    descriptors.add("$T.custom($S, new $T(), $L)", FIELD_DESCRIPTOR, field.getName(),
+                            field.getBundlerTypeName(), slots[i]);
+                } else if (ResultProcessor.getPrimitiveDefault(field.getOperation()) != null) {
+                    descriptors.add("$T.boxed($S, $T.$L, $L)", FIELD_DESCRIPTOR, field.getName(),
+                            FIELD_DESCRIPTOR, getTypeConstant(field), slots[i]);
+                } else {
+                    descriptors.add("$T.object($S, $T.$L, $L)", FIELD_DESCRIPTOR, field.getName(),
+                            FIELD_DESCRIPTOR, getTypeConstant(field), slots[i]);
+                }
+            }
+        }
+        descriptors.add("$<\n}");
+        resultClass.addField(FieldSpec
+                .builder(ArrayTypeName.of(FIELD_DESCRIPTOR), "FIELDS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(descriptors.build())
+                .build());
+        resultClass.addField(RESULT_VALUES, "values", Modifier.PRIVATE, Modifier.FINAL);
+        String newValues = String.format("new $T(%d, %d, %d)", primitiveCount, objectCount, presenceBitCount);
+
+        resultClass.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(RESULT_VALUES, "values")
+                .addStatement("this.values = values")
+                .build());
+        resultClass.addMethod(MethodSpec.methodBuilder("with")
+                .returns(resultClassName)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(intentType, "intent")
+                .addStatement("$T values = " + newValues, RESULT_VALUES, RESULT_VALUES)
+                .addStatement(directIntent
+                        ? "$T.decode(FIELDS, intent, values)"
+                        : "$T.decode(FIELDS, intent.getExtras(), values)", RESULT_CODEC)
+                .addStatement("return new $T(values)", resultClassName)
+                .build());
+
+        boolean hasSetters = false;
+        for (int i = 0; i < allFields.size(); i++) {
+            FieldToGenerate field = allFields.get(i);
+            addAccessors(resultClass, field, slots[i]);
+            if (field.isRequired()) {
+                builderConstructor.addParameter(field.getTypeName(), field.getName());
+                addSetValue(builderConstructor, field, slots[i]);
+            } else {
+                MethodSpec.Builder setter = MethodSpec.methodBuilder("set" + ResultProcessor.toCamelCase(field.getName()))
+                        .returns(builderClassName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(field.getTypeName(), field.getName())
+                        .addStatement("ownValues()");
+                hasSetters = true;
+                addSetValue(setter, field, slots[i]);
+                builder.addMethod(setter.addStatement("return this").build());
+            }
+        }
+
+        if (directIntent) {
+            resultClass.addMethod(MethodSpec.methodBuilder("writeTo")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(intentType, "target")
+                    .addStatement("$T.encode(FIELDS, values, target)", RESULT_CODEC)
+                    .build());
+        }
+        resultClass.addMethod(MethodSpec.methodBuilder("toIntent")
+                .returns(intentType)
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("$T intent = new $T()", intentType, intentType)
+                .addStatement(directIntent
+                        ? "$T.encode(FIELDS, values, intent)"
+                        : "intent.putExtras($T.encode(FIELDS, values))", RESULT_CODEC)
+                .addStatement("return intent")
+                .build());
+
+        MethodSpec.Builder build = MethodSpec.methodBuilder("build")
+                .returns(resultClassName)
+                .addModifiers(Modifier.PUBLIC);
+        if (hasSetters) {
+            // the values are handed over and only copied if a setter is called after build()
+            builder.addField(FieldSpec.builder(RESULT_VALUES, "values", Modifier.PRIVATE)
+                    .initializer(newValues, RESULT_VALUES)
+                    .build())
+                    .addField(TypeName.BOOLEAN, "built", Modifier.PRIVATE)
+                    .addMethod(MethodSpec.methodBuilder("ownValues")
+                            .addModifiers(Modifier.PRIVATE)
+                            .beginControlFlow("if (built)")
+                            .addStatement("values = values.copy()")
+                            .addStatement("built = false")
+                            .endControlFlow()
+                            .build());
+            build.addStatement("built = true");
+        } else {
+            builder.addField(FieldSpec.builder(RESULT_VALUES, "values", Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer(newValues, RESULT_VALUES)
+                    .build());
+        }
+        builder.addMethod(builderConstructor.build())
+                .addMethod(build.addStatement("return new $T(values)", resultClassName).build());
+        return resultClass.addType(builder.build());
+    }
+
+    private void addAccessors(TypeSpec.Builder resultClass, FieldToGenerate field, int slot) {
+        String camelCaseName = ResultProcessor.toCamelCase(field.getName());
+        MethodSpec.Builder getter = MethodSpec.methodBuilder("get" + camelCaseName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .returns(field.getTypeName());
+
+        if (!field.getStorageTypeName().isPrimitive()) {
+            if (field.getTypeName() instanceof ParameterizedTypeName) {
+                getter.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                        .addMember("value", "$S", "unchecked")
+                        .build());
+            }
+            resultClass.addMethod(getter.addStatement("return ($T) values.getObject($L)", field.getTypeName(), slot)
+                    .build());
+            return;
+        }
+
+        String value = String.format("values.get%s(%d)", field.getOperation(), slot);
+        if (!field.hasPresenceBit()) {
+            resultClass.addMethod(getter.addStatement("return $L", value).build());
+            return;
+        }
+        String presenceCheck = "values.has(" + field.getPresenceBit() + ")";
+        boolean isBoxed = !field.getTypeName().isPrimitive();
+        if (isBoxed) {
+            getter.addStatement("return $L ? $T.valueOf($L) : null", presenceCheck, field.getTypeName(), value);
+        } else {
+            getter.addStatement("return $L", value);
+        }
+        resultClass.addMethod(getter.build());
+        resultClass.addMethod(MethodSpec.methodBuilder("has" + camelCaseName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .returns(TypeName.BOOLEAN)
+                .addStatement("return $L", presenceCheck)
+                .build());
+        if (isBoxed) {
+            // reads the value without boxing it
+            resultClass.addMethod(MethodSpec.methodBuilder("get" + camelCaseName)
+                    .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                    .addParameter(field.getStorageTypeName(), "defaultValue")
+                    .returns(field.getStorageTypeName())
+                    .addStatement("return $L ? $L : defaultValue", presenceCheck, value)
+                    .build());
+        }
+    }
+
+    /**
+     * Stores the parameter named like the field into the Builder values.
+     */
+    private void addSetValue(MethodSpec.Builder method, FieldToGenerate field, int slot) {
+        String name = field.getName();
+        if (!field.getStorageTypeName().isPrimitive()) {
+            method.addStatement("values.setObject($L, $L)", slot, name);
+        } else if (!field.hasPresenceBit()) {
+            method.addStatement("values.set$L($L, $L)", field.getOperation(), slot, name);
+        } else if (field.getTypeName().isPrimitive()) {
+            method.addStatement("values.set$L($L, $L)", field.getOperation(), slot, name)
+                    .addStatement("values.setPresent($L, true)", field.getPresenceBit());
+        } else {
+            method.beginControlFlow("if ($L != null)", name)
+                    .addStatement("values.set$L($L, $L)", field.getOperation(), slot, name)
+                    .addStatement("values.setPresent($L, true)", field.getPresenceBit())
+                    .nextControlFlow("else")
+                    .addStatement("values.setPresent($L, false)", field.getPresenceBit())
+                    .endControlFlow();
+        }
+    }
+
+    /**
+     * @return the FieldDescriptor constant of the operation, e.g. CHAR_SEQUENCE_ARRAY for CharSequenceArray.
+     */
+    private static String getTypeConstant(FieldToGenerate field) {
+        return field.getOperation().replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+    }
+}
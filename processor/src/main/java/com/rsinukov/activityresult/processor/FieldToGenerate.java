@@ -3,6 +3,10 @@ package com.rsinukov.activityresult.processor;
 import com.rsinukov.activityresult.CustomBundler;
 import com.rsinukov.activityresult.EmptyBundler;
 import com.rsinukov.activityresult.annotations.ActivityResult;
+import com.rsinukov.activityresult.annotations.StatefulBundler;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
 
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
@@ -22,13 +26,22 @@ public class FieldToGenerate implements Comparable<FieldToGenerate> {
     private String typeString;
     private TypeMirror type;
     private final boolean isRequired;
+    private final boolean isOffload;
     private String bundlerClassName;
+    private ClassName bundlerTypeName;
+    private boolean isStatefulBundler;
+    private boolean isGenericBundler;
     private final TypeElement activityElement;
+    private String operation;
+    private TypeName typeName;
+    private int presenceBit = -1;
+    private ClassName nestedResultClassName;
 
     public FieldToGenerate(ActivityResult annotation, TypeElement activityElement)
             throws IllegalArgumentException {
         this.name = annotation.name();
         this.isRequired = annotation.isRequired();
+        this.isOffload = annotation.offload();
         this.activityElement = activityElement;
 
         if (annotation.name() == null || annotation.name().length() == 0) { // TODO: change to Utils.isEmpty()
@@ -40,6 +53,18 @@ public class FieldToGenerate implements Comparable<FieldToGenerate> {
                     )
             );
         }
+        // nested results are flattened under the key of the field and the separator, so keys with it could collide
+        if (annotation.name().contains(FlatResultGenerator.KEY_SEPARATOR)) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "name() \"%s\" in @%s for class %s must not contain \"%s\"",
+                            annotation.name(),
+                            ActivityResult.class.getSimpleName(),
+                            activityElement.getQualifiedName().toString(),
+                            FlatResultGenerator.KEY_SEPARATOR
+                    )
+            );
+        }
 
         try {
             Class<? extends CustomBundler> bundlerClass = annotation.parcel();
@@ -95,6 +120,11 @@ public class FieldToGenerate implements Comparable<FieldToGenerate> {
             );
         }
 
+        TypeElement bundlerElement = (TypeElement) ((DeclaredType) bundlerClass).asElement();
+        isStatefulBundler = bundlerElement.getAnnotation(StatefulBundler.class) != null;
+        isGenericBundler = !bundlerElement.getTypeParameters().isEmpty();
+        bundlerTypeName = ClassName.get(bundlerElement);
+
         return bundlerClass.toString();
     }
 
@@ -121,6 +151,10 @@ public class FieldToGenerate implements Comparable<FieldToGenerate> {
             );
         }
 
+        isStatefulBundler = clazz.isAnnotationPresent(StatefulBundler.class);
+        isGenericBundler = clazz.getTypeParameters().length > 0;
+        bundlerTypeName = ClassName.get(clazz);
+
         return clazz.getCanonicalName();
     }
 
@@ -172,10 +206,79 @@ public class FieldToGenerate implements Comparable<FieldToGenerate> {
         return bundlerClassName.equals(EmptyBundler.class.getCanonicalName()) ? null : bundlerClassName;
     }
 
+    /**
+     * @return the class of the CustomBundler, null if no custom parcel has been set.
+     */
+    public ClassName getBundlerTypeName() {
+        return hasCustomBundler() ? bundlerTypeName : null;
+    }
+
+    /**
+     * @return the type of the variables that hold the bundler. A generic bundler is held as a
+     * CustomBundler&lt;Object&gt;, since get() of a raw bundler returns Object instead of the field type.
+     */
+    public TypeName getBundlerVariableTypeName() {
+        if (!hasCustomBundler()) {
+            return null;
+        }
+        return isGenericBundler
+                ? ParameterizedTypeName.get(ResultProcessor.CUSTOM_BUNDLER, ClassName.get(Object.class))
+                : bundlerTypeName;
+    }
+
+    /**
+     * @return true if the bundler class declares type parameters.
+     */
+    public boolean isGenericBundler() {
+        return isGenericBundler;
+    }
+
+    /**
+     * Binds the field to a CustomBundler generated by the processor, which is never stateful.
+     */
+    public void setGeneratedBundler(ClassName bundlerTypeName) {
+        setRegisteredBundler(bundlerTypeName, false, false);
+    }
+
+    /**
+     * Binds the field to a bundler registered for its type.
+     */
+    public void setRegisteredBundler(ClassName bundlerTypeName, boolean isStatefulBundler, boolean isGenericBundler) {
+        this.bundlerClassName = bundlerTypeName.toString();
+        this.bundlerTypeName = bundlerTypeName;
+        this.isStatefulBundler = isStatefulBundler;
+        this.isGenericBundler = isGenericBundler;
+    }
+
+    /**
+     * Marks the field as the Result class of another activity, which is written into the bundle by
+     * the given generated bundler.
+     */
+    public void setNestedResult(ClassName resultClassName, ClassName bundlerTypeName) {
+        this.nestedResultClassName = resultClassName;
+        setGeneratedBundler(bundlerTypeName);
+    }
+
+    /**
+     * @return the Result class of the field if it is nested, null otherwise. The type mirror of such
+     * a field is not resolved yet if the class is generated in the same round.
+     */
+    public ClassName getNestedResultClassName() {
+        return nestedResultClassName;
+    }
+
     public boolean hasCustomBundler() {
         return getBundlerClassName() != null;
     }
 
+    /**
+     * @return true if the custom bundler is annotated with {@link StatefulBundler} and must not be
+     * shared between calls.
+     */
+    public boolean isStatefulBundler() {
+        return isStatefulBundler;
+    }
+
     public String getName() {
         return name;
     }
@@ -184,10 +287,62 @@ public class FieldToGenerate implements Comparable<FieldToGenerate> {
         return isRequired;
     }
 
+    /**
+     * @return true if a large value of the field may be moved to the MappedResultStore.
+     */
+    public boolean isOffload() {
+        return isOffload;
+    }
+
     public TypeMirror getType() {
         return type;
     }
 
+    /**
+     * @return the bundle operation resolved by the processor, null for fields with a custom bundler.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * @return the JavaPoet type of the field, resolved on the compiler thread.
+     */
+    public TypeName getTypeName() {
+        return typeName;
+    }
+
+    public void setTypeName(TypeName typeName) {
+        this.typeName = typeName;
+    }
+
+    /**
+     * @return the type of the generated field, the primitive one for fields with a presence bit.
+     */
+    public TypeName getStorageTypeName() {
+        return hasPresenceBit() && !typeName.isPrimitive() ? typeName.unbox() : typeName;
+    }
+
+    /**
+     * @return true if the presence of this optional primitive or wrapper field is tracked in a
+     * bitmask of the Result class.
+     */
+    public boolean hasPresenceBit() {
+        return presenceBit >= 0;
+    }
+
+    public int getPresenceBit() {
+        return presenceBit;
+    }
+
+    public void setPresenceBit(int presenceBit) {
+        this.presenceBit = presenceBit;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -208,6 +363,10 @@ public class FieldToGenerate implements Comparable<FieldToGenerate> {
         return name + "/" + typeString;
     }
 
+    public String getTypeString() {
+        return typeString;
+    }
+
     public String getRawType() {
         if (isArray()) {
             return typeString.substring(0, typeString.length() - 2);
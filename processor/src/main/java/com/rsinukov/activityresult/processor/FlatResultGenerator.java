@@ -0,0 +1,228 @@
+package com.rsinukov.activityresult.processor;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+
+import javax.lang.model.element.Modifier;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the flattened encoding of Result classes that are fields of other Result classes. The
+ * nested Result writes its fields into the bundle of the outer one under the key of the field
+ * followed by a dot, so no Bundle is allocated per level. The methods only use the getters and the
+ * Builder, so they work the same in every mode of the nested class. A compiled Result class
+ * generated before the flat methods is nested as a Bundle instead.
+ */
+public class FlatResultGenerator {
+
+    static final String KEY_SEPARATOR = ".";
+
+    private final TypeName intentType;
+    private final TypeName bundleType;
+
+    public FlatResultGenerator(TypeName intentType, TypeName bundleType) {
+        this.intentType = intentType;
+        this.bundleType = bundleType;
+    }
+
+    /**
+     * Creates writeFlat(String, Bundle), which puts every field under the prefix. Offloaded fields
+     * are written as they are, the MappedResultStore is only used by toIntent().
+     */
+    public MethodSpec createWriteFlat(List<FieldToGenerate> allFields, Map<String, String> bundlerHolders) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("writeFlat")
+                .addJavadoc("Puts the fields into the bundle with the keys prefixed, to nest this result in another one.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "prefix")
+                .addParameter(bundleType, "bundle");
+        for (FieldToGenerate field : allFields) {
+            String camelCaseName = ResultProcessor.toCamelCase(field.getName());
+            if (field.hasCustomBundler()) {
+                method.addStatement(
+                        "$L.put(prefix + $S, get$L(), bundle)",
+                        ResultProcessor.getBundlerInstance(field, bundlerHolders, method),
+                        field.getName(),
+                        camelCaseName
+                );
+            } else if (field.hasPresenceBit()) {
+                // reads wrappers without boxing them
+                method.beginControlFlow("if (has$L())", camelCaseName)
+                        .addStatement(
+                                "bundle.put$L(prefix + $S, get$L($L))",
+                                field.getOperation(),
+                                field.getName(),
+                                camelCaseName,
+                                field.getTypeName().isPrimitive()
+                                        ? ""
+                                        : ResultProcessor.getPrimitiveDefault(field.getOperation())
+                        )
+                        .endControlFlow();
+            } else {
+                method.addStatement(
+                        "bundle.put$L(prefix + $S, get$L())",
+                        field.getOperation(),
+                        field.getName(),
+                        camelCaseName
+                );
+            }
+        }
+        return method.build();
+    }
+
+    /**
+     * Creates readFlat(String, Bundle), which reads the fields written by writeFlat() through the
+     * Builder.
+     */
+    public MethodSpec createReadFlat(
+            ClassName resultClassName,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders
+    ) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("readFlat")
+                .addJavadoc("Reads a result written by {@link #writeFlat(String, $T)} with the same prefix.\n", bundleType)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(resultClassName)
+                .addParameter(String.class, "prefix")
+                .addParameter(bundleType, "bundle");
+        CodeBlock.Builder builderArguments = CodeBlock.builder();
+        boolean hasBuilderArguments = false;
+        CodeBlock.Builder optionalSetters = CodeBlock.builder();
+
+        for (FieldToGenerate field : allFields) {
+            String name = field.getName();
+            String camelCaseName = ResultProcessor.toCamelCase(name);
+            String value = name + "Value";
+            if (field.hasPresenceBit()) {
+                // a missing value leaves the field unset
+                String key = name + "Key";
+                method.addStatement("$T $L = prefix + $S", String.class, key, name);
+                optionalSetters.beginControlFlow("if (bundle.containsKey($L))", key)
+                        .addStatement("builder.set$L(bundle.get$L($L))", camelCaseName, field.getOperation(), key)
+                        .endControlFlow();
+                continue;
+            }
+
+            // read into typed locals, the generic getters are not inferred from method arguments
+            if (field.hasCustomBundler()) {
+                method.addStatement(
+                        "$T $L = $L.get(prefix + $S, bundle)",
+                        field.getTypeName(),
+                        value,
+                        ResultProcessor.getBundlerInstance(field, bundlerHolders, method),
+                        name
+                );
+            } else if (field.getOperation().equals("Serializable")) {
+                method.addStatement(
+                        "$T $L = ($T) bundle.getSerializable(prefix + $S)",
+                        field.getTypeName(),
+                        value,
+                        field.getTypeName(),
+                        name
+                );
+            } else {
+                method.addStatement(
+                        "$T $L = bundle.get$L(prefix + $S)",
+                        field.getTypeName(),
+                        value,
+                        field.getOperation(),
+                        name
+                );
+            }
+            if (field.isRequired()) {
+                builderArguments.add(hasBuilderArguments ? ", $L" : "$L", value);
+                hasBuilderArguments = true;
+            } else {
+                optionalSetters.addStatement("builder.set$L($L)", camelCaseName, value);
+            }
+        }
+
+        return method
+                .addStatement("$T.Builder builder = new $T.Builder($L)", resultClassName, resultClassName,
+                        builderArguments.build())
+                .addCode(optionalSetters.build())
+                .addStatement("return builder.build()")
+                .build();
+    }
+
+    /**
+     * Creates the CustomBundler of a field whose type is a nested Result class. The key of the field
+     * itself holds whether the nested result is present.
+     */
+    public TypeSpec createFlatBundler(String bundlerName, ClassName nestedResultClassName) {
+        TypeVariableName t = TypeVariableName.get("T");
+        return TypeSpec.classBuilder(bundlerName)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(ResultProcessor.CUSTOM_BUNDLER, nestedResultClassName))
+                .addMethod(MethodSpec.methodBuilder("put")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(String.class, "key")
+                        .addParameter(nestedResultClassName, "value")
+                        .addParameter(bundleType, "bundle")
+                        .addStatement("bundle.putBoolean(key, value != null)")
+                        .beginControlFlow("if (value != null)")
+                        .addStatement("value.writeFlat(key + $S, bundle)", KEY_SEPARATOR)
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("get")
+                        .addAnnotation(Override.class)
+                        .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                                .addMember("value", "$S", "unchecked")
+                                .build())
+                        .addModifiers(Modifier.PUBLIC)
+                        .addTypeVariable(t)
+                        .returns(t)
+                        .addParameter(String.class, "key")
+                        .addParameter(bundleType, "bundle")
+                        .beginControlFlow("if (!bundle.getBoolean(key))")
+                        .addStatement("return null")
+                        .endControlFlow()
+                        .addStatement("return (T) $T.readFlat(key + $S, bundle)", nestedResultClassName, KEY_SEPARATOR)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Creates the CustomBundler of a field whose type is a compiled Result class without
+     * readFlat(), which puts the extras of the nested result under the key of the field. Unlike the
+     * flat encoding, every value allocates an Intent and a Bundle in toIntent().
+     */
+    public TypeSpec createNestedBundler(String bundlerName, ClassName nestedResultClassName) {
+        TypeVariableName t = TypeVariableName.get("T");
+        return TypeSpec.classBuilder(bundlerName)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(ResultProcessor.CUSTOM_BUNDLER, nestedResultClassName))
+                .addMethod(MethodSpec.methodBuilder("put")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(String.class, "key")
+                        .addParameter(nestedResultClassName, "value")
+                        .addParameter(bundleType, "bundle")
+                        .addStatement("bundle.putBundle(key, value != null ? value.toIntent().getExtras() : null)")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("get")
+                        .addAnnotation(Override.class)
+                        .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                                .addMember("value", "$S", "unchecked")
+                                .build())
+                        .addModifiers(Modifier.PUBLIC)
+                        .addTypeVariable(t)
+                        .returns(t)
+                        .addParameter(String.class, "key")
+                        .addParameter(bundleType, "bundle")
+                        .addStatement("$T nested = bundle.getBundle(key)", bundleType)
+                        .beginControlFlow("if (nested == null)")
+                        .addStatement("return null")
+                        .endControlFlow()
+                        .addStatement("return (T) $T.with(new $T().putExtras(nested))", nestedResultClassName, intentType)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,237 @@
+package com.rsinukov.activityresult.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accumulates how much work {@link ResultProcessor} did and where the time went, per round and
+ * across all rounds of one compilation. Code generation threads report into the same instance.
+ * <p>
+ * Phase times are wall times on the compiler thread. Phases that may run on the code generation
+ * pool also record thread times, the time of every task summed over all threads, which is larger
+ * than the wall time when the tasks run in parallel.
+ */
+public class ProcessingStats {
+
+    public static final String PHASE_DISCOVERY = "discovery";
+    public static final String PHASE_MODEL = "model";
+    public static final String PHASE_OPERATION = "getOperation";
+    public static final String PHASE_EMISSION = "javapoet";
+    public static final String PHASE_WRITE = "filer";
+
+    /**
+     * Operation kind of fields written by a custom or generated bundler.
+     */
+    public static final String OPERATION_CUSTOM_BUNDLER = "CustomBundler";
+
+    private final List<Round> rounds = new ArrayList<Round>();
+    private Round current = new Round();
+
+    private static final class Round {
+        final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+        final Map<String, Long> threadNanos = new LinkedHashMap<String, Long>();
+        final Map<String, Integer> operations = new TreeMap<String, Integer>();
+        int classes;
+        int fields;
+        long generatedBytes;
+
+        Round() {
+            phaseNanos.put(PHASE_DISCOVERY, 0L);
+            phaseNanos.put(PHASE_MODEL, 0L);
+            phaseNanos.put(PHASE_OPERATION, 0L);
+            phaseNanos.put(PHASE_EMISSION, 0L);
+            phaseNanos.put(PHASE_WRITE, 0L);
+            threadNanos.put(PHASE_EMISSION, 0L);
+        }
+    }
+
+    /**
+     * Starts recording a new round.
+     */
+    public synchronized void onRound() {
+        current = new Round();
+        rounds.add(current);
+    }
+
+    public synchronized void onClass(int fieldCount) {
+        current.classes++;
+        current.fields += fieldCount;
+    }
+
+    /**
+     * Counts a field with the operation kind, {@link #OPERATION_CUSTOM_BUNDLER} for bundled fields.
+     */
+    public synchronized void onOperation(String operation) {
+        Integer count = current.operations.get(operation);
+        current.operations.put(operation, count == null ? 1 : count + 1);
+    }
+
+    public synchronized void onGenerated(long bytes) {
+        current.generatedBytes += bytes;
+    }
+
+    /**
+     * Adds the time elapsed since startNanos, a value of {@link System#nanoTime()}, to the phase.
+     */
+    public void addTime(String phase, long startNanos) {
+        addNanos(phase, System.nanoTime() - startNanos);
+    }
+
+    public synchronized void addNanos(String phase, long nanos) {
+        add(current.phaseNanos, phase, nanos);
+    }
+
+    /**
+     * Adds the time a task of the phase took on its thread since startNanos, a value of
+     * {@link System#nanoTime()}.
+     */
+    public void addThreadTime(String phase, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        synchronized (this) {
+            add(current.threadNanos, phase, nanos);
+        }
+    }
+
+    public synchronized long getNanos(String phase) {
+        Long nanos = getPhaseNanos().get(phase);
+        return nanos == null ? 0 : nanos;
+    }
+
+    /**
+     * @return the wall time of every phase summed over all rounds.
+     */
+    public synchronized Map<String, Long> getPhaseNanos() {
+        Map<String, Long> total = new LinkedHashMap<String, Long>(new Round().phaseNanos);
+        for (Round round : rounds) {
+            addAll(total, round.phaseNanos);
+        }
+        return Collections.unmodifiableMap(total);
+    }
+
+    /**
+     * @return the thread time of the phases that record it, summed over all threads and rounds.
+     */
+    public synchronized Map<String, Long> getThreadNanos() {
+        Map<String, Long> total = new LinkedHashMap<String, Long>(new Round().threadNanos);
+        for (Round round : rounds) {
+            addAll(total, round.threadNanos);
+        }
+        return Collections.unmodifiableMap(total);
+    }
+
+    private static void addAll(Map<String, Long> total, Map<String, Long> nanos) {
+        for (Map.Entry<String, Long> phase : nanos.entrySet()) {
+            add(total, phase.getKey(), phase.getValue());
+        }
+    }
+
+    private static void add(Map<String, Long> total, String phase, long nanos) {
+        Long previous = total.get(phase);
+        total.put(phase, (previous == null ? 0 : previous) + nanos);
+    }
+
+    /**
+     * @return the number of fields per operation kind summed over all rounds.
+     */
+    public synchronized Map<String, Integer> getOperationCounts() {
+        Map<String, Integer> total = new TreeMap<String, Integer>();
+        for (Round round : rounds) {
+            for (Map.Entry<String, Integer> operation : round.operations.entrySet()) {
+                Integer previous = total.get(operation.getKey());
+                total.put(operation.getKey(), (previous == null ? 0 : previous) + operation.getValue());
+            }
+        }
+        return Collections.unmodifiableMap(total);
+    }
+
+    public synchronized int getRounds() {
+        return rounds.size();
+    }
+
+    public synchronized int getClasses() {
+        int classes = 0;
+        for (Round round : rounds) {
+            classes += round.classes;
+        }
+        return classes;
+    }
+
+    public synchronized int getFields() {
+        int fields = 0;
+        for (Round round : rounds) {
+            fields += round.fields;
+        }
+        return fields;
+    }
+
+    public synchronized long getGeneratedBytes() {
+        long bytes = 0;
+        for (Round round : rounds) {
+            bytes += round.generatedBytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the totals and the stats of every round as a JSON object.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"rounds\": ").append(getRounds())
+                .append(",\n  \"total\": ");
+        appendJson(json, getClasses(), getFields(), getOperationCounts(), getPhaseNanos(), getThreadNanos(),
+                getGeneratedBytes(), "  ");
+        json.append(",\n  \"perRound\": [");
+        for (int i = 0; i < rounds.size(); i++) {
+            Round round = rounds.get(i);
+            json.append(i == 0 ? "\n    " : ",\n    ");
+            appendJson(json, round.classes, round.fields, round.operations, round.phaseNanos, round.threadNanos,
+                    round.generatedBytes, "    ");
+        }
+        json.append(rounds.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static void appendJson(
+            StringBuilder json,
+            int classes,
+            int fields,
+            Map<String, Integer> operations,
+            Map<String, Long> phaseNanos,
+            Map<String, Long> threadNanos,
+            long generatedBytes,
+            String indent
+    ) {
+        json.append("{\n")
+                .append(indent).append("  \"classes\": ").append(classes).append(",\n")
+                .append(indent).append("  \"fields\": ").append(fields).append(",\n")
+                .append(indent).append("  \"operations\": ");
+        appendJsonMap(json, operations);
+        json.append(",\n").append(indent).append("  \"phaseNanos\": ");
+        appendJsonMap(json, phaseNanos);
+        json.append(",\n").append(indent).append("  \"threadNanos\": ");
+        appendJsonMap(json, threadNanos);
+        json.append(",\n").append(indent).append("  \"generatedBytes\": ").append(generatedBytes).append('\n')
+                .append(indent).append('}');
+    }
+
+    /**
+     * Appends the map in one line. Keys are operation and phase names, which need no escaping.
+     */
+    private static void appendJsonMap(StringBuilder json, Map<String, ? extends Number> map) {
+        json.append('{');
+        boolean first = true;
+        for (Map.Entry<String, ? extends Number> entry : map.entrySet()) {
+            if (!first) {
+                json.append(", ");
+            }
+            first = false;
+            json.append('"').append(entry.getKey()).append("\": ").append(entry.getValue());
+        }
+        json.append('}');
+    }
+}
@@ -0,0 +1,265 @@
+package com.rsinukov.activityresult.processor;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.lang.model.element.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the Batch class of a Result class annotated with @BatchResult. Primitive and wrapper
+ * fields get a primitive array column with a presence bitmap if they may be absent, String fields a
+ * deduplicated StringColumn and all other fields a Bundle column keyed by row.
+ */
+public class ResultBatchGenerator {
+
+    private static final ClassName STRING_COLUMN = ClassName.get(ResultProcessor.RUNTIME_PACKAGE, "StringColumn");
+    private static final String SIZE_KEY = "#size";
+    private static final String PRESENCE_SUFFIX = "#present";
+
+    private final TypeName intentType;
+    private final TypeName bundleType;
+
+    public ResultBatchGenerator(TypeName intentType, TypeName bundleType) {
+        this.intentType = intentType;
+        this.bundleType = bundleType;
+    }
+
+    public TypeSpec createBatch(
+            AnnotatedClass annotatedClass,
+            ClassName resultClassName,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders
+    ) {
+        ClassName batchClassName = resultClassName.nestedClass("Batch");
+        TypeSpec.Builder batch = TypeSpec.classBuilder("Batch")
+                .addJavadoc("Packs many results into one Bundle column by column.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addField(TypeName.INT, "size", Modifier.PRIVATE)
+                .addField(TypeName.INT, "capacity", Modifier.PRIVATE);
+
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeName.INT, "capacity")
+                .addStatement("this.capacity = capacity");
+        MethodSpec.Builder bundleConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(bundleType, "bundle")
+                .addStatement("size = bundle.getInt($S)", SIZE_KEY)
+                .addStatement("capacity = size");
+        MethodSpec.Builder ensureCapacity = MethodSpec.methodBuilder("ensureCapacity")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(TypeName.INT, "minCapacity")
+                .beginControlFlow("if (minCapacity <= capacity)")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("capacity = Math.max(capacity * 2, minCapacity)");
+        MethodSpec.Builder add = MethodSpec.methodBuilder("add")
+                .addJavadoc("Appends the result as the last row.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(batchClassName)
+                .addParameter(resultClassName, "result")
+                .addStatement("ensureCapacity(size + 1)");
+        MethodSpec.Builder toBundle = MethodSpec.methodBuilder("toBundle")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(bundleType)
+                .addStatement("$T bundle = new $T()", bundleType, bundleType)
+                .addStatement("bundle.putInt($S, size)", SIZE_KEY);
+        CodeBlock.Builder builderArguments = CodeBlock.builder();
+        boolean hasBuilderArguments = false;
+        CodeBlock.Builder optionalSetters = CodeBlock.builder();
+
+        for (FieldToGenerate field : allFields) {
+            String name = field.getName();
+            String column = name + "Column";
+            String camelCaseName = ResultProcessor.toCamelCase(name);
+            String primitiveDefault = field.hasCustomBundler() ? null : ResultProcessor.getPrimitiveDefault(field.getOperation());
+
+            MethodSpec.Builder getter = MethodSpec.methodBuilder("get" + camelCaseName)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(field.getTypeName())
+                    .addParameter(TypeName.INT, "index")
+                    .addStatement("checkIndex(index)");
+
+            if (primitiveDefault != null) {
+                TypeName elementType = field.getTypeName().isPrimitive() ? field.getTypeName() : field.getTypeName().unbox();
+                TypeName arrayType = ArrayTypeName.of(elementType);
+                boolean isBoxed = !field.getTypeName().isPrimitive();
+                boolean hasPresence = field.hasPresenceBit() || isBoxed;
+                String presence = name + "Presence";
+                String arrayOperation = field.getOperation() + "Array";
+
+                batch.addField(arrayType, column, Modifier.PRIVATE);
+                constructor.addStatement("$L = new $T[capacity]", column, elementType);
+                bundleConstructor.addStatement("$L = bundle.get$L($S)", column, arrayOperation, name);
+                ensureCapacity.addStatement("$L = $T.copyOf($L, capacity)", column, Arrays.class, column);
+                toBundle.addStatement("bundle.put$L($S, $T.copyOf($L, size))", arrayOperation, name, Arrays.class, column);
+                if (hasPresence) {
+                    batch.addField(long[].class, presence, Modifier.PRIVATE);
+                    constructor.addStatement("$L = new long[(capacity + 63) >> 6]", presence);
+                    bundleConstructor.addStatement("$L = bundle.getLongArray($S)", presence, name + PRESENCE_SUFFIX);
+                    ensureCapacity.addStatement("$L = $T.copyOf($L, (capacity + 63) >> 6)", presence, Arrays.class, presence);
+                    toBundle.addStatement(
+                            "bundle.putLongArray($S, $T.copyOf($L, (size + 63) >> 6))",
+                            name + PRESENCE_SUFFIX,
+                            Arrays.class,
+                            presence
+                    );
+                    batch.addMethod(MethodSpec.methodBuilder("has" + camelCaseName)
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(TypeName.BOOLEAN)
+                            .addParameter(TypeName.INT, "index")
+                            .addStatement("checkIndex(index)")
+                            .addStatement("return ($L[index >> 6] & (1L << index)) != 0", presence)
+                            .build());
+                }
+
+                if (field.hasPresenceBit()) {
+                    // reads wrappers without boxing them
+                    add.beginControlFlow("if (result.has$L())", camelCaseName)
+                            .addStatement(
+                                    "$L[size] = result.get$L($L)",
+                                    column,
+                                    camelCaseName,
+                                    isBoxed ? primitiveDefault : ""
+                            );
+                } else if (isBoxed) {
+                    add.addStatement("$T $L = result.get$L()", field.getTypeName(), name + "Value", camelCaseName)
+                            .beginControlFlow("if ($L != null)", name + "Value")
+                            .addStatement("$L[size] = $L", column, name + "Value");
+                } else {
+                    add.addStatement("$L[size] = result.get$L()", column, camelCaseName);
+                }
+                if (hasPresence) {
+                    add.addStatement("$L[size >> 6] |= 1L << size", presence).endControlFlow();
+                }
+
+                if (isBoxed) {
+                    getter.addStatement("return has$L(index) ? $T.valueOf($L[index]) : null", camelCaseName, field.getTypeName(), column);
+                } else {
+                    getter.addStatement("return $L[index]", column);
+                }
+            } else if (!field.hasCustomBundler() && "String".equals(field.getOperation())) {
+                batch.addField(STRING_COLUMN, column, Modifier.PRIVATE);
+                constructor.addStatement("$L = new $T(capacity)", column, STRING_COLUMN);
+                bundleConstructor.addStatement("$L = $T.readFrom(bundle, $S)", column, STRING_COLUMN, name);
+                add.addStatement("$L.add(result.get$L())", column, camelCaseName);
+                toBundle.addStatement("$L.writeTo(bundle, $S)", column, name);
+                getter.addStatement("return $L.get(index)", column);
+            } else {
+                batch.addField(bundleType, column, Modifier.PRIVATE);
+                constructor.addStatement("$L = new $T()", column, bundleType);
+                bundleConstructor.addStatement("$L = bundle.getBundle($S)", column, name);
+                toBundle.addStatement("bundle.putBundle($S, new $T($L))", name, bundleType, column);
+                if (field.hasCustomBundler()) {
+                    add.addStatement(
+                            "$L.put($T.toString(size), result.get$L(), $L)",
+                            ResultProcessor.getBundlerInstance(field, bundlerHolders, add),
+                            Integer.class,
+                            camelCaseName,
+                            column
+                    );
+                    getter.addStatement(
+                            "return $L.get($T.toString(index), $L)",
+                            ResultProcessor.getBundlerInstance(field, bundlerHolders, getter),
+                            Integer.class,
+                            column
+                    );
+                } else {
+                    add.addStatement("$T $L = result.get$L()", field.getTypeName(), name + "Value", camelCaseName)
+                            .beginControlFlow("if ($L != null)", name + "Value")
+                            .addStatement(
+                                    "$L.put$L($T.toString(size), $L)",
+                                    column,
+                                    field.getOperation(),
+                                    Integer.class,
+                                    name + "Value"
+                            )
+                            .endControlFlow();
+                    if (field.getOperation().equals("Serializable")) {
+                        getter.addStatement(
+                                "return ($L) $L.getSerializable($T.toString(index))",
+                                field.getRawType(),
+                                column,
+                                Integer.class
+                        );
+                    } else {
+                        getter.addStatement("return $L.get$L($T.toString(index))", column, field.getOperation(), Integer.class);
+                    }
+                }
+            }
+            batch.addMethod(getter.build());
+
+            if (field.isRequired()) {
+                builderArguments.add(hasBuilderArguments ? ", get$L(index)" : "get$L(index)", camelCaseName);
+                hasBuilderArguments = true;
+            } else if (field.hasPresenceBit()) {
+                optionalSetters.beginControlFlow("if (has$L(index))", camelCaseName)
+                        .addStatement("builder.set$L($L[index])", camelCaseName, column)
+                        .endControlFlow();
+            } else {
+                optionalSetters.addStatement("builder.set$L(get$L(index))", camelCaseName, camelCaseName);
+            }
+        }
+
+        return batch
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .addStatement("this(16)")
+                        .build())
+                .addMethod(constructor.build())
+                .addMethod(bundleConstructor.build())
+                .addMethod(add.addStatement("size++").addStatement("return this").build())
+                .addMethod(MethodSpec.methodBuilder("size")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(TypeName.INT)
+                        .addStatement("return size")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("get")
+                        .addJavadoc("Creates the Result of the row. The getters of the batch read single values without it.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(resultClassName)
+                        .addParameter(TypeName.INT, "index")
+                        .addStatement("checkIndex(index)")
+                        .addStatement("Builder builder = new Builder($L)", builderArguments.build())
+                        .addCode(optionalSetters.build())
+                        .addStatement("return builder.build()")
+                        .build())
+                .addMethod(toBundle.addStatement("return bundle").build())
+                .addMethod(MethodSpec.methodBuilder("fromBundle")
+                        .addJavadoc("Reads a batch written by {@link #toBundle()}.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(batchClassName)
+                        .addParameter(bundleType, "bundle")
+                        .addStatement("return new Batch(bundle)")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("toIntent")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(intentType)
+                        .addStatement("$T intent = new $T()", intentType, intentType)
+                        .addStatement("intent.putExtras(toBundle())")
+                        .addStatement("return intent")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("with")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(batchClassName)
+                        .addParameter(intentType, "intent")
+                        .addStatement("return new Batch(intent.getExtras())")
+                        .build())
+                .addMethod(ensureCapacity.build())
+                .addMethod(MethodSpec.methodBuilder("checkIndex")
+                        .addModifiers(Modifier.PRIVATE)
+                        .addParameter(TypeName.INT, "index")
+                        .beginControlFlow("if (index < 0 || index >= size)")
+                        .addStatement("throw new $T(\"Row \" + index + \" of \" + size)", IndexOutOfBoundsException.class)
+                        .endControlFlow()
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,285 @@
+package com.rsinukov.activityresult.processor;
+
+import com.rsinukov.activityresult.annotations.ResultIndex;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypesException;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Collects the annotated activities of all rounds and generates the module index and the result
+ * dispatcher from them. The dispatcher routes request codes to the Result classes with a switch and
+ * activity classes with a map to a factory per activity, so routing needs neither reflection nor a
+ * scan of the activities.
+ */
+public class ResultDispatcherGenerator {
+
+    public static final String INDEX_PACKAGE = "com.rsinukov.activityresult.index";
+    private static final String INDEX_PREFIX = "ResultIndex_";
+
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    private static final class Entry {
+        final ClassName activity;
+        final ClassName result;
+        final int requestCode;
+
+        Entry(ClassName activity, ClassName result, int requestCode) {
+            this.activity = activity;
+            this.result = result;
+            this.requestCode = requestCode;
+        }
+    }
+
+    public void add(AnnotatedClass annotatedClass, ClassName resultClassName) {
+        add(annotatedClass.getElement(), resultClassName, annotatedClass.getRequestCode());
+    }
+
+    private void add(TypeElement activity, ClassName resultClassName, int requestCode) {
+        entries.put(
+                activity.getQualifiedName().toString(),
+                new Entry(ClassName.get(activity), resultClassName, requestCode)
+        );
+    }
+
+    /**
+     * Adds the activities listed by the index classes of other modules on the classpath.
+     *
+     * @param ownIndexName the simple name of the index of this module, which is skipped.
+     */
+    public void addIndexedActivities(Elements elementUtils, String ownIndexName) {
+        PackageElement indexPackage = elementUtils.getPackageElement(INDEX_PACKAGE);
+        if (indexPackage == null) {
+            return;
+        }
+        for (Element element : indexPackage.getEnclosedElements()) {
+            ResultIndex index = element.getAnnotation(ResultIndex.class);
+            if (index == null || element.getSimpleName().contentEquals(ownIndexName)) {
+                continue;
+            }
+            List<? extends TypeMirror> activities;
+            try {
+                index.activities();
+                throw new IllegalArgumentException("Could not read the activities of " + element);
+            } catch (MirroredTypesException mte) {
+                activities = mte.getTypeMirrors();
+            }
+            int[] requestCodes = index.requestCodes();
+            for (int i = 0; i < activities.size(); i++) {
+                TypeElement activity = (TypeElement) ((DeclaredType) activities.get(i)).asElement();
+                if (!entries.containsKey(activity.getQualifiedName().toString())) {
+                    add(activity, ResultProcessor.getResultClassName(activity), requestCodes[i]);
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return the qualified name of the index class of the module.
+     */
+    public static String getIndexClassName(String moduleName) {
+        return INDEX_PACKAGE + "." + getIndexSimpleName(moduleName);
+    }
+
+    public static String getIndexSimpleName(String moduleName) {
+        StringBuilder name = new StringBuilder(INDEX_PREFIX);
+        for (int i = 0; i < moduleName.length(); i++) {
+            char c = moduleName.charAt(i);
+            name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return name.toString();
+    }
+
+    /**
+     * Creates the index class that lists the activities of this module for dispatchers of other modules.
+     */
+    public TypeSpec createIndex(String moduleName) {
+        CodeBlock.Builder activities = CodeBlock.builder().add("{");
+        CodeBlock.Builder requestCodes = CodeBlock.builder().add("{");
+        boolean first = true;
+        for (Entry entry : entries.values()) {
+            activities.add(first ? "$T.class" : ", $T.class", entry.activity);
+            requestCodes.add(first ? "$L" : ", $L", entry.requestCode);
+            first = false;
+        }
+        return TypeSpec.classBuilder(getIndexSimpleName(moduleName))
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addAnnotation(AnnotationSpec.builder(ResultIndex.class)
+                        .addMember("activities", activities.add("}").build())
+                        .addMember("requestCodes", requestCodes.add("}").build())
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+                .build();
+    }
+
+    /**
+     * Creates the dispatcher with decode(int, Intent), decode(Class, Intent) and dispatch() that
+     * reports to typed callbacks.
+     */
+    public TypeSpec createDispatcher(ClassName dispatcherName, TypeName intentType) {
+        List<Entry> all = new ArrayList<Entry>(entries.values());
+        Map<Integer, Entry> byRequestCode = new TreeMap<Integer, Entry>();
+        for (Entry entry : all) {
+            if (entry.requestCode == ResultIndex.NO_REQUEST_CODE) {
+                continue;
+            }
+            Entry previous = byRequestCode.put(entry.requestCode, entry);
+            if (previous != null) {
+                throw new IllegalArgumentException(
+                        String.format("Request code %d is used by both %s and %s",
+                                entry.requestCode, previous.activity, entry.activity)
+                );
+            }
+        }
+        Map<Entry, String> callbackNames = createCallbackNames(all);
+
+        TypeName classType = ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class));
+        ClassName factoryName = dispatcherName.nestedClass("Factory");
+        TypeName factoriesType = ParameterizedTypeName.get(ClassName.get(Map.class), classType, factoryName);
+        CodeBlock.Builder factoriesInitializer = CodeBlock.builder();
+        for (Entry entry : all) {
+            TypeSpec factory = TypeSpec.anonymousClassBuilder("")
+                    .addSuperinterface(factoryName)
+                    .addMethod(MethodSpec.methodBuilder("with")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(Object.class)
+                            .addParameter(intentType, "data")
+                            .addStatement("return $T.with(data)", entry.result)
+                            .build())
+                    .build();
+            factoriesInitializer.addStatement("FACTORIES.put($T.class, $L)", entry.activity, factory);
+        }
+
+        ClassName callbacksName = dispatcherName.nestedClass("Callbacks");
+        TypeSpec.Builder callbacks = TypeSpec.classBuilder("Callbacks")
+                .addJavadoc("Receives decoded results. Override the methods of the results you handle.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT, Modifier.STATIC);
+        for (Entry entry : all) {
+            callbacks.addMethod(MethodSpec.methodBuilder(callbackNames.get(entry))
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(TypeName.INT, "resultCode")
+                    .addParameter(entry.result, "result")
+                    .build());
+        }
+
+        MethodSpec.Builder decodeByCode = MethodSpec.methodBuilder("decode")
+                .addJavadoc("@return the Result of the activity started with the request code, null for unknown codes or no data.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(Object.class)
+                .addParameter(TypeName.INT, "requestCode")
+                .addParameter(intentType, "data")
+                .beginControlFlow("if (data == null)")
+                .addStatement("return null")
+                .endControlFlow()
+                .beginControlFlow("switch (requestCode)");
+        MethodSpec.Builder dispatch = MethodSpec.methodBuilder("dispatch")
+                .addJavadoc("Decodes the result and passes it to the callback of the activity started with the request code.\n"
+                        + "\n@return false if no activity is started with the request code.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(TypeName.BOOLEAN)
+                .addParameter(TypeName.INT, "requestCode")
+                .addParameter(TypeName.INT, "resultCode")
+                .addParameter(intentType, "data")
+                .addParameter(callbacksName, "callbacks")
+                .beginControlFlow("switch (requestCode)");
+        for (Map.Entry<Integer, Entry> code : byRequestCode.entrySet()) {
+            Entry entry = code.getValue();
+            decodeByCode.addCode("case $L:\n", code.getKey())
+                    .addStatement("$>return $T.with(data)$<", entry.result);
+            dispatch.addCode("case $L:\n$>", code.getKey())
+                    .addStatement(
+                            "callbacks.$L(resultCode, data != null ? $T.with(data) : null)",
+                            callbackNames.get(entry),
+                            entry.result
+                    )
+                    .addStatement("return true$<");
+        }
+        decodeByCode.addCode("default:\n").addStatement("$>return null$<").endControlFlow();
+        dispatch.addCode("default:\n").addStatement("$>return false$<").endControlFlow();
+
+        MethodSpec.Builder decodeByActivity = MethodSpec.methodBuilder("decode")
+                .addJavadoc("@return the Result of the activity, null for activities without a Result class or no data.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(Object.class)
+                .addParameter(classType, "activity")
+                .addParameter(intentType, "data")
+                .addStatement("$T factory = FACTORIES.get(activity)", factoryName)
+                .addStatement("return factory != null && data != null ? factory.with(data) : null");
+
+        TypeSpec factory = TypeSpec.interfaceBuilder("Factory")
+                .addModifiers(Modifier.PRIVATE)
+                .addMethod(MethodSpec.methodBuilder("with")
+                        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                        .returns(Object.class)
+                        .addParameter(intentType, "data")
+                        .build())
+                .build();
+
+        return TypeSpec.classBuilder(dispatcherName.simpleName())
+                .addJavadoc("Routes activity results to the generated Result classes.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(factoriesType, "FACTORIES", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T<$T, $T>($L)", HashMap.class, classType, factoryName, Math.max(all.size() * 2, 1))
+                        .build())
+                .addStaticBlock(factoriesInitializer.build())
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+                .addMethod(decodeByCode.build())
+                .addMethod(decodeByActivity.build())
+                .addMethod(dispatch.build())
+                .addType(factory)
+                .addType(callbacks.build())
+                .build();
+    }
+
+    /**
+     * Names the callbacks after the activities, using the qualified name where simple names clash.
+     */
+    private static Map<Entry, String> createCallbackNames(List<Entry> all) {
+        Set<String> simpleNames = new HashSet<String>();
+        Set<String> clashing = new HashSet<String>();
+        for (Entry entry : all) {
+            if (!simpleNames.add(entry.activity.simpleName())) {
+                clashing.add(entry.activity.simpleName());
+            }
+        }
+        Map<Entry, String> names = new HashMap<Entry, String>();
+        for (Entry entry : all) {
+            String name = entry.activity.simpleName();
+            if (clashing.contains(name)) {
+                StringBuilder qualified = new StringBuilder();
+                for (String part : entry.activity.toString().split("\\.")) {
+                    qualified.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+                }
+                name = qualified.toString();
+            }
+            names.put(entry, "on" + name + "Result");
+        }
+        return names;
+    }
+}
@@ -2,22 +2,176 @@ package com.rsinukov.activityresult.processor;
 
 import com.rsinukov.activityresult.annotations.ActivityResult;
 import com.rsinukov.activityresult.annotations.ActivityResults;
+import com.rsinukov.activityresult.annotations.BatchResult;
+import com.rsinukov.activityresult.annotations.BundlerFor;
+import com.rsinukov.activityresult.annotations.LazyResult;
+import com.rsinukov.activityresult.annotations.RecyclableResult;
+import com.rsinukov.activityresult.annotations.RequestCode;
+import com.rsinukov.activityresult.annotations.ResultIndex;
+import com.rsinukov.activityresult.annotations.SparseResult;
+import com.rsinukov.activityresult.annotations.StatefulBundler;
 import com.squareup.javapoet.*;
 
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
-import javax.lang.model.util.Elements;
+import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class ResultProcessor extends AbstractProcessor {
+    /**
+     * Makes generated classes read and write extras through the typed Intent accessors instead of
+     * copying them through an intermediate Bundle. Fields without a typed Intent extra, like the ones
+     * with a custom bundler, are kept in one Bundle nested under {@link #DIRECT_BUNDLE_EXTRA}, so
+     * the sender and the receiver must both be generated with the option.
+     */
+    public static final String OPTION_DIRECT_INTENT = "activityresult.directIntent";
+
+    /**
+     * The extra of the nested Bundle in the direct Intent mode. ResultCodec uses the same key.
+     */
+    static final String DIRECT_BUNDLE_EXTRA = "activityresult.bundle";
+
+    /**
+     * The prefix of the long extras that mark which optional fields a sparse Result class wrote, 64
+     * fields per extra.
+     */
+    static final String SPARSE_MASK_EXTRA = "activityresult.sparseMask";
+
+    /**
+     * Generates field-by-field CustomBundlers for Serializable fields whose fields are all supported
+     * bundle types, instead of falling back to Java serialization.
+     */
+    public static final String OPTION_GENERATE_BUNDLERS = "activityresult.generateBundlers";
+
+    /**
+     * Set to false to build and render the Result classes of a round sequentially, or to the number
+     * of worker threads. By default up to 4 threads are used, one per available processor.
+     */
+    public static final String OPTION_PARALLEL = "activityresult.parallel";
+
+    /**
+     * Makes generated classes report decode and encode timings to the installed ResultMetrics.
+     * Encoded sizes are only estimated for the encodings sampled by ResultMetricsRegistry.
+     */
+    public static final String OPTION_METRICS = "activityresult.metrics";
+
+    /**
+     * Path of a JSON file the processor writes its per-round statistics to when processing is over.
+     */
+    public static final String OPTION_STATS_FILE = "activityresult.statsFile";
+
+    /**
+     * Binds fields without an explicit parcel() to the bundler registered for their type with
+     * {@link BundlerFor}. Makes the processor aggregating for Gradle incremental compilation.
+     */
+    public static final String OPTION_BUNDLER_REGISTRY = "activityresult.bundlerRegistry";
+
+    /**
+     * Qualified name of a result dispatcher to generate for the activities of this module and the
+     * indexed activities of its dependencies. Makes the processor aggregating. It is written in the
+     * last round, so javac warns that it is not processed.
+     */
+    public static final String OPTION_DISPATCHER = "activityresult.dispatcher";
+
+    /**
+     * Module name of an index to generate, which lets dispatchers of other modules route to the
+     * activities of this module. Makes the processor aggregating.
+     */
+    public static final String OPTION_INDEX = "activityresult.index";
+
+    /**
+     * Makes toIntent() of non-recyclable Result classes put the Result into the installed
+     * ResultHandoffCache and send only its token and the required fields. with(Intent)
+     * exchanges the token for the same instance. If the token is gone, because it expired, was
+     * evicted or the process died while the Intent was kept, with(Intent) decodes the required fields
+     * and the optional fields are lost: they read as absent. Without an installed cache, or if the
+     * cache refuses a Result that is too heavy, every field is sent.
+     */
+    public static final String OPTION_HANDOFF = "activityresult.handoff";
+
+    /**
+     * Makes Result classes also generate writeTo(ByteBuffer) and readFrom(ByteBuffer), a compact
+     * positional binary encoding for persisting results and local IPC.
+     */
+    public static final String OPTION_BYTE_BUFFER = "activityresult.byteBuffer";
+
+    /**
+     * Generates Result classes that describe their fields in a table run by the shared ResultCodec
+     * of the runtime artifact, instead of reading and writing every field inline. Classes that are
+     * lazy, sparse, recyclable, have offloaded fields or stateful bundlers, and all classes when
+     * {@link #OPTION_BYTE_BUFFER}, {@link #OPTION_HANDOFF} or {@link #OPTION_METRICS} is set, keep
+     * the inline code.
+     */
+    public static final String OPTION_COMPACT = "activityresult.compact";
+
+    /**
+     * Puts enum fields into the bundle by constant name instead of ordinal, so results written by
+     * one version of an app can be read by a version with reordered constants.
+     */
+    public static final String OPTION_ENUMS_BY_NAME = "activityresult.enumsByName";
+
+    private static final String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
+    private static final int MAX_THREADS = 4;
+
+    private static final String RESULT_SUFFIX = "Result";
+
+    /**
+     * Package of the runtime module. Its classes are only referenced by the generated code, the
+     * processor does not depend on the module.
+     */
+    static final String RUNTIME_PACKAGE = "com.rsinukov.activityresult.runtime";
+
+    static final ClassName CUSTOM_BUNDLER = ClassName.get("com.rsinukov.activityresult", "CustomBundler");
+
+    private static final ClassName MAPPED_RESULT_STORE = ClassName.get(RUNTIME_PACKAGE, "MappedResultStore");
+    private static final ClassName RESULT_HANDOFF_CACHE = ClassName.get(RUNTIME_PACKAGE, "ResultHandoffCache");
+    private static final ClassName BYTE_BUFFER_CODEC = ClassName.get(RUNTIME_PACKAGE, "ByteBufferCodec");
+    private static final ClassName RESULT_METRICS = ClassName.get(RUNTIME_PACKAGE, "ResultMetrics");
+    private static final ClassName RESULT_METRICS_REGISTRY = ClassName.get(RUNTIME_PACKAGE, "ResultMetricsRegistry");
+
+    /**
+     * MappedResultStore.TOKEN_SUFFIX, which follows the name of an offloaded field in the key of its token.
+     */
+    private static final String MAPPED_TOKEN_SUFFIX = "#mapped";
+
+    /**
+     * Operations with a binary encoding in ByteBufferCodec. Serializable is encoded too, other values
+     * go through a marshalled Bundle.
+     */
+    private static final Set<String> BYTE_BUFFER_CODEC_OPERATIONS = new HashSet<String>(
+            Arrays.asList("String", "StringArray", "BooleanArray", "ByteArray", "ShortArray", "CharArray", "IntArray",
+                    "LongArray", "FloatArray", "DoubleArray", "StringArrayList", "IntegerArrayList")
+    );
+
     private static final Map<String, String> ARGUMENT_TYPES = new HashMap<String, String>(20);
 
     static {
@@ -43,253 +197,2567 @@ public class ResultProcessor extends AbstractProcessor {
         ARGUMENT_TYPES.put("android.os.Parcelable", "Parcelable");
     }
 
-    private Messager messager;
+    private static final Set<String> OBJECT_FIELD_OPERATIONS = new HashSet<String>(
+            Arrays.asList("String", "CharSequence", "Bundle", "Parcelable")
+    );
+
+    private static final String[] ARRAY_LIST_TYPES = new String[]{
+            String.class.getName(), Integer.class.getName(), CharSequence.class.getName()
+    };
+    private static final String[] ARRAY_LIST_OPS =
+            new String[]{"StringArrayList", "IntegerArrayList", "CharSequenceArrayList"};
+
+    /**
+     * Built-in bundlers of the primitive collection types, which put them into the Bundle as
+     * primitive arrays. A bundler set with parcel() or registered with @BundlerFor takes precedence.
+     */
+    private static final Map<String, ClassName> PRIMITIVE_COLLECTION_BUNDLERS = new HashMap<String, ClassName>(10);
+
+    static {
+        ClassName bundlers = ClassName.get(RUNTIME_PACKAGE, "PrimitiveCollectionBundlers");
+        for (String list : new String[]{"IntList", "LongList", "FloatList", "DoubleList", "BooleanList"}) {
+            PRIMITIVE_COLLECTION_BUNDLERS.put(RUNTIME_PACKAGE + "." + list, bundlers.nestedClass(list + "Bundler"));
+        }
+        PRIMITIVE_COLLECTION_BUNDLERS.put("android.util.SparseIntArray", bundlers.nestedClass("SparseIntArrayBundler"));
+        PRIMITIVE_COLLECTION_BUNDLERS.put("android.util.SparseBooleanArray",
+                bundlers.nestedClass("SparseBooleanArrayBundler"));
+    }
+
+    private static final Map<String, String> INTENT_EXTRA_DEFAULTS = new HashMap<String, String>(10);
+
+    static {
+        INTENT_EXTRA_DEFAULTS.put("Int", "0");
+        INTENT_EXTRA_DEFAULTS.put("Long", "0L");
+        INTENT_EXTRA_DEFAULTS.put("Double", "0d");
+        INTENT_EXTRA_DEFAULTS.put("Short", "(short) 0");
+        INTENT_EXTRA_DEFAULTS.put("Float", "0f");
+        INTENT_EXTRA_DEFAULTS.put("Byte", "(byte) 0");
+        INTENT_EXTRA_DEFAULTS.put("Boolean", "false");
+        INTENT_EXTRA_DEFAULTS.put("Char", "(char) 0");
+    }
+
+    /**
+     * @return the default value of a primitive operation, null for other operations.
+     */
+    static String getPrimitiveDefault(String operation) {
+        return INTENT_EXTRA_DEFAULTS.get(operation);
+    }
+
+    private Messager messager;
+    private TypeCache typeCache;
+    private final ProcessingStats stats = new ProcessingStats();
+    private boolean directIntent;
+    private boolean byteBuffer;
+    private boolean handoff;
+    private boolean compact;
+    private boolean enumsByName;
+    private boolean generateBundlers;
+    private int threads;
+    private boolean metrics;
+    private String statsFile;
+    private boolean bundlerRegistryEnabled;
+    private BundlerRegistry bundlerRegistry;
+    private String dispatcherName;
+    private String indexName;
+    private final ResultDispatcherGenerator dispatcherGenerator = new ResultDispatcherGenerator();
+    private TypeName intentTypeName;
+    private TypeName bundleTypeName;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> supportTypes = new LinkedHashSet<String>();
+        supportTypes.add(ActivityResults.class.getCanonicalName());
+        supportTypes.add(ActivityResult.class.getCanonicalName());
+        supportTypes.add(BundlerFor.class.getCanonicalName());
+        supportTypes.add(RequestCode.class.getCanonicalName());
+        supportTypes.add(LazyResult.class.getCanonicalName());
+        supportTypes.add(SparseResult.class.getCanonicalName());
+        supportTypes.add(RecyclableResult.class.getCanonicalName());
+        supportTypes.add(BatchResult.class.getCanonicalName());
+        // claims the index written by this processor in a later round
+        supportTypes.add(ResultIndex.class.getCanonicalName());
+        return supportTypes;
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> options = new LinkedHashSet<String>();
+        options.add(OPTION_DIRECT_INTENT);
+        options.add(OPTION_GENERATE_BUNDLERS);
+        options.add(OPTION_PARALLEL);
+        options.add(OPTION_METRICS);
+        options.add(OPTION_STATS_FILE);
+        options.add(OPTION_BUNDLER_REGISTRY);
+        options.add(OPTION_DISPATCHER);
+        options.add(OPTION_INDEX);
+        options.add(OPTION_BYTE_BUFFER);
+        options.add(OPTION_HANDOFF);
+        options.add(OPTION_COMPACT);
+        options.add(OPTION_ENUMS_BY_NAME);
+        // the registry, the dispatcher and the index depend on elements declared in other files
+        boolean isAggregating = bundlerRegistryEnabled || dispatcherName != null || indexName != null;
+        options.add(isAggregating ? GRADLE_AGGREGATING : GRADLE_ISOLATING);
+        return options;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        messager = processingEnv.getMessager();
+        typeCache = new TypeCache(processingEnv.getElementUtils(), processingEnv.getTypeUtils());
+        directIntent = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_DIRECT_INTENT));
+        byteBuffer = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_BYTE_BUFFER));
+        handoff = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_HANDOFF));
+        compact = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_COMPACT));
+        enumsByName = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_ENUMS_BY_NAME));
+        generateBundlers = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_GENERATE_BUNDLERS));
+        threads = getThreadCount(processingEnv.getOptions().get(OPTION_PARALLEL));
+        metrics = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_METRICS));
+        statsFile = processingEnv.getOptions().get(OPTION_STATS_FILE);
+        bundlerRegistryEnabled = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_BUNDLER_REGISTRY));
+        bundlerRegistry = new BundlerRegistry(processingEnv.getTypeUtils(), typeCache, messager);
+        dispatcherName = processingEnv.getOptions().get(OPTION_DISPATCHER);
+        indexName = processingEnv.getOptions().get(OPTION_INDEX);
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Filer filer = processingEnv.getFiler();
+
+        stats.onRound();
+        try {
+            long discoveryStart = System.nanoTime();
+            List<Element> annotatedElements = new ArrayList<Element>();
+            annotatedElements.addAll(roundEnv.getElementsAnnotatedWith(ActivityResult.class));
+            annotatedElements.addAll(roundEnv.getElementsAnnotatedWith(ActivityResults.class));
+            indexBundlers(roundEnv.getElementsAnnotatedWith(BundlerFor.class));
+            stats.addTime(ProcessingStats.PHASE_DISCOVERY, discoveryStart);
+
+            long modelStart = System.nanoTime();
+            List<AnnotatedClass> annotatedClasses = new ArrayList<AnnotatedClass>();
+            for (Element element : annotatedElements) {
+                TypeElement activityElement = (TypeElement) element;
+                annotatedClasses.add(new AnnotatedClass(activityElement));
+            }
+            stats.addTime(ProcessingStats.PHASE_MODEL, modelStart);
+
+            // Elements, Types and Messager are not thread safe, everything that needs them runs here
+            if (intentTypeName == null) {
+                intentTypeName = TypeName.get(typeCache.getType("android.content.Intent"));
+                bundleTypeName = TypeName.get(typeCache.getType("android.os.Bundle"));
+            }
+            linkNestedResults(annotatedClasses);
+            for (AnnotatedClass annotatedClass : annotatedClasses) {
+                dispatcherGenerator.add(annotatedClass, getResultClassName(annotatedClass));
+            }
+
+            for (AnnotatedClass annotatedClass : annotatedClasses) {
+                resolveFields(annotatedClass);
+            }
+            long emissionStart = System.nanoTime();
+            List<String> sources = generateSources(annotatedClasses);
+            stats.addTime(ProcessingStats.PHASE_EMISSION, emissionStart);
+
+            for (int i = 0; i < annotatedClasses.size(); i++) {
+                AnnotatedClass annotatedClass = annotatedClasses.get(i);
+                long writeStart = System.nanoTime();
+                writeSourceFile(filer, getResultClassName(annotatedClass).toString(), sources.get(i),
+                        annotatedClass.getOriginatingElements());
+                stats.addTime(ProcessingStats.PHASE_WRITE, writeStart);
+                stats.onGenerated(sources.get(i).getBytes("UTF-8").length);
+            }
+
+            // only the last round knows every activity, including those of sources generated by other processors
+            if (roundEnv.processingOver()) {
+                writeDispatcherSources(filer);
+            }
+            if (statsFile != null && roundEnv.processingOver()) {
+                writeStatsFile();
+            }
+        } catch (IllegalArgumentException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+        } catch (Exception e) {
+            StringBuilder stackTrace = new StringBuilder();
+            for (StackTraceElement element : e.getStackTrace()) {
+                stackTrace.append(element.toString()).append("\n");
+            }
+            messager.printMessage(Diagnostic.Kind.ERROR, e.getMessage() + " \n" + stackTrace);
+        }
+
+        return true;
+    }
+
+    /**
+     * Binds the fields whose type is the Result class of another activity to a bundler that
+     * flattens the nested result into the bundle of the outer one. The activity may be of the round
+     * or of an earlier round or compilation, whose Result class is already a type.
+     *
+     * @throws IllegalArgumentException if the nested Result classes form a cycle.
+     */
+    private void linkNestedResults(List<AnnotatedClass> annotatedClasses) {
+        Map<String, AnnotatedClass> resultClasses = new HashMap<String, AnnotatedClass>();
+        for (AnnotatedClass annotatedClass : annotatedClasses) {
+            resultClasses.put(getResultClassName(annotatedClass).toString(), annotatedClass);
+        }
+
+        FlatResultGenerator flatResultGenerator = new FlatResultGenerator(intentTypeName, bundleTypeName);
+        Map<AnnotatedClass, List<AnnotatedClass>> nestedClasses = new HashMap<AnnotatedClass, List<AnnotatedClass>>();
+        for (AnnotatedClass annotatedClass : annotatedClasses) {
+            ClassName resultClassName = getResultClassName(annotatedClass);
+            Map<String, String> bundlerNames = new HashMap<String, String>();
+            Set<String> usedNames = new HashSet<String>();
+            List<AnnotatedClass> nested = new ArrayList<AnnotatedClass>();
+            for (FieldToGenerate field : createResultClassFields(annotatedClass)) {
+                if (field.hasCustomBundler()) {
+                    continue;
+                }
+                AnnotatedClass nestedClass = findNestedResult(field, resultClassName.packageName(), resultClasses);
+                ClassName nestedResultClassName;
+                boolean isFlat;
+                if (nestedClass != null) {
+                    nestedResultClassName = getResultClassName(nestedClass);
+                    isFlat = true;
+                    nested.add(nestedClass);
+                } else {
+                    TypeElement compiledResult = findCompiledResult(field);
+                    if (compiledResult == null) {
+                        continue;
+                    }
+                    nestedResultClassName = ClassName.get(compiledResult);
+                    isFlat = hasFlatMethods(compiledResult, field);
+                }
+
+                String bundlerName = bundlerNames.get(nestedResultClassName.toString());
+                if (bundlerName == null) {
+                    String simpleName = nestedResultClassName.simpleName() + (isFlat ? "FlatBundler" : "NestedBundler");
+                    bundlerName = simpleName;
+                    for (int i = 2; !usedNames.add(bundlerName); i++) {
+                        bundlerName = simpleName + i;
+                    }
+                    annotatedClass.addGeneratedBundler(isFlat
+                            ? flatResultGenerator.createFlatBundler(bundlerName, nestedResultClassName)
+                            : flatResultGenerator.createNestedBundler(bundlerName, nestedResultClassName)
+                    );
+                    bundlerNames.put(nestedResultClassName.toString(), bundlerName);
+                }
+                field.setNestedResult(nestedResultClassName, resultClassName.nestedClass(bundlerName));
+            }
+            nestedClasses.put(annotatedClass, nested);
+        }
+
+        Set<AnnotatedClass> checked = new HashSet<AnnotatedClass>();
+        for (AnnotatedClass annotatedClass : annotatedClasses) {
+            checkNestingCycle(annotatedClass, nestedClasses, new ArrayList<AnnotatedClass>(), checked);
+        }
+    }
+
+    /**
+     * @return the activity of the round whose Result class is the type of the field, null if there
+     * is none. Result classes of the round are not generated yet, so their type is matched by the
+     * name written in the annotation.
+     */
+    private static AnnotatedClass findNestedResult(
+            FieldToGenerate field,
+            String packageName,
+            Map<String, AnnotatedClass> resultClasses
+    ) {
+        TypeMirror type = field.getType();
+        if (type == null || type.getKind() != TypeKind.DECLARED && type.getKind() != TypeKind.ERROR) {
+            return null;
+        }
+        AnnotatedClass nestedClass = resultClasses.get(field.getTypeString());
+        if (nestedClass != null || type.getKind() != TypeKind.ERROR) {
+            return nestedClass;
+        }
+        // javac prints unresolved types with an unknown owner, like <any?>.FooActivityResult
+        String typeString = field.getTypeString().replaceFirst("^<[^>]*>\\.", "");
+        nestedClass = resultClasses.get(typeString);
+        if (nestedClass == null) {
+            nestedClass = resultClasses.get(packageName + "." + typeString);
+        }
+        if (nestedClass != null) {
+            return nestedClass;
+        }
+        for (Map.Entry<String, AnnotatedClass> entry : resultClasses.entrySet()) {
+            if (entry.getKey().endsWith("." + typeString)) {
+                if (nestedClass != null) {
+                    throw new IllegalArgumentException(
+                            String.format(
+                                    "%s of @%s matches several Result classes, use its qualified name in @%s",
+                                    typeString,
+                                    field.getName(),
+                                    field.getActivityElement().getQualifiedName()
+                            )
+                    );
+                }
+                nestedClass = entry.getValue();
+            }
+        }
+        return nestedClass;
+    }
+
+    /**
+     * @return the Result class that is the type of the field if it was generated in an earlier round
+     * or compilation, null if the type is not one. It is recognized by its activity, whose
+     * annotations are kept in the class file.
+     */
+    private TypeElement findCompiledResult(FieldToGenerate field) {
+        TypeMirror type = field.getType();
+        if (type == null || type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+        String typeName = typeElement.getQualifiedName().toString();
+        if (!typeName.endsWith(RESULT_SUFFIX)) {
+            return null;
+        }
+        TypeElement activityElement = processingEnv.getElementUtils()
+                .getTypeElement(typeName.substring(0, typeName.length() - RESULT_SUFFIX.length()));
+        if (activityElement == null
+                || activityElement.getAnnotation(ActivityResults.class) == null
+                && activityElement.getAnnotation(ActivityResult.class) == null) {
+            return null;
+        }
+        return typeElement;
+    }
+
+    /**
+     * @return true if the compiled Result class has writeFlat() and readFlat(), false if it was
+     * generated before them and is nested as a Bundle through with(Intent) and toIntent().
+     * @throws IllegalArgumentException if the class has neither.
+     */
+    private static boolean hasFlatMethods(TypeElement resultElement, FieldToGenerate field) {
+        if (hasMethod(resultElement, "writeFlat", false, 2) && hasMethod(resultElement, "readFlat", true, 2)) {
+            return true;
+        }
+        if (hasMethod(resultElement, "toIntent", false, 0) && hasMethod(resultElement, "with", true, 1)) {
+            return false;
+        }
+        throw new IllegalArgumentException(
+                String.format(
+                        "%s of @%s in @%s has neither readFlat(String, Bundle) nor with(Intent)",
+                        resultElement.getSimpleName(),
+                        field.getName(),
+                        field.getActivityElement().getQualifiedName()
+                )
+        );
+    }
+
+    private static boolean hasMethod(TypeElement typeElement, String name, boolean isStatic, int parameterCount) {
+        for (ExecutableElement method : ElementFilter.methodsIn(typeElement.getEnclosedElements())) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (method.getSimpleName().contentEquals(name)
+                    && modifiers.contains(Modifier.PUBLIC)
+                    && modifiers.contains(Modifier.STATIC) == isStatic
+                    && method.getParameters().size() == parameterCount) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void checkNestingCycle(
+            AnnotatedClass annotatedClass,
+            Map<AnnotatedClass, List<AnnotatedClass>> nestedClasses,
+            List<AnnotatedClass> path,
+            Set<AnnotatedClass> checked
+    ) {
+        int index = path.indexOf(annotatedClass);
+        if (index >= 0) {
+            StringBuilder cycle = new StringBuilder();
+            for (int i = index; i < path.size(); i++) {
+                cycle.append(getResultClassName(path.get(i)).simpleName()).append(" -> ");
+            }
+            cycle.append(getResultClassName(annotatedClass).simpleName());
+            throw new IllegalArgumentException(
+                    String.format("Nested Result classes must not form a cycle: %s", cycle)
+            );
+        }
+        if (!checked.add(annotatedClass)) {
+            return;
+        }
+        path.add(annotatedClass);
+        for (AnnotatedClass nestedClass : nestedClasses.get(annotatedClass)) {
+            checkNestingCycle(nestedClass, nestedClasses, path, checked);
+        }
+        path.remove(path.size() - 1);
+    }
+
+    /**
+     * Adds the bundlers of the round to the registry, if it is enabled.
+     */
+    private void indexBundlers(Set<? extends Element> bundlerElements) {
+        if (bundlerRegistryEnabled) {
+            bundlerRegistry.index(bundlerElements);
+            return;
+        }
+        for (Element element : bundlerElements) {
+            messager.printMessage(
+                    Diagnostic.Kind.WARNING,
+                    String.format("@%s is ignored unless the %s option is set",
+                            BundlerFor.class.getSimpleName(), OPTION_BUNDLER_REGISTRY),
+                    element
+            );
+        }
+    }
+
+    /**
+     * Resolves operations, type names and generated bundlers of the fields, reporting unsupported
+     * types. Code generation afterwards does not touch the compiler anymore.
+     */
+    private void resolveFields(AnnotatedClass annotatedClass) {
+        ClassName resultClassName = getResultClassName(annotatedClass);
+        List<FieldToGenerate> allFields = createResultClassFields(annotatedClass);
+        for (FieldToGenerate field : allFields) {
+            TypeElement bundler = field.hasCustomBundler() ? null : bundlerRegistry.getBundler(field.getType());
+            if (bundler != null) {
+                field.setRegisteredBundler(
+                        ClassName.get(bundler),
+                        bundler.getAnnotation(StatefulBundler.class) != null,
+                        !bundler.getTypeParameters().isEmpty()
+                );
+                annotatedClass.addRegisteredBundler(bundler);
+            } else if (!field.hasCustomBundler() && PRIMITIVE_COLLECTION_BUNDLERS.containsKey(field.getTypeString())) {
+                field.setRegisteredBundler(PRIMITIVE_COLLECTION_BUNDLERS.get(field.getTypeString()), false, false);
+            }
+        }
+        createEnumBundlers(resultClassName, allFields, annotatedClass);
+        if (generateBundlers) {
+            createGeneratedBundlers(resultClassName.packageName(), resultClassName, allFields, annotatedClass);
+        }
+
+        int presenceBits = 0;
+        for (FieldToGenerate field : allFields) {
+            if (field.getNestedResultClassName() != null) {
+                field.setTypeName(field.getNestedResultClassName());
+            } else {
+                field.setTypeName(TypeName.get(field.getType()));
+            }
+            if (field.hasCustomBundler()) {
+                checkOffload(field, annotatedClass, false);
+                stats.onOperation(ProcessingStats.OPERATION_CUSTOM_BUNDLER);
+                continue;
+            }
+            String operation = getOperation(field);
+            if (operation == null) {
+                throw new IllegalArgumentException(
+                        String.format("Can not put @%s to bundle in @%s", field.getName(), annotatedClass.getName())
+                );
+            }
+            checkOffload(field, annotatedClass, !INTENT_EXTRA_DEFAULTS.containsKey(operation));
+            field.setOperation(operation);
+            stats.onOperation(operation);
+            if (!field.isRequired() && INTENT_EXTRA_DEFAULTS.containsKey(operation)) {
+                field.setPresenceBit(presenceBits++);
+            }
+        }
+    }
+
+    private static void checkOffload(FieldToGenerate field, AnnotatedClass annotatedClass, boolean isSupported) {
+        if (field.isOffload() && !isSupported) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "offload() is only supported for object fields without a custom bundler. Error in @%s in @%s",
+                            field.getName(),
+                            annotatedClass.getName()
+                    )
+            );
+        }
+    }
+
+    /**
+     * @return the number of code generation threads for the value of {@link #OPTION_PARALLEL}.
+     */
+    private static int getThreadCount(String option) {
+        if ("false".equals(option)) {
+            return 1;
+        }
+        if (option != null && option.matches("[1-9][0-9]{0,2}")) {
+            return Integer.parseInt(option);
+        }
+        return Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS);
+    }
+
+    /**
+     * Renders the Result classes, on a bounded thread pool unless {@link #OPTION_PARALLEL} is false.
+     *
+     * @return the sources in the order of the classes.
+     */
+    private List<String> generateSources(List<AnnotatedClass> annotatedClasses) throws InterruptedException {
+        List<String> sources = new ArrayList<String>(annotatedClasses.size());
+        if (threads < 2 || annotatedClasses.size() < 2) {
+            for (AnnotatedClass annotatedClass : annotatedClasses) {
+                sources.add(generateResultClass(annotatedClass));
+            }
+            return sources;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "activityresult-codegen-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>(annotatedClasses.size());
+            for (final AnnotatedClass annotatedClass : annotatedClasses) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return generateResultClass(annotatedClass);
+                    }
+                }));
+            }
+            for (Future<String> future : futures) {
+                sources.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return sources;
+    }
+
+    private static ClassName getResultClassName(AnnotatedClass annotatedClass) {
+        return annotatedClass.getResultClassName();
+    }
+
+    static ClassName getResultClassName(TypeElement activityElement) {
+        String annotatedClassName = activityElement.getQualifiedName().toString();
+        String packageName = annotatedClassName.substring(0, annotatedClassName.lastIndexOf("."));
+        return ClassName.get(packageName, activityElement.getSimpleName() + RESULT_SUFFIX);
+    }
+
+    /**
+     * Builds and renders the Result class. Must only use the resolved fields, since it may run on
+     * any thread.
+     */
+    private String generateResultClass(AnnotatedClass annotatedClass) {
+        long emissionStart = System.nanoTime();
+        String source = createResultFile(annotatedClass).toString();
+        stats.addThreadTime(ProcessingStats.PHASE_EMISSION, emissionStart);
+        return source;
+    }
+
+    private JavaFile createResultFile(AnnotatedClass annotatedClass) {
+        ClassName resultClassName = getResultClassName(annotatedClass);
+        String packageName = resultClassName.packageName();
+        String resultClassSimpleName = resultClassName.simpleName();
+        String intentSimpleClassName = "Intent";
+
+        List<MethodSpec> methods = new ArrayList<MethodSpec>();
+        List<FieldSpec> fields = new ArrayList<FieldSpec>();
+        List<TypeSpec> types = new ArrayList<TypeSpec>(annotatedClass.getGeneratedBundlers());
+
+        List<FieldToGenerate> allFields = createResultClassFields(annotatedClass);
+        Map<String, String> bundlerHolders = createBundlerHolders(allFields, types);
+        if (annotatedClass.isBatched()) {
+            types.add(new ResultBatchGenerator(intentTypeName, bundleTypeName)
+                    .createBatch(annotatedClass, resultClassName, allFields, bundlerHolders));
+        }
+
+        if (isCompact(annotatedClass, allFields)) {
+            TypeSpec.Builder compactClassBuilder = new CompactResultGenerator(intentTypeName, bundleTypeName)
+                    .createResultClass(annotatedClass, resultClassName, allFields, directIntent)
+                    // the descriptors hold their own bundler instances, the holders are for the flat methods and the Batch
+                    .addTypes(types);
+            addFlatMethods(resultClassName, compactClassBuilder, allFields, bundlerHolders);
+            return createResultFile(annotatedClass, packageName, compactClassBuilder, allFields);
+        }
+
+        MethodSpec constructor = createResultClassConstructor();
+
+        if (annotatedClass.isLazy()) {
+            createResultClassWithIntentLazy(
+                    annotatedClass,
+                    resultClassSimpleName,
+                    resultClassName,
+                    methods,
+                    fields,
+                    allFields,
+                    intentTypeName,
+                    bundleTypeName
+            );
+        } else if (hasDirectRead(annotatedClass)) {
+            createResultClassWithIntentDirect(
+                    annotatedClass,
+                    resultClassSimpleName,
+                    resultClassName,
+                    methods,
+                    allFields,
+                    bundlerHolders,
+                    intentTypeName,
+                    bundleTypeName
+            );
+        } else {
+            createResultClassWithIntent(
+                    annotatedClass,
+                    resultClassSimpleName,
+                    resultClassName,
+                    methods,
+                    allFields,
+                    bundlerHolders,
+                    intentTypeName,
+                    bundleTypeName
+            );
+        }
+        createResultClassGetters(annotatedClass, methods, fields, allFields, bundlerHolders);
+        if (annotatedClass.isRecyclable()) {
+            createRecyclingMembers(
+                    annotatedClass,
+                    resultClassSimpleName,
+                    resultClassName,
+                    methods,
+                    fields,
+                    allFields,
+                    intentTypeName
+            );
+        }
+        if (directIntent) {
+            createResultClassWriteTo(annotatedClass, methods, allFields, bundlerHolders, intentTypeName, bundleTypeName);
+            createResultClassToIntentDirect(methods, intentTypeName, intentSimpleClassName);
+        } else {
+            createResultClassToIntent(
+                    annotatedClass,
+                    methods,
+                    allFields,
+                    bundlerHolders,
+                    intentTypeName,
+                    intentSimpleClassName,
+                    bundleTypeName
+            );
+        }
+
+        if (hasOffloadedFields(allFields) || isHandoff(annotatedClass) || metrics) {
+            createResultClassEstimatedSize(annotatedClass, methods, allFields);
+        }
+        if (byteBuffer) {
+            createResultClassByteBufferCodec(
+                    annotatedClass,
+                    resultClassSimpleName,
+                    resultClassName,
+                    methods,
+                    allFields,
+                    bundlerHolders
+            );
+        }
+
+        TypeSpec.Builder resultBuilder =
+                createBuilderInnerClass(annotatedClass, resultClassSimpleName, resultClassName, allFields);
+
+        //create result class
+        TypeSpec.Builder resultClassBuilder = TypeSpec.classBuilder(resultClassSimpleName)
+                .addModifiers(Modifier.PUBLIC)
+                .addMethod(constructor)
+                .addMethods(methods)
+                .addFields(fields)
+                .addTypes(types)
+                .addType(resultBuilder.build());
+        addFlatMethods(resultClassName, resultClassBuilder, allFields, bundlerHolders);
+        return createResultFile(annotatedClass, packageName, resultClassBuilder, allFields);
+    }
+
+    /**
+     * Adds writeFlat() and readFlat(), which nest the Result class in another one. Every class has
+     * them, since the outer class may be compiled separately.
+     */
+    private void addFlatMethods(
+            ClassName resultClassName,
+            TypeSpec.Builder resultClassBuilder,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders
+    ) {
+        FlatResultGenerator flatResultGenerator = new FlatResultGenerator(intentTypeName, bundleTypeName);
+        resultClassBuilder
+                .addMethod(flatResultGenerator.createWriteFlat(allFields, bundlerHolders))
+                .addMethod(flatResultGenerator.createReadFlat(resultClassName, allFields, bundlerHolders));
+    }
+
+    /**
+     * @return true if the Result class is generated in the compact mode of {@link #OPTION_COMPACT}.
+     */
+    private boolean isCompact(AnnotatedClass annotatedClass, List<FieldToGenerate> allFields) {
+        // these modes access the fields of the inline Result classes
+        if (!compact || byteBuffer || handoff || metrics) {
+            return false;
+        }
+        return CompactResultGenerator.isSupported(annotatedClass, allFields);
+    }
+
+    /**
+     * The originating elements are not added to the TypeSpec, since this may run on a worker thread.
+     * The compiler thread passes them to the Filer when it writes the file.
+     */
+    private JavaFile createResultFile(
+            AnnotatedClass annotatedClass,
+            String packageName,
+            TypeSpec.Builder resultClassBuilder,
+            List<FieldToGenerate> allFields
+    ) {
+        stats.onClass(allFields.size());
+        return JavaFile.builder(packageName, resultClassBuilder.build()).build();
+    }
+
+    private static void writeSourceFile(
+            Filer filer,
+            String className,
+            String source,
+            List<? extends Element> originatingElements
+    ) throws IOException {
+        JavaFileObject sourceFile = filer.createSourceFile(
+                className,
+                originatingElements.toArray(new Element[originatingElements.size()])
+        );
+        Writer writer = sourceFile.openWriter();
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the index and the dispatcher in the last round, once no round can add activities. javac
+     * compiles sources of the last round without processing them and warns that it does so.
+     */
+    private void writeDispatcherSources(Filer filer) throws IOException {
+        List<Element> noOriginatingElements = Collections.emptyList();
+        if (indexName != null && !dispatcherGenerator.isEmpty()) {
+            TypeSpec index = dispatcherGenerator.createIndex(indexName);
+            writeSourceFile(
+                    filer,
+                    ResultDispatcherGenerator.getIndexClassName(indexName),
+                    JavaFile.builder(ResultDispatcherGenerator.INDEX_PACKAGE, index).build().toString(),
+                    noOriginatingElements
+            );
+        }
+        if (dispatcherName != null) {
+            dispatcherGenerator.addIndexedActivities(
+                    processingEnv.getElementUtils(),
+                    indexName != null ? ResultDispatcherGenerator.getIndexSimpleName(indexName) : ""
+            );
+            ClassName dispatcherClassName = ClassName.bestGuess(dispatcherName);
+            if (intentTypeName == null) {
+                intentTypeName = TypeName.get(typeCache.getType("android.content.Intent"));
+            }
+            TypeSpec dispatcher = dispatcherGenerator.createDispatcher(dispatcherClassName, intentTypeName);
+            writeSourceFile(
+                    filer,
+                    dispatcherName,
+                    JavaFile.builder(dispatcherClassName.packageName(), dispatcher).build().toString(),
+                    noOriginatingElements
+            );
+        }
+    }
+
+    /**
+     * Writes the statistics to {@link #OPTION_STATS_FILE}. Failing to do so does not fail the build.
+     */
+    private void writeStatsFile() {
+        File file = new File(statsFile);
+        try {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can not create directory " + directory);
+            }
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                writer.write(stats.toJson());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            messager.printMessage(
+                    Diagnostic.Kind.WARNING,
+                    String.format("Can not write processor statistics to %s: %s", file, e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * @return what the processor did so far, for the processor benchmarks.
+     */
+    ProcessingStats getStats() {
+        return stats;
+    }
+
+    private List<FieldToGenerate> createResultClassFields(AnnotatedClass annotatedClass) {
+        List<FieldToGenerate> allFields = new ArrayList<FieldToGenerate>(annotatedClass.getOptionalFields());
+        allFields.addAll(annotatedClass.getRequiredFields());
+        return allFields;
+    }
+
+    private MethodSpec createResultClassConstructor() {
+        return MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+    }
+
+    /**
+     * Replaces the Serializable fallback with a generated CustomBundler for every field whose type
+     * can be written field by field. Types that can not be analyzed stay on Serializable.
+     */
+    private void createGeneratedBundlers(
+            String packageName,
+            ClassName resultClassName,
+            List<FieldToGenerate> allFields,
+            AnnotatedClass annotatedClass
+    ) {
+        Map<String, String> bundlerNames = new HashMap<String, String>();
+        Set<String> usedNames = new HashSet<String>();
+        for (FieldToGenerate field : allFields) {
+            if (field.hasCustomBundler() || field.isOffload() || !"Serializable".equals(getCachedOperation(field))) {
+                continue;
+            }
+
+            String typeString = field.getTypeString();
+            String bundlerName = bundlerNames.get(typeString);
+            if (bundlerName == null && !bundlerNames.containsKey(typeString)) {
+                List<VariableElement> typeFields = getBundleableFields(field.getType(), packageName);
+                if (typeFields != null) {
+                    TypeElement typeElement = (TypeElement) ((DeclaredType) field.getType()).asElement();
+                    bundlerName = typeElement.getSimpleName() + "Bundler";
+                    for (int i = 2; !usedNames.add(bundlerName); i++) {
+                        bundlerName = typeElement.getSimpleName() + "Bundler" + i;
+                    }
+                    annotatedClass.addGeneratedBundler(
+                            createGeneratedBundler(bundlerName, field.getType(), typeFields)
+                    );
+                }
+                bundlerNames.put(typeString, bundlerName);
+            }
+
+            if (bundlerName != null) {
+                field.setGeneratedBundler(resultClassName.nestedClass(bundlerName));
+            }
+        }
+    }
+
+    /**
+     * Binds enum and enum array fields to a generated CustomBundler that puts ordinals, or names
+     * with {@link #OPTION_ENUMS_BY_NAME}, instead of serializing the constants. Offloaded fields
+     * stay on Serializable.
+     */
+    private void createEnumBundlers(
+            ClassName resultClassName,
+            List<FieldToGenerate> allFields,
+            AnnotatedClass annotatedClass
+    ) {
+        Map<String, String> bundlerNames = new HashMap<String, String>();
+        Set<String> usedNames = new HashSet<String>();
+        for (FieldToGenerate field : allFields) {
+            TypeMirror type = field.getType();
+            boolean isArray = type.getKind() == TypeKind.ARRAY;
+            TypeMirror enumType = isArray ? ((ArrayType) type).getComponentType() : type;
+            if (field.hasCustomBundler() || field.isOffload() || !isEnum(enumType)) {
+                continue;
+            }
+
+            String typeString = field.getTypeString();
+            String bundlerName = bundlerNames.get(typeString);
+            if (bundlerName == null) {
+                String simpleName = ((DeclaredType) enumType).asElement().getSimpleName()
+                        + (isArray ? "ArrayEnumBundler" : "EnumBundler");
+                bundlerName = simpleName;
+                for (int i = 2; !usedNames.add(bundlerName); i++) {
+                    bundlerName = simpleName + i;
+                }
+                annotatedClass.addGeneratedBundler(createEnumBundler(bundlerName, enumType, isArray));
+                bundlerNames.put(typeString, bundlerName);
+            }
+            field.setGeneratedBundler(resultClassName.nestedClass(bundlerName));
+        }
+    }
+
+    private static boolean isEnum(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    /**
+     * Null constants are put as ordinal -1 or a null name. Unknown ordinals and names are read as
+     * null.
+     */
+    private TypeSpec createEnumBundler(String bundlerName, TypeMirror enumType, boolean isArray) {
+        ClassName bundleClassName = ClassName.get("android.os", "Bundle");
+        TypeName enumTypeName = TypeName.get(enumType);
+        TypeName valueType = isArray ? ArrayTypeName.of(enumTypeName) : enumTypeName;
+
+        MethodSpec.Builder put = MethodSpec.methodBuilder("put")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "key")
+                .addParameter(valueType, "value")
+                .addParameter(bundleClassName, "bundle");
+
+        TypeVariableName t = TypeVariableName.get("T");
+        MethodSpec.Builder get = MethodSpec.methodBuilder("get")
+                .addAnnotation(Override.class)
+                .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                        .addMember("value", "$S", "unchecked")
+                        .build())
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(t)
+                .returns(t)
+                .addParameter(String.class, "key")
+                .addParameter(bundleClassName, "bundle");
+
+        if (!isArray && !enumsByName) {
+            put.addStatement("bundle.putInt(key, value != null ? value.ordinal() : -1)");
+            get.addStatement("return (T) valueOf(bundle.getInt(key, -1))");
+        } else if (!isArray) {
+            put.addStatement("bundle.putString(key, value != null ? value.name() : null)");
+            get.addStatement("return (T) valueOf(bundle.getString(key))");
+        } else {
+            String encodedType = enumsByName ? "String" : "int";
+            put.beginControlFlow("if (value == null)")
+                    .addStatement("bundle.put$LArray(key, null)", enumsByName ? "String" : "Int")
+                    .addStatement("return")
+                    .endControlFlow()
+                    .addStatement("$L[] encoded = new $L[value.length]", encodedType, encodedType)
+                    .beginControlFlow("for (int i = 0; i < value.length; i++)");
+            if (enumsByName) {
+                put.addStatement("encoded[i] = value[i] != null ? value[i].name() : null");
+            } else {
+                put.addStatement("encoded[i] = value[i] != null ? value[i].ordinal() : -1");
+            }
+            put.endControlFlow()
+                    .addStatement("bundle.put$LArray(key, encoded)", enumsByName ? "String" : "Int");
+
+            get.addStatement("$L[] encoded = bundle.get$LArray(key)", encodedType, enumsByName ? "String" : "Int")
+                    .beginControlFlow("if (encoded == null)")
+                    .addStatement("return null")
+                    .endControlFlow()
+                    .addStatement("$T[] value = new $T[encoded.length]", enumTypeName, enumTypeName)
+                    .beginControlFlow("for (int i = 0; i < encoded.length; i++)")
+                    .addStatement("value[i] = valueOf(encoded[i])")
+                    .endControlFlow()
+                    .addStatement("return (T) value");
+        }
+
+        MethodSpec.Builder valueOf = MethodSpec.methodBuilder("valueOf")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(enumTypeName);
+        if (enumsByName) {
+            valueOf.addParameter(String.class, "name")
+                    .beginControlFlow("if (name != null)")
+                    .beginControlFlow("for ($T constant : VALUES)", enumTypeName)
+                    .beginControlFlow("if (constant.name().equals(name))")
+                    .addStatement("return constant")
+                    .endControlFlow()
+                    .endControlFlow()
+                    .endControlFlow()
+                    .addStatement("return null");
+        } else {
+            valueOf.addParameter(int.class, "ordinal")
+                    .addStatement("return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null");
+        }
+
+        return TypeSpec.classBuilder(bundlerName)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(CUSTOM_BUNDLER, valueType))
+                .addField(FieldSpec.builder(ArrayTypeName.of(enumTypeName), "VALUES")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$T.values()", enumTypeName)
+                        .build())
+                .addMethod(put.build())
+                .addMethod(get.build())
+                .addMethod(valueOf.build())
+                .build();
+    }
+
+    /**
+     * @return the instance fields of the type if all of them can be written to a bundle from the
+     * package of the Result class, null otherwise.
+     */
+    private List<VariableElement> getBundleableFields(TypeMirror type, String packageName) {
+        if (type == null || type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        Element element = ((DeclaredType) type).asElement();
+        if (element.getKind() != ElementKind.CLASS) {
+            return null;
+        }
+        TypeElement typeElement = (TypeElement) element;
+        Set<Modifier> modifiers = typeElement.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC)
+                || modifiers.contains(Modifier.ABSTRACT)
+                || !typeElement.getTypeParameters().isEmpty()
+                || typeElement.getNestingKind().isNested() && !modifiers.contains(Modifier.STATIC)
+                || !Object.class.getName().equals(typeElement.getSuperclass().toString())) {
+            return null;
+        }
+
+        boolean samePackage = processingEnv.getElementUtils().getPackageOf(typeElement)
+                .getQualifiedName().contentEquals(packageName);
+        boolean hasEmptyConstructor = false;
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+        for (Element e : typeElement.getEnclosedElements()) {
+            Set<Modifier> memberModifiers = e.getModifiers();
+            if (e.getKind() == ElementKind.CONSTRUCTOR) {
+                if (((ExecutableElement) e).getParameters().isEmpty() && memberModifiers.contains(Modifier.PUBLIC)) {
+                    hasEmptyConstructor = true;
+                }
+            } else if (e.getKind() == ElementKind.FIELD) {
+                if (memberModifiers.contains(Modifier.STATIC) || memberModifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                boolean accessible = memberModifiers.contains(Modifier.PUBLIC)
+                        || samePackage && !memberModifiers.contains(Modifier.PRIVATE);
+                if (!accessible
+                        || memberModifiers.contains(Modifier.FINAL)
+                        || getFieldOperation(e.asType()) == null) {
+                    return null;
+                }
+                fields.add((VariableElement) e);
+            }
+        }
+        return hasEmptyConstructor ? fields : null;
+    }
+
+    /**
+     * @return the bundle operation of a field of a generated bundler, null if it is not supported.
+     * Wrapper types are not supported since a missing value can not be written with the primitive
+     * operation.
+     */
+    private static String getFieldOperation(TypeMirror type) {
+        boolean isArray = type.getKind() == TypeKind.ARRAY;
+        TypeMirror rawType = isArray ? ((ArrayType) type).getComponentType() : type;
+        String op = ARGUMENT_TYPES.get(rawType.toString());
+        if (op == null) {
+            return null;
+        }
+        if (!rawType.getKind().isPrimitive() && !OBJECT_FIELD_OPERATIONS.contains(op)
+                || isArray && op.equals("Bundle")) {
+            return null;
+        }
+        return isArray ? op + "Array" : op;
+    }
+
+    /**
+     * Creates the CustomBundler of a POJO type. Its fields are put next to the key under
+     * "key.field" keys, and the key itself holds whether the value is present, so no nested Bundle
+     * is allocated per value.
+     */
+    private TypeSpec createGeneratedBundler(String bundlerName, TypeMirror type, List<VariableElement> fields) {
+        ClassName bundleClassName = ClassName.get("android.os", "Bundle");
+        TypeName valueType = TypeName.get(type);
+
+        MethodSpec.Builder put = MethodSpec.methodBuilder("put")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "key")
+                .addParameter(valueType, "value")
+                .addParameter(bundleClassName, "bundle")
+                .addStatement("bundle.putBoolean(key, value != null)")
+                .beginControlFlow("if (value == null)")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("$T prefix = key + $S", String.class, FlatResultGenerator.KEY_SEPARATOR);
+
+        TypeVariableName t = TypeVariableName.get("T");
+        MethodSpec.Builder get = MethodSpec.methodBuilder("get")
+                .addAnnotation(Override.class)
+                .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                        .addMember("value", "$S", "unchecked")
+                        .build())
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(t)
+                .returns(t)
+                .addParameter(String.class, "key")
+                .addParameter(bundleClassName, "bundle")
+                .beginControlFlow("if (!bundle.getBoolean(key))")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("$T prefix = key + $S", String.class, FlatResultGenerator.KEY_SEPARATOR)
+                .addStatement("$T value = new $T()", valueType, valueType);
+
+        for (VariableElement field : fields) {
+            String name = field.getSimpleName().toString();
+            String op = getFieldOperation(field.asType());
+            put.addStatement("bundle.put$L(prefix + $S, value.$L)", op, name, name);
+            if (op.equals("Parcelable")) {
+                get.addStatement("value.$L = ($T) bundle.get$L(prefix + $S)", name, TypeName.get(field.asType()), op, name);
+            } else {
+                get.addStatement("value.$L = bundle.get$L(prefix + $S)", name, op, name);
+            }
+        }
+        get.addStatement("return (T) value");
+
+        return TypeSpec.classBuilder(bundlerName)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(CUSTOM_BUNDLER, valueType))
+                .addMethod(put.build())
+                .addMethod(get.build())
+                .build();
+    }
+
+    /**
+     * Creates a lazily initialized holder class for every shared custom bundler used by the fields.
+     *
+     * @return holder class simple names keyed by the bundler class name. Stateful bundlers have no holder.
+     */
+    private Map<String, String> createBundlerHolders(List<FieldToGenerate> allFields, List<TypeSpec> types) {
+        Map<String, String> bundlerHolders = new LinkedHashMap<String, String>();
+        Set<String> holderNames = new HashSet<String>();
+        for (FieldToGenerate field : allFields) {
+            if (!field.hasCustomBundler() || field.isStatefulBundler()) {
+                continue;
+            }
+            String bundlerClassName = field.getBundlerClassName();
+            if (bundlerHolders.containsKey(bundlerClassName)) {
+                continue;
+            }
+
+            ClassName bundlerTypeName = field.getBundlerTypeName();
+            String baseName = bundlerTypeName.simpleName() + "Holder";
+            String holderName = baseName;
+            for (int i = 2; !holderNames.add(holderName); i++) {
+                holderName = baseName + i;
+            }
+            bundlerHolders.put(bundlerClassName, holderName);
+
+            FieldSpec.Builder instance = FieldSpec
+                    .builder(field.getBundlerVariableTypeName(), "INSTANCE", Modifier.STATIC, Modifier.FINAL);
+            if (field.isGenericBundler()) {
+                instance.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                        .addMember("value", "$S", "unchecked")
+                        .build())
+                        .initializer("($T) new $T()", CUSTOM_BUNDLER, bundlerTypeName);
+            } else {
+                instance.initializer("new $T()", bundlerTypeName);
+            }
+            types.add(TypeSpec.classBuilder(holderName)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .addField(instance.build())
+                    .build());
+        }
+        return bundlerHolders;
+    }
+
+    /**
+     * Returns an expression for the bundler of the field, declaring a local instance if the bundler
+     * can not be shared.
+     */
+    static String getBundlerInstance(
+            FieldToGenerate field,
+            Map<String, String> bundlerHolders,
+            MethodSpec.Builder method
+    ) {
+        String holderName = bundlerHolders.get(field.getBundlerClassName());
+        if (holderName != null) {
+            return holderName + ".INSTANCE";
+        }
+
+        String bundlerVariableName = field.getName() + "Bundler";
+        if (field.isGenericBundler()) {
+            method.addStatement(
+                    "$T $L = ($T) new $T()",
+                    field.getBundlerVariableTypeName(),
+                    bundlerVariableName,
+                    CUSTOM_BUNDLER,
+                    field.getBundlerTypeName()
+            );
+        } else {
+            method.addStatement(
+                    "$T $L = new $T()",
+                    field.getBundlerTypeName(),
+                    bundlerVariableName,
+                    field.getBundlerTypeName()
+            );
+        }
+        return bundlerVariableName;
+    }
+
+    private void createResultClassWithIntent(
+            AnnotatedClass annotatedClass,
+            String resultClassSimpleName,
+            ClassName resultClassName,
+            List<MethodSpec> methods,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders,
+            TypeName intentType,
+            TypeName bundleType
+    ) {
+        MethodSpec.Builder withMethod = createWithMethod(annotatedClass, resultClassName, intentType);
+        addHandoffLookup(annotatedClass, resultClassName, withMethod);
+        addMetricsStart(withMethod);
+        if (annotatedClass.isSparse()) {
+            addResultInstance(annotatedClass, resultClassSimpleName, withMethod);
+            addSparseMaskReads(withMethod, annotatedClass, allFields, bundlerHolders, bundleType);
+            addMetricsReport(withMethod, "onDecode", annotatedClass);
+            withMethod.addStatement("return result");
+            methods.add(withMethod.build());
+            return;
+        }
+        withMethod.addStatement("$L bundle = intent.getExtras()", bundleType);
+        addResultInstance(annotatedClass, resultClassSimpleName, withMethod);
+        for (FieldToGenerate field : allFields) {
+            addBundlerTimingStart(withMethod, field);
+            addReadFromBundle(withMethod, field, "result.", "bundle", bundlerHolders);
+            addBundlerTimingEnd(withMethod, field);
+        }
+        addMetricsReport(withMethod, "onDecode", annotatedClass);
+        withMethod.addStatement("return result");
+        methods.add(withMethod.build());
+    }
+
+    /**
+     * Reads the fields of a sparse Result class. If the Intent carries the presence masks written by
+     * toIntent(), the fields are read through the typed Intent accessors and optional fields only if
+     * their bit is set, so the extras are only copied for custom bundlers and sparse arrays. Intents
+     * without the masks are decoded by walking the keys of the extras.
+     */
+    private void addSparseMaskReads(
+            MethodSpec.Builder method,
+            AnnotatedClass annotatedClass,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders,
+            TypeName bundleType
+    ) {
+        List<FieldToGenerate> maskFields = getSparseMaskFields(annotatedClass, allFields);
+        method.beginControlFlow("if (intent.hasExtra($S))", SPARSE_MASK_EXTRA + 0);
+        for (int word = 0; word < (maskFields.size() + 63) / 64; word++) {
+            method.addStatement(
+                    "long $L = intent.getLongExtra($S, 0L)",
+                    getSparseMaskName(word * 64),
+                    SPARSE_MASK_EXTRA + word
+            );
+        }
+        int customBundlerFields = 0;
+        for (FieldToGenerate field : allFields) {
+            if (field.hasCustomBundler()) {
+                customBundlerFields++;
+            }
+        }
+        if (customBundlerFields > 0 || countBundleOnlyFields(allFields) > 0) {
+            method.addStatement("$T bundle = intent.getExtras()", bundleType);
+        }
+        for (FieldToGenerate field : allFields) {
+            int bit = maskFields.indexOf(field);
+            if (bit < 0) {
+                addBundlerTimingStart(method, field);
+                addReadFromIntent(method, field, "result.", "intent", "bundle", bundlerHolders);
+                addBundlerTimingEnd(method, field);
+                continue;
+            }
+            method.beginControlFlow("if (($L & $L) != 0)", getSparseMaskName(bit), getSparseMaskFlag(bit));
+            if (field.hasPresenceBit() && !field.isOffload()) {
+                // the bit says the extra is present
+                method.addStatement(
+                        "result.$L = intent.get$LExtra(\"$L\", $L)",
+                        field.getName(),
+                        field.getOperation(),
+                        field.getName(),
+                        INTENT_EXTRA_DEFAULTS.get(field.getOperation())
+                ).addStatement("result.$L |= $L", getPresenceMask(field), getPresenceFlag(field));
+            } else {
+                addReadFromIntent(method, field, "result.", "intent", "bundle", bundlerHolders);
+            }
+            method.endControlFlow();
+        }
+        method.nextControlFlow("else");
+        method.addStatement("$T bundle = intent.getExtras()", bundleType);
+        for (FieldToGenerate field : allFields) {
+            if (field.hasCustomBundler()) {
+                addBundlerTimingStart(method, field);
+                addReadFromBundle(method, field, "result.", "bundle", bundlerHolders);
+                addBundlerTimingEnd(method, field);
+            }
+        }
+        addSparseReads(method, allFields, bundlerHolders);
+        method.endControlFlow();
+    }
+
+    /**
+     * @return the optional fields a sparse Result class only writes when they are set, in the order
+     * of their bits in the presence masks. Empty for other classes.
+     */
+    private static List<FieldToGenerate> getSparseMaskFields(
+            AnnotatedClass annotatedClass,
+            List<FieldToGenerate> allFields
+    ) {
+        List<FieldToGenerate> maskFields = new ArrayList<FieldToGenerate>();
+        if (!annotatedClass.isSparse()) {
+            return maskFields;
+        }
+        for (FieldToGenerate field : allFields) {
+            if (!field.hasCustomBundler() && (field.hasPresenceBit() || isSkippedWhenNull(annotatedClass, field))) {
+                maskFields.add(field);
+            }
+        }
+        return maskFields;
+    }
+
+    private static void addSparseMaskStart(MethodSpec.Builder method, List<FieldToGenerate> maskFields) {
+        for (int word = 0; word < (maskFields.size() + 63) / 64; word++) {
+            method.addStatement("long $L = 0L", getSparseMaskName(word * 64));
+        }
+    }
+
+    /**
+     * Sets the bit of the field in the presence masks, if the field has one.
+     */
+    private static void addSparseMaskUpdate(
+            MethodSpec.Builder method,
+            List<FieldToGenerate> maskFields,
+            FieldToGenerate field
+    ) {
+        int bit = maskFields.indexOf(field);
+        if (bit >= 0) {
+            method.addStatement("$L |= $L", getSparseMaskName(bit), getSparseMaskFlag(bit));
+        }
+    }
+
+    /**
+     * Writes the presence masks of a sparse Result class with the put method, like bundle.putLong.
+     */
+    private static void addSparseMaskPut(MethodSpec.Builder method, List<FieldToGenerate> maskFields, String put) {
+        for (int word = 0; word < (maskFields.size() + 63) / 64; word++) {
+            method.addStatement("$L($S, $L)", put, SPARSE_MASK_EXTRA + word, getSparseMaskName(word * 64));
+        }
+    }
+
+    private static String getSparseMaskName(int bit) {
+        return "sparseMask" + bit / 64;
+    }
+
+    private static String getSparseMaskFlag(int bit) {
+        return "0x" + Long.toHexString(1L << (bit % 64)) + "L";
+    }
+
+    /**
+     * Reads the fields of a sparse Result class by iterating the keys present in the bundle and
+     * switching on their hash codes. Fields with custom bundlers are read separately, since their
+     * keys are up to the bundler.
+     */
+    private void addSparseReads(
+            MethodSpec.Builder method,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders
+    ) {
+        Map<Integer, Map<String, FieldToGenerate>> keysByHash = new TreeMap<Integer, Map<String, FieldToGenerate>>();
+        for (FieldToGenerate field : allFields) {
+            if (field.hasCustomBundler()) {
+                continue;
+            }
+            addSparseKey(keysByHash, field.getName(), field);
+            // an offloaded value is put under its token key instead
+            if (field.isOffload()) {
+                addSparseKey(keysByHash, field.getName() + MAPPED_TOKEN_SUFFIX, field);
+            }
+        }
+        if (keysByHash.isEmpty()) {
+            return;
+        }
+        method.beginControlFlow("for ($T key : bundle.keySet())", String.class)
+                .beginControlFlow("switch (key.hashCode())");
+        for (Map.Entry<Integer, Map<String, FieldToGenerate>> hash : keysByHash.entrySet()) {
+            method.addCode("case $L:\n$>", hash.getKey());
+            boolean first = true;
+            for (Map.Entry<String, FieldToGenerate> key : hash.getValue().entrySet()) {
+                if (first) {
+                    method.beginControlFlow("if (key.equals($S))", key.getKey());
+                } else {
+                    method.nextControlFlow("else if (key.equals($S))", key.getKey());
+                }
+                first = false;
+                FieldToGenerate field = key.getValue();
+                if (key.getKey().equals(field.getName())) {
+                    addReadFromBundleValue(method, field, "result.", "bundle", bundlerHolders);
+                } else {
+                    method.addStatement(
+                            "result.$L = ($T) $T.restore(bundle.getString(key))",
+                            field.getName(),
+                            field.getTypeName(),
+                            MAPPED_RESULT_STORE
+                    );
+                }
+            }
+            method.endControlFlow()
+                    .addStatement("break$<");
+        }
+        method.endControlFlow()
+                .endControlFlow();
+    }
+
+    private static void addSparseKey(
+            Map<Integer, Map<String, FieldToGenerate>> keysByHash,
+            String key,
+            FieldToGenerate field
+    ) {
+        Map<String, FieldToGenerate> keys = keysByHash.get(key.hashCode());
+        if (keys == null) {
+            keys = new TreeMap<String, FieldToGenerate>();
+            keysByHash.put(key.hashCode(), keys);
+        }
+        keys.put(key, field);
+    }
+
+    /**
+     * @return true if the field is written only when it is set, which for a sparse Result class is
+     * every optional field. Optional primitives and wrappers are already guarded by their presence bit.
+     */
+    private static boolean isSkippedWhenNull(AnnotatedClass annotatedClass, FieldToGenerate field) {
+        return annotatedClass.isSparse()
+                && !field.isRequired()
+                && !field.hasPresenceBit()
+                && !field.hasCustomBundler();
+    }
+
+    /**
+     * Creates with(Intent) for a lazy Result class. It only keeps the Intent; getters decode the fields
+     * through its typed accessors. The extras Bundle is copied once, and only if a field of a custom
+     * bundler or a sparse array is read.
+     */
+    private void createResultClassWithIntentLazy(
+            AnnotatedClass annotatedClass,
+            String resultClassSimpleName,
+            ClassName resultClassName,
+            List<MethodSpec> methods,
+            List<FieldSpec> fields,
+            List<FieldToGenerate> allFields,
+            TypeName intentType,
+            TypeName bundleType
+    ) {
+        fields.add(FieldSpec.builder(intentType, "source", Modifier.PRIVATE).build());
+        if (countBundleOnlyFields(allFields) > 0) {
+            fields.add(FieldSpec.builder(bundleType, "sourceBundle", Modifier.PRIVATE).build());
+            MethodSpec.Builder sourceBundle = MethodSpec.methodBuilder("sourceBundle")
+                    .addModifiers(Modifier.PRIVATE)
+                    .returns(bundleType)
+                    .beginControlFlow("if (sourceBundle == null)");
+            if (hasDirectRead(annotatedClass)) {
+                sourceBundle.addStatement("$T bundle = source.getBundleExtra($S)", bundleType, DIRECT_BUNDLE_EXTRA);
+            } else {
+                sourceBundle.addStatement("$T bundle = source.getExtras()", bundleType);
+            }
+            methods.add(sourceBundle
+                    .addStatement("sourceBundle = bundle != null ? bundle : new $T()", bundleType)
+                    .endControlFlow()
+                    .addStatement("return sourceBundle")
+                    .build());
+        }
+        MethodSpec.Builder withMethod = createWithMethod(annotatedClass, resultClassName, intentType)
+                .addJavadoc("Keeps the Intent and decodes every field on its first access, so the extras of the Intent\n")
+                .addJavadoc("must not change until the fields are read. The result is not thread safe: the first access\n")
+                .addJavadoc("of a field writes it, so an instance shared between threads needs external synchronization.\n");
+        addHandoffLookup(annotatedClass, resultClassName, withMethod);
+        addMetricsStart(withMethod);
+        addResultInstance(annotatedClass, resultClassSimpleName, withMethod);
+        withMethod.addStatement("result.source = intent");
+        addMetricsReport(withMethod, "onDecode", annotatedClass);
+        methods.add(withMethod
+                .addStatement("return result")
+                .build());
+    }
+
+    /**
+     * @return true if the Result class is handed over by reference with {@link #OPTION_HANDOFF}.
+     * Recyclable instances can not be shared, since the receiver may recycle them.
+     */
+    private boolean isHandoff(AnnotatedClass annotatedClass) {
+        return handoff && !annotatedClass.isRecyclable();
+    }
+
+    /**
+     * Returns the cached instance from with(Intent) if the Intent holds the token of one.
+     */
+    private void addHandoffLookup(AnnotatedClass annotatedClass, ClassName resultClassName, MethodSpec.Builder method) {
+        if (!isHandoff(annotatedClass)) {
+            return;
+        }
+        method.addStatement("$T handoffCache = $T.getInstalled()", RESULT_HANDOFF_CACHE, RESULT_HANDOFF_CACHE)
+                .beginControlFlow("if (handoffCache != null)")
+                .addStatement(
+                        "$T handoff = handoffCache.get(intent.getStringExtra($T.TOKEN_KEY))",
+                        Object.class,
+                        RESULT_HANDOFF_CACHE
+                )
+                .beginControlFlow("if (handoff instanceof $T)", resultClassName)
+                .addStatement("return ($T) handoff", resultClassName)
+                .endControlFlow()
+                .endControlFlow();
+    }
+
+    /**
+     * Puts this instance into the installed cache and its token into the extras. The optional fields
+     * are then skipped with {@link #beginHandoffSkip}, the required ones are the fallback that
+     * with(Intent) decodes if the token is gone.
+     *
+     * @param putToken the method that puts the token, like {@code bundle.putString}.
+     */
+    private void addHandoffStore(AnnotatedClass annotatedClass, MethodSpec.Builder method, String putToken) {
+        if (!isHandoff(annotatedClass)) {
+            return;
+        }
+        method.addStatement("$T handoffCache = $T.getInstalled()", RESULT_HANDOFF_CACHE, RESULT_HANDOFF_CACHE)
+                .addStatement("$T handoffToken = handoffCache != null ? handoffCache.put(this, handoffWeight()) : null",
+                        String.class)
+                .beginControlFlow("if (handoffToken != null)")
+                .addStatement("$L($T.TOKEN_KEY, handoffToken)", putToken, RESULT_HANDOFF_CACHE)
+                .endControlFlow();
+    }
+
+    /**
+     * Skips writing an optional field if the Result was handed over with a token.
+     *
+     * @return true if a block was opened, which {@link #endHandoffSkip} closes.
+     */
+    private boolean beginHandoffSkip(AnnotatedClass annotatedClass, MethodSpec.Builder method, FieldToGenerate field) {
+        if (!isHandoff(annotatedClass) || field.isRequired()) {
+            return false;
+        }
+        method.beginControlFlow("if (handoffToken == null)");
+        return true;
+    }
+
+    private void endHandoffSkip(MethodSpec.Builder method, boolean skipped) {
+        if (skipped) {
+            method.endControlFlow();
+        }
+    }
+
+    /**
+     * Creates the signature of with(Intent), which also takes the instance to reuse if the class
+     * is recyclable.
+     */
+    private static MethodSpec.Builder createWithMethod(
+            AnnotatedClass annotatedClass,
+            ClassName resultClassName,
+            TypeName intentType
+    ) {
+        MethodSpec.Builder withMethod = MethodSpec.methodBuilder("with")
+                .returns(resultClassName)
+                .addModifiers(Modifier.PUBLIC)
+                .addModifiers(Modifier.STATIC)
+                .addParameter(intentType, "intent");
+        if (annotatedClass.isRecyclable()) {
+            withMethod.addParameter(resultClassName, "reuse");
+        }
+        return withMethod;
+    }
+
+    /**
+     * Declares the local variable result, taken from the pool if the class is recyclable.
+     */
+    private static void addResultInstance(
+            AnnotatedClass annotatedClass,
+            String resultClassSimpleName,
+            MethodSpec.Builder method
+    ) {
+        if (annotatedClass.isRecyclable()) {
+            method.addStatement("$L result = reuse != null ? reuse.reset() : obtain()", resultClassSimpleName);
+        } else {
+            method.addStatement("$L result = new $L()", resultClassSimpleName, resultClassSimpleName);
+        }
+    }
+
+    /**
+     * Adds the statements that read the field from the bundle into the Result instance referenced by
+     * the owner prefix.
+     */
+    private void addReadFromBundle(
+            MethodSpec.Builder method,
+            FieldToGenerate field,
+            String owner,
+            String bundle,
+            Map<String, String> bundlerHolders
+    ) {
+        if (field.isOffload()) {
+            String token = field.getName() + "Token";
+            method.addStatement(
+                    "$T $L = $L.getString($S)",
+                    String.class,
+                    token,
+                    bundle,
+                    field.getName() + MAPPED_TOKEN_SUFFIX
+            );
+            addRestoreOffloaded(method, field, owner + field.getName(), token);
+            addReadFromBundleValue(method, field, owner, bundle, bundlerHolders);
+            method.endControlFlow();
+            return;
+        }
+        addReadFromBundleValue(method, field, owner, bundle, bundlerHolders);
+    }
+
+    /**
+     * Reads the offloaded value if the token is set, leaving an else block open for the regular read.
+     */
+    private static void addRestoreOffloaded(MethodSpec.Builder method, FieldToGenerate field, String target, String token) {
+        method.beginControlFlow("if ($L != null)", token)
+                .addStatement("$L = ($T) $T.restore($L)", target, field.getTypeName(), MAPPED_RESULT_STORE, token)
+                .nextControlFlow("else");
+    }
+
+    private void addReadFromBundleValue(
+            MethodSpec.Builder method,
+            FieldToGenerate field,
+            String owner,
+            String bundle,
+            Map<String, String> bundlerHolders
+    ) {
+        String target = owner + field.getName();
+        if (field.hasPresenceBit()) {
+            // a missing value leaves the bit unset
+            method.beginControlFlow("if ($L.containsKey(\"$L\"))", bundle, field.getName())
+                    .addStatement("$L = $L.get$L(\"$L\")", target, bundle, field.getOperation(), field.getName())
+                    .addStatement("$L$L |= $L", owner, getPresenceMask(field), getPresenceFlag(field))
+                    .endControlFlow();
+            return;
+        }
+        if (field.hasCustomBundler()) {
+            method.addStatement(
+                    "$L = $L.get(\"$L\", $L)",
+                    target,
+                    getBundlerInstance(field, bundlerHolders, method),
+                    field.getName(),
+                    bundle
+            );
+            return;
+        }
+
+        String operation = field.getOperation();
+
+        if (operation.equals("Serializable")) {
+            method.addStatement(
+                    "$L = ($L) $L.get$L(\"$L\")",
+                    target,
+                    field.getRawType(),
+                    bundle,
+                    operation,
+                    field.getName()
+            );
+        } else {
+            method.addStatement(
+                    "$L = $L.get$L(\"$L\")",
+                    target,
+                    bundle,
+                    operation,
+                    field.getName()
+            );
+        }
+    }
+
+    private void createResultClassToIntent(
+            AnnotatedClass annotatedClass,
+            List<MethodSpec> methods,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders,
+            TypeName intentType,
+            String intentSimpleClassName,
+            TypeName bundleType
+    ) {
+        MethodSpec.Builder toIntentMethod = MethodSpec.methodBuilder("toIntent")
+                .returns(intentType)
+                .addModifiers(Modifier.PUBLIC);
+        if (annotatedClass.isRecyclable()) {
+            toIntentMethod.addStatement("checkNotRecycled()");
+        }
+        addMetricsStart(toIntentMethod);
+        toIntentMethod.addStatement("$L bundle = new $L()", bundleType, bundleType);
+        addHandoffStore(annotatedClass, toIntentMethod, "bundle.putString");
+        addResultStore(toIntentMethod, allFields);
+        List<FieldToGenerate> maskFields = getSparseMaskFields(annotatedClass, allFields);
+        addSparseMaskStart(toIntentMethod, maskFields);
+
+        for (FieldToGenerate field : allFields) {
+            boolean handoffSkip = beginHandoffSkip(annotatedClass, toIntentMethod, field);
+            if (field.hasCustomBundler()) {
+                addBundlerTimingStart(toIntentMethod, field);
+                toIntentMethod.addStatement(
+                        "$L.put(\"$L\", $L, bundle)",
+                        getBundlerInstance(field, bundlerHolders, toIntentMethod),
+                        field.getName(),
+                        getValue(annotatedClass, field)
+                );
+                addBundlerTimingEnd(toIntentMethod, field);
+                endHandoffSkip(toIntentMethod, handoffSkip);
+                continue;
+            }
+
+            String operation = field.getOperation();
+            if (field.hasPresenceBit()) {
+                toIntentMethod.beginControlFlow("if ($L)", getPresenceCheck(annotatedClass, field));
+            } else if (isSkippedWhenNull(annotatedClass, field)) {
+                toIntentMethod.beginControlFlow("if ($L != null)", getValue(annotatedClass, field));
+            }
+            if (field.isOffload()) {
+                addOffer(annotatedClass, toIntentMethod, field, "bundle.putString");
+            }
+            toIntentMethod.addStatement(
+                    "bundle.put$L(\"$L\", $L)",
+                    operation,
+                    field.getName(),
+                    getValue(annotatedClass, field)
+            );
+            if (field.isOffload()) {
+                toIntentMethod.endControlFlow();
+            }
+            addSparseMaskUpdate(toIntentMethod, maskFields, field);
+            if (field.hasPresenceBit() || isSkippedWhenNull(annotatedClass, field)) {
+                toIntentMethod.endControlFlow();
+            }
+            endHandoffSkip(toIntentMethod, handoffSkip);
+        }
+        addSparseMaskPut(toIntentMethod, maskFields, "bundle.putLong");
+        toIntentMethod.addStatement("$L intent = new $L()", intentSimpleClassName, intentSimpleClassName);
+        toIntentMethod.addStatement("intent.putExtras(bundle)");
+        addMetricsReport(toIntentMethod, "onEncode", annotatedClass);
+        toIntentMethod.addStatement("return intent");
+        methods.add(toIntentMethod.build());
+    }
+
+    /**
+     * Creates with(Intent) that reads every field through the typed Intent accessors. The fields of
+     * custom bundlers and sparse arrays are read from the nested Bundle, which is not copied.
+     */
+    private void createResultClassWithIntentDirect(
+            AnnotatedClass annotatedClass,
+            String resultClassSimpleName,
+            ClassName resultClassName,
+            List<MethodSpec> methods,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders,
+            TypeName intentType,
+            TypeName bundleType
+    ) {
+        MethodSpec.Builder withMethod = createWithMethod(annotatedClass, resultClassName, intentType);
+        addHandoffLookup(annotatedClass, resultClassName, withMethod);
+        addMetricsStart(withMethod);
+        addResultInstance(annotatedClass, resultClassSimpleName, withMethod);
+        if (countBundleOnlyFields(allFields) > 0) {
+            withMethod.addStatement("$L bundle = intent.getBundleExtra($S)", bundleType, DIRECT_BUNDLE_EXTRA);
+        }
+        for (FieldToGenerate field : allFields) {
+            addBundlerTimingStart(withMethod, field);
+            addReadFromIntent(withMethod, field, "result.", "intent", "bundle", bundlerHolders);
+            addBundlerTimingEnd(withMethod, field);
+        }
+        addMetricsReport(withMethod, "onDecode", annotatedClass);
+        withMethod.addStatement("return result");
+        methods.add(withMethod.build());
+    }
+
+    /**
+     * Reads the field through the typed Intent accessors. Fields of custom bundlers and sparse arrays
+     * are read from the given Bundle.
+     */
+    private void addReadFromIntent(
+            MethodSpec.Builder method,
+            FieldToGenerate field,
+            String owner,
+            String intent,
+            String bundle,
+            Map<String, String> bundlerHolders
+    ) {
+        String target = owner + field.getName();
+        if (field.hasCustomBundler()) {
+            method.addStatement(
+                    "$L = $L.get(\"$L\", $L)",
+                    target,
+                    getBundlerInstance(field, bundlerHolders, method),
+                    field.getName(),
+                    bundle
+            );
+            return;
+        }
+
+        String operation = field.getOperation();
+        if (field.isOffload()) {
+            String token = field.getName() + "Token";
+            method.addStatement(
+                    "$T $L = $L.getStringExtra($S)",
+                    String.class,
+                    token,
+                    intent,
+                    field.getName() + MAPPED_TOKEN_SUFFIX
+            );
+            addRestoreOffloaded(method, field, target, token);
+        }
+
+        if (isBundleOnlyOperation(operation)) {
+            method.addStatement("$L = $L.get$L(\"$L\")", target, bundle, operation, field.getName());
+        } else if (operation.equals("Serializable")) {
+            method.addStatement(
+                    "$L = ($L) $L.get$LExtra(\"$L\")",
+                    target,
+                    field.getRawType(),
+                    intent,
+                    operation,
+                    field.getName()
+            );
+        } else if (field.hasPresenceBit()) {
+            method.beginControlFlow("if ($L.hasExtra(\"$L\"))", intent, field.getName())
+                    .addStatement(
+                            "$L = $L.get$LExtra(\"$L\", $L)",
+                            target,
+                            intent,
+                            operation,
+                            field.getName(),
+                            INTENT_EXTRA_DEFAULTS.get(operation)
+                    )
+                    .addStatement("$L$L |= $L", owner, getPresenceMask(field), getPresenceFlag(field))
+                    .endControlFlow();
+        } else if (INTENT_EXTRA_DEFAULTS.containsKey(operation)) {
+            method.addStatement(
+                    "$L = $L.get$LExtra(\"$L\", $L)",
+                    target,
+                    intent,
+                    operation,
+                    field.getName(),
+                    INTENT_EXTRA_DEFAULTS.get(operation)
+            );
+        } else {
+            method.addStatement("$L = $L.get$LExtra(\"$L\")", target, intent, operation, field.getName());
+        }
+        if (field.isOffload()) {
+            method.endControlFlow();
+        }
+    }
+
+    /**
+     * Creates writeTo(Intent) that puts every field straight into the target Intent. Fields that can
+     * only be written to a Bundle share one Bundle sized for them, which is put as a single extra if
+     * with(Intent) reads the typed extras, and merged into the extras otherwise.
+     */
+    private void createResultClassWriteTo(
+            AnnotatedClass annotatedClass,
+            List<MethodSpec> methods,
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders,
+            TypeName intentType,
+            TypeName bundleType
+    ) {
+        MethodSpec.Builder writeToMethod = MethodSpec.methodBuilder("writeTo")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(intentType, "target");
+        if (annotatedClass.isRecyclable()) {
+            writeToMethod.addStatement("checkNotRecycled()");
+        }
+        addHandoffStore(annotatedClass, writeToMethod, "target.putExtra");
+
+        addMetricsStart(writeToMethod);
+        int bundleOnlyFields = countBundleOnlyFields(allFields);
+        if (bundleOnlyFields > 0) {
+            writeToMethod.addStatement("$L bundle = new $L($L)", bundleType, bundleType, bundleOnlyFields);
+        }
+        addResultStore(writeToMethod, allFields);
+        List<FieldToGenerate> maskFields = getSparseMaskFields(annotatedClass, allFields);
+        addSparseMaskStart(writeToMethod, maskFields);
+        for (FieldToGenerate field : allFields) {
+            boolean handoffSkip = beginHandoffSkip(annotatedClass, writeToMethod, field);
+            if (field.hasCustomBundler()) {
+                addBundlerTimingStart(writeToMethod, field);
+                writeToMethod.addStatement(
+                        "$L.put(\"$L\", $L, bundle)",
+                        getBundlerInstance(field, bundlerHolders, writeToMethod),
+                        field.getName(),
+                        getValue(annotatedClass, field)
+                );
+                addBundlerTimingEnd(writeToMethod, field);
+                endHandoffSkip(writeToMethod, handoffSkip);
+                continue;
+            }
+
+            String operation = field.getOperation();
+            if (isSkippedWhenNull(annotatedClass, field)) {
+                writeToMethod.beginControlFlow("if ($L != null)", getValue(annotatedClass, field));
+            }
+            if (field.isOffload()) {
+                addOffer(annotatedClass, writeToMethod, field, "target.putExtra");
+            }
+
+            if (isBundleOnlyOperation(operation)) {
+                writeToMethod.addStatement(
+                        "bundle.put$L(\"$L\", $L)",
+                        operation,
+                        field.getName(),
+                        getValue(annotatedClass, field)
+                );
+            } else if (operation.endsWith("ArrayList")) {
+                writeToMethod.addStatement(
+                        "target.put$LExtra(\"$L\", $L)",
+                        operation,
+                        field.getName(),
+                        getValue(annotatedClass, field)
+                );
+            } else if (operation.equals("Parcelable") || operation.equals("Serializable")) {
+                // the value may implement both interfaces, which makes putExtra ambiguous
+                writeToMethod.addStatement(
+                        "target.putExtra(\"$L\", ($L) $L)",
+                        field.getName(),
+                        operation.equals("Parcelable") ? "android.os.Parcelable" : Serializable.class.getName(),
+                        getValue(annotatedClass, field)
+                );
+            } else if (field.hasPresenceBit()) {
+                writeToMethod.beginControlFlow("if ($L)", getPresenceCheck(annotatedClass, field))
+                        .addStatement("target.putExtra(\"$L\", $L)", field.getName(), getValue(annotatedClass, field));
+                addSparseMaskUpdate(writeToMethod, maskFields, field);
+                writeToMethod.endControlFlow();
+            } else if (INTENT_EXTRA_DEFAULTS.containsKey(operation) && !field.getTypeName().isPrimitive()) {
+                // a wrapper would pick putExtra(String, Serializable)
+                writeToMethod.addStatement(
+                        "target.putExtra(\"$L\", $L.$LValue())",
+                        field.getName(),
+                        getValue(annotatedClass, field),
+                        operation.toLowerCase()
+                );
+            } else {
+                writeToMethod.addStatement(
+                        "target.putExtra(\"$L\", $L)",
+                        field.getName(),
+                        getValue(annotatedClass, field)
+                );
+            }
+            if (field.isOffload()) {
+                writeToMethod.endControlFlow();
+            }
+            if (isSkippedWhenNull(annotatedClass, field)) {
+                addSparseMaskUpdate(writeToMethod, maskFields, field);
+                writeToMethod.endControlFlow();
+            }
+            endHandoffSkip(writeToMethod, handoffSkip);
+        }
+        addSparseMaskPut(writeToMethod, maskFields, "target.putExtra");
+        if (bundleOnlyFields > 0 && hasDirectRead(annotatedClass)) {
+            writeToMethod.addStatement("target.putExtra($S, bundle)", DIRECT_BUNDLE_EXTRA);
+        } else if (bundleOnlyFields > 0) {
+            writeToMethod.addStatement("target.putExtras(bundle)");
+        }
+        addMetricsReport(writeToMethod, "onEncode", annotatedClass);
+        methods.add(writeToMethod.build());
+    }
+
+    /**
+     * Declares the locals metrics, startNanos and bundlerNanos if {@link #OPTION_METRICS} is set.
+     */
+    private void addMetricsStart(MethodSpec.Builder method) {
+        if (!metrics) {
+            return;
+        }
+        method.addStatement("$T metrics = $T.get()", RESULT_METRICS, RESULT_METRICS_REGISTRY)
+                .addStatement("long startNanos = metrics != null ? System.nanoTime() : 0L")
+                .addStatement("long bundlerNanos = 0L");
+    }
 
-    @Override
-    public Set<String> getSupportedAnnotationTypes() {
-        Set<String> supportTypes = new LinkedHashSet<String>();
-        supportTypes.add(ActivityResults.class.getCanonicalName());
-        supportTypes.add(ActivityResult.class.getCanonicalName());
-        return supportTypes;
+    private void addBundlerTimingStart(MethodSpec.Builder method, FieldToGenerate field) {
+        if (metrics && field.hasCustomBundler()) {
+            method.addStatement("long $LStart = metrics != null ? System.nanoTime() : 0L", field.getName());
+        }
     }
 
-    @Override
-    public SourceVersion getSupportedSourceVersion() {
-        return SourceVersion.latestSupported();
+    private void addBundlerTimingEnd(MethodSpec.Builder method, FieldToGenerate field) {
+        if (metrics && field.hasCustomBundler()) {
+            method.addStatement("bundlerNanos += metrics != null ? System.nanoTime() - $LStart : 0L", field.getName());
+        }
     }
 
-    @Override
-    public synchronized void init(ProcessingEnvironment processingEnv) {
-        super.init(processingEnv);
-        messager = processingEnv.getMessager();
+    /**
+     * Reports the timings to the metrics with the callback. Encodings also report estimatedSize() if
+     * the registry samples the encoding, after the time is taken.
+     */
+    private void addMetricsReport(MethodSpec.Builder method, String callback, AnnotatedClass annotatedClass) {
+        if (!metrics) {
+            return;
+        }
+        int fieldCount = annotatedClass.getRequiredFields().size() + annotatedClass.getOptionalFields().size();
+        method.beginControlFlow("if (metrics != null)");
+        if (callback.equals("onEncode")) {
+            method.addStatement("long nanos = System.nanoTime() - startNanos")
+                    .addStatement(
+                            "metrics.onEncode($S, $L, nanos, bundlerNanos, $T.sampleSize() ? estimatedSize() : -1)",
+                            getResultClassName(annotatedClass),
+                            fieldCount,
+                            RESULT_METRICS_REGISTRY
+                    );
+        } else {
+            method.addStatement(
+                    "metrics.$L($S, $L, System.nanoTime() - startNanos, bundlerNanos)",
+                    callback,
+                    getResultClassName(annotatedClass),
+                    fieldCount
+            );
+        }
+        method.endControlFlow();
     }
 
-    @Override
-    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
-        Elements elementUtils = processingEnv.getElementUtils();
-        Filer filer = processingEnv.getFiler();
+    /**
+     * Declares the local resultStore if any field may be offloaded.
+     */
+    private static void addResultStore(MethodSpec.Builder method, List<FieldToGenerate> allFields) {
+        if (hasOffloadedFields(allFields)) {
+            method.addStatement("$T resultStore = $T.getInstalled()", MAPPED_RESULT_STORE, MAPPED_RESULT_STORE);
+        }
+    }
 
-        try {
-            List<AnnotatedClass> annotatedClasses = new ArrayList<AnnotatedClass>();
+    private static boolean hasOffloadedFields(List<FieldToGenerate> allFields) {
+        for (FieldToGenerate field : allFields) {
+            if (field.isOffload()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            for (Element element : roundEnv.getElementsAnnotatedWith(ActivityResult.class)) {
-                TypeElement activityElement = (TypeElement) element;
-                annotatedClasses.add(new AnnotatedClass(activityElement));
+    /**
+     * Offers the value to the result store and puts its token with the put method if it was stored,
+     * leaving an else block open for the regular write.
+     */
+    private static void addOffer(
+            AnnotatedClass annotatedClass,
+            MethodSpec.Builder method,
+            FieldToGenerate field,
+            String putMethod
+    ) {
+        String token = field.getName() + "Token";
+        method.addStatement(
+                "$T $L = resultStore != null ? resultStore.offer($L, $L) : null",
+                String.class,
+                token,
+                getValue(annotatedClass, field),
+                "Serializable".equals(field.getOperation())
+        )
+                .beginControlFlow("if ($L != null)", token)
+                .addStatement("$L($S, $L)", putMethod, field.getName() + MAPPED_TOKEN_SUFFIX, token)
+                .nextControlFlow("else");
+    }
+
+    /**
+     * Creates writeTo(ByteBuffer) and readFrom(ByteBuffer). Fields are written sorted by name after
+     * the header and the presence masks; optional primitives are only written if present and are
+     * read without allocating.
+     */
+    private void createResultClassByteBufferCodec(
+            AnnotatedClass annotatedClass,
+            String resultClassSimpleName,
+            ClassName resultClassName,
+            List<MethodSpec> methods,
+            List<FieldToGenerate> resultFields,
+            Map<String, String> bundlerHolders
+    ) {
+        // the order of the fields of the model depends on hashing
+        List<FieldToGenerate> allFields = new ArrayList<FieldToGenerate>(resultFields);
+        Collections.sort(allFields, new Comparator<FieldToGenerate>() {
+            @Override
+            public int compare(FieldToGenerate left, FieldToGenerate right) {
+                return left.getName().compareTo(right.getName());
             }
-            for (Element element : roundEnv.getElementsAnnotatedWith(ActivityResults.class)) {
-                TypeElement activityElement = (TypeElement) element;
-                annotatedClasses.add(new AnnotatedClass(activityElement));
+        });
+        String schema = String.format("0x%08x", getByteBufferSchema(allFields));
+        MethodSpec.Builder writeTo = MethodSpec.methodBuilder("writeTo")
+                .addJavadoc("Writes this result in the binary format of {@link $T}.\n", BYTE_BUFFER_CODEC)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(ByteBuffer.class, "buffer");
+        MethodSpec.Builder readFrom = MethodSpec.methodBuilder("readFrom")
+                .addJavadoc("Reads a result written by {@link #writeTo($T)}.\n", ByteBuffer.class)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(resultClassName)
+                .addParameter(ByteBuffer.class, "buffer");
+        if (annotatedClass.isRecyclable()) {
+            writeTo.addStatement("checkNotRecycled()");
+        }
+        writeTo.addStatement("$T.writeHeader(buffer, $L)", BYTE_BUFFER_CODEC, schema);
+        readFrom.addStatement("$T.readHeader(buffer, $L)", BYTE_BUFFER_CODEC, schema);
+        if (annotatedClass.isRecyclable()) {
+            readFrom.addStatement("$L result = obtain()", resultClassSimpleName);
+        } else {
+            readFrom.addStatement("$L result = new $L()", resultClassSimpleName, resultClassSimpleName);
+        }
+
+        if (annotatedClass.isLazy()) {
+            // the masks are complete once every field with a presence bit is decoded
+            for (FieldToGenerate field : allFields) {
+                if (field.hasPresenceBit()) {
+                    writeTo.addStatement("decode$L()", toCamelCase(field.getName()));
+                }
             }
+        }
+        for (int i = 0; i < getPresenceMaskCount(allFields); i++) {
+            writeTo.addStatement("buffer.putLong(presence$L)", i);
+            readFrom.addStatement("result.presence$L = buffer.getLong()", i);
+        }
 
-            for (AnnotatedClass annotatedClass : annotatedClasses) {
-                String annotatedClassName = annotatedClass.getName().toString();
-                String packageName = annotatedClassName.substring(0, annotatedClassName.lastIndexOf("."));
-                String resultClassSimpleName = annotatedClass.getSimpleName() + "Result";
-                ClassName resultClassName = ClassName.get(packageName, resultClassSimpleName);
-
-                List<MethodSpec> methods = new ArrayList<MethodSpec>();
-                List<FieldSpec> fields = new ArrayList<FieldSpec>();
-
-                List<FieldToGenerate> allFields = createResultClassFields(annotatedClass);
-
-                MethodSpec constructor = createResultClassConstructor();
-
-                TypeMirror intentType = elementUtils.getTypeElement("android.content.Intent").asType();
-                String intentSimpleClassName = "Intent";
-                TypeMirror bundleType = elementUtils.getTypeElement("android.os.Bundle").asType();
-
-                createResultClassWithIntent(
-                        annotatedClass,
-                        resultClassSimpleName,
-                        resultClassName,
-                        methods,
-                        allFields,
-                        intentType,
-                        bundleType
-                );
-                createResultClassGetters(methods, fields, allFields);
-                createResultClassToIntent(
-                        annotatedClass,
-                        methods,
-                        allFields,
-                        intentType,
-                        intentSimpleClassName,
-                        bundleType
+        List<FieldToGenerate> bundledFields = new ArrayList<FieldToGenerate>();
+        for (FieldToGenerate field : allFields) {
+            String name = field.getName();
+            String value = getValue(annotatedClass, field);
+            String operation = field.hasCustomBundler() ? null : field.getOperation();
+            if (field.hasPresenceBit()) {
+                writeTo.beginControlFlow("if ($L)", getMaskCheck(field))
+                        .addStatement(getBufferPut(operation), name)
+                        .endControlFlow();
+                readFrom.beginControlFlow("if ((result.$L & $L) != 0)", getPresenceMask(field), getPresenceFlag(field))
+                        .addStatement("result.$L = " + getBufferGet(operation), name)
+                        .endControlFlow();
+            } else if (INTENT_EXTRA_DEFAULTS.containsKey(operation) && field.getTypeName().isPrimitive()) {
+                writeTo.addStatement(getBufferPut(operation), value);
+                readFrom.addStatement("result.$L = " + getBufferGet(operation), name);
+            } else if (INTENT_EXTRA_DEFAULTS.containsKey(operation)) {
+                // a wrapper without a presence bit may be null
+                String local = name + "Value";
+                writeTo.addStatement("$T $L = $L", field.getTypeName(), local, value)
+                        .addStatement("buffer.put($L != null ? (byte) 1 : (byte) 0)", local)
+                        .beginControlFlow("if ($L != null)", local)
+                        .addStatement(getBufferPut(operation), local)
+                        .endControlFlow();
+                readFrom.beginControlFlow("if (buffer.get() != 0)")
+                        .addStatement("result.$L = " + getBufferGet(operation), name)
+                        .endControlFlow();
+            } else if ("Serializable".equals(operation)) {
+                writeTo.addStatement("$T.putSerializable(buffer, $L)", BYTE_BUFFER_CODEC, value);
+                readFrom.addStatement(
+                        "result.$L = ($L) $T.getSerializable(buffer)",
+                        name,
+                        field.getRawType(),
+                        BYTE_BUFFER_CODEC
                 );
+            } else if (BYTE_BUFFER_CODEC_OPERATIONS.contains(operation)) {
+                writeTo.addStatement("$T.put$L(buffer, $L)", BYTE_BUFFER_CODEC, operation, value);
+                readFrom.addStatement("result.$L = $T.get$L(buffer)", name, BYTE_BUFFER_CODEC, operation);
+            } else {
+                bundledFields.add(field);
+            }
+        }
 
-                TypeSpec.Builder resultBuilder =
-                        createBuilderInnerClass(annotatedClass, resultClassSimpleName, resultClassName, allFields);
-
-                //create result class
-                TypeSpec resultClass = TypeSpec.classBuilder(resultClassSimpleName)
-                        .addModifiers(Modifier.PUBLIC)
-                        .addMethod(constructor)
-                        .addMethods(methods)
-                        .addFields(fields)
-                        .addType(resultBuilder.build())
-                        .build();
-
-                JavaFile resultFile = JavaFile.builder(packageName, resultClass).build();
-                resultFile.writeTo(filer);
+        if (!bundledFields.isEmpty()) {
+            // the values without a binary encoding share one marshalled Bundle at the end
+            StringBuilder names = new StringBuilder();
+            for (FieldToGenerate field : bundledFields) {
+                names.append(names.length() > 0 ? ", " : "").append(field.getName());
             }
-        } catch (IllegalArgumentException e) {
-            messager.printMessage(Diagnostic.Kind.ERROR, e.getMessage());
-        } catch (Exception e) {
-            StringBuilder stackTrace = new StringBuilder();
-            for (StackTraceElement element : e.getStackTrace()) {
-                stackTrace.append(element.toString()).append("\n");
+            writeTo.addJavadoc(
+                    "<p>\n$L written as a marshalled Parcel,\n"
+                            + "which other platform versions may not read. Do not persist the buffer across updates.\n",
+                    bundledFields.size() > 1 ? "The fields " + names + " are" : "The field " + names + " is"
+            );
+            writeTo.addStatement("$T bundle = new $T($L)", bundleTypeName, bundleTypeName, bundledFields.size());
+            readFrom.addStatement(
+                    "$T bundle = $T.getBundle(buffer, $L.class.getClassLoader())",
+                    bundleTypeName,
+                    BYTE_BUFFER_CODEC,
+                    resultClassSimpleName
+            );
+            for (FieldToGenerate field : bundledFields) {
+                if (field.hasCustomBundler()) {
+                    writeTo.addStatement(
+                            "$L.put($S, $L, bundle)",
+                            getBundlerInstance(field, bundlerHolders, writeTo),
+                            field.getName(),
+                            getValue(annotatedClass, field)
+                    );
+                } else {
+                    writeTo.addStatement(
+                            "bundle.put$L($S, $L)",
+                            field.getOperation(),
+                            field.getName(),
+                            getValue(annotatedClass, field)
+                    );
+                }
+                addReadFromBundleValue(readFrom, field, "result.", "bundle", bundlerHolders);
             }
-            messager.printMessage(Diagnostic.Kind.ERROR, e.getMessage() + " \n" + stackTrace);
+            writeTo.addStatement("$T.putBundle(buffer, bundle)", BYTE_BUFFER_CODEC);
         }
+        methods.add(writeTo.build());
+        methods.add(readFrom.addStatement("return result").build());
+    }
 
-        return true;
+    /**
+     * @return a hash of the field layout, which makes readFrom() reject buffers written by another
+     * version of the Result class.
+     */
+    private static int getByteBufferSchema(List<FieldToGenerate> allFields) {
+        StringBuilder schema = new StringBuilder();
+        for (FieldToGenerate field : allFields) {
+            schema.append(field.getName())
+                    .append(':')
+                    .append(field.getTypeName())
+                    .append(field.isRequired() ? ";" : "?;");
+        }
+        return schema.toString().hashCode();
     }
 
-    private List<FieldToGenerate> createResultClassFields(AnnotatedClass annotatedClass) {
-        List<FieldToGenerate> allFields = new ArrayList<FieldToGenerate>(annotatedClass.getOptionalFields());
-        allFields.addAll(annotatedClass.getRequiredFields());
-        return allFields;
+    /**
+     * @return the statement format that writes a primitive value of the operation to the buffer.
+     */
+    private static String getBufferPut(String operation) {
+        if (operation.equals("Boolean")) {
+            return "buffer.put($L ? (byte) 1 : (byte) 0)";
+        } else if (operation.equals("Byte")) {
+            return "buffer.put($L)";
+        }
+        return "buffer.put" + operation + "($L)";
     }
 
-    private MethodSpec createResultClassConstructor() {
-        return MethodSpec.constructorBuilder()
-                .addModifiers(Modifier.PRIVATE)
-                .build();
+    private static String getBufferGet(String operation) {
+        if (operation.equals("Boolean")) {
+            return "buffer.get() != 0";
+        } else if (operation.equals("Byte")) {
+            return "buffer.get()";
+        }
+        return "buffer.get" + operation + "()";
     }
 
-    // TODO: add custom parcel functionality
-    private void createResultClassWithIntent(
+    /**
+     * Creates estimatedSize() that approximates the number of bytes the extras take in a Parcel. Only
+     * generated for the classes that move large values out of the Intent, with offloaded fields or
+     * {@link #OPTION_HANDOFF}, and for the sampled sizes of the metrics.
+     */
+    private void createResultClassEstimatedSize(
             AnnotatedClass annotatedClass,
-            String resultClassSimpleName,
-            ClassName resultClassName,
             List<MethodSpec> methods,
-            List<FieldToGenerate> allFields,
-            TypeMirror intentType,
-            TypeMirror bundleType
+            List<FieldToGenerate> allFields
     ) {
-        MethodSpec.Builder withMethod = MethodSpec.methodBuilder("with")
-                .returns(resultClassName)
-                .addModifiers(Modifier.PUBLIC)
-                .addModifiers(Modifier.STATIC)
-                .addParameter(TypeName.get(intentType), "intent")
-                .addStatement("$L bundle = intent.getExtras()", bundleType)
-                .addStatement("$L result = new $L()", resultClassSimpleName, resultClassSimpleName);
-        for (FieldToGenerate field : allFields) {
+        MethodSpec.Builder estimatedSize = MethodSpec.methodBuilder("estimatedSize")
+                .addJavadoc("@return the approximate size in bytes of the extras written by toIntent().\n")
+                .returns(TypeName.INT)
+                .addModifiers(Modifier.PUBLIC);
+        if (annotatedClass.isRecyclable()) {
+            estimatedSize.addStatement("checkNotRecycled()");
+        }
 
-            if (field.hasCustomBundler()) {
-                String bundlerVariableName = field.getName() + "Bundler";
-                withMethod.addStatement(
-                        "$L $L = new $L()",
-                        field.getBundlerClassName(),
-                        bundlerVariableName,
-                        field.getBundlerClassName()
-                );
-                withMethod.addStatement(
-                        "result.$L = $L.get(\"$L\", bundle)",
-                        field.getName(),
-                        bundlerVariableName,
-                        field.getName()
-                );
-                continue;
-            }
+        List<FieldToGenerate> objectFields = new ArrayList<FieldToGenerate>();
+        estimatedSize.addStatement("int size = $L", getFixedSize(allFields, objectFields));
+        for (FieldToGenerate field : objectFields) {
+            estimatedSize.addStatement("size += $T.estimateSize($L)", MAPPED_RESULT_STORE, getValue(annotatedClass, field));
+        }
+        methods.add(estimatedSize.addStatement("return size").build());
 
-            String operation = getOperation(field);
-            if (operation == null) {
-                messager.printMessage(
-                        Diagnostic.Kind.ERROR,
-                        String.format("Can not get @%s from bundle in @%s", field.getName(), annotatedClass.getName())
+        if (isHandoff(annotatedClass)) {
+            // like estimatedSize(), but without writing objects to a Parcel to weigh them
+            MethodSpec.Builder handoffWeight = MethodSpec.methodBuilder("handoffWeight")
+                    .returns(TypeName.INT)
+                    .addModifiers(Modifier.PRIVATE)
+                    .addStatement("long weight = $L", getFixedSize(allFields, new ArrayList<FieldToGenerate>()));
+            for (FieldToGenerate field : objectFields) {
+                handoffWeight.addStatement(
+                        "weight += $T.weigh($L)",
+                        RESULT_HANDOFF_CACHE,
+                        getValue(annotatedClass, field)
                 );
-                // TODO: throw exception
             }
+            methods.add(handoffWeight.addStatement("return (int) $T.min(weight, $T.MAX_VALUE)", Math.class, Integer.class)
+                    .build());
+        }
+    }
 
-            if (operation.equals("Serializable")) {
-                withMethod.addStatement(
-                        "result.$L = ($L) bundle.get$L(\"$L\")",
-                        field.getName(),
-                        field.getRawType(),
-                        operation,
-                        field.getName()
-                );
+    /**
+     * @return the size of the keys and the primitive values in a Parcel, adding the fields with an
+     * object value to objectFields.
+     */
+    private static int getFixedSize(List<FieldToGenerate> allFields, List<FieldToGenerate> objectFields) {
+        int fixedSize = 0;
+        for (FieldToGenerate field : allFields) {
+            // the key string and the value type tag
+            fixedSize += 4 + ((field.getName().length() + 1) * 2 + 3) / 4 * 4 + 4;
+            TypeName type = field.getStorageTypeName();
+            if (type.isPrimitive()) {
+                fixedSize += type.equals(TypeName.LONG) || type.equals(TypeName.DOUBLE) ? 8 : 4;
             } else {
-                withMethod.addStatement(
-                        "result.$L = bundle.get$L(\"$L\")",
-                        field.getName(),
-                        operation,
-                        field.getName()
-                );
+                objectFields.add(field);
             }
         }
-        withMethod.addStatement("return result");
-        methods.add(withMethod.build());
+        return fixedSize;
     }
 
-    // TODO: add custom parcel functionality
-    private void createResultClassToIntent(
-            AnnotatedClass annotatedClass,
+    private void createResultClassToIntentDirect(
             List<MethodSpec> methods,
-            List<FieldToGenerate> allFields,
-            TypeMirror intentType,
-            String intentSimpleClassName,
-            TypeMirror bundleType
+            TypeName intentType,
+            String intentSimpleClassName
     ) {
-        MethodSpec.Builder toIntentMethod = MethodSpec.methodBuilder("toIntent")
-                .returns(TypeName.get(intentType))
+        methods.add(MethodSpec.methodBuilder("toIntent")
+                .returns(intentType)
                 .addModifiers(Modifier.PUBLIC)
-                .addStatement("$L bundle = new $L()", bundleType, bundleType);
+                .addStatement("$L intent = new $L()", intentSimpleClassName, intentSimpleClassName)
+                .addStatement("writeTo(intent)")
+                .addStatement("return intent")
+                .build());
+    }
 
-        for (FieldToGenerate field : allFields) {
-            if (field.hasCustomBundler()) {
-                String bundlerVariableName = field.getName() + "Bundler";
-                toIntentMethod.addStatement(
-                        "$L $L = new $L()",
-                        field.getBundlerClassName(),
-                        bundlerVariableName,
-                        field.getBundlerClassName()
-                );
-                toIntentMethod.addStatement(
-                        "$L.put(\"$L\", $L, bundle)",
-                        bundlerVariableName,
-                        field.getName(),
-                        field.getName()
-                );
-                continue;
-            }
+    /**
+     * @return true if with(Intent) reads the typed extras in the direct Intent mode, which nests the
+     * fields that need a Bundle. Sparse classes read the extras Bundle.
+     */
+    private boolean hasDirectRead(AnnotatedClass annotatedClass) {
+        return directIntent && !annotatedClass.isSparse();
+    }
 
-            String operation = getOperation(field);
-            if (operation == null) {
-                messager.printMessage(
-                        Diagnostic.Kind.ERROR,
-                        String.format("Can not put @%s to bundle in @%s", field.getName(), annotatedClass.getName())
-                );
-                // TODO: throw exception
+    /**
+     * @return the number of fields that have no typed Intent accessor and go through a Bundle.
+     */
+    private int countBundleOnlyFields(List<FieldToGenerate> allFields) {
+        int count = 0;
+        for (FieldToGenerate field : allFields) {
+            if (field.hasCustomBundler() || isBundleOnlyOperation(field.getOperation())) {
+                count++;
             }
-            toIntentMethod.addStatement("bundle.put$L(\"$L\", $L)", operation, field.getName(), field.getName());
         }
-        toIntentMethod.addStatement("$L intent = new $L()", intentSimpleClassName, intentSimpleClassName);
-        toIntentMethod.addStatement("intent.putExtras(bundle)");
-        toIntentMethod.addStatement("return intent");
-        methods.add(toIntentMethod.build());
+        return count;
+    }
+
+    private static boolean isBundleOnlyOperation(String operation) {
+        return "SparseParcelableArray".equals(operation);
     }
 
     private void createResultClassGetters(
+            AnnotatedClass annotatedClass,
             List<MethodSpec> methods,
             List<FieldSpec> fields,
-            List<FieldToGenerate> allFields
+            List<FieldToGenerate> allFields,
+            Map<String, String> bundlerHolders
     ) {
         for (FieldToGenerate field : allFields) {
-            MethodSpec methodSpec = MethodSpec
-                    .methodBuilder("get" + toCamelCase(field.getName()))
+            String camelCaseName = toCamelCase(field.getName());
+            boolean isBoxed = field.hasPresenceBit() && !field.getTypeName().isPrimitive();
+
+            MethodSpec.Builder getter = MethodSpec
+                    .methodBuilder("get" + camelCaseName)
                     .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
-                    .returns(TypeName.get(field.getType()))
-                    .addStatement("return $L", field.getName())
-                    .build();
-            methods.add(methodSpec);
+                    .returns(field.getTypeName());
+            addGetterPrologue(annotatedClass, getter, field, bundlerHolders);
+            if (annotatedClass.isLazy()) {
+                fields.add(FieldSpec.builder(TypeName.BOOLEAN, field.getName() + "Decoded", Modifier.PRIVATE).build());
+            }
+            if (annotatedClass.isLazy() && field.hasPresenceBit()) {
+                // shared by the getters and hasXxx()
+                MethodSpec.Builder decode = MethodSpec.methodBuilder("decode" + camelCaseName)
+                        .addModifiers(Modifier.PRIVATE);
+                addLazyDecode(decode, field, bundlerHolders);
+                methods.add(decode.build());
+            }
+            if (isBoxed) {
+                // boxed once, the field does not change until reset()
+                fields.add(FieldSpec.builder(field.getTypeName(), field.getName() + "Boxed", Modifier.PRIVATE).build());
+                getter.beginControlFlow("if ($LBoxed == null && $L)", field.getName(), getMaskCheck(field))
+                        .addStatement("$LBoxed = $T.valueOf($L)", field.getName(), field.getTypeName(), field.getName())
+                        .endControlFlow()
+                        .addStatement("return $LBoxed", field.getName());
+            } else {
+                getter.addStatement("return $L", field.getName());
+            }
+            methods.add(getter.build());
+
+            if (field.hasPresenceBit()) {
+                MethodSpec.Builder has = MethodSpec.methodBuilder("has" + camelCaseName)
+                        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                        .returns(TypeName.BOOLEAN);
+                addGetterPrologue(annotatedClass, has, field, bundlerHolders);
+                methods.add(has.addStatement("return $L", getMaskCheck(field)).build());
+            }
+            if (isBoxed) {
+                // reads the value without boxing it
+                MethodSpec.Builder getterWithDefault = MethodSpec.methodBuilder("get" + camelCaseName)
+                        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                        .addParameter(field.getStorageTypeName(), "defaultValue")
+                        .returns(field.getStorageTypeName());
+                addGetterPrologue(annotatedClass, getterWithDefault, field, bundlerHolders);
+                methods.add(getterWithDefault
+                        .addStatement("return $L ? $L : defaultValue", getMaskCheck(field), field.getName())
+                        .build());
+            }
 
             FieldSpec fieldSpec = FieldSpec
-                    .builder(TypeName.get(field.getType()), field.getName(), Modifier.PRIVATE)
+                    .builder(field.getStorageTypeName(), field.getName(), Modifier.PRIVATE)
                     .build();
             fields.add(fieldSpec);
         }
+        for (int i = 0; i < getPresenceMaskCount(allFields); i++) {
+            fields.add(FieldSpec.builder(TypeName.LONG, "presence" + i, Modifier.PRIVATE).build());
+        }
+    }
+
+    /**
+     * Adds the recycle check and, for lazy Result classes, the decoding of the field on first access.
+     */
+    private void addGetterPrologue(
+            AnnotatedClass annotatedClass,
+            MethodSpec.Builder method,
+            FieldToGenerate field,
+            Map<String, String> bundlerHolders
+    ) {
+        if (annotatedClass.isRecyclable()) {
+            method.addStatement("checkNotRecycled()");
+        }
+        if (annotatedClass.isLazy() && field.hasPresenceBit()) {
+            method.addStatement("decode$L()", toCamelCase(field.getName()));
+        } else if (annotatedClass.isLazy()) {
+            addLazyDecode(method, field, bundlerHolders);
+        }
+    }
+
+    /**
+     * Reads the field from the kept Intent on first access. The flag is set once the value is stored.
+     */
+    private void addLazyDecode(MethodSpec.Builder method, FieldToGenerate field, Map<String, String> bundlerHolders) {
+        String decodedFlag = field.getName() + "Decoded";
+        method.beginControlFlow("if (!$L)", decodedFlag)
+                .beginControlFlow("if (source != null)");
+        addReadFromIntent(method, field, "", "source", "sourceBundle()", bundlerHolders);
+        method.endControlFlow()
+                .addStatement("$L = true", decodedFlag)
+                .endControlFlow();
+    }
+
+    private static String getPresenceMask(FieldToGenerate field) {
+        return "presence" + field.getPresenceBit() / 64;
+    }
+
+    private static String getPresenceFlag(FieldToGenerate field) {
+        return "0x" + Long.toHexString(1L << (field.getPresenceBit() % 64)) + "L";
+    }
+
+    /**
+     * @return the expression that checks the presence bit of the field in the Result class itself.
+     */
+    private static String getMaskCheck(FieldToGenerate field) {
+        return "(" + getPresenceMask(field) + " & " + getPresenceFlag(field) + ") != 0";
+    }
+
+    /**
+     * @return the expression that checks whether the field is present, decoding it first if the
+     * Result class is lazy.
+     */
+    private static String getPresenceCheck(AnnotatedClass annotatedClass, FieldToGenerate field) {
+        if (annotatedClass.isLazy()) {
+            return "has" + toCamelCase(field.getName()) + "()";
+        }
+        return getMaskCheck(field);
+    }
+
+    private static int getPresenceMaskCount(List<FieldToGenerate> allFields) {
+        int bits = 0;
+        for (FieldToGenerate field : allFields) {
+            if (field.hasPresenceBit()) {
+                bits++;
+            }
+        }
+        return (bits + 63) / 64;
+    }
+
+    /**
+     * @return the expression that reads the field value inside the Result class.
+     */
+    private static String getValue(AnnotatedClass annotatedClass, FieldToGenerate field) {
+        // fields with a presence bit are decoded by the presence check that guards them
+        if (annotatedClass.isLazy() && !field.hasPresenceBit()) {
+            return "get" + toCamelCase(field.getName()) + "()";
+        }
+        return field.getName();
+    }
+
+    /**
+     * Creates the pool of a recyclable Result class with obtain(), reset(), recycle() and the
+     * with(Intent) overload that takes its instance from the pool.
+     */
+    private void createRecyclingMembers(
+            AnnotatedClass annotatedClass,
+            String resultClassSimpleName,
+            ClassName resultClassName,
+            List<MethodSpec> methods,
+            List<FieldSpec> fields,
+            List<FieldToGenerate> allFields,
+            TypeName intentType
+    ) {
+        fields.add(FieldSpec.builder(ArrayTypeName.of(resultClassName), "POOL", Modifier.PRIVATE, Modifier.STATIC,
+                Modifier.FINAL)
+                .initializer("new $L[$L]", resultClassSimpleName, annotatedClass.getPoolSize())
+                .build());
+        fields.add(FieldSpec.builder(TypeName.INT, "poolSize", Modifier.PRIVATE, Modifier.STATIC).build());
+        // only the thread that initialized the class, usually the main thread, uses the pool, so it needs no lock
+        fields.add(FieldSpec.builder(Thread.class, "POOL_OWNER", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.currentThread()", Thread.class)
+                .build());
+        fields.add(FieldSpec.builder(TypeName.BOOLEAN, "recycled", Modifier.PRIVATE).build());
+
+        methods.add(MethodSpec.methodBuilder("with")
+                .returns(resultClassName)
+                .addModifiers(Modifier.PUBLIC)
+                .addModifiers(Modifier.STATIC)
+                .addParameter(intentType, "intent")
+                .addStatement("return with(intent, null)")
+                .build());
+
+        methods.add(MethodSpec.methodBuilder("obtain")
+                .returns(resultClassName)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .beginControlFlow("if (poolSize > 0 && $T.currentThread() == POOL_OWNER)", Thread.class)
+                .addStatement("$L result = POOL[--poolSize]", resultClassSimpleName)
+                .addStatement("POOL[poolSize] = null")
+                .addStatement("result.recycled = false")
+                .addStatement("return result")
+                .endControlFlow()
+                .addStatement("return new $L()", resultClassSimpleName)
+                .build());
+
+        MethodSpec.Builder reset = MethodSpec.methodBuilder("reset")
+                .returns(resultClassName)
+                .addModifiers(Modifier.PRIVATE)
+                .addStatement("checkNotRecycled()");
+        for (FieldToGenerate field : allFields) {
+            reset.addStatement("$L = $L", field.getName(), getDefaultValue(field.getStorageTypeName()));
+            if (field.hasPresenceBit() && !field.getTypeName().isPrimitive()) {
+                reset.addStatement("$LBoxed = null", field.getName());
+            }
+            if (annotatedClass.isLazy()) {
+                reset.addStatement("$LDecoded = false", field.getName());
+            }
+        }
+        for (int i = 0; i < getPresenceMaskCount(allFields); i++) {
+            reset.addStatement("presence$L = 0L", i);
+        }
+        if (annotatedClass.isLazy()) {
+            reset.addStatement("source = null");
+            if (countBundleOnlyFields(allFields) > 0) {
+                reset.addStatement("sourceBundle = null");
+            }
+        }
+        methods.add(reset.addStatement("return this").build());
+
+        methods.add(MethodSpec.methodBuilder("recycle")
+                .addJavadoc("Clears this result and returns it to the pool. It must not be used afterwards. Only the\n")
+                .addJavadoc("thread that initialized the class, usually the main thread, pools instances.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("reset()")
+                .addStatement("recycled = true")
+                .beginControlFlow("if (poolSize < POOL.length && $T.currentThread() == POOL_OWNER)", Thread.class)
+                .addStatement("POOL[poolSize++] = this")
+                .endControlFlow()
+                .build());
+
+        methods.add(MethodSpec.methodBuilder("checkNotRecycled")
+                .addModifiers(Modifier.PRIVATE)
+                .beginControlFlow("if (recycled)")
+                .addStatement(
+                        "throw new $T($S)",
+                        IllegalStateException.class,
+                        resultClassSimpleName + " was used after recycle()"
+                )
+                .endControlFlow()
+                .build());
+    }
+
+    private static String getDefaultValue(TypeName type) {
+        if (!type.isPrimitive()) {
+            return "null";
+        }
+        return type.equals(TypeName.BOOLEAN) ? "false" : "0";
     }
 
     private TypeSpec.Builder createBuilderInnerClass(
@@ -303,8 +2771,8 @@ public class ResultProcessor extends AbstractProcessor {
 
         createBuilderClassConstructor(annotatedClass, resultBuilder);
         createBuilderClassFields(allFields, resultBuilder);
-        createBuilderClassOptionalSetters(annotatedClass, resultBuilder);
-        createBuilderClassBuild(resultClassSimpleName, resultClassName, allFields, resultBuilder);
+        createBuilderClassOptionalSetters(annotatedClass, resultClassName, resultBuilder);
+        createBuilderClassBuild(annotatedClass, resultClassSimpleName, resultClassName, allFields, resultBuilder);
 
         return resultBuilder;
     }
@@ -316,7 +2784,7 @@ public class ResultProcessor extends AbstractProcessor {
         MethodSpec.Builder builderConstructor = MethodSpec.constructorBuilder()
                 .addModifiers(Modifier.PUBLIC);
         for (FieldToGenerate field : annotatedClass.getRequiredFields()) {
-            builderConstructor.addParameter(TypeName.get(field.getType()), field.getName());
+            builderConstructor.addParameter(field.getTypeName(), field.getName());
             builderConstructor.addStatement("this.$L = $L", field.getName(), field.getName());
         }
         resultBuilder.addMethod(builderConstructor.build());
@@ -327,26 +2795,43 @@ public class ResultProcessor extends AbstractProcessor {
             TypeSpec.Builder resultBuilder
     ) {
         for (FieldToGenerate field : allFields) {
-            resultBuilder.addField(TypeName.get(field.getType()), field.getName(), Modifier.PRIVATE);
+            resultBuilder.addField(field.getStorageTypeName(), field.getName(), Modifier.PRIVATE);
+        }
+        for (int i = 0; i < getPresenceMaskCount(allFields); i++) {
+            resultBuilder.addField(TypeName.LONG, "presence" + i, Modifier.PRIVATE);
         }
     }
 
     private void createBuilderClassOptionalSetters(
             AnnotatedClass annotatedClass,
+            ClassName resultClassName,
             TypeSpec.Builder resultBuilder
     ) {
         for (FieldToGenerate field : annotatedClass.getOptionalFields()) {
-            resultBuilder.addMethod(MethodSpec.methodBuilder("set" + toCamelCase(field.getName()))
-                    .returns(ClassName.get(annotatedClass.getName().toString() + "Result", "Builder"))
+            MethodSpec.Builder setter = MethodSpec.methodBuilder("set" + toCamelCase(field.getName()))
+                    .returns(resultClassName.nestedClass("Builder"))
                     .addModifiers(Modifier.PUBLIC)
-                    .addParameter(TypeName.get(field.getType()), field.getName())
-                    .addStatement("this.$L = $L", field.getName(), field.getName())
-                    .addStatement("return this")
-                    .build());
+                    .addParameter(field.getTypeName(), field.getName());
+            if (!field.hasPresenceBit()) {
+                setter.addStatement("this.$L = $L", field.getName(), field.getName());
+            } else if (field.getTypeName().isPrimitive()) {
+                setter.addStatement("this.$L = $L", field.getName(), field.getName())
+                        .addStatement("$L |= $L", getPresenceMask(field), getPresenceFlag(field));
+            } else {
+                setter.beginControlFlow("if ($L != null)", field.getName())
+                        .addStatement("this.$L = $L", field.getName(), field.getName())
+                        .addStatement("$L |= $L", getPresenceMask(field), getPresenceFlag(field))
+                        .nextControlFlow("else")
+                        .addStatement("this.$L = $L", field.getName(), getDefaultValue(field.getStorageTypeName()))
+                        .addStatement("$L &= ~$L", getPresenceMask(field), getPresenceFlag(field))
+                        .endControlFlow();
+            }
+            resultBuilder.addMethod(setter.addStatement("return this").build());
         }
     }
 
     private void createBuilderClassBuild(
+            AnnotatedClass annotatedClass,
             String resultClassSimpleName,
             ClassName resultClassName,
             List<FieldToGenerate> allFields,
@@ -354,16 +2839,62 @@ public class ResultProcessor extends AbstractProcessor {
     ) {
         MethodSpec.Builder builderMethodSpec = MethodSpec.methodBuilder("build")
                 .returns(resultClassName)
-                .addModifiers(Modifier.PUBLIC)
-                .addStatement("$L result = new $L()", resultClassSimpleName, resultClassSimpleName);
+                .addModifiers(Modifier.PUBLIC);
+        if (annotatedClass.isRecyclable()) {
+            builderMethodSpec.addStatement("$L result = obtain()", resultClassSimpleName);
+        } else {
+            builderMethodSpec.addStatement("$L result = new $L()", resultClassSimpleName, resultClassSimpleName);
+        }
         for (FieldToGenerate field : allFields) {
             builderMethodSpec.addStatement("result.$L = $L", field.getName(), field.getName());
         }
+        for (int i = 0; i < getPresenceMaskCount(allFields); i++) {
+            builderMethodSpec.addStatement("result.presence$L = presence$L", i, i);
+        }
         builderMethodSpec.addStatement("return result");
         resultBuilder.addMethod(builderMethodSpec.build());
     }
 
     protected String getOperation(FieldToGenerate fieldToGenerate) {
+        String op = getCachedOperation(fieldToGenerate);
+        // reported for every field, also when the operation comes from the cache
+        if ("Serializable".equals(op)) {
+            messager.printMessage(
+                    Diagnostic.Kind.WARNING,
+                    String.format(
+                            "It's better not to use Serializable. Consider @%s implement Parcelable in @%s",
+                            fieldToGenerate.getName(),
+                            fieldToGenerate.getActivityElement().getQualifiedName()
+                    ),
+                    fieldToGenerate.getActivityElement()
+            );
+        }
+        return op;
+    }
+
+    /**
+     * Resolves the operation of the field type once. Unsupported and erroneous types are not
+     * memoized, as a later round may generate the missing class.
+     */
+    private String getCachedOperation(FieldToGenerate fieldToGenerate) {
+        long start = System.nanoTime();
+        try {
+            String typeString = fieldToGenerate.getTypeString();
+            if (typeCache.hasOperation(typeString)) {
+                return typeCache.getOperation(typeString);
+            }
+            String op = resolveOperation(fieldToGenerate);
+            TypeMirror type = fieldToGenerate.getType();
+            if (op != null && (type == null || type.getKind() != TypeKind.ERROR)) {
+                typeCache.putOperation(typeString, op);
+            }
+            return op;
+        } finally {
+            stats.addTime(ProcessingStats.PHASE_OPERATION, start);
+        }
+    }
+
+    private String resolveOperation(FieldToGenerate fieldToGenerate) {
         String op = ARGUMENT_TYPES.get(fieldToGenerate.getRawType());
         if (op != null) {
             if (fieldToGenerate.isArray()) {
@@ -373,44 +2904,30 @@ public class ResultProcessor extends AbstractProcessor {
             }
         }
 
-        Elements elements = processingEnv.getElementUtils();
         TypeMirror type = fieldToGenerate.getType();
         Types types = processingEnv.getTypeUtils();
-        String[] arrayListTypes = new String[]{
-                String.class.getName(), Integer.class.getName(), CharSequence.class.getName()
-        };
-        String[] arrayListOps =
-                new String[]{"StringArrayList", "IntegerArrayList", "CharSequenceArrayList"};
-        for (int i = 0; i < arrayListTypes.length; i++) {
-            TypeMirror tm = getArrayListType(arrayListTypes[i]);
+        for (int i = 0; i < ARRAY_LIST_TYPES.length; i++) {
+            TypeMirror tm = typeCache.getArrayListType(ARRAY_LIST_TYPES[i]);
             if (types.isAssignable(type, tm)) {
-                return arrayListOps[i];
+                return ARRAY_LIST_OPS[i];
             }
         }
 
-        if (types.isAssignable(type, elements.getTypeElement("android.os.Parcelable").asType())) {
+        if (types.isAssignable(type, typeCache.getType("android.os.Parcelable"))) {
             return "Parcelable";
         }
 
-        if (types.isAssignable(type, elements.getTypeElement(Serializable.class.getName()).asType())) {
-            messager.printMessage(
-                    Diagnostic.Kind.WARNING,
-                    String.format(
-                            "It's better not to use Serializable. Consider @%s implement Parcelable in @%s",
-                            fieldToGenerate.getName(),
-                            fieldToGenerate.getActivityElement().getQualifiedName()
-                    )
-            );
+        if (types.isAssignable(type, typeCache.getType(Serializable.class.getName()))) {
             return "Serializable";
         }
 
         if (types.isAssignable(type,
-                getWildcardType(ArrayList.class.getName(), "android.os.Parcelable"))) {
+                typeCache.getWildcardType(ArrayList.class.getName(), "android.os.Parcelable"))) {
             return "ParcelableArrayList";
         }
 
         TypeMirror sparseParcelableArray =
-                getWildcardType("android.util.SparseArray", "android.os.Parcelable");
+                typeCache.getWildcardType("android.util.SparseArray", "android.os.Parcelable");
         if (types.isAssignable(type, sparseParcelableArray)) {
             return "SparseParcelableArray";
         }
@@ -418,20 +2935,7 @@ public class ResultProcessor extends AbstractProcessor {
         return null;
     }
 
-    private TypeMirror getWildcardType(String type, String elementType) {
-        TypeElement arrayList = processingEnv.getElementUtils().getTypeElement(type);
-        TypeMirror elType = processingEnv.getElementUtils().getTypeElement(elementType).asType();
-        return processingEnv.getTypeUtils()
-                .getDeclaredType(arrayList, processingEnv.getTypeUtils().getWildcardType(elType, null));
-    }
-
-    private TypeMirror getArrayListType(String elementType) {
-        TypeElement arrayList = processingEnv.getElementUtils().getTypeElement("java.util.ArrayList");
-        TypeMirror elType = processingEnv.getElementUtils().getTypeElement(elementType).asType();
-        return processingEnv.getTypeUtils().getDeclaredType(arrayList, elType);
-    }
-
-    private static String toCamelCase(String string) {
+    static String toCamelCase(String string) {
         StringBuilder sb = new StringBuilder(string);
         sb.replace(0, 1, string.substring(0, 1).toUpperCase());
         return sb.toString();
@@ -0,0 +1,91 @@
+package com.rsinukov.activityresult.processor;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the type mirrors used by {@link ResultProcessor} once per processing environment and
+ * memoizes the bundle operation found for every field type.
+ * <p>
+ * An instance belongs to a single processor instance, so nothing is kept between compilations
+ * when the compiler runs inside a long-lived daemon.
+ */
+public class TypeCache {
+
+    private final Elements elementUtils;
+    private final Types typeUtils;
+    private final Map<String, TypeMirror> types = new HashMap<String, TypeMirror>();
+    private final Map<String, String> operations = new HashMap<String, String>();
+
+    public TypeCache(Elements elementUtils, Types typeUtils) {
+        this.elementUtils = elementUtils;
+        this.typeUtils = typeUtils;
+    }
+
+    /**
+     * @return the type of the class or null if the class is not on the classpath. A missing class
+     * is looked up again on the next call, as a later round may generate it.
+     */
+    public TypeMirror getType(String className) {
+        TypeMirror type = types.get(className);
+        if (type == null) {
+            TypeElement element = elementUtils.getTypeElement(className);
+            if (element == null) {
+                return null;
+            }
+            type = element.asType();
+            types.put(className, type);
+        }
+        return type;
+    }
+
+    /**
+     * @return the type {@code ArrayList<elementType>}.
+     */
+    public TypeMirror getArrayListType(String elementType) {
+        String key = "java.util.ArrayList<" + elementType + ">";
+        TypeMirror type = types.get(key);
+        if (type == null) {
+            TypeElement arrayList = elementUtils.getTypeElement("java.util.ArrayList");
+            type = typeUtils.getDeclaredType(arrayList, getType(elementType));
+            types.put(key, type);
+        }
+        return type;
+    }
+
+    /**
+     * @return the type {@code type<? extends elementType>}.
+     */
+    public TypeMirror getWildcardType(String type, String elementType) {
+        String key = type + "<? extends " + elementType + ">";
+        TypeMirror wildcardType = types.get(key);
+        if (wildcardType == null) {
+            TypeElement typeElement = elementUtils.getTypeElement(type);
+            wildcardType = typeUtils.getDeclaredType(
+                    typeElement,
+                    typeUtils.getWildcardType(getType(elementType), null)
+            );
+            types.put(key, wildcardType);
+        }
+        return wildcardType;
+    }
+
+    public boolean hasOperation(String type) {
+        return operations.containsKey(type);
+    }
+
+    /**
+     * @return the memoized operation for the canonical type name. Only supported types are memoized.
+     */
+    public String getOperation(String type) {
+        return operations.get(type);
+    }
+
+    public void putOperation(String type, String operation) {
+        operations.put(type, operation);
+    }
+}
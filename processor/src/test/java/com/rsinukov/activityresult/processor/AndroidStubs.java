@@ -0,0 +1,164 @@
+package com.rsinukov.activityresult.processor;
+
+/**
+ * The Android jar is not on the test classpath, so generated code compiles against stubs of
+ * Bundle and Intent. They declare the accessors the generated code calls for the primitive, String
+ * and array types. Bundle keeps its values in a HashMap and reads a missing or mistyped value as
+ * the default, like the Android one, so the generated code can also run on the JVM through
+ * {@link ProcessorCompiler.Result#createClassLoader()}.
+ */
+class AndroidStubs {
+
+    // the accessor suffix and the type of the value
+    private static final String[][] VALUE_TYPES = {
+            {"String", "String"},
+            {"Int", "int"},
+            {"Long", "long"},
+            {"Boolean", "boolean"},
+            {"Short", "short"},
+            {"Byte", "byte"},
+            {"Char", "char"},
+            {"Float", "float"},
+            {"Double", "double"},
+            {"StringArray", "String[]"},
+            {"IntArray", "int[]"},
+            {"LongArray", "long[]"},
+            {"BooleanArray", "boolean[]"},
+            {"ShortArray", "short[]"},
+            {"ByteArray", "byte[]"},
+            {"CharArray", "char[]"},
+            {"FloatArray", "float[]"},
+            {"DoubleArray", "double[]"},
+            {"StringArrayList", "java.util.ArrayList<String>"},
+            {"IntegerArrayList", "java.util.ArrayList<Integer>"},
+            {"Serializable", "java.io.Serializable"},
+            {"Bundle", "android.os.Bundle"},
+    };
+
+    private AndroidStubs() {
+    }
+
+    static ProcessorCompiler addTo(ProcessorCompiler compiler) {
+        return compiler
+                .addSource("android.os.Parcelable", "package android.os;\npublic interface Parcelable {}\n")
+                .addSource("android.os.Bundle", createBundle())
+                .addSource("android.content.Intent", createIntent());
+    }
+
+    private static String createBundle() {
+        StringBuilder source = new StringBuilder()
+                .append("package android.os;\n")
+                .append("@SuppressWarnings(\"unchecked\")\n")
+                .append("public final class Bundle implements Parcelable {\n")
+                .append("  private final java.util.HashMap<String, Object> map;\n")
+                .append("  public Bundle() { map = new java.util.HashMap<String, Object>(); }\n")
+                .append("  public Bundle(int capacity) { map = new java.util.HashMap<String, Object>(capacity); }\n")
+                .append("  public Bundle(Bundle bundle) { map = new java.util.HashMap<String, Object>(bundle.map); }\n")
+                .append("  public Object get(String key) { return map.get(key); }\n")
+                .append("  public boolean containsKey(String key) { return map.containsKey(key); }\n")
+                .append("  public java.util.Set<String> keySet() { return map.keySet(); }\n")
+                .append("  public int size() { return map.size(); }\n")
+                .append("  public boolean isEmpty() { return map.isEmpty(); }\n")
+                .append("  public void remove(String key) { map.remove(key); }\n")
+                .append("  public void putAll(Bundle bundle) { map.putAll(bundle.map); }\n")
+                .append("  public <T extends Parcelable> T getParcelable(String key) {\n")
+                .append("    Object value = map.get(key);\n")
+                .append("    return value instanceof Parcelable ? (T) value : null;\n")
+                .append("  }\n")
+                .append("  public void putParcelable(String key, Parcelable value) { map.put(key, value); }\n");
+        for (String[] valueType : VALUE_TYPES) {
+            String type = valueType[1];
+            String boxType = getBoxType(type);
+            // only primitives are read with a default value
+            String parameters = isPrimitive(type) ? "String key, " + type + " defaultValue" : "String key";
+            if (isPrimitive(type)) {
+                source.append("  public ").append(type).append(" get").append(valueType[0]).append("(String key) {")
+                        .append(" return get").append(valueType[0]).append("(key, ").append(getDefault(type))
+                        .append("); }\n");
+            }
+            source.append("  public ").append(type).append(" get").append(valueType[0])
+                    .append("(").append(parameters).append(") {\n")
+                    .append("    Object value = map.get(key);\n")
+                    .append("    return value instanceof ").append(boxType).append(" ? (").append(isPrimitive(type) ? boxType : type)
+                    .append(") value : ").append(isPrimitive(type) ? "defaultValue" : "null").append(";\n")
+                    .append("  }\n")
+                    .append("  public void put").append(valueType[0])
+                    .append("(String key, ").append(type).append(" value) { map.put(key, value); }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    private static String createIntent() {
+        StringBuilder source = new StringBuilder()
+                .append("package android.content;\n")
+                .append("import android.os.Bundle;\n")
+                .append("public class Intent implements android.os.Parcelable {\n")
+                .append("  // how many times getExtras() copied the extras\n")
+                .append("  public static int extrasCopies;\n")
+                .append("  private Bundle extras;\n")
+                .append("  public Intent() {}\n")
+                .append("  public Bundle getExtras() {\n")
+                .append("    if (extras == null) return null;\n")
+                .append("    extrasCopies++;\n")
+                .append("    return new Bundle(extras);\n")
+                .append("  }\n")
+                .append("  public Intent putExtras(Bundle bundle) { extras().putAll(bundle); return this; }\n")
+                .append("  public boolean hasExtra(String name) { return extras != null && extras.containsKey(name); }\n")
+                .append("  public void removeExtra(String name) { if (extras != null) extras.remove(name); }\n")
+                .append("  public <T extends android.os.Parcelable> T getParcelableExtra(String name) {\n")
+                .append("    return extras == null ? null : extras.<T>getParcelable(name);\n")
+                .append("  }\n")
+                .append("  public Intent putExtra(String name, android.os.Parcelable value) {\n")
+                .append("    extras().putParcelable(name, value);\n")
+                .append("    return this;\n")
+                .append("  }\n")
+                .append("  private Bundle extras() {\n")
+                .append("    if (extras == null) extras = new Bundle();\n")
+                .append("    return extras;\n")
+                .append("  }\n");
+        for (String[] valueType : VALUE_TYPES) {
+            String type = valueType[1];
+            // primitive extras are read with a default value
+            boolean isPrimitive = isPrimitive(type);
+            String defaultValue = isPrimitive ? "defaultValue" : "null";
+            source.append("  public ").append(type).append(" get").append(valueType[0]).append("Extra(String name")
+                    .append(isPrimitive ? ", " + type + " defaultValue" : "")
+                    .append(") { return extras == null ? ").append(defaultValue).append(" : extras.get")
+                    .append(valueType[0]).append(isPrimitive ? "(name, defaultValue)" : "(name)").append("; }\n");
+            source.append("  public Intent put").append(valueType[0].endsWith("ArrayList") ? valueType[0] : "")
+                    .append("Extra(String name, ").append(type).append(" value) {")
+                    .append(" extras().put").append(valueType[0]).append("(name, value); return this; }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    private static boolean isPrimitive(String type) {
+        return !type.contains(".") && Character.isLowerCase(type.charAt(0)) && !type.endsWith("]");
+    }
+
+    private static String getBoxType(String type) {
+        if (type.equals("int")) {
+            return "Integer";
+        } else if (type.equals("char")) {
+            return "Character";
+        } else if (isPrimitive(type)) {
+            return Character.toUpperCase(type.charAt(0)) + type.substring(1);
+        }
+        // the erasure, as instanceof can not check type arguments
+        int typeArguments = type.indexOf('<');
+        return typeArguments < 0 ? type : type.substring(0, typeArguments);
+    }
+
+    private static String getDefault(String type) {
+        if (type.equals("boolean")) {
+            return "false";
+        } else if (type.equals("char")) {
+            return "'\\0'";
+        } else if (!isPrimitive(type)) {
+            return "null";
+        } else if (type.equals("short") || type.equals("byte")) {
+            return "(" + type + ") 0";
+        }
+        return "0";
+    }
+}
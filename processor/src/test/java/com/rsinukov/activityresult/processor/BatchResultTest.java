@@ -0,0 +1,142 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles a Result class with @BatchResult and runs its Batch through an Intent on the JVM against
+ * the Android stubs.
+ */
+public class BatchResultTest {
+
+    private static final String[][] SOURCES = {
+            {"test.DateBundler", "package test;\n"
+                    + "import android.os.Bundle;\n"
+                    + "import java.util.Date;\n"
+                    + "public class DateBundler implements com.rsinukov.activityresult.CustomBundler<Date> {\n"
+                    + "  @Override public void put(String key, Date value, Bundle bundle) {\n"
+                    + "    bundle.putLong(key, value.getTime());\n"
+                    + "  }\n"
+                    + "  @SuppressWarnings(\"unchecked\")\n"
+                    + "  @Override public <T> T get(String key, Bundle bundle) {\n"
+                    + "    return (T) new Date(bundle.getLong(key));\n"
+                    + "  }\n"
+                    + "}\n"},
+            {"test.ItemActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@BatchResult\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"id\", type = long.class),\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"date\", type = java.util.Date.class, parcel = DateBundler.class),\n"
+                    + "    @ActivityResult(name = \"rank\", type = Integer.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"weight\", type = double.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"note\", type = String.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class ItemActivity {}\n"},
+            {"test.BatchCheck", "package test;\n"
+                    + "import android.os.Bundle;\n"
+                    + "public class BatchCheck {\n"
+                    + "  static ItemActivityResult.Batch fill(int rows) {\n"
+                    + "    ItemActivityResult.Batch batch = new ItemActivityResult.Batch(4);\n"
+                    + "    for (int i = 0; i < rows; i++) {\n"
+                    + "      ItemActivityResult.Builder builder =\n"
+                    + "          new ItemActivityResult.Builder(new java.util.Date(1000L * i), i, \"title\" + i % 3);\n"
+                    + "      if (i % 2 == 0) builder.setRank(i);\n"
+                    + "      if (i == 65) builder.setWeight(0.5d);\n"
+                    + "      if (i % 5 == 0) builder.setNote(\"note\" + i);\n"
+                    + "      batch.add(builder.build());\n"
+                    + "    }\n"
+                    + "    return batch;\n"
+                    + "  }\n"
+                    + "  public static String row(int rows, int index) {\n"
+                    + "    ItemActivityResult.Batch batch = ItemActivityResult.Batch.with(fill(rows).toIntent());\n"
+                    + "    ItemActivityResult result = batch.get(index);\n"
+                    + "    return batch.size() + \"|\" + batch.getId(index) + \"|\" + batch.getTitle(index) + \"|\"\n"
+                    + "        + batch.getDate(index).getTime() + \"|\" + batch.hasRank(index) + \"|\" + batch.getRank(index) + \"|\"\n"
+                    + "        + batch.hasWeight(index) + \"|\" + batch.getWeight(index) + \"|\" + batch.getNote(index) + \"|\"\n"
+                    + "        + result.getId() + \"|\" + result.getTitle() + \"|\" + result.getDate().getTime() + \"|\"\n"
+                    + "        + result.getRank() + \"|\" + result.hasWeight() + \"|\" + result.getNote();\n"
+                    + "  }\n"
+                    + "  public static String columns(int rows) {\n"
+                    + "    Bundle bundle = fill(rows).toIntent().getExtras();\n"
+                    + "    return bundle.getLongArray(\"id\").length + \"|\" + bundle.getStringArray(\"title#values\").length + \"|\"\n"
+                    + "        + bundle.getStringArray(\"note#values\").length + \"|\" + bundle.getLongArray(\"rank#present\").length + \"|\"\n"
+                    + "        + bundle.getLongArray(\"weight#present\").length + \"|\" + bundle.getBundle(\"date\").size();\n"
+                    + "  }\n"
+                    + "  public static String checkIndex(int rows, int index) {\n"
+                    + "    ItemActivityResult.Batch batch = ItemActivityResult.Batch.with(fill(rows).toIntent());\n"
+                    + "    try {\n"
+                    + "      batch.getTitle(index);\n"
+                    + "      return \"no exception\";\n"
+                    + "    } catch (IndexOutOfBoundsException e) {\n"
+                    + "      return e.getMessage();\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+    private Class<?> check;
+
+    @Before
+    public void setUp() throws Exception {
+        root = File.createTempFile("batch", "");
+        assertTrue(root.delete() && root.mkdir());
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        check = result.createClassLoader().loadClass("test.BatchCheck");
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void rowsOfTheFirstWordRoundTrip() throws Exception {
+        assertEquals("70|0|title0|0|true|0|false|0.0|note0|0|title0|0|0|false|note0", row(70, 0));
+        assertEquals("70|1|title1|1000|false|null|false|0.0|null|1|title1|1000|null|false|null", row(70, 1));
+        assertEquals("70|63|title0|63000|false|null|false|0.0|null|63|title0|63000|null|false|null", row(70, 63));
+    }
+
+    @Test
+    public void rowsPastTheFirstPresenceWordRoundTrip() throws Exception {
+        assertEquals("70|64|title1|64000|true|64|false|0.0|null|64|title1|64000|64|false|null", row(70, 64));
+        assertEquals("70|65|title2|65000|false|null|true|0.5|note65|65|title2|65000|null|true|note65", row(70, 65));
+        assertEquals("70|69|title0|69000|false|null|false|0.0|null|69|title0|69000|null|false|null", row(70, 69));
+    }
+
+    @Test
+    public void columnsAreTrimmedToTheSizeAndStringsDeduplicated() throws Exception {
+        // 3 distinct titles, 14 distinct notes, 2 presence words for 70 rows and one date per row
+        assertEquals("70|3|14|2|2|70", check.getMethod("columns", int.class).invoke(null, 70));
+        assertEquals("3|3|1|1|1|3", check.getMethod("columns", int.class).invoke(null, 3));
+    }
+
+    @Test
+    public void rowsOutsideTheBatchAreRejected() throws Exception {
+        assertEquals("Row 70 of 70", checkIndex(70, 70));
+        assertEquals("Row -1 of 70", checkIndex(70, -1));
+        assertEquals("Row 0 of 0", checkIndex(0, 0));
+    }
+
+    private String row(int rows, int index) throws Exception {
+        return (String) check.getMethod("row", int.class, int.class).invoke(null, rows, index);
+    }
+
+    private String checkIndex(int rows, int index) throws Exception {
+        return (String) check.getMethod("checkIndex", int.class, int.class).invoke(null, rows, index);
+    }
+}
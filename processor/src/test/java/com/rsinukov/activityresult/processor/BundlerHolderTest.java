@@ -0,0 +1,65 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shares custom bundlers whose simple names clash or that are nested in other classes.
+ */
+public class BundlerHolderTest {
+
+    private static final String BUNDLER = "implements com.rsinukov.activityresult.CustomBundler<java.util.Date> {\n"
+            + "  @Override public void put(String key, java.util.Date value, android.os.Bundle bundle) {}\n"
+            + "  @Override public <T> T get(String key, android.os.Bundle bundle) { return null; }\n"
+            + "}\n";
+
+    private static final String ACTIVITY = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.*;\n"
+            + "@ActivityResults({\n"
+            + "    @ActivityResult(name = \"a\", type = java.util.Date.class, parcel = a.DateBundler.class),\n"
+            + "    @ActivityResult(name = \"b\", type = java.util.Date.class, parcel = b.DateBundler.class),\n"
+            + "    @ActivityResult(name = \"c\", type = java.util.Date.class, parcel = c.DateBundler.class),\n"
+            + "    @ActivityResult(name = \"d\", type = java.util.Date.class, parcel = d.Outer.DateBundler.class)\n"
+            + "})\n"
+            + "public class DateActivity {}\n";
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("holders", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void clashingBundlersGetNumberedHolders() throws IOException {
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addSource("a.DateBundler", "package a;\npublic class DateBundler " + BUNDLER)
+                .addSource("b.DateBundler", "package b;\npublic class DateBundler " + BUNDLER)
+                .addSource("c.DateBundler", "package c;\npublic class DateBundler " + BUNDLER)
+                .addSource("d.Outer", "package d;\npublic class Outer {\n"
+                        + "  public static class DateBundler " + BUNDLER + "}\n")
+                .addSource("test.DateActivity", ACTIVITY)
+                .compile(new ResultProcessor());
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        String source = result.getGeneratedSource("test.DateActivityResult");
+        assertTrue(source, source.contains("class DateBundlerHolder {"));
+        assertTrue(source, source.contains("class DateBundlerHolder2 {"));
+        assertTrue(source, source.contains("class DateBundlerHolder3 {"));
+        assertTrue(source, source.contains("class DateBundlerHolder4 {"));
+        assertTrue(source, source.contains("new Outer.DateBundler()"));
+    }
+}
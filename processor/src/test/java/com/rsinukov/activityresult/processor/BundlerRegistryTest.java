@@ -0,0 +1,132 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Registers default bundlers with {@link ResultProcessor#OPTION_BUNDLER_REGISTRY} and checks which
+ * one a field uses and where registration errors are reported.
+ */
+public class BundlerRegistryTest {
+
+    private static final String ACTIVITY = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.*;\n"
+            + "@ActivityResults({@ActivityResult(name = \"items\", type = java.util.List.class, isRequired = false)})\n"
+            + "public class ListActivity {}\n";
+
+    private static final String CHECK = "package test;\n"
+            + "public class ListCheck {\n"
+            + "  public static String roundTrip() {\n"
+            + "    java.util.List<String> items = new java.util.ArrayList<String>();\n"
+            + "    items.add(\"a\");\n"
+            + "    items.add(\"b\");\n"
+            + "    android.content.Intent intent = new ListActivityResult.Builder().setItems(items).build().toIntent();\n"
+            + "    return ListActivityResult.with(intent).getItems() + \"|\" + intent.getExtras().getInt(\"items.size\");\n"
+            + "  }\n"
+            + "}\n";
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("registry", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void genericBundlerIsUsedForTheErasedType() throws Exception {
+        ProcessorCompiler.Result result = compiler()
+                .addSource("test.ListBundler", "package test;\n"
+                        + "import android.os.Bundle;\n"
+                        + "import java.util.ArrayList;\n"
+                        + "import java.util.List;\n"
+                        + "@com.rsinukov.activityresult.annotations.BundlerFor(List.class)\n"
+                        + "public class ListBundler<E> implements com.rsinukov.activityresult.CustomBundler<List<E>> {\n"
+                        + "  @Override public void put(String key, List<E> value, Bundle bundle) {\n"
+                        + "    bundle.putInt(key + \".size\", value.size());\n"
+                        + "    bundle.putSerializable(key, new ArrayList<E>(value));\n"
+                        + "  }\n"
+                        + "  @SuppressWarnings(\"unchecked\")\n"
+                        + "  @Override public <T> T get(String key, Bundle bundle) {\n"
+                        + "    return (T) bundle.getSerializable(key);\n"
+                        + "  }\n"
+                        + "}\n")
+                .addSource("test.ListActivity", ACTIVITY)
+                .addSource("test.ListCheck", CHECK)
+                .compile(new ResultProcessor());
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        String source = result.getGeneratedSource("test.ListActivityResult");
+        // get() of a raw ListBundler would return Object
+        assertTrue(source, source.contains("static final CustomBundler<Object> INSTANCE = (CustomBundler) new ListBundler();"));
+        Class<?> check = result.createClassLoader().loadClass("test.ListCheck");
+        assertEquals("[a, b]|2", check.getMethod("roundTrip").invoke(null));
+    }
+
+    @Test
+    public void duplicateForTheSameErasedTypeIsReportedOnceOnTheLaterBundler() throws Exception {
+        ProcessorCompiler.Result result = compiler()
+                .addSource("a.StringListBundler", bundler("a", "StringListBundler", "java.util.List<String>"))
+                .addSource("b.IntegerListBundler", bundler("b", "IntegerListBundler", "java.util.List<Integer>"))
+                .addSource("test.ListActivity", ACTIVITY)
+                .compile(new ResultProcessor());
+
+        assertFalse(result.isSuccess());
+        List<Diagnostic<? extends JavaFileObject>> errors = result.getDiagnostics(Diagnostic.Kind.ERROR);
+        assertEquals(result.getMessages(Diagnostic.Kind.ERROR), 1, errors.size());
+        String message = errors.get(0).getMessage(null);
+        assertTrue(message, message.contains("Both a.StringListBundler and b.IntegerListBundler"));
+        assertTrue(message, message.contains("java.util.List"));
+        assertTrue(errors.get(0).getSource().getName(), errors.get(0).getSource().getName().endsWith("IntegerListBundler.java"));
+    }
+
+    @Test
+    public void invalidBundlerIsReportedOnItselfWithoutStoppingTheOthers() throws Exception {
+        ProcessorCompiler.Result result = compiler()
+                .addSource("a.HiddenBundler", "package a;\n"
+                        + "@com.rsinukov.activityresult.annotations.BundlerFor(java.util.Date.class)\n"
+                        + "class HiddenBundler implements com.rsinukov.activityresult.CustomBundler<java.util.Date> {\n"
+                        + "  @Override public void put(String key, java.util.Date value, android.os.Bundle bundle) {}\n"
+                        + "  @Override public <T> T get(String key, android.os.Bundle bundle) { return null; }\n"
+                        + "}\n")
+                .addSource("b.StringListBundler", bundler("b", "StringListBundler", "java.util.List<String>"))
+                .addSource("test.ListActivity", ACTIVITY)
+                .compile(new ResultProcessor());
+
+        List<Diagnostic<? extends JavaFileObject>> errors = result.getDiagnostics(Diagnostic.Kind.ERROR);
+        assertEquals(result.getMessages(Diagnostic.Kind.ERROR), 1, errors.size());
+        assertTrue(errors.get(0).getSource().getName(), errors.get(0).getSource().getName().endsWith("HiddenBundler.java"));
+        String source = result.getGeneratedSource("test.ListActivityResult");
+        assertTrue(source, source.contains("new StringListBundler()"));
+    }
+
+    private ProcessorCompiler compiler() {
+        return AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addOption("-A" + ResultProcessor.OPTION_BUNDLER_REGISTRY + "=true");
+    }
+
+    private static String bundler(String packageName, String name, String type) {
+        return "package " + packageName + ";\n"
+                + "@com.rsinukov.activityresult.annotations.BundlerFor(java.util.List.class)\n"
+                + "public class " + name + " implements com.rsinukov.activityresult.CustomBundler<" + type + "> {\n"
+                + "  @Override public void put(String key, " + type + " value, android.os.Bundle bundle) {}\n"
+                + "  @Override public <T> T get(String key, android.os.Bundle bundle) { return null; }\n"
+                + "}\n";
+    }
+}
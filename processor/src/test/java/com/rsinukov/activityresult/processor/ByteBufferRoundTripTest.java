@@ -0,0 +1,160 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compiles a Result class with writeTo(ByteBuffer) and readFrom(ByteBuffer) and runs it on the JVM.
+ * Only fields with a binary encoding are used, the marshalled Bundle needs the Android runtime.
+ */
+public class ByteBufferRoundTripTest {
+
+    private static final String ACTIVITY = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResult;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResults;\n"
+            + "@ActivityResults({\n"
+            + "    @ActivityResult(name = \"title\", type = String.class),\n"
+            + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"total\", type = Long.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"ratio\", type = double.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"flag\", type = boolean.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"symbol\", type = Character.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"tags\", type = String[].class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"ids\", type = long[].class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"scores\", type = float[].class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"bytes\", type = byte[].class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"names\", type = java.util.ArrayList.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"when\", type = java.util.Date.class, isRequired = false)\n"
+            + "})\n"
+            + "public class ProfileActivity {}\n";
+
+    // writes a result at the position of the buffer and reads it back
+    private static final String ROUND_TRIP = "package test;\n"
+            + "import java.nio.ByteBuffer;\n"
+            + "import java.util.ArrayList;\n"
+            + "import java.util.Arrays;\n"
+            + "import java.util.Date;\n"
+            + "public class RoundTrip {\n"
+            + "  public static ProfileActivityResult create() {\n"
+            + "    ArrayList<String> names = new ArrayList<String>();\n"
+            + "    names.add(\"a\");\n"
+            + "    names.add(null);\n"
+            + "    return new ProfileActivityResult.Builder(\"t\\u00eftle \\ud83d\\ude00\")\n"
+            + "        .setCount(-7)\n"
+            + "        .setTotal(1L << 40)\n"
+            + "        .setFlag(true)\n"
+            + "        .setTags(new String[]{\"x\", null, \"\"})\n"
+            + "        .setIds(new long[]{1, Long.MIN_VALUE})\n"
+            + "        .setScores(new float[]{0.5f, Float.NaN})\n"
+            + "        .setBytes(new byte[]{1, -1})\n"
+            + "        .setNames(names)\n"
+            + "        .setWhen(new Date(1234567890L))\n"
+            + "        .build();\n"
+            + "  }\n"
+            + "  public static String roundTrip(ByteBuffer buffer) {\n"
+            + "    int start = buffer.position();\n"
+            + "    create().writeTo(buffer);\n"
+            + "    int end = buffer.position();\n"
+            + "    buffer.position(start);\n"
+            + "    ProfileActivityResult result = ProfileActivityResult.readFrom(buffer);\n"
+            + "    if (buffer.position() != end) {\n"
+            + "      throw new IllegalStateException(\"Read \" + (buffer.position() - start) + \" of \" + (end - start));\n"
+            + "    }\n"
+            + "    return describe(result);\n"
+            + "  }\n"
+            + "  public static String describe(ProfileActivityResult result) {\n"
+            + "    return result.getTitle() + '|' + result.getCount() + '|' + result.getTotal() + '|'\n"
+            + "        + result.getRatio() + '|' + result.getFlag() + '|' + result.getSymbol() + '|'\n"
+            + "        + Arrays.toString(result.getTags()) + '|' + Arrays.toString(result.getIds()) + '|'\n"
+            + "        + Arrays.toString(result.getScores()) + '|' + Arrays.toString(result.getBytes()) + '|'\n"
+            + "        + result.getNames() + '|' + result.getWhen().getTime();\n"
+            + "  }\n"
+            + "}\n";
+
+    private static File root;
+    private static ClassLoader classLoader;
+
+    @BeforeClass
+    public static void compile() throws Exception {
+        root = File.createTempFile("bytebuffer", "");
+        assertTrue(root.delete() && root.mkdir());
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addSource("test.ProfileActivity", ACTIVITY)
+                .addSource("test.RoundTrip", ROUND_TRIP)
+                .addOption("-Aactivityresult.byteBuffer=true")
+                .compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        classLoader = new URLClassLoader(
+                new URL[]{result.getClassesDir().toURI().toURL()},
+                ByteBufferRoundTripTest.class.getClassLoader()
+        );
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void heapBuffer() throws Exception {
+        assertRoundTrip(ByteBuffer.allocate(1024));
+    }
+
+    @Test
+    public void directBuffer() throws Exception {
+        assertRoundTrip(ByteBuffer.allocateDirect(1024));
+    }
+
+    @Test
+    public void littleEndianBuffers() throws Exception {
+        assertRoundTrip(ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN));
+        assertRoundTrip(ByteBuffer.allocateDirect(1024).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    @Test
+    public void bufferWithOffsets() throws Exception {
+        // a slice of an array has an array offset, and the result is written at a position
+        ByteBuffer slice = ByteBuffer.wrap(new byte[1100], 37, 1000).slice();
+        slice.position(13);
+        assertRoundTrip(slice);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(1024);
+        direct.position(5);
+        assertRoundTrip(direct.slice().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    @Test
+    public void otherLayoutIsRejected() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.put((byte) 1).putInt(42).flip();
+        Method readFrom = classLoader.loadClass("test.ProfileActivityResult").getMethod("readFrom", ByteBuffer.class);
+        try {
+            readFrom.invoke(null, buffer);
+            fail("readFrom() accepted a buffer with another schema");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    private static void assertRoundTrip(ByteBuffer buffer) throws Exception {
+        Class<?> roundTrip = classLoader.loadClass("test.RoundTrip");
+        Class<?> resultClass = classLoader.loadClass("test.ProfileActivityResult");
+        Object expected = roundTrip.getMethod("describe", resultClass)
+                .invoke(null, roundTrip.getMethod("create").invoke(null));
+        assertEquals(expected, roundTrip.getMethod("roundTrip", ByteBuffer.class).invoke(null, buffer));
+    }
+}
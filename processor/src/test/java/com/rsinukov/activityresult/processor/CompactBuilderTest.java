@@ -0,0 +1,91 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles Result classes in the compact mode and checks that build() hands the Builder values over
+ * without copying them, while a reused Builder does not change the results it built.
+ */
+public class CompactBuilderTest {
+
+    private static final String HEADER = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.*;\n";
+
+    private static final String[][] SOURCES = {
+            {"test.CountActivity", HEADER
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class CountActivity {}\n"},
+            {"test.TitleActivity", HEADER
+                    + "@ActivityResults({@ActivityResult(name = \"title\", type = String.class)})\n"
+                    + "public class TitleActivity {}\n"},
+            {"test.BuilderCheck", "package test;\n"
+                    + "public class BuilderCheck {\n"
+                    + "  static Object values(Object owner) throws Exception {\n"
+                    + "    java.lang.reflect.Field field = owner.getClass().getDeclaredField(\"values\");\n"
+                    + "    field.setAccessible(true);\n"
+                    + "    return field.get(owner);\n"
+                    + "  }\n"
+                    + "  public static String reuse() throws Exception {\n"
+                    + "    CountActivityResult.Builder builder = new CountActivityResult.Builder(\"t\").setCount(1);\n"
+                    + "    CountActivityResult first = builder.build();\n"
+                    + "    boolean handedOver = values(first) == values(builder);\n"
+                    + "    CountActivityResult second = builder.setCount(2).build();\n"
+                    + "    CountActivityResult decoded = CountActivityResult.with(second.toIntent());\n"
+                    + "    return handedOver + \"|\" + (values(first) != values(second)) + \"|\"\n"
+                    + "        + first.getCount() + \"|\" + second.getCount() + \"|\" + decoded.getTitle() + decoded.getCount();\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("compact", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void buildHandsTheValuesOver() throws Exception {
+        ProcessorCompiler.Result result = compile();
+        Class<?> check = result.createClassLoader().loadClass("test.BuilderCheck");
+        assertEquals("true|true|1|2|t2", check.getMethod("reuse").invoke(null));
+    }
+
+    @Test
+    public void builderWithoutSettersNeverCopies() throws Exception {
+        String source = compile().getGeneratedSource("test.TitleActivityResult");
+        assertTrue(source, source.contains("return new TitleActivityResult(values);"));
+        assertFalse(source, source.contains("copy()"));
+        assertFalse(source, source.contains("ownValues"));
+    }
+
+    private ProcessorCompiler.Result compile() throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addOption("-A" + ResultProcessor.OPTION_COMPACT + "=true");
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result;
+    }
+}
@@ -0,0 +1,234 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles Result classes in the direct Intent mode, runs toIntent(), writeTo(Intent) and
+ * with(Intent) on the JVM against the Android stubs and compares the decoded fields. The fields
+ * cover every operation kind: required wrappers, optional primitives and wrappers, Strings, arrays,
+ * lists, Serializable, Parcelable, Bundle, enum, custom bundler and nested Result fields.
+ */
+public class DirectIntentRoundTripTest {
+
+    private static final String HEADER = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.*;\n";
+
+    private static final String FIELDS = "@ActivityResults({\n"
+            + "    @ActivityResult(name = \"count\", type = Integer.class),\n"
+            + "    @ActivityResult(name = \"id\", type = int.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"rank\", type = Integer.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"ratio\", type = double.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"flag\", type = boolean.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"symbol\", type = Character.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"title\", type = String.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"tags\", type = String[].class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"ids\", type = long[].class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"names\", type = java.util.ArrayList.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"when\", type = java.util.Date.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"point\", type = Point.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"state\", type = android.os.Bundle.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"status\", type = Status.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"stamp\", type = java.util.Date.class, parcel = DateBundler.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"owner\", type = TotalActivityResult.class, isRequired = false)\n"
+            + "})\n";
+
+    private static final String[][] SOURCES = {
+            {"test.DateBundler", "package test;\n"
+                    + "import android.os.Bundle;\n"
+                    + "import com.rsinukov.activityresult.CustomBundler;\n"
+                    + "public class DateBundler implements CustomBundler<java.util.Date> {\n"
+                    + "  @Override public void put(String key, java.util.Date value, Bundle bundle) {\n"
+                    + "    if (value != null) bundle.putLong(key, value.getTime());\n"
+                    + "  }\n"
+                    + "  @SuppressWarnings(\"unchecked\")\n"
+                    + "  @Override public <T> T get(String key, Bundle bundle) {\n"
+                    + "    return bundle.containsKey(key) ? (T) new java.util.Date(bundle.getLong(key)) : null;\n"
+                    + "  }\n"
+                    + "}\n"},
+            {"test.Status", "package test;\npublic enum Status { OK, FAILED }\n"},
+            {"test.Point", "package test;\n"
+                    + "public class Point implements android.os.Parcelable {\n"
+                    + "  public final int x;\n"
+                    + "  public Point(int x) { this.x = x; }\n"
+                    + "}\n"},
+            {"test.TotalActivity", HEADER
+                    + "@ActivityResults({@ActivityResult(name = \"total\", type = Long.class)})\n"
+                    + "public class TotalActivity {}\n"},
+            {"test.PlainActivity", HEADER + FIELDS + "public class PlainActivity {}\n"},
+            {"test.LazyActivity", HEADER + "@LazyResult\n" + FIELDS + "public class LazyActivity {}\n"},
+            {"test.SparseActivity", HEADER + "@SparseResult\n" + FIELDS + "public class SparseActivity {}\n"},
+    };
+
+    // creates and describes a Result class, RESULT is replaced by the class name
+    private static final String ROUND_TRIP = "package test;\n"
+            + "import android.content.Intent;\n"
+            + "import android.os.Bundle;\n"
+            + "import java.util.ArrayList;\n"
+            + "import java.util.Arrays;\n"
+            + "import java.util.Date;\n"
+            + "public class RESULTRoundTrip {\n"
+            + "  public static RESULT create() {\n"
+            + "    ArrayList<String> names = new ArrayList<String>();\n"
+            + "    names.add(\"a\");\n"
+            + "    Bundle state = new Bundle();\n"
+            + "    state.putInt(\"k\", 3);\n"
+            + "    return new RESULT.Builder(Integer.valueOf(7))\n"
+            + "        .setId(-1)\n"
+            + "        .setRank(Integer.valueOf(0))\n"
+            + "        .setRatio(0.5d)\n"
+            + "        .setFlag(true)\n"
+            + "        .setSymbol(Character.valueOf('s'))\n"
+            + "        .setTitle(\"t\")\n"
+            + "        .setTags(new String[]{\"x\", null})\n"
+            + "        .setIds(new long[]{1L, Long.MIN_VALUE})\n"
+            + "        .setNames(names)\n"
+            + "        .setWhen(new Date(5L))\n"
+            + "        .setPoint(new Point(9))\n"
+            + "        .setState(state)\n"
+            + "        .setStatus(Status.FAILED)\n"
+            + "        .setStamp(new Date(6L))\n"
+            + "        .setOwner(new TotalActivityResult.Builder(Long.valueOf(1L << 40)).build())\n"
+            + "        .build();\n"
+            + "  }\n"
+            + "  public static RESULT createEmpty() {\n"
+            + "    return new RESULT.Builder(Integer.valueOf(-7)).build();\n"
+            + "  }\n"
+            + "  public static String toIntentAndBack(boolean empty) {\n"
+            + "    Intent intent = (empty ? createEmpty() : create()).toIntent();\n"
+            + "    Intent.extrasCopies = 0;\n"
+            + "    return describe(RESULT.with(intent)) + \"|copies=\" + Intent.extrasCopies;\n"
+            + "  }\n"
+            + "  public static String writeToAndBack() {\n"
+            + "    Intent intent = new Intent();\n"
+            + "    intent.putExtra(\"other\", \"kept\");\n"
+            + "    create().writeTo(intent);\n"
+            + "    return describe(RESULT.with(intent)) + \"|other=\" + intent.getStringExtra(\"other\");\n"
+            + "  }\n"
+            + "  public static String layout() {\n"
+            + "    Intent intent = create().toIntent();\n"
+            + "    Bundle nested = intent.getBundleExtra(\"activityresult.bundle\");\n"
+            + "    return intent.hasExtra(\"count\") + \"|\" + intent.hasExtra(\"stamp\") + \"|\"\n"
+            + "        + (nested != null && nested.containsKey(\"stamp\"));\n"
+            + "  }\n"
+            + "  public static String describe(RESULT r) {\n"
+            + "    return r.getCount() + \"|\" + r.getId() + \"|\" + r.getRank() + \"|\" + r.getRatio() + \"|\"\n"
+            + "        + r.getFlag() + \"|\" + r.getSymbol() + \"|\" + r.getTitle() + \"|\"\n"
+            + "        + Arrays.toString(r.getTags()) + \"|\" + Arrays.toString(r.getIds()) + \"|\" + r.getNames() + \"|\"\n"
+            + "        + (r.getWhen() == null ? null : r.getWhen().getTime()) + \"|\"\n"
+            + "        + (r.getPoint() == null ? null : r.getPoint().x) + \"|\"\n"
+            + "        + (r.getState() == null ? null : r.getState().getInt(\"k\")) + \"|\" + r.getStatus() + \"|\"\n"
+            + "        + (r.getStamp() == null ? null : r.getStamp().getTime()) + \"|\"\n"
+            + "        + (r.getOwner() == null ? null : r.getOwner().getTotal());\n"
+            + "  }\n"
+            + "}\n";
+
+    private static final String FULL = "7|-1|0|0.5|true|s|t|[x, null]|[1, -9223372036854775808]|[a]|5|9|3|FAILED|6|1099511627776";
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("direct", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void inlineClass() throws Exception {
+        ClassLoader classLoader = compile();
+        assertEquals(FULL + "|copies=0", call(classLoader, "PlainActivityResult", "toIntentAndBack", true, false));
+        assertEquals(FULL + "|other=kept", call(classLoader, "PlainActivityResult", "writeToAndBack", false, false));
+        assertEquals("true|false|true", call(classLoader, "PlainActivityResult", "layout", false, false));
+    }
+
+    @Test
+    public void absentFieldsKeepTheirDefaults() throws Exception {
+        ClassLoader classLoader = compile();
+        String empty = "-7|0|null|0.0|false|null|null|null|null|null|null|null|null|null|null|null|copies=0";
+        assertEquals(empty, call(classLoader, "PlainActivityResult", "toIntentAndBack", true, true));
+    }
+
+    @Test
+    public void compactClass() throws Exception {
+        ClassLoader classLoader = compile("-Aactivityresult.compact=true");
+        assertEquals(FULL + "|copies=0", call(classLoader, "PlainActivityResult", "toIntentAndBack", true, false));
+        assertEquals(FULL + "|other=kept", call(classLoader, "PlainActivityResult", "writeToAndBack", false, false));
+        assertEquals("true|false|true", call(classLoader, "PlainActivityResult", "layout", false, false));
+        assertTrue(call(classLoader, "PlainActivityResult", "toIntentAndBack", true, true).endsWith("|copies=0"));
+    }
+
+    @Test
+    public void lazyClassReadsTheIntentWithoutCopies() throws Exception {
+        ClassLoader classLoader = compile();
+        assertEquals(FULL + "|copies=0", call(classLoader, "LazyActivityResult", "toIntentAndBack", true, false));
+        assertEquals("true|false|true", call(classLoader, "LazyActivityResult", "layout", false, false));
+    }
+
+    @Test
+    public void lazyAndSparseClasses() throws Exception {
+        ClassLoader classLoader = compile();
+        for (String resultClass : new String[]{"LazyActivityResult", "SparseActivityResult"}) {
+            String decoded = call(classLoader, resultClass, "toIntentAndBack", true, false);
+            assertEquals(resultClass, FULL, decoded.substring(0, decoded.indexOf("|copies=")));
+            assertEquals(resultClass, FULL + "|other=kept", call(classLoader, resultClass, "writeToAndBack", false, false));
+        }
+    }
+
+    @Test
+    public void requiredWrapperIsUnboxed() throws Exception {
+        ProcessorCompiler.Result result = compileSources("-Aactivityresult.directIntent=true");
+        String source = result.getGeneratedSource("test.PlainActivityResult");
+        assertTrue(source, source.contains("target.putExtra(\"count\", count.intValue())"));
+        assertTrue(result.getGeneratedSource("test.TotalActivityResult")
+                .contains("target.putExtra(\"total\", total.longValue())"));
+    }
+
+    private ClassLoader compile(String... options) throws IOException {
+        String[] allOptions = new String[options.length + 1];
+        allOptions[0] = "-Aactivityresult.directIntent=true";
+        System.arraycopy(options, 0, allOptions, 1, options.length);
+        return compileSources(allOptions).createClassLoader();
+    }
+
+    private ProcessorCompiler.Result compileSources(String... options) throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "out")));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        for (String resultClass : new String[]{"PlainActivityResult", "LazyActivityResult", "SparseActivityResult"}) {
+            compiler.addSource("test." + resultClass + "RoundTrip", ROUND_TRIP.replace("RESULT", resultClass));
+        }
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result;
+    }
+
+    private static String call(
+            ClassLoader classLoader,
+            String resultClass,
+            String method,
+            boolean hasArgument,
+            boolean argument
+    ) throws Exception {
+        Class<?> roundTrip = classLoader.loadClass("test." + resultClass + "RoundTrip");
+        return hasArgument
+                ? (String) roundTrip.getMethod(method, boolean.class).invoke(null, argument)
+                : (String) roundTrip.getMethod(method).invoke(null);
+    }
+}
@@ -0,0 +1,115 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles enum and enum array fields, which are put by ordinal or with
+ * {@link ResultProcessor#OPTION_ENUMS_BY_NAME} by name, and decodes them on the JVM against the
+ * Android stubs, including values written by another version of the enum.
+ */
+public class EnumEncodingTest {
+
+    private static final String[][] SOURCES = {
+            {"test.Status", "package test;\npublic enum Status { OK, FAILED, CANCELED }\n"},
+            {"test.StatusActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"status\", type = Status.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"history\", type = Status[].class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class StatusActivity {}\n"},
+            {"test.StatusCheck", "package test;\n"
+                    + "import android.content.Intent;\n"
+                    + "public class StatusCheck {\n"
+                    + "  static String describe(StatusActivityResult r) {\n"
+                    + "    return r.getStatus() + \"|\" + java.util.Arrays.toString(r.getHistory());\n"
+                    + "  }\n"
+                    + "  public static String roundTrip() {\n"
+                    + "    Intent intent = new StatusActivityResult.Builder().setStatus(Status.FAILED)\n"
+                    + "        .setHistory(new Status[]{Status.CANCELED, null, Status.OK}).build().toIntent();\n"
+                    + "    android.os.Bundle extras = intent.getExtras();\n"
+                    + "    return describe(StatusActivityResult.with(intent)) + \"|\" + extras.get(\"status\").getClass().getSimpleName()\n"
+                    + "        + \"|\" + extras.get(\"history\").getClass().getSimpleName();\n"
+                    + "  }\n"
+                    + "  public static String ordinals() {\n"
+                    + "    Intent intent = new Intent();\n"
+                    + "    intent.putExtra(\"status\", 3);\n"
+                    + "    intent.putExtra(\"history\", new int[]{-1, 2, 3, -2, Integer.MAX_VALUE});\n"
+                    + "    Intent missing = new Intent();\n"
+                    + "    missing.putExtra(\"other\", 1);\n"
+                    + "    return describe(StatusActivityResult.with(intent)) + \"|\" + describe(StatusActivityResult.with(missing));\n"
+                    + "  }\n"
+                    + "  public static String names() {\n"
+                    + "    Intent intent = new Intent();\n"
+                    + "    intent.putExtra(\"status\", \"RETIRED\");\n"
+                    + "    intent.putExtra(\"history\", new String[]{\"OK\", null, \"ok\"});\n"
+                    + "    return describe(StatusActivityResult.with(intent));\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("enums", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void enumsArePutByOrdinal() throws Exception {
+        ProcessorCompiler.Result result = compile();
+        String source = result.getGeneratedSource("test.StatusActivityResult");
+        assertFalse(source, source.contains("Serializable"));
+        assertEquals("FAILED|[CANCELED, null, OK]|Integer|int[]", call(result, "roundTrip"));
+    }
+
+    @Test
+    public void ordinalsOutsideTheEnumAreReadAsNull() throws Exception {
+        assertEquals("null|[null, CANCELED, null, null, null]|null|null", call(compile(), "ordinals"));
+    }
+
+    @Test
+    public void enumsArePutByNameWithTheOption() throws Exception {
+        ProcessorCompiler.Result result = compile("-A" + ResultProcessor.OPTION_ENUMS_BY_NAME + "=true");
+        assertEquals("FAILED|[CANCELED, null, OK]|String|String[]", call(result, "roundTrip"));
+    }
+
+    @Test
+    public void unknownNamesAreReadAsNull() throws Exception {
+        ProcessorCompiler.Result result = compile("-A" + ResultProcessor.OPTION_ENUMS_BY_NAME + "=true");
+        assertEquals("null|[OK, null, null]", call(result, "names"));
+    }
+
+    private ProcessorCompiler.Result compile(String... options) throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result;
+    }
+
+    private static String call(ProcessorCompiler.Result result, String method) throws Exception {
+        return (String) result.createClassLoader().loadClass("test.StatusCheck").getMethod(method).invoke(null);
+    }
+}
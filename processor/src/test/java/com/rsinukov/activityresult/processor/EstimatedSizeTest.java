@@ -0,0 +1,69 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that estimatedSize() is only generated for the classes that move large values out of the
+ * Intent.
+ */
+public class EstimatedSizeTest {
+
+    private static final String[][] SOURCES = {
+            {"test.PlainActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@ActivityResults({@ActivityResult(name = \"title\", type = String.class)})\n"
+                    + "public class PlainActivity {}\n"},
+            {"test.OffloadActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@ActivityResults({@ActivityResult(name = \"data\", type = byte[].class, offload = true)})\n"
+                    + "public class OffloadActivity {}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("size", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void onlyOffloadedFieldsAddEstimatedSize() throws Exception {
+        ProcessorCompiler.Result result = compile();
+        assertFalse(result.getGeneratedSource("test.PlainActivityResult").contains("estimatedSize()"));
+        assertTrue(result.getGeneratedSource("test.OffloadActivityResult").contains("public int estimatedSize()"));
+    }
+
+    @Test
+    public void handoffAddsEstimatedSize() throws Exception {
+        ProcessorCompiler.Result result = compile("-A" + ResultProcessor.OPTION_HANDOFF + "=true");
+        assertTrue(result.getGeneratedSource("test.PlainActivityResult").contains("public int estimatedSize()"));
+    }
+
+    private ProcessorCompiler.Result compile(String... options) throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result;
+    }
+}
@@ -0,0 +1,108 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles Result classes with {@link ResultProcessor#OPTION_GENERATE_BUNDLERS} and runs the
+ * generated POJO bundlers on the JVM against the Android stubs.
+ */
+public class GeneratedBundlerTest {
+
+    private static final String[][] SOURCES = {
+            {"test.Pojo", "package test;\n"
+                    + "public class Pojo implements java.io.Serializable {\n"
+                    + "  public int count;\n"
+                    + "  public String title;\n"
+                    + "  public long[] ids;\n"
+                    + "  public static int IGNORED;\n"
+                    + "  transient int cache;\n"
+                    + "}\n"},
+            {"test.Opaque", "package test;\n"
+                    + "public class Opaque implements java.io.Serializable {\n"
+                    + "  public final int count = 1;\n"
+                    + "}\n"},
+            {"test.PojoActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"first\", type = Pojo.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"second\", type = Pojo.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"opaque\", type = Opaque.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class PojoActivity {}\n"},
+            {"test.PojoCheck", "package test;\n"
+                    + "import android.content.Intent;\n"
+                    + "import android.os.Bundle;\n"
+                    + "public class PojoCheck {\n"
+                    + "  public static String roundTrip() {\n"
+                    + "    Pojo pojo = new Pojo();\n"
+                    + "    pojo.count = 3;\n"
+                    + "    pojo.title = \"t\";\n"
+                    + "    pojo.ids = new long[]{1L, 2L};\n"
+                    + "    pojo.cache = 5;\n"
+                    + "    Intent intent = new PojoActivityResult.Builder().setFirst(pojo).build().toIntent();\n"
+                    + "    Bundle extras = intent.getExtras();\n"
+                    + "    PojoActivityResult result = PojoActivityResult.with(intent);\n"
+                    + "    Pojo first = result.getFirst();\n"
+                    + "    return first.count + \"|\" + first.title + \"|\" + java.util.Arrays.toString(first.ids) + \"|\"\n"
+                    + "        + first.cache + \"|\" + result.getSecond() + \"|\"\n"
+                    + "        + (extras.get(\"first\") instanceof Bundle) + \"|\" + extras.getInt(\"first.count\");\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("pojo", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void pojoFieldsArePutUnderPrefixedKeys() throws Exception {
+        ProcessorCompiler.Result result = compile();
+        String source = result.getGeneratedSource("test.PojoActivityResult");
+        assertTrue(source, source.contains("class PojoBundler implements CustomBundler<Pojo>"));
+        assertFalse(source, source.contains("putBundle"));
+        assertFalse(source, source.contains("cache"));
+
+        Class<?> check = result.createClassLoader().loadClass("test.PojoCheck");
+        assertEquals("3|t|[1, 2]|0|null|false|3", check.getMethod("roundTrip").invoke(null));
+    }
+
+    @Test
+    public void typeWithFinalFieldsStaysSerializable() throws Exception {
+        ProcessorCompiler.Result result = compile();
+        String source = result.getGeneratedSource("test.PojoActivityResult");
+        assertFalse(source, source.contains("OpaqueBundler"));
+        assertTrue(source, source.contains("putSerializable(\"opaque\""));
+        String warnings = result.getMessages(Diagnostic.Kind.WARNING);
+        assertEquals(warnings, 1, warnings.split("It's better not to use Serializable", -1).length - 1);
+    }
+
+    private ProcessorCompiler.Result compile() throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addOption("-A" + ResultProcessor.OPTION_GENERATE_BUNDLERS + "=true");
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result;
+    }
+}
@@ -0,0 +1,157 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the generated sources with the expected ones in the golden directory of the test
+ * resources, so every change of the generated code shows up in review. After an intended change,
+ * run the test with -Dactivityresult.golden=&lt;path of processor/src/test/resources&gt; to rewrite
+ * them.
+ */
+public class GeneratedSourceTest {
+
+    private static final String GOLDEN_DIRECTORY = "golden";
+    private static final String UPDATE_PROPERTY = "activityresult.golden";
+
+    private static final String HEADER = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.*;\n";
+
+    private static final String[][] SOURCES = {
+            {"test.DateBundler", "package test;\n"
+                    + "import android.os.Bundle;\n"
+                    + "import com.rsinukov.activityresult.CustomBundler;\n"
+                    + "public class DateBundler implements CustomBundler<java.util.Date> {\n"
+                    + "  @Override public void put(String key, java.util.Date value, Bundle bundle) {}\n"
+                    + "  @Override public <T> T get(String key, Bundle bundle) { return null; }\n"
+                    + "}\n"},
+            {"test.Status", "package test;\npublic enum Status { OK, FAILED }\n"},
+            {"test.AddressActivity", HEADER
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"city\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"zip\", type = Integer.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"status\", type = Status.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class AddressActivity {}\n"},
+            {"test.OrderActivity", HEADER
+                    + "@RequestCode(3)\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"id\", type = long.class),\n"
+                    + "    @ActivityResult(name = \"shipping\", type = AddressActivityResult.class),\n"
+                    + "    @ActivityResult(name = \"history\", type = Status[].class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"when\", type = java.util.Date.class, parcel = DateBundler.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class OrderActivity {}\n"},
+            {"test.LazyActivity", HEADER
+                    + "@LazyResult\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class LazyActivity {}\n"},
+            {"test.SparseActivity", HEADER
+                    + "@SparseResult\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"flag\", type = boolean.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class SparseActivity {}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("golden", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void defaultMode() throws IOException {
+        assertGeneratedSources("default", new String[0],
+                "test.AddressActivityResult", "test.OrderActivityResult",
+                "test.LazyActivityResult", "test.SparseActivityResult");
+    }
+
+    @Test
+    public void compactMode() throws IOException {
+        assertGeneratedSources("compact", new String[]{"-A" + ResultProcessor.OPTION_COMPACT + "=true"},
+                "test.AddressActivityResult");
+    }
+
+    @Test
+    public void directIntentMode() throws IOException {
+        assertGeneratedSources("directIntent", new String[]{"-A" + ResultProcessor.OPTION_DIRECT_INTENT + "=true"},
+                "test.AddressActivityResult");
+    }
+
+    private void assertGeneratedSources(String mode, String[] options, String... classNames) throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+
+        String updateDirectory = System.getProperty(UPDATE_PROPERTY);
+        for (String className : classNames) {
+            String path = GOLDEN_DIRECTORY + "/" + mode + "/" + className.replace('.', '/') + ".java";
+            String source = result.getGeneratedSource(className);
+            assertNotNull(className, source);
+            if (updateDirectory != null) {
+                write(new File(updateDirectory, path), source);
+            } else {
+                assertEquals(path, read(path), source);
+            }
+        }
+    }
+
+    private static String read(String path) throws IOException {
+        InputStream in = GeneratedSourceTest.class.getClassLoader().getResourceAsStream(path);
+        assertNotNull("Missing " + path + ", run with -D" + UPDATE_PROPERTY + " to create it", in);
+        Reader reader = new InputStreamReader(in, "UTF-8");
+        try {
+            StringBuilder source = new StringBuilder();
+            char[] buffer = new char[4096];
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                source.append(buffer, 0, read);
+            }
+            return source.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void write(File file, String source) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles Result classes with {@link ResultProcessor#OPTION_HANDOFF} and checks which extras the
+ * handoff Intent carries and what with(Intent) decodes once the token is gone.
+ */
+public class HandoffTest {
+
+    private static final String[][] SOURCES = {
+            {"test.ProfileActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"note\", type = String.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"tags\", type = java.util.ArrayList.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class ProfileActivity {}\n"},
+            {"test.HandoffCheck", "package test;\n"
+                    + "import android.content.Intent;\n"
+                    + "import com.rsinukov.activityresult.runtime.ResultHandoffCache;\n"
+                    + "public class HandoffCheck {\n"
+                    + "  static Intent send(ProfileActivityResult result) {\n"
+                    + "    return result.toIntent();\n"
+                    + "  }\n"
+                    + "  static ProfileActivityResult create() {\n"
+                    + "    java.util.ArrayList<String> tags = new java.util.ArrayList<String>();\n"
+                    + "    tags.add(\"a\");\n"
+                    + "    return new ProfileActivityResult.Builder(\"t\").setCount(3).setNote(\"n\").setTags(tags).build();\n"
+                    + "  }\n"
+                    + "  static String describe(ProfileActivityResult r) {\n"
+                    + "    return r.getTitle() + \"|\" + r.getCount() + \"|\" + r.getNote() + \"|\" + r.getTags();\n"
+                    + "  }\n"
+                    + "  public static String extras(boolean installed) {\n"
+                    + "    ResultHandoffCache.install(installed ? new ResultHandoffCache() : null);\n"
+                    + "    try {\n"
+                    + "      Intent intent = send(create());\n"
+                    + "      return new java.util.TreeSet<String>(intent.getExtras().keySet()).toString();\n"
+                    + "    } finally {\n"
+                    + "      ResultHandoffCache.install(null);\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "  public static String sameInstance() {\n"
+                    + "    ResultHandoffCache.install(new ResultHandoffCache());\n"
+                    + "    try {\n"
+                    + "      ProfileActivityResult result = create();\n"
+                    + "      return String.valueOf(ProfileActivityResult.with(send(result)) == result);\n"
+                    + "    } finally {\n"
+                    + "      ResultHandoffCache.install(null);\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "  public static String afterProcessDeath() {\n"
+                    + "    ResultHandoffCache.install(new ResultHandoffCache());\n"
+                    + "    Intent intent = send(create());\n"
+                    + "    // a new process starts with an empty cache\n"
+                    + "    ResultHandoffCache.install(new ResultHandoffCache());\n"
+                    + "    try {\n"
+                    + "      return describe(ProfileActivityResult.with(intent));\n"
+                    + "    } finally {\n"
+                    + "      ResultHandoffCache.install(null);\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "  public static String tooHeavy() {\n"
+                    + "    ResultHandoffCache.install(new ResultHandoffCache(1, 60000));\n"
+                    + "    try {\n"
+                    + "      Intent intent = send(create());\n"
+                    + "      return intent.hasExtra(ResultHandoffCache.TOKEN_KEY) + \"|\" + describe(ProfileActivityResult.with(intent));\n"
+                    + "    } finally {\n"
+                    + "      ResultHandoffCache.install(null);\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("handoff", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void handoffIntentCarriesNoOptionalFields() throws Exception {
+        assertEquals("[activityresult#handoff, title]", call(compile(), "extras", true));
+    }
+
+    @Test
+    public void everyFieldIsSentWithoutACache() throws Exception {
+        assertEquals("[count, note, tags, title]", call(compile(), "extras", false));
+    }
+
+    @Test
+    public void tokenIsExchangedForTheSameInstance() throws Exception {
+        assertEquals("true", call(compile(), "sameInstance", null));
+    }
+
+    @Test
+    public void optionalFieldsAreLostWithTheToken() throws Exception {
+        assertEquals("t|0|null|null", call(compile(), "afterProcessDeath", null));
+    }
+
+    @Test
+    public void refusedResultIsSentWithEveryField() throws Exception {
+        assertEquals("false|t|3|n|[a]", call(compile(), "tooHeavy", null));
+    }
+
+    @Test
+    public void directIntentSendsOnlyTheToken() throws Exception {
+        Class<?> check = compile("-A" + ResultProcessor.OPTION_DIRECT_INTENT + "=true");
+        assertEquals("[activityresult#handoff, title]", call(check, "extras", true));
+        assertEquals("t|0|null|null", call(check, "afterProcessDeath", null));
+    }
+
+    private Class<?> compile(String... options) throws Exception {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addOption("-A" + ResultProcessor.OPTION_HANDOFF + "=true");
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result.createClassLoader().loadClass("test.HandoffCheck");
+    }
+
+    private static String call(Class<?> check, String method, Boolean installed) throws Exception {
+        if (installed != null) {
+            return (String) check.getMethod(method, boolean.class).invoke(null, installed);
+        }
+        return (String) check.getMethod(method).invoke(null);
+    }
+}
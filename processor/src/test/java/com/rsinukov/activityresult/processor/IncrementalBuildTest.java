@@ -0,0 +1,278 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays what Gradle does with an isolating processor: after an activity changes, only the
+ * activity is compiled again, against the classes of the previous build without its stale outputs.
+ * Only its Result class may be regenerated, and every Result class must originate from its own
+ * activity alone.
+ */
+public class IncrementalBuildTest {
+
+    private static final String HEADER = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResult;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResults;\n";
+
+    private static final String ADDRESS_ACTIVITY = HEADER
+            + "@ActivityResults({@ActivityResult(name = \"city\", type = String.class)})\n"
+            + "public class AddressActivity {}\n";
+
+    private static final String CHANGED_ADDRESS_ACTIVITY = HEADER
+            + "@ActivityResults({\n"
+            + "    @ActivityResult(name = \"city\", type = String.class),\n"
+            + "    @ActivityResult(name = \"zip\", type = int.class, isRequired = false)\n"
+            + "})\n"
+            + "public class AddressActivity {}\n";
+
+    private static final String USER_ACTIVITY = HEADER
+            + "@ActivityResults({\n"
+            + "    @ActivityResult(name = \"name\", type = String.class),\n"
+            + "    @ActivityResult(name = \"address\", type = AddressActivityResult.class, isRequired = false)\n"
+            + "})\n"
+            + "public class UserActivity {}\n";
+
+    private static final String SETTINGS_ACTIVITY = HEADER
+            + "@ActivityResults({@ActivityResult(name = \"dark\", type = boolean.class)})\n"
+            + "public class SettingsActivity {}\n";
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("incremental", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void processorIsIsolatingByDefault() throws IOException {
+        InputStream in = ResultProcessor.class.getClassLoader()
+                .getResourceAsStream("META-INF/gradle/incremental.annotation.processors");
+        try {
+            byte[] buffer = new byte[1024];
+            int length = in.read(buffer);
+            assertEquals(ResultProcessor.class.getName() + ",dynamic", new String(buffer, 0, length, "UTF-8").trim());
+        } finally {
+            in.close();
+        }
+        assertTrue(new ResultProcessor().getSupportedOptions().contains("org.gradle.annotation.processing.isolating"));
+    }
+
+    @Test
+    public void everyResultClassOriginatesFromItsActivity() throws IOException {
+        RecordingProcessor processor = new RecordingProcessor();
+        ProcessorCompiler.Result result = compileAll("full", ADDRESS_ACTIVITY, processor);
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        Map<String, List<String>> expected = new TreeMap<String, List<String>>();
+        expected.put("test.AddressActivityResult", Collections.singletonList("test.AddressActivity"));
+        expected.put("test.SettingsActivityResult", Collections.singletonList("test.SettingsActivity"));
+        expected.put("test.UserActivityResult", Collections.singletonList("test.UserActivity"));
+        assertEquals(expected, processor.originatingElements);
+    }
+
+    @Test
+    public void changedActivityRegeneratesOnlyItsResultClass() throws IOException {
+        ProcessorCompiler.Result full = compileAll("full", ADDRESS_ACTIVITY, new ResultProcessor());
+        assertTrue(full.getMessages(Diagnostic.Kind.ERROR), full.isSuccess());
+
+        File previousClasses = new File(root, "previous");
+        copyClasses(full.getClassesDir(), previousClasses, "AddressActivity");
+        RecordingProcessor processor = new RecordingProcessor();
+        ProcessorCompiler.Result incremental = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "incremental")))
+                .addSource("test.AddressActivity", CHANGED_ADDRESS_ACTIVITY)
+                .addClasspath(previousClasses)
+                .compile(processor);
+
+        assertTrue(incremental.getMessages(Diagnostic.Kind.ERROR), incremental.isSuccess());
+        assertEquals(Collections.singletonList("test.AddressActivityResult"), incremental.getGeneratedClassNames());
+        assertEquals(1, processor.originatingElements.size());
+
+        // the regenerated class is the one a full build makes
+        ProcessorCompiler.Result rebuilt = compileAll("rebuilt", CHANGED_ADDRESS_ACTIVITY, new ResultProcessor());
+        assertEquals(rebuilt.getGeneratedSource("test.AddressActivityResult"),
+                incremental.getGeneratedSource("test.AddressActivityResult"));
+    }
+
+    @Test
+    public void dependentActivityRegeneratesTheSameClass() throws IOException {
+        ProcessorCompiler.Result full = compileAll("full", ADDRESS_ACTIVITY, new ResultProcessor());
+        assertTrue(full.getMessages(Diagnostic.Kind.ERROR), full.isSuccess());
+
+        // UserActivity nests the Result class of AddressActivity, which is now only on the classpath
+        File previousClasses = new File(root, "previous");
+        copyClasses(full.getClassesDir(), previousClasses, "UserActivity");
+        ProcessorCompiler.Result incremental = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "incremental")))
+                .addSource("test.UserActivity", USER_ACTIVITY)
+                .addClasspath(previousClasses)
+                .compile(new ResultProcessor());
+
+        assertTrue(incremental.getMessages(Diagnostic.Kind.ERROR), incremental.isSuccess());
+        assertEquals(Collections.singletonList("test.UserActivityResult"), incremental.getGeneratedClassNames());
+        assertEquals(full.getGeneratedSource("test.UserActivityResult"),
+                incremental.getGeneratedSource("test.UserActivityResult"));
+    }
+
+    private ProcessorCompiler.Result compileAll(String name, String addressActivity, Processor processor)
+            throws IOException {
+        return AndroidStubs.addTo(new ProcessorCompiler(new File(root, name)))
+                .addSource("test.AddressActivity", addressActivity)
+                .addSource("test.UserActivity", USER_ACTIVITY)
+                .addSource("test.SettingsActivity", SETTINGS_ACTIVITY)
+                .compile(processor);
+    }
+
+    /**
+     * Copies the class files, leaving out the ones of the changed activity and its outputs, as
+     * Gradle deletes them before compiling again.
+     */
+    private static void copyClasses(File from, File to, String changedPrefix) throws IOException {
+        if (!to.mkdirs() && !to.isDirectory()) {
+            throw new IOException("Can not create " + to);
+        }
+        File[] files = from.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                copyClasses(file, new File(to, file.getName()), changedPrefix);
+            } else if (!file.getName().startsWith(changedPrefix)) {
+                InputStream in = new FileInputStream(file);
+                try {
+                    OutputStream out = new FileOutputStream(new File(to, file.getName()));
+                    try {
+                        byte[] buffer = new byte[4096];
+                        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                            out.write(buffer, 0, read);
+                        }
+                    } finally {
+                        out.close();
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs ResultProcessor with a Filer that records the originating elements of every source.
+     */
+    private static class RecordingProcessor implements Processor {
+
+        final Map<String, List<String>> originatingElements = new TreeMap<String, List<String>>();
+        private final ResultProcessor processor = new ResultProcessor();
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return processor.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return processor.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return processor.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(final ProcessingEnvironment processingEnv) {
+            final Filer filer = recordingFiler(processingEnv.getFiler());
+            processor.init((ProcessingEnvironment) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[]{ProcessingEnvironment.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            return method.getName().equals("getFiler") ? filer : invokeOn(processingEnv, method, args);
+                        }
+                    }
+            ));
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            return processor.process(annotations, roundEnv);
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(
+                Element element,
+                AnnotationMirror annotation,
+                ExecutableElement member,
+                String userText
+        ) {
+            return processor.getCompletions(element, annotation, member, userText);
+        }
+
+        private Filer recordingFiler(final Filer filer) {
+            return (Filer) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[]{Filer.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("createSourceFile")) {
+                                List<String> names = new ArrayList<String>();
+                                for (Element element : (Element[]) args[1]) {
+                                    names.add(((TypeElement) element).getQualifiedName().toString());
+                                }
+                                originatingElements.put(args[0].toString(), names);
+                            }
+                            return invokeOn(filer, method, args);
+                        }
+                    }
+            );
+        }
+
+        private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
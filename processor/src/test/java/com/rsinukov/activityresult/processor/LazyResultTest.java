@@ -0,0 +1,101 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles a lazy Result class, runs it on the JVM against the Android stubs and checks that
+ * with(Intent) keeps the Intent: the typed fields are read without copying the extras, which are
+ * copied once for the fields of a custom bundler.
+ */
+public class LazyResultTest {
+
+    private static final String[][] SOURCES = {
+            {"test.DateBundler", "package test;\n"
+                    + "import android.os.Bundle;\n"
+                    + "import com.rsinukov.activityresult.CustomBundler;\n"
+                    + "public class DateBundler implements CustomBundler<java.util.Date> {\n"
+                    + "  @Override public void put(String key, java.util.Date value, Bundle bundle) {\n"
+                    + "    if (value != null) bundle.putLong(key, value.getTime());\n"
+                    + "  }\n"
+                    + "  @SuppressWarnings(\"unchecked\")\n"
+                    + "  @Override public <T> T get(String key, Bundle bundle) {\n"
+                    + "    return bundle.containsKey(key) ? (T) new java.util.Date(bundle.getLong(key)) : null;\n"
+                    + "  }\n"
+                    + "}\n"},
+            {"test.LazyActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@LazyResult\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"count\", type = Integer.class),\n"
+                    + "    @ActivityResult(name = \"id\", type = long.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"rank\", type = Integer.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"tags\", type = String[].class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"stamp\", type = java.util.Date.class, parcel = DateBundler.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class LazyActivity {}\n"},
+            {"test.LazyCheck", "package test;\n"
+                    + "import android.content.Intent;\n"
+                    + "public class LazyCheck {\n"
+                    + "  public static String readTypedFields(boolean empty) {\n"
+                    + "    LazyActivityResult.Builder builder = new LazyActivityResult.Builder(Integer.valueOf(empty ? 0 : 7));\n"
+                    + "    if (!empty) {\n"
+                    + "      builder.setId(-1L).setRank(Integer.valueOf(3)).setTitle(\"t\").setTags(new String[]{\"x\"})\n"
+                    + "          .setStamp(new java.util.Date(5L));\n"
+                    + "    }\n"
+                    + "    Intent intent = builder.build().toIntent();\n"
+                    + "    Intent.extrasCopies = 0;\n"
+                    + "    LazyActivityResult result = LazyActivityResult.with(intent);\n"
+                    + "    String typed = result.getCount() + \"|\" + result.getId() + \"|\" + result.hasId() + \"|\"\n"
+                    + "        + result.getRank() + \"|\" + result.getTitle() + \"|\"\n"
+                    + "        + java.util.Arrays.toString(result.getTags()) + \"|copies=\" + Intent.extrasCopies;\n"
+                    + "    java.util.Date stamp = result.getStamp();\n"
+                    + "    result.getStamp();\n"
+                    + "    return typed + \"|\" + (stamp == null ? null : stamp.getTime()) + \"|copies=\" + Intent.extrasCopies;\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("lazy", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void typedFieldsAreReadWithoutCopyingTheExtras() throws Exception {
+        assertEquals("7|-1|true|3|t|[x]|copies=0|5|copies=1", readTypedFields(false));
+    }
+
+    @Test
+    public void absentFieldsKeepTheirDefaults() throws Exception {
+        assertEquals("0|0|false|null|null|null|copies=0|null|copies=1", readTypedFields(true));
+    }
+
+    private String readTypedFields(boolean empty) throws Exception {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        Class<?> check = result.createClassLoader().loadClass("test.LazyCheck");
+        return (String) check.getMethod("readTypedFields", boolean.class).invoke(null, empty);
+    }
+}
@@ -0,0 +1,111 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles Result classes with {@link ResultProcessor#OPTION_METRICS} and checks the reports on the
+ * JVM against the Android stubs.
+ */
+public class MetricsTest {
+
+    private static final String[][] SOURCES = {
+            {"test.MeteredActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class MeteredActivity {}\n"},
+            {"test.MetricsCheck", "package test;\n"
+                    + "import android.content.Intent;\n"
+                    + "import com.rsinukov.activityresult.runtime.ResultMetrics;\n"
+                    + "import com.rsinukov.activityresult.runtime.ResultMetricsRegistry;\n"
+                    + "public class MetricsCheck implements ResultMetrics {\n"
+                    + "  final StringBuilder log = new StringBuilder();\n"
+                    + "  @Override public void onDecode(String resultClass, int fieldCount, long nanos, long bundlerNanos) {\n"
+                    + "    log.append(\"decode \").append(resultClass).append(' ').append(fieldCount)\n"
+                    + "        .append(nanos >= 0).append(';');\n"
+                    + "  }\n"
+                    + "  @Override public void onEncode(String resultClass, int fieldCount, long nanos, long bundlerNanos, int bytes) {\n"
+                    + "    log.append(bytes < 0 ? \"-1\" : bytes > 0 ? \"size\" : \"0\").append(';');\n"
+                    + "  }\n"
+                    + "  public static String encode(int sizeSampleInterval, int times) {\n"
+                    + "    MetricsCheck check = new MetricsCheck();\n"
+                    + "    ResultMetricsRegistry.install(check, sizeSampleInterval);\n"
+                    + "    try {\n"
+                    + "      Intent intent = null;\n"
+                    + "      for (int i = 0; i < times; i++) {\n"
+                    + "        intent = new MeteredActivityResult.Builder(\"title\").setCount(i).build().toIntent();\n"
+                    + "      }\n"
+                    + "      MeteredActivityResult.with(intent);\n"
+                    + "    } finally {\n"
+                    + "      ResultMetricsRegistry.install(null);\n"
+                    + "    }\n"
+                    + "    return check.log.toString();\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("metrics", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void sizesAreNotEstimatedByDefault() throws Exception {
+        assertEquals("-1;-1;-1;decode test.MeteredActivityResult 2true;", call(0, 3));
+    }
+
+    @Test
+    public void sizesAreEstimatedForSampledEncodings() throws Exception {
+        String log = call(2, 4);
+        assertEquals(log, 2, log.split("size", -1).length - 1);
+        assertEquals(log, 2, log.split("-1", -1).length - 1);
+    }
+
+    @Test
+    public void sizeIsEstimatedAfterTheTimeIsTaken() throws Exception {
+        String source = compile().getGeneratedSource("test.MeteredActivityResult");
+        assertTrue(source, source.contains("ResultMetricsRegistry.sampleSize() ? estimatedSize() : -1"));
+        assertTrue(source, source.indexOf("long nanos = System.nanoTime() - startNanos")
+                < source.indexOf("ResultMetricsRegistry.sampleSize()"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSampleIntervalIsRejected() {
+        com.rsinukov.activityresult.runtime.ResultMetricsRegistry.install(null, -1);
+    }
+
+    private String call(int sizeSampleInterval, int times) throws Exception {
+        Class<?> check = compile().createClassLoader().loadClass("test.MetricsCheck");
+        return (String) check.getMethod("encode", int.class, int.class).invoke(null, sizeSampleInterval, times);
+    }
+
+    private ProcessorCompiler.Result compile() throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addOption("-A" + ResultProcessor.OPTION_METRICS + "=true");
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Nests the Result class of an activity compiled on its own in the Result class of another one, as
+ * an incremental build does.
+ */
+public class NestedResultTest {
+
+    private static final String ADDRESS_ACTIVITY = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResult;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResults;\n"
+            + "@ActivityResults({\n"
+            + "    @ActivityResult(name = \"city\", type = String.class),\n"
+            + "    @ActivityResult(name = \"zip\", type = int.class, isRequired = false)\n"
+            + "})\n"
+            + "public class AddrActivity {}\n";
+
+    private static final String USER_ACTIVITY = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResult;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResults;\n"
+            + "@ActivityResults({\n"
+            + "    @ActivityResult(name = \"name\", type = String.class),\n"
+            + "    @ActivityResult(name = \"addr\", type = AddrActivityResult.class, isRequired = false)\n"
+            + "})\n"
+            + "public class UserActivity {}\n";
+
+    // a Result class generated before writeFlat() and readFlat()
+    private static final String OLD_ADDRESS_RESULT = "package test;\n"
+            + "import android.content.Intent;\n"
+            + "public class AddrActivityResult {\n"
+            + "  public static AddrActivityResult with(Intent intent) { return new AddrActivityResult(); }\n"
+            + "  public Intent toIntent() { return new Intent(); }\n"
+            + "}\n";
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("nested", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void namesWithTheKeySeparatorAreRejected() throws IOException {
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addSource("test.AddrActivity", ADDRESS_ACTIVITY.replace("\"zip\"", "\"addr.zip\""))
+                .compile(new ResultProcessor());
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR),
+                result.getMessages(Diagnostic.Kind.ERROR).contains("\"addr.zip\" in @ActivityResult"));
+    }
+
+    @Test
+    public void resultOfSameRoundIsFlattened() throws IOException {
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "all")))
+                .addSource("test.AddrActivity", ADDRESS_ACTIVITY)
+                .addSource("test.UserActivity", USER_ACTIVITY)
+                .compile(new ResultProcessor());
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        assertTrue(result.getGeneratedSource("test.UserActivityResult").contains("AddrActivityResult.readFlat("));
+    }
+
+    @Test
+    public void separatelyCompiledResultIsFlattened() throws IOException {
+        assertSeparatelyCompiled("", "AddrActivityResultFlatBundler");
+        assertSeparatelyCompiled("-Aactivityresult.compact=true", "AddrActivityResultFlatBundler");
+    }
+
+    @Test
+    public void separatelyCompiledResultIsTheSameAsInOneCompilation() throws IOException {
+        ProcessorCompiler.Result together = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "all")))
+                .addSource("test.AddrActivity", ADDRESS_ACTIVITY)
+                .addSource("test.UserActivity", USER_ACTIVITY)
+                .compile(new ResultProcessor());
+        ProcessorCompiler.Result address = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "address")))
+                .addSource("test.AddrActivity", ADDRESS_ACTIVITY)
+                .compile(new ResultProcessor());
+        ProcessorCompiler.Result user = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "user")))
+                .addSource("test.UserActivity", USER_ACTIVITY)
+                .addClasspath(address.getClassesDir())
+                .compile(new ResultProcessor());
+
+        assertTrue(user.getMessages(Diagnostic.Kind.ERROR), user.isSuccess());
+        // the Result class of an activity does not depend on the other files of the compilation
+        assertEquals(together.getGeneratedSource("test.AddrActivityResult"),
+                address.getGeneratedSource("test.AddrActivityResult"));
+        assertEquals(together.getGeneratedSource("test.UserActivityResult"),
+                user.getGeneratedSource("test.UserActivityResult"));
+    }
+
+    @Test
+    public void resultWithoutFlatMethodsIsNestedAsBundle() throws IOException {
+        ProcessorCompiler.Result address = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "address")))
+                .addSource("test.AddrActivity", ADDRESS_ACTIVITY)
+                .addSource("test.AddrActivityResult", OLD_ADDRESS_RESULT)
+                .addOption("-proc:none")
+                .compile(new ResultProcessor());
+        assertTrue(address.getMessages(Diagnostic.Kind.ERROR), address.isSuccess());
+
+        ProcessorCompiler.Result user = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "user")))
+                .addSource("test.UserActivity", USER_ACTIVITY)
+                .addClasspath(address.getClassesDir())
+                .compile(new ResultProcessor());
+
+        assertTrue(user.getMessages(Diagnostic.Kind.ERROR), user.isSuccess());
+        String source = user.getGeneratedSource("test.UserActivityResult");
+        assertTrue(source, source.contains("AddrActivityResultNestedBundler"));
+        assertTrue(source, source.contains("AddrActivityResult.with(new Intent().putExtras(nested))"));
+    }
+
+    private void assertSeparatelyCompiled(String option, String bundlerName) throws IOException {
+        File modeRoot = new File(root, option.isEmpty() ? "default" : "compact");
+        ProcessorCompiler address = AndroidStubs.addTo(new ProcessorCompiler(new File(modeRoot, "address")))
+                .addSource("test.AddrActivity", ADDRESS_ACTIVITY);
+        ProcessorCompiler user = AndroidStubs.addTo(new ProcessorCompiler(new File(modeRoot, "user")))
+                .addSource("test.UserActivity", USER_ACTIVITY);
+        if (!option.isEmpty()) {
+            address.addOption(option);
+            user.addOption(option);
+        }
+
+        ProcessorCompiler.Result addressResult = address.compile(new ResultProcessor());
+        assertTrue(addressResult.getMessages(Diagnostic.Kind.ERROR), addressResult.isSuccess());
+        ProcessorCompiler.Result userResult = user
+                .addClasspath(addressResult.getClassesDir())
+                .compile(new ResultProcessor());
+
+        assertTrue(userResult.getMessages(Diagnostic.Kind.ERROR), userResult.isSuccess());
+        String source = userResult.getGeneratedSource("test.UserActivityResult");
+        assertTrue(source, source.contains(bundlerName));
+        assertFalse(userResult.getGeneratedClassNames().contains("test.AddrActivityResult"));
+    }
+}
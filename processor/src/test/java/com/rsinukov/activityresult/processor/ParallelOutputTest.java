@@ -0,0 +1,164 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles the same activities on one and on several code generation threads with
+ * {@link ResultProcessor#OPTION_PARALLEL} in every generation mode and compares the generated
+ * sources, which must be identical.
+ */
+public class ParallelOutputTest {
+
+    private static final String HEADER = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.*;\n";
+
+    private static final String[][] SOURCES = {
+            {"test.DateBundler", "package test;\n"
+                    + "import android.os.Bundle;\n"
+                    + "import com.rsinukov.activityresult.CustomBundler;\n"
+                    + "public class DateBundler implements CustomBundler<java.util.Date> {\n"
+                    + "  @Override public void put(String key, java.util.Date value, Bundle bundle) {}\n"
+                    + "  @Override public <T> T get(String key, Bundle bundle) { return null; }\n"
+                    + "}\n"},
+            {"test.Status", "package test;\npublic enum Status { OK, FAILED }\n"},
+            {"test.Pojo", "package test;\npublic class Pojo implements java.io.Serializable { public int a; public String b; }\n"},
+            {"test.AddressActivity", HEADER
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"city\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"zip\", type = Integer.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"status\", type = Status.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class AddressActivity {}\n"},
+            {"test.OrderActivity", HEADER
+                    + "@RequestCode(3)\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"id\", type = long.class),\n"
+                    + "    @ActivityResult(name = \"shipping\", type = AddressActivityResult.class),\n"
+                    + "    @ActivityResult(name = \"history\", type = Status[].class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"tags\", type = String[].class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class OrderActivity {}\n"},
+            {"test.LazyActivity", HEADER
+                    + "@LazyResult\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"when\", type = java.util.Date.class, parcel = DateBundler.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class LazyActivity {}\n"},
+            {"test.SparseActivity", HEADER
+                    + "@SparseResult\n"
+                    + "@RecyclableResult(poolSize = 2)\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"flag\", type = boolean.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"payload\", type = byte[].class, isRequired = false, offload = true)\n"
+                    + "})\n"
+                    + "public class SparseActivity {}\n"},
+            {"test.BatchActivity", HEADER
+                    + "@BatchResult\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"id\", type = long.class),\n"
+                    + "    @ActivityResult(name = \"symbol\", type = Character.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"when\", type = java.util.Date.class, parcel = DateBundler.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"pojo\", type = Pojo.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class BatchActivity {}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("parallel", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void defaultMode() throws IOException {
+        assertParallelOutputIsTheSame();
+    }
+
+    @Test
+    public void compactMode() throws IOException {
+        assertParallelOutputIsTheSame("-Aactivityresult.compact=true");
+    }
+
+    @Test
+    public void directIntentMode() throws IOException {
+        assertParallelOutputIsTheSame("-Aactivityresult.directIntent=true");
+    }
+
+    @Test
+    public void byteBufferMode() throws IOException {
+        assertParallelOutputIsTheSame("-Aactivityresult.byteBuffer=true");
+    }
+
+    @Test
+    public void generateBundlersMode() throws IOException {
+        assertParallelOutputIsTheSame("-Aactivityresult.generateBundlers=true");
+    }
+
+    @Test
+    public void handoffMode() throws IOException {
+        assertParallelOutputIsTheSame("-Aactivityresult.handoff=true");
+    }
+
+    @Test
+    public void metricsMode() throws IOException {
+        assertParallelOutputIsTheSame("-Aactivityresult.metrics=true");
+    }
+
+    @Test
+    public void enumsByNameMode() throws IOException {
+        assertParallelOutputIsTheSame("-Aactivityresult.enumsByName=true");
+    }
+
+    @Test
+    public void dispatcherAndIndex() throws IOException {
+        assertParallelOutputIsTheSame("-Aactivityresult.dispatcher=test.Dispatcher", "-Aactivityresult.index=app");
+    }
+
+    private void assertParallelOutputIsTheSame(String... options) throws IOException {
+        ProcessorCompiler.Result sequential = compile("sequential", options, "-Aactivityresult.parallel=false");
+        // more threads than classes of a round, whatever the number of processors
+        ProcessorCompiler.Result parallel = compile("parallel", options, "-Aactivityresult.parallel=8");
+
+        assertEquals(sequential.getGeneratedClassNames(), parallel.getGeneratedClassNames());
+        for (String className : sequential.getGeneratedClassNames()) {
+            assertEquals(className, sequential.getGeneratedSource(className), parallel.getGeneratedSource(className));
+        }
+    }
+
+    private ProcessorCompiler.Result compile(String name, String[] options, String... extraOptions) throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(new File(root, name)));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        for (String option : extraOptions) {
+            compiler.addOption(option);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(name + ": " + result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        // every activity has a Result class
+        assertTrue(result.getGeneratedClassNames().contains("test.BatchActivityResult"));
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs optional primitive and wrapper fields, which are tracked by presence bits, through the
+ * extras Bundle, the flat methods of a nested result and the compact mode on the JVM against the
+ * Android stubs.
+ */
+public class PresenceBitTest {
+
+    private static final String HEADER = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.*;\n";
+
+    private static final String FIELDS = "@ActivityResults({\n"
+            + "    @ActivityResult(name = \"rank\", type = Integer.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"points\", type = long.class, isRequired = false),\n"
+            + "    @ActivityResult(name = \"grade\", type = Character.class, isRequired = false)\n"
+            + "})\n";
+
+    private static final String[][] SOURCES = {
+            {"test.ScoreActivity", HEADER + FIELDS + "public class ScoreActivity {}\n"},
+            {"test.PooledScoreActivity", HEADER
+                    + "@RecyclableResult(poolSize = 2)\n"
+                    + FIELDS
+                    + "public class PooledScoreActivity {}\n"},
+            {"test.GameActivity", HEADER
+                    + "@ActivityResults({@ActivityResult(name = \"score\", type = ScoreActivityResult.class)})\n"
+                    + "public class GameActivity {}\n"},
+            {"test.ScoreCheck", "package test;\n"
+                    + "import android.content.Intent;\n"
+                    + "public class ScoreCheck {\n"
+                    + "  static ScoreActivityResult create(boolean empty) {\n"
+                    + "    ScoreActivityResult.Builder builder = new ScoreActivityResult.Builder();\n"
+                    + "    return empty ? builder.build()\n"
+                    + "        : builder.setRank(Integer.valueOf(1000)).setPoints(-5L).setGrade(Character.valueOf('A')).build();\n"
+                    + "  }\n"
+                    + "  static String describe(ScoreActivityResult r) {\n"
+                    + "    return r.getRank() + \"|\" + r.hasRank() + \"|\" + r.getPoints() + \"|\" + r.hasPoints() + \"|\"\n"
+                    + "        + r.getGrade() + \"|\" + r.getRank(-1);\n"
+                    + "  }\n"
+                    + "  public static String throughBundle(boolean empty) {\n"
+                    + "    return describe(ScoreActivityResult.with(create(empty).toIntent()));\n"
+                    + "  }\n"
+                    + "  public static String throughFlatMethods(boolean empty) {\n"
+                    + "    Intent intent = new GameActivityResult.Builder(create(empty)).build().toIntent();\n"
+                    + "    return describe(GameActivityResult.with(intent).getScore());\n"
+                    + "  }\n"
+                    + "  public static String mistypedValueIsRead() {\n"
+                    + "    Intent intent = new Intent();\n"
+                    + "    intent.putExtra(\"rank\", \"x\");\n"
+                    + "    ScoreActivityResult r = ScoreActivityResult.with(intent);\n"
+                    + "    return r.getRank() + \"|\" + r.hasRank();\n"
+                    + "  }\n"
+                    + "  public static String boxedOnce() {\n"
+                    + "    PooledScoreActivityResult r = new PooledScoreActivityResult.Builder().setRank(Integer.valueOf(1000)).build();\n"
+                    + "    boolean same = r.getRank() == r.getRank();\n"
+                    + "    Intent other = new PooledScoreActivityResult.Builder().setRank(Integer.valueOf(2000)).build().toIntent();\n"
+                    + "    return same + \"|\" + PooledScoreActivityResult.with(other, r).getRank();\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private static final String FULL = "1000|true|-5|true|A|1000";
+    private static final String EMPTY = "null|false|0|false|null|-1";
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("presence", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void bundleRoundTrip() throws Exception {
+        Class<?> check = compile();
+        assertEquals(FULL, call(check, "throughBundle", false));
+        assertEquals(EMPTY, call(check, "throughBundle", true));
+    }
+
+    @Test
+    public void flatMethodsRoundTrip() throws Exception {
+        Class<?> check = compile();
+        assertEquals(FULL, call(check, "throughFlatMethods", false));
+        assertEquals(EMPTY, call(check, "throughFlatMethods", true));
+    }
+
+    @Test
+    public void compactRoundTrip() throws Exception {
+        ProcessorCompiler.Result result = compileSources("-Aactivityresult.compact=true");
+        assertTrue(result.getGeneratedSource("test.ScoreActivityResult").contains("ResultCodec.decode"));
+        Class<?> check = result.createClassLoader().loadClass("test.ScoreCheck");
+        assertEquals(FULL, call(check, "throughBundle", false));
+        assertEquals(EMPTY, call(check, "throughBundle", true));
+    }
+
+    @Test
+    public void presentKeyIsReadWithTheTypedGetter() throws Exception {
+        // the typed getter reads a mistyped value as the default, like the Android one
+        assertEquals("0|true", compile().getMethod("mistypedValueIsRead").invoke(null));
+    }
+
+    @Test
+    public void wrapperIsBoxedOnceUntilReset() throws Exception {
+        assertEquals("true|2000", compile().getMethod("boxedOnce").invoke(null));
+    }
+
+    @Test
+    public void presenceIsCheckedWithContainsKey() throws Exception {
+        ProcessorCompiler.Result result = compileSources();
+        String source = result.getGeneratedSource("test.ScoreActivityResult");
+        assertTrue(source, source.contains("if (bundle.containsKey(\"rank\"))"));
+        assertTrue(source, source.contains("rank = bundle.getInt(\"rank\");"));
+        assertTrue(source, !source.contains("instanceof"));
+    }
+
+    private Class<?> compile(String... options) throws Exception {
+        return compileSources(options).createClassLoader().loadClass("test.ScoreCheck");
+    }
+
+    private ProcessorCompiler.Result compileSources(String... options) throws IOException {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result;
+    }
+
+    private static String call(Class<?> check, String method, boolean empty) throws Exception {
+        return (String) check.getMethod(method, boolean.class).invoke(null, empty);
+    }
+}
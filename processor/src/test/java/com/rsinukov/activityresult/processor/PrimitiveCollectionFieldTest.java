@@ -0,0 +1,74 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles fields of the primitive list types of the runtime module, which the processor binds to
+ * the built-in bundlers without loading them, and runs them through an Intent.
+ */
+public class PrimitiveCollectionFieldTest {
+
+    private static final String[][] SOURCES = {
+            {"test.ListsActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "import com.rsinukov.activityresult.runtime.BooleanList;\n"
+                    + "import com.rsinukov.activityresult.runtime.IntList;\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"ids\", type = IntList.class),\n"
+                    + "    @ActivityResult(name = \"flags\", type = BooleanList.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class ListsActivity {}\n"},
+            {"test.ListsCheck", "package test;\n"
+                    + "import com.rsinukov.activityresult.runtime.BooleanList;\n"
+                    + "import com.rsinukov.activityresult.runtime.IntList;\n"
+                    + "public class ListsCheck {\n"
+                    + "  public static String roundTrip() {\n"
+                    + "    BooleanList flags = new BooleanList();\n"
+                    + "    flags.addBoolean(true);\n"
+                    + "    android.content.Intent intent = new ListsActivityResult.Builder(IntList.wrap(new int[]{1, 2}))\n"
+                    + "        .setFlags(flags).build().toIntent();\n"
+                    + "    ListsActivityResult result = ListsActivityResult.with(intent);\n"
+                    + "    return result.getIds() + \"|\" + result.getFlags() + \"|\"\n"
+                    + "        + intent.getExtras().getIntArray(\"ids\").length;\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("collections", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void listsUseTheRuntimeBundlers() throws Exception {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        String source = result.getGeneratedSource("test.ListsActivityResult");
+        assertTrue(source, source.contains("import com.rsinukov.activityresult.runtime.PrimitiveCollectionBundlers;"));
+        assertTrue(source, source.contains("new PrimitiveCollectionBundlers.IntListBundler()"));
+        Class<?> check = result.createClassLoader().loadClass("test.ListsCheck");
+        assertEquals("[1, 2]|[true]|2", check.getMethod("roundTrip").invoke(null));
+    }
+}
@@ -0,0 +1,210 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses the statistics written with {@link ResultProcessor#OPTION_STATS_FILE} and checks their
+ * structure and totals.
+ */
+public class ProcessingStatsTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("stats", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void emptyStatsAreValidJson() {
+        Map<String, Object> json = parseObject(new ProcessingStats().toJson());
+        assertEquals(0L, json.get("rounds"));
+        assertEquals(new ArrayList<Object>(), json.get("perRound"));
+    }
+
+    @Test
+    public void roundsAreSummedIntoTheTotal() {
+        ProcessingStats stats = new ProcessingStats();
+        stats.onRound();
+        stats.onClass(2);
+        stats.onOperation("String");
+        stats.addNanos(ProcessingStats.PHASE_EMISSION, 10);
+        stats.onRound();
+        stats.onClass(3);
+        stats.onOperation("String");
+        stats.onOperation(ProcessingStats.OPERATION_CUSTOM_BUNDLER);
+        stats.onGenerated(100);
+
+        Map<String, Object> json = parseObject(stats.toJson());
+        assertEquals(2L, json.get("rounds"));
+        Map<String, Object> total = object(json.get("total"));
+        assertEquals(2L, total.get("classes"));
+        assertEquals(5L, total.get("fields"));
+        assertEquals(100L, total.get("generatedBytes"));
+        assertEquals(2L, object(total.get("operations")).get("String"));
+        assertEquals(1L, object(total.get("operations")).get(ProcessingStats.OPERATION_CUSTOM_BUNDLER));
+        assertEquals(10L, object(total.get("phaseNanos")).get(ProcessingStats.PHASE_EMISSION));
+        assertEquals(2, ((List<?>) json.get("perRound")).size());
+    }
+
+    @Test
+    public void parallelEmissionReportsWallAndThreadTime() throws Exception {
+        File statsFile = new File(root, "out/stats.json");
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addOption("-A" + ResultProcessor.OPTION_PARALLEL + "=4")
+                .addOption("-A" + ResultProcessor.OPTION_STATS_FILE + "=" + statsFile.getPath());
+        for (int i = 0; i < 8; i++) {
+            compiler.addSource("test.Activity" + i, "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@ActivityResults({@ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false)})\n"
+                    + "public class Activity" + i + " {}\n");
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+
+        Map<String, Object> json = parseObject(read(statsFile));
+        Map<String, Object> total = object(json.get("total"));
+        assertEquals(8L, total.get("classes"));
+        assertEquals(16L, total.get("fields"));
+        assertEquals(json.get("rounds"), (long) ((List<?>) json.get("perRound")).size());
+        long wallNanos = (Long) object(total.get("phaseNanos")).get(ProcessingStats.PHASE_EMISSION);
+        long threadNanos = (Long) object(total.get("threadNanos")).get(ProcessingStats.PHASE_EMISSION);
+        assertTrue(wallNanos > 0);
+        assertTrue(threadNanos > 0);
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[4096];
+            for (int count; (count = reader.read(buffer)) != -1; ) {
+                text.append(buffer, 0, count);
+            }
+            return text.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    private static Map<String, Object> parseObject(String json) {
+        JsonParser parser = new JsonParser(json);
+        Object value = parser.parseValue();
+        parser.skipWhitespace();
+        assertEquals("trailing content", json.length(), parser.position);
+        return object(value);
+    }
+
+    /**
+     * Parses the subset of JSON the statistics use: objects, arrays, strings without escapes and
+     * integers.
+     */
+    private static final class JsonParser {
+
+        final String json;
+        int position;
+
+        JsonParser(String json) {
+            this.json = json;
+        }
+
+        Object parseValue() {
+            skipWhitespace();
+            char c = json.charAt(position);
+            if (c == '{') {
+                Map<String, Object> object = new LinkedHashMap<String, Object>();
+                position++;
+                if (!consume('}')) {
+                    do {
+                        skipWhitespace();
+                        String key = parseString();
+                        expect(':');
+                        object.put(key, parseValue());
+                    } while (consume(','));
+                    expect('}');
+                }
+                return object;
+            }
+            if (c == '[') {
+                List<Object> array = new ArrayList<Object>();
+                position++;
+                if (!consume(']')) {
+                    do {
+                        array.add(parseValue());
+                    } while (consume(','));
+                    expect(']');
+                }
+                return array;
+            }
+            if (c == '"') {
+                return parseString();
+            }
+            int start = position;
+            while (position < json.length() && (json.charAt(position) == '-' || Character.isDigit(json.charAt(position)))) {
+                position++;
+            }
+            if (start == position) {
+                throw new AssertionError("Unexpected '" + c + "' at " + position + " in " + json);
+            }
+            return Long.parseLong(json.substring(start, position));
+        }
+
+        String parseString() {
+            expect('"');
+            int end = json.indexOf('"', position);
+            String value = json.substring(position, end);
+            assertTrue(value, value.indexOf('\\') < 0);
+            position = end + 1;
+            return value;
+        }
+
+        boolean consume(char c) {
+            skipWhitespace();
+            if (position < json.length() && json.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new AssertionError("Expected '" + c + "' at " + position + " in " + json);
+            }
+        }
+
+        void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.rsinukov.activityresult.processor;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs javac from {@link ToolProvider} with an annotation processor over in-memory sources. The
+ * generated sources and the class files are written to directories below the given root, so a
+ * later compilation can put the classes of an earlier one on its classpath.
+ */
+class ProcessorCompiler {
+
+    private final File root;
+    private final List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+    private final List<String> options = new ArrayList<String>();
+    private final List<File> classpath = new ArrayList<File>();
+
+    ProcessorCompiler(File root) {
+        this.root = root;
+    }
+
+    ProcessorCompiler addSource(String className, String source) {
+        sources.add(new SourceFile(className, source));
+        return this;
+    }
+
+    /**
+     * @param option a javac option, like {@code -Aactivityresult.compact=true}.
+     */
+    ProcessorCompiler addOption(String option) {
+        options.add(option);
+        return this;
+    }
+
+    /**
+     * Adds the classes of an earlier compilation to the classpath, in front of the test classpath.
+     */
+    ProcessorCompiler addClasspath(File directory) {
+        classpath.add(directory);
+        return this;
+    }
+
+    Result compile(Processor... processors) throws IOException {
+        File classesDir = new File(root, "classes");
+        File sourcesDir = new File(root, "generated");
+        if (!classesDir.mkdirs() && !classesDir.isDirectory() || !sourcesDir.mkdirs() && !sourcesDir.isDirectory()) {
+            throw new IOException("Can not create the output directories in " + root);
+        }
+
+        StringBuilder path = new StringBuilder();
+        for (File directory : classpath) {
+            path.append(directory.getAbsolutePath()).append(File.pathSeparator);
+        }
+        path.append(System.getProperty("java.class.path"));
+
+        List<String> javacOptions = new ArrayList<String>(options);
+        Collections.addAll(javacOptions,
+                "-classpath", path.toString(),
+                "-d", classesDir.getAbsolutePath(),
+                "-s", sourcesDir.getAbsolutePath());
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("The tests need a JDK, javac is not available");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            JavaCompiler.CompilationTask task =
+                    compiler.getTask(null, fileManager, diagnostics, javacOptions, null, sources);
+            task.setProcessors(Arrays.asList(processors));
+            boolean success = task.call();
+            return new Result(success, diagnostics.getDiagnostics(), classesDir, sourcesDir, classpath);
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    static class Result {
+        private final boolean success;
+        private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        private final File classesDir;
+        private final File sourcesDir;
+        private final List<File> classpath;
+
+        Result(
+                boolean success,
+                List<Diagnostic<? extends JavaFileObject>> diagnostics,
+                File classesDir,
+                File sourcesDir,
+                List<File> classpath
+        ) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.classesDir = classesDir;
+            this.sourcesDir = sourcesDir;
+            this.classpath = new ArrayList<File>(classpath);
+        }
+
+        boolean isSuccess() {
+            return success;
+        }
+
+        File getClassesDir() {
+            return classesDir;
+        }
+
+        /**
+         * @return a loader of the compiled classes and the added classpath directories. The library
+         * classes are loaded again next to them, so they link against the Android stubs of the compilation.
+         */
+        ClassLoader createClassLoader() throws MalformedURLException {
+            List<File> directories = new ArrayList<File>();
+            directories.add(classesDir);
+            directories.addAll(classpath);
+            return new StubClassLoader(directories, ProcessorCompiler.class.getClassLoader());
+        }
+
+        /**
+         * @return the diagnostics of the kind, in the order they were reported.
+         */
+        List<Diagnostic<? extends JavaFileObject>> getDiagnostics(Diagnostic.Kind kind) {
+            List<Diagnostic<? extends JavaFileObject>> result = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+                if (diagnostic.getKind() == kind) {
+                    result.add(diagnostic);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the messages of the diagnostics of the kind, one per line.
+         */
+        String getMessages(Diagnostic.Kind kind) {
+            StringBuilder messages = new StringBuilder();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+                if (diagnostic.getKind() == kind) {
+                    messages.append(diagnostic.getMessage(null)).append('\n');
+                }
+            }
+            return messages.toString();
+        }
+
+        /**
+         * @return the qualified names of the generated sources, sorted.
+         */
+        List<String> getGeneratedClassNames() {
+            List<String> names = new ArrayList<String>();
+            collectClassNames(sourcesDir, "", names);
+            Collections.sort(names);
+            return names;
+        }
+
+        /**
+         * @return the generated source of the class, null if it was not generated.
+         */
+        String getGeneratedSource(String className) throws IOException {
+            File file = new File(sourcesDir, className.replace('.', File.separatorChar) + ".java");
+            if (!file.isFile()) {
+                return null;
+            }
+            Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+                StringBuilder source = new StringBuilder();
+                char[] buffer = new char[4096];
+                for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                    source.append(buffer, 0, read);
+                }
+                return source.toString();
+            } finally {
+                reader.close();
+            }
+        }
+
+        private static void collectClassNames(File directory, String packagePrefix, List<String> names) {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (file.isDirectory()) {
+                    collectClassNames(file, packagePrefix + name + ".", names);
+                } else if (name.endsWith(".java")) {
+                    names.add(packagePrefix + name.substring(0, name.length() - ".java".length()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the Android stubs and the classes of the library itself before asking its parent, reading
+     * the library classes from the test classpath. Other classes come from the parent.
+     */
+    private static class StubClassLoader extends URLClassLoader {
+
+        private static final String LIBRARY_PACKAGE = "com.rsinukov.activityresult.";
+        private static final String PROCESSOR_PACKAGE = "com.rsinukov.activityresult.processor.";
+
+        StubClassLoader(List<File> directories, ClassLoader parent) throws MalformedURLException {
+            super(toUrls(directories), parent);
+        }
+
+        private static URL[] toUrls(List<File> directories) throws MalformedURLException {
+            URL[] urls = new URL[directories.size()];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = directories.get(i).toURI().toURL();
+            }
+            return urls;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            boolean isLibrary = name.startsWith(LIBRARY_PACKAGE) && !name.startsWith(PROCESSOR_PACKAGE);
+            if (!isLibrary && !name.startsWith("android.")) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) {
+                try {
+                    loaded = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    loaded = defineFromParent(name);
+                }
+            }
+            if (resolve) {
+                resolveClass(loaded);
+            }
+            return loaded;
+        }
+
+        private Class<?> defineFromParent(String name) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                try {
+                    byte[] buffer = new byte[4096];
+                    int length = 0;
+                    for (int read = in.read(buffer); read != -1; read = in.read(buffer, length, buffer.length - length)) {
+                        length += read;
+                        if (length == buffer.length) {
+                            byte[] grown = new byte[buffer.length * 2];
+                            System.arraycopy(buffer, 0, grown, 0, length);
+                            buffer = grown;
+                        }
+                    }
+                    return defineClass(name, buffer, 0, length);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final String source;
+
+        SourceFile(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+}
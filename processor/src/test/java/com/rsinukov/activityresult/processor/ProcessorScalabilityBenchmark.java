@@ -0,0 +1,136 @@
+package com.rsinukov.activityresult.processor;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs {@link ResultProcessor} through javac over synthetic modules of growing size and prints
+ * wall time, rounds, heap peak, the wall time of every processor phase and the summed thread time
+ * of the phases that run on the code generation pool.
+ * <p>
+ * Run with {@code mvn -pl processor -am -Pscalability test-compile exec:java}. The activity counts
+ * and the number of fields per activity can be passed as arguments, followed by javac options for
+ * the processor, for example {@code -Dexec.args="100,1000,10000 20 -Aactivityresult.compact=true"}.
+ */
+public class ProcessorScalabilityBenchmark {
+
+    private static final String[] FIELD_TYPES = {"String", "int", "long", "boolean", "String[]"};
+
+    public static void main(String[] args) throws IOException {
+        String[] activityCounts = (args.length > 0 ? args[0] : "100,1000,10000").split(",");
+        int fieldsPerActivity = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        List<String> options = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : Arrays.<String>asList();
+
+        // the first compilation pays for loading javac, keep it out of the results
+        run(10, fieldsPerActivity, options, false);
+
+        System.out.println("activities\tfields\twall ms\trounds\theap peak MB\t" + phaseHeader());
+        for (String activityCount : activityCounts) {
+            run(Integer.parseInt(activityCount.trim()), fieldsPerActivity, options, true);
+        }
+    }
+
+    private static void run(int activityCount, int fieldsPerActivity, List<String> options, boolean print)
+            throws IOException {
+        File root = File.createTempFile("scalability", "");
+        if (!root.delete() || !root.mkdir()) {
+            throw new IOException("Can not create " + root);
+        }
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        for (int i = 0; i < activityCount; i++) {
+            compiler.addSource("test.p" + (i % 100) + ".Activity" + i, createActivity(i, fieldsPerActivity));
+        }
+
+        System.gc();
+        resetHeapPeak();
+        ResultProcessor processor = new ResultProcessor();
+        ProcessorCompiler.Result result;
+        long wallMillis;
+        try {
+            long start = System.nanoTime();
+            result = compiler.compile(processor);
+            wallMillis = (System.nanoTime() - start) / 1000000;
+        } finally {
+            ProcessorCompiler.deleteRecursively(root);
+        }
+        if (!result.isSuccess()) {
+            throw new IllegalStateException("Compilation failed:\n" + result.getMessages(Diagnostic.Kind.ERROR));
+        }
+
+        if (print) {
+            ProcessingStats stats = processor.getStats();
+            StringBuilder line = new StringBuilder()
+                    .append(activityCount).append('\t')
+                    .append(stats.getFields()).append('\t')
+                    .append(wallMillis).append('\t')
+                    .append(stats.getRounds()).append('\t')
+                    .append(getHeapPeak() / (1024 * 1024));
+            for (Map.Entry<String, Long> phase : stats.getPhaseNanos().entrySet()) {
+                line.append('\t').append(phase.getValue() / 1000000);
+            }
+            for (Map.Entry<String, Long> phase : stats.getThreadNanos().entrySet()) {
+                line.append('\t').append(phase.getValue() / 1000000);
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static String phaseHeader() {
+        StringBuilder header = new StringBuilder();
+        for (String phase : new ProcessingStats().getPhaseNanos().keySet()) {
+            if (header.length() > 0) {
+                header.append('\t');
+            }
+            header.append(phase).append(" ms");
+        }
+        for (String phase : new ProcessingStats().getThreadNanos().keySet()) {
+            header.append('\t').append(phase).append(" thread ms");
+        }
+        return header.toString();
+    }
+
+    private static String createActivity(int index, int fieldCount) {
+        StringBuilder source = new StringBuilder()
+                .append("package test.p").append(index % 100).append(";\n")
+                .append("import com.rsinukov.activityresult.annotations.ActivityResult;\n")
+                .append("import com.rsinukov.activityresult.annotations.ActivityResults;\n")
+                .append("@ActivityResults({\n");
+        for (int i = 0; i < fieldCount; i++) {
+            source.append("    @ActivityResult(name = \"field").append(i)
+                    .append("\", type = ").append(FIELD_TYPES[i % FIELD_TYPES.length])
+                    .append(".class, isRequired = ").append(i % 3 == 0).append(")");
+            source.append(i < fieldCount - 1 ? ",\n" : "\n");
+        }
+        source.append("})\n")
+                .append("public class Activity").append(index).append(" {\n}\n");
+        return source.toString();
+    }
+
+    private static void resetHeapPeak() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getHeapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
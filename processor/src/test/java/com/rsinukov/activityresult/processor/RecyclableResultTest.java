@@ -0,0 +1,130 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles a recyclable Result class and runs its pool on the JVM against the Android stubs.
+ */
+public class RecyclableResultTest {
+
+    private static final String[][] SOURCES = {
+            {"test.PooledActivity", "package test;\n"
+                    + "import com.rsinukov.activityresult.annotations.*;\n"
+                    + "@RecyclableResult(poolSize = 2)\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class PooledActivity {}\n"},
+            {"test.PoolCheck", "package test;\n"
+                    + "import android.content.Intent;\n"
+                    + "public class PoolCheck {\n"
+                    + "  static PooledActivityResult create(String title) {\n"
+                    + "    return new PooledActivityResult.Builder(title).build();\n"
+                    + "  }\n"
+                    + "  public static String poolBounds() {\n"
+                    + "    PooledActivityResult a = create(\"a\"), b = create(\"b\"), c = create(\"c\");\n"
+                    + "    a.recycle();\n"
+                    + "    b.recycle();\n"
+                    + "    c.recycle();\n"
+                    + "    PooledActivityResult first = create(\"d\"), second = create(\"e\"), third = create(\"f\");\n"
+                    + "    return (first == b) + \"|\" + (second == a) + \"|\" + (third != c) + \"|\" + first.getTitle();\n"
+                    + "  }\n"
+                    + "  public static String useAfterRecycle() {\n"
+                    + "    Intent intent = create(\"b\").toIntent();\n"
+                    + "    PooledActivityResult a = create(\"a\");\n"
+                    + "    a.recycle();\n"
+                    + "    String failures = \"\";\n"
+                    + "    try { a.getTitle(); } catch (IllegalStateException e) { failures += \"get\"; }\n"
+                    + "    try { a.recycle(); } catch (IllegalStateException e) { failures += \"|recycle\"; }\n"
+                    + "    try { a.toIntent(); } catch (IllegalStateException e) { failures += \"|toIntent\"; }\n"
+                    + "    try { PooledActivityResult.with(intent, a); } catch (IllegalStateException e) { failures += \"|reuse\"; }\n"
+                    + "    return failures;\n"
+                    + "  }\n"
+                    + "  public static String withReuse() {\n"
+                    + "    PooledActivityResult reuse = new PooledActivityResult.Builder(\"a\").setCount(3).build();\n"
+                    + "    PooledActivityResult decoded = PooledActivityResult.with(create(\"b\").toIntent(), reuse);\n"
+                    + "    return (decoded == reuse) + \"|\" + decoded.getTitle() + \"|\" + decoded.getCount();\n"
+                    + "  }\n"
+                    + "  public static String resetClearsReferences() throws Exception {\n"
+                    + "    PooledActivityResult a = new PooledActivityResult.Builder(\"a\").setCount(3).build();\n"
+                    + "    a.recycle();\n"
+                    + "    java.lang.reflect.Field title = PooledActivityResult.class.getDeclaredField(\"title\");\n"
+                    + "    java.lang.reflect.Field count = PooledActivityResult.class.getDeclaredField(\"count\");\n"
+                    + "    title.setAccessible(true);\n"
+                    + "    count.setAccessible(true);\n"
+                    + "    return title.get(a) + \"|\" + count.get(a) + \"|\" + create(\"b\").getCount();\n"
+                    + "  }\n"
+                    + "  public static String otherThreadDoesNotPool() throws Exception {\n"
+                    + "    final PooledActivityResult a = create(\"a\");\n"
+                    + "    Thread thread = new Thread(new Runnable() {\n"
+                    + "      @Override public void run() { a.recycle(); }\n"
+                    + "    });\n"
+                    + "    thread.start();\n"
+                    + "    thread.join();\n"
+                    + "    return String.valueOf(create(\"b\") != a);\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("recyclable", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void poolKeepsAtMostPoolSizeInstances() throws Exception {
+        assertEquals("true|true|true|d", call("poolBounds"));
+    }
+
+    @Test
+    public void recycledInstanceCanNotBeUsed() throws Exception {
+        assertEquals("get|recycle|toIntent|reuse", call("useAfterRecycle"));
+    }
+
+    @Test
+    public void withDecodesIntoTheReusedInstance() throws Exception {
+        assertEquals("true|b|0", call("withReuse"));
+    }
+
+    @Test
+    public void recycleClearsTheFields() throws Exception {
+        assertEquals("null|0|0", call("resetClearsReferences"));
+    }
+
+    @Test
+    public void onlyTheOwnerThreadPoolsInstances() throws Exception {
+        assertEquals("true", call("otherThreadDoesNotPool"));
+    }
+
+    /**
+     * Compiles the sources again for every call, so that each one starts with an empty pool.
+     */
+    private String call(String method) throws Exception {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        Class<?> check = result.createClassLoader().loadClass("test.PoolCheck");
+        return (String) check.getMethod(method).invoke(null);
+    }
+}
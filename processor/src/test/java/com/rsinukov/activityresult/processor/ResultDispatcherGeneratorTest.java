@@ -0,0 +1,199 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultDispatcherGeneratorTest {
+
+    private static final String ACTIVITY = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResult;\n"
+            + "import com.rsinukov.activityresult.annotations.ActivityResults;\n"
+            + "import com.rsinukov.activityresult.annotations.RequestCode;\n"
+            + "@RequestCode(7)\n"
+            + "@ActivityResults({@ActivityResult(name = \"title\", type = String.class)})\n"
+            + "public class MainActivity {}\n";
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("dispatcher", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void dispatcherAndIndexAreCompiledInTheLastRound() throws IOException {
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addSource("test.MainActivity", ACTIVITY)
+                .addOption("-Aactivityresult.dispatcher=test.Dispatcher")
+                .addOption("-Aactivityresult.index=app")
+                .addOption("-Xlint:all")
+                .addOption("-Xlint:-options")
+                .compile(new ResultProcessor());
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        // the only warnings are javac's notes that sources of the last round are not processed
+        for (Diagnostic<? extends JavaFileObject> warning : result.getDiagnostics(Diagnostic.Kind.WARNING)) {
+            assertTrue(warning.getMessage(null), warning.getMessage(null).contains("created in the last round"));
+        }
+        assertEquals("", result.getMessages(Diagnostic.Kind.MANDATORY_WARNING));
+        assertTrue(new File(result.getClassesDir(), "test/Dispatcher.class").isFile());
+        assertTrue(new File(result.getClassesDir(), "com/rsinukov/activityresult/index/ResultIndex_app.class").isFile());
+    }
+
+    @Test
+    public void activityOfALaterRoundIsDispatched() throws Exception {
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addSource("test.MainActivity", ACTIVITY)
+                .addSource("test.DispatchCheck", "package test;\n"
+                        + "import android.content.Intent;\n"
+                        + "public class DispatchCheck {\n"
+                        + "  public static String decode() {\n"
+                        + "    Intent main = new MainActivityResult.Builder(\"m\").build().toIntent();\n"
+                        + "    Intent late = new LateActivityResult.Builder(5).build().toIntent();\n"
+                        + "    return ((MainActivityResult) Dispatcher.decode(MainActivity.class, main)).getTitle() + \"|\"\n"
+                        + "        + ((LateActivityResult) Dispatcher.decode(LateActivity.class, late)).getCount() + \"|\"\n"
+                        + "        + ((LateActivityResult) Dispatcher.decode(8, late)).getCount() + \"|\"\n"
+                        + "        + Dispatcher.decode(String.class, main) + \"|\"\n"
+                        + "        + Dispatcher.decode(MainActivity.class, null);\n"
+                        + "  }\n"
+                        + "}\n")
+                .addOption("-Aactivityresult.dispatcher=test.Dispatcher")
+                .compile(new ResultProcessor(), new LateActivityProcessor());
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        String dispatcher = result.getGeneratedSource("test.Dispatcher");
+        assertFalse(dispatcher, dispatcher.contains("switch (index)"));
+        Class<?> check = result.createClassLoader().loadClass("test.DispatchCheck");
+        assertEquals("m|5|5|null|null", check.getMethod("decode").invoke(null));
+    }
+
+    @Test
+    public void indexesOfDependenciesAreMerged() throws Exception {
+        ProcessorCompiler.Result profile = compileLibrary("profile", "ProfileActivity", 3);
+        ProcessorCompiler.Result settings = compileLibrary("settings", "SettingsActivity", 4);
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "app")))
+                .addClasspath(profile.getClassesDir())
+                .addClasspath(settings.getClassesDir())
+                .addSource("test.MainActivity", ACTIVITY)
+                .addSource("test.MergeCheck", "package test;\n"
+                        + "import android.content.Intent;\n"
+                        + "import profile.ProfileActivity;\n"
+                        + "import profile.ProfileActivityResult;\n"
+                        + "import settings.SettingsActivityResult;\n"
+                        + "public class MergeCheck {\n"
+                        + "  public static String dispatch() {\n"
+                        + "    final StringBuilder log = new StringBuilder();\n"
+                        + "    Dispatcher.Callbacks callbacks = new Dispatcher.Callbacks() {\n"
+                        + "      @Override public void onProfileActivityResult(int resultCode, ProfileActivityResult result) {\n"
+                        + "        log.append(\"profile \").append(result.getTitle()).append(';');\n"
+                        + "      }\n"
+                        + "      @Override public void onSettingsActivityResult(int resultCode, SettingsActivityResult result) {\n"
+                        + "        log.append(\"settings \").append(result.getTitle()).append(';');\n"
+                        + "      }\n"
+                        + "    };\n"
+                        + "    Intent profile = new ProfileActivityResult.Builder(\"p\").build().toIntent();\n"
+                        + "    Dispatcher.dispatch(3, 0, profile, callbacks);\n"
+                        + "    Dispatcher.dispatch(4, 0, new SettingsActivityResult.Builder(\"s\").build().toIntent(), callbacks);\n"
+                        + "    boolean unknown = Dispatcher.dispatch(5, 0, profile, callbacks);\n"
+                        + "    return log + \"|\" + unknown + \"|\"\n"
+                        + "        + ((ProfileActivityResult) Dispatcher.decode(ProfileActivity.class, profile)).getTitle();\n"
+                        + "  }\n"
+                        + "}\n")
+                .addOption("-Aactivityresult.dispatcher=test.Dispatcher")
+                .addOption("-Aactivityresult.index=app")
+                .compile(new ResultProcessor());
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        Class<?> check = result.createClassLoader().loadClass("test.MergeCheck");
+        assertEquals("profile p;settings s;|false|p", check.getMethod("dispatch").invoke(null));
+    }
+
+    @Test
+    public void requestCodeOfADependencyMustBeUnique() throws Exception {
+        ProcessorCompiler.Result profile = compileLibrary("profile", "ProfileActivity", 7);
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(new File(root, "app")))
+                .addClasspath(profile.getClassesDir())
+                .addSource("test.MainActivity", ACTIVITY)
+                .addOption("-Aactivityresult.dispatcher=test.Dispatcher")
+                .compile(new ResultProcessor());
+
+        assertFalse(result.isSuccess());
+        String errors = result.getMessages(Diagnostic.Kind.ERROR);
+        assertTrue(errors, errors.contains("Request code 7 is used by both"));
+        assertTrue(errors, errors.contains("profile.ProfileActivity"));
+    }
+
+    private ProcessorCompiler.Result compileLibrary(String module, String activity, int requestCode)
+            throws IOException {
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(new File(root, module)))
+                .addSource(module + "." + activity, "package " + module + ";\n"
+                        + "import com.rsinukov.activityresult.annotations.*;\n"
+                        + "@RequestCode(" + requestCode + ")\n"
+                        + "@ActivityResults({@ActivityResult(name = \"title\", type = String.class)})\n"
+                        + "public class " + activity + " {}\n")
+                .addOption("-Aactivityresult.index=" + module)
+                .compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result;
+    }
+
+    /**
+     * Generates an annotated activity in the first round, like processors that generate activities do.
+     */
+    @SupportedAnnotationTypes("*")
+    public static class LateActivityProcessor extends AbstractProcessor {
+
+        private boolean written;
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latestSupported();
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            if (written) {
+                return false;
+            }
+            written = true;
+            try {
+                Writer writer = processingEnv.getFiler().createSourceFile("test.LateActivity").openWriter();
+                try {
+                    writer.write("package test;\n"
+                            + "import com.rsinukov.activityresult.annotations.*;\n"
+                            + "@RequestCode(8)\n"
+                            + "@ActivityResults({@ActivityResult(name = \"count\", type = int.class)})\n"
+                            + "public class LateActivity {}\n");
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles sparse Result classes and runs them on the JVM against the Android stubs: Intents of
+ * toIntent() are decoded through the presence masks, others by walking the keys of the extras.
+ */
+public class SparseResultTest {
+
+    private static final String HEADER = "package test;\n"
+            + "import com.rsinukov.activityresult.annotations.*;\n";
+
+    private static final String[][] SOURCES = {
+            {"test.SparseActivity", HEADER
+                    + "@SparseResult\n"
+                    + "@ActivityResults({\n"
+                    + "    @ActivityResult(name = \"title\", type = String.class),\n"
+                    + "    @ActivityResult(name = \"count\", type = int.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"rank\", type = Integer.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"note\", type = String.class, isRequired = false),\n"
+                    + "    @ActivityResult(name = \"tags\", type = String[].class, isRequired = false)\n"
+                    + "})\n"
+                    + "public class SparseActivity {}\n"},
+            {"test.WideActivity", HEADER + "@SparseResult\n" + wideFields(70) + "public class WideActivity {}\n"},
+            {"test.SparseCheck", "package test;\n"
+                    + "import android.content.Intent;\n"
+                    + "public class SparseCheck {\n"
+                    + "  static String describe(SparseActivityResult r) {\n"
+                    + "    return r.getTitle() + \"|\" + r.getCount() + \"|\" + r.hasCount() + \"|\" + r.getRank() + \"|\"\n"
+                    + "        + r.getNote() + \"|\" + java.util.Arrays.toString(r.getTags());\n"
+                    + "  }\n"
+                    + "  public static String throughMask(boolean empty) {\n"
+                    + "    SparseActivityResult.Builder builder = new SparseActivityResult.Builder(\"t\");\n"
+                    + "    if (!empty) {\n"
+                    + "      builder.setCount(0).setNote(\"n\");\n"
+                    + "    }\n"
+                    + "    Intent intent = builder.build().toIntent();\n"
+                    + "    Intent.extrasCopies = 0;\n"
+                    + "    String result = describe(SparseActivityResult.with(intent));\n"
+                    + "    return result + \"|copies=\" + Intent.extrasCopies;\n"
+                    + "  }\n"
+                    + "  public static String withoutMask() {\n"
+                    + "    Intent intent = new Intent();\n"
+                    + "    intent.putExtra(\"title\", \"t\");\n"
+                    + "    intent.putExtra(\"rank\", 4);\n"
+                    + "    intent.putExtra(\"tags\", new String[]{\"x\"});\n"
+                    + "    return describe(SparseActivityResult.with(intent));\n"
+                    + "  }\n"
+                    + "  public static String wide() {\n"
+                    + "    Intent intent = new WideActivityResult.Builder().setField3(\"a\").setField69(\"b\").build().toIntent();\n"
+                    + "    WideActivityResult r = WideActivityResult.with(intent);\n"
+                    + "    return r.getField0() + \"|\" + r.getField3() + \"|\" + r.getField64() + \"|\" + r.getField69() + \"|\"\n"
+                    + "        + Long.bitCount(intent.getLongExtra(\"activityresult.sparseMask0\", 0L)) + \"|\"\n"
+                    + "        + Long.bitCount(intent.getLongExtra(\"activityresult.sparseMask1\", 0L));\n"
+                    + "  }\n"
+                    + "}\n"},
+    };
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("sparse", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void presentFieldsAreDecodedWithoutCopyingTheExtras() throws Exception {
+        assertEquals("t|0|true|null|n|null|copies=0", call(compile(), "throughMask", true, false));
+    }
+
+    @Test
+    public void absentFieldsKeepTheirDefaults() throws Exception {
+        assertEquals("t|0|false|null|null|null|copies=0", call(compile(), "throughMask", true, true));
+    }
+
+    @Test
+    public void intentWithoutMaskIsDecodedFromItsKeys() throws Exception {
+        assertEquals("t|0|false|4|null|[x]", call(compile(), "withoutMask", false, false));
+    }
+
+    @Test
+    public void moreThan64OptionalFieldsUseASecondMask() throws Exception {
+        // the fields are sorted by name, which puts field69 past the first 64 bits
+        assertEquals("null|a|null|b|1|1", call(compile(), "wide", false, false));
+    }
+
+    @Test
+    public void directIntentWritesTheMask() throws Exception {
+        Class<?> check = compile("-A" + ResultProcessor.OPTION_DIRECT_INTENT + "=true");
+        assertEquals("t|0|true|null|n|null|copies=0", call(check, "throughMask", true, false));
+        assertEquals("t|0|false|null|null|null|copies=0", call(check, "throughMask", true, true));
+    }
+
+    private Class<?> compile(String... options) throws Exception {
+        ProcessorCompiler compiler = AndroidStubs.addTo(new ProcessorCompiler(root));
+        for (String[] source : SOURCES) {
+            compiler.addSource(source[0], source[1]);
+        }
+        for (String option : options) {
+            compiler.addOption(option);
+        }
+        ProcessorCompiler.Result result = compiler.compile(new ResultProcessor());
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        return result.createClassLoader().loadClass("test.SparseCheck");
+    }
+
+    private static String call(Class<?> check, String method, boolean hasArgument, boolean empty) throws Exception {
+        if (hasArgument) {
+            return (String) check.getMethod(method, boolean.class).invoke(null, empty);
+        }
+        return (String) check.getMethod(method).invoke(null);
+    }
+
+    private static String wideFields(int count) {
+        StringBuilder fields = new StringBuilder("@ActivityResults({\n");
+        for (int i = 0; i < count; i++) {
+            fields.append(i == 0 ? "" : ",\n")
+                    .append("    @ActivityResult(name = \"field").append(i)
+                    .append("\", type = String.class, isRequired = false)");
+        }
+        return fields.append("\n})\n").toString();
+    }
+}
@@ -0,0 +1,99 @@
+package com.rsinukov.activityresult.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TypeCacheTest {
+
+    private static final String WARNING = "It's better not to use Serializable";
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("types", "");
+        assertTrue(root.delete() && root.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        ProcessorCompiler.deleteRecursively(root);
+    }
+
+    @Test
+    public void serializableWarningIsReportedForEveryField() throws IOException {
+        String header = "package test;\nimport com.rsinukov.activityresult.annotations.*;\n";
+        ProcessorCompiler.Result result = AndroidStubs.addTo(new ProcessorCompiler(root))
+                .addSource("test.Pojo", "package test;\npublic class Pojo implements java.io.Serializable {}\n")
+                .addSource("test.FirstActivity", header
+                        + "@ActivityResults({\n"
+                        + "    @ActivityResult(name = \"a\", type = Pojo.class),\n"
+                        + "    @ActivityResult(name = \"b\", type = Pojo.class)\n"
+                        + "})\n"
+                        + "public class FirstActivity {}\n")
+                .addSource("test.SecondActivity", header
+                        + "@ActivityResults({@ActivityResult(name = \"c\", type = Pojo.class)})\n"
+                        + "public class SecondActivity {}\n")
+                .compile(new ResultProcessor());
+
+        assertTrue(result.getMessages(Diagnostic.Kind.ERROR), result.isSuccess());
+        String warnings = result.getMessages(Diagnostic.Kind.WARNING);
+        assertEquals(warnings, 3, warnings.split(WARNING, -1).length - 1);
+    }
+
+    @Test
+    public void missingClassIsLookedUpAgain() {
+        final TypeMirror type = proxy(TypeMirror.class, null);
+        final TypeElement element = proxy(TypeElement.class, type);
+        final boolean[] generated = {false};
+        Elements elements = (Elements) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{Elements.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return generated[0] ? element : null;
+                    }
+                }
+        );
+        TypeCache typeCache = new TypeCache(elements, proxy(Types.class, null));
+
+        assertNull(typeCache.getType("test.Generated"));
+        generated[0] = true;
+        assertSame(type, typeCache.getType("test.Generated"));
+        assertSame(type, typeCache.getType("test.Generated"));
+    }
+
+    /**
+     * @return a proxy of the interface that returns the value from every method.
+     */
+    private static <T> T proxy(Class<T> type, final Object value) {
+        return type.cast(Proxy.newProxyInstance(
+                TypeCacheTest.class.getClassLoader(),
+                new Class<?>[]{type},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return value;
+                    }
+                }
+        ));
+    }
+}
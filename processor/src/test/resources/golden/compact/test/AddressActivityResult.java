@@ -0,0 +1,146 @@
+package test;
+
+import android.content.Intent;
+import android.os.Bundle;
+import com.rsinukov.activityresult.CustomBundler;
+import com.rsinukov.activityresult.runtime.FieldDescriptor;
+import com.rsinukov.activityresult.runtime.ResultCodec;
+import com.rsinukov.activityresult.runtime.ResultValues;
+import java.lang.Integer;
+import java.lang.Override;
+import java.lang.String;
+import java.lang.SuppressWarnings;
+
+public class AddressActivityResult {
+  private static final FieldDescriptor[] FIELDS = new FieldDescriptor[]{
+    FieldDescriptor.optional("zip", FieldDescriptor.INT, 0, 0),
+    FieldDescriptor.custom("status", new StatusEnumBundler(), 0),
+    FieldDescriptor.object("city", FieldDescriptor.STRING, 1)
+  };
+
+  private final ResultValues values;
+
+  private AddressActivityResult(ResultValues values) {
+    this.values = values;
+  }
+
+  public static AddressActivityResult with(Intent intent) {
+    ResultValues values = new ResultValues(1, 2, 1);
+    ResultCodec.decode(FIELDS, intent.getExtras(), values);
+    return new AddressActivityResult(values);
+  }
+
+  public final Integer getZip() {
+    return values.has(0) ? Integer.valueOf(values.getInt(0)) : null;
+  }
+
+  public final boolean hasZip() {
+    return values.has(0);
+  }
+
+  public final int getZip(int defaultValue) {
+    return values.has(0) ? values.getInt(0) : defaultValue;
+  }
+
+  public final Status getStatus() {
+    return (Status) values.getObject(0);
+  }
+
+  public final String getCity() {
+    return (String) values.getObject(1);
+  }
+
+  public Intent toIntent() {
+    Intent intent = new Intent();
+    intent.putExtras(ResultCodec.encode(FIELDS, values));
+    return intent;
+  }
+
+  /**
+   * Puts the fields into the bundle with the keys prefixed, to nest this result in another one.
+   */
+  public void writeFlat(String prefix, Bundle bundle) {
+    if (hasZip()) {
+      bundle.putInt(prefix + "zip", getZip(0));
+    }
+    StatusEnumBundlerHolder.INSTANCE.put(prefix + "status", getStatus(), bundle);
+    bundle.putString(prefix + "city", getCity());
+  }
+
+  /**
+   * Reads a result written by {@link #writeFlat(String, Bundle)} with the same prefix.
+   */
+  public static AddressActivityResult readFlat(String prefix, Bundle bundle) {
+    String zipKey = prefix + "zip";
+    Status statusValue = StatusEnumBundlerHolder.INSTANCE.get(prefix + "status", bundle);
+    String cityValue = bundle.getString(prefix + "city");
+    AddressActivityResult.Builder builder = new AddressActivityResult.Builder(cityValue);
+    if (bundle.containsKey(zipKey)) {
+      builder.setZip(bundle.getInt(zipKey));
+    }
+    builder.setStatus(statusValue);
+    return builder.build();
+  }
+
+  public static class Builder {
+    private ResultValues values = new ResultValues(1, 2, 1);
+
+    private boolean built;
+
+    public Builder(String city) {
+      values.setObject(1, city);
+    }
+
+    public Builder setZip(Integer zip) {
+      ownValues();
+      if (zip != null) {
+        values.setInt(0, zip);
+        values.setPresent(0, true);
+      } else {
+        values.setPresent(0, false);
+      }
+      return this;
+    }
+
+    public Builder setStatus(Status status) {
+      ownValues();
+      values.setObject(0, status);
+      return this;
+    }
+
+    private void ownValues() {
+      if (built) {
+        values = values.copy();
+        built = false;
+      }
+    }
+
+    public AddressActivityResult build() {
+      built = true;
+      return new AddressActivityResult(values);
+    }
+  }
+
+  private static final class StatusEnumBundler implements CustomBundler<Status> {
+    private static final Status[] VALUES = Status.values();
+
+    @Override
+    public void put(String key, Status value, Bundle bundle) {
+      bundle.putInt(key, value != null ? value.ordinal() : -1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Bundle bundle) {
+      return (T) valueOf(bundle.getInt(key, -1));
+    }
+
+    private static Status valueOf(int ordinal) {
+      return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+  }
+
+  private static final class StatusEnumBundlerHolder {
+    static final StatusEnumBundler INSTANCE = new StatusEnumBundler();
+  }
+}
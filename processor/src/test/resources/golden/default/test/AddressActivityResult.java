@@ -0,0 +1,159 @@
+package test;
+
+import android.content.Intent;
+import android.os.Bundle;
+import com.rsinukov.activityresult.CustomBundler;
+import java.lang.Integer;
+import java.lang.Override;
+import java.lang.String;
+import java.lang.SuppressWarnings;
+
+public class AddressActivityResult {
+  private Integer zipBoxed;
+
+  private int zip;
+
+  private Status status;
+
+  private String city;
+
+  private long presence0;
+
+  private AddressActivityResult() {
+  }
+
+  public static AddressActivityResult with(Intent intent) {
+    android.os.Bundle bundle = intent.getExtras();
+    AddressActivityResult result = new AddressActivityResult();
+    if (bundle.containsKey("zip")) {
+      result.zip = bundle.getInt("zip");
+      result.presence0 |= 0x1L;
+    }
+    result.status = StatusEnumBundlerHolder.INSTANCE.get("status", bundle);
+    result.city = bundle.getString("city");
+    return result;
+  }
+
+  public final Integer getZip() {
+    if (zipBoxed == null && (presence0 & 0x1L) != 0) {
+      zipBoxed = Integer.valueOf(zip);
+    }
+    return zipBoxed;
+  }
+
+  public final boolean hasZip() {
+    return (presence0 & 0x1L) != 0;
+  }
+
+  public final int getZip(int defaultValue) {
+    return (presence0 & 0x1L) != 0 ? zip : defaultValue;
+  }
+
+  public final Status getStatus() {
+    return status;
+  }
+
+  public final String getCity() {
+    return city;
+  }
+
+  public Intent toIntent() {
+    android.os.Bundle bundle = new android.os.Bundle();
+    if ((presence0 & 0x1L) != 0) {
+      bundle.putInt("zip", zip);
+    }
+    StatusEnumBundlerHolder.INSTANCE.put("status", status, bundle);
+    bundle.putString("city", city);
+    Intent intent = new Intent();
+    intent.putExtras(bundle);
+    return intent;
+  }
+
+  /**
+   * Puts the fields into the bundle with the keys prefixed, to nest this result in another one.
+   */
+  public void writeFlat(String prefix, Bundle bundle) {
+    if (hasZip()) {
+      bundle.putInt(prefix + "zip", getZip(0));
+    }
+    StatusEnumBundlerHolder.INSTANCE.put(prefix + "status", getStatus(), bundle);
+    bundle.putString(prefix + "city", getCity());
+  }
+
+  /**
+   * Reads a result written by {@link #writeFlat(String, Bundle)} with the same prefix.
+   */
+  public static AddressActivityResult readFlat(String prefix, Bundle bundle) {
+    String zipKey = prefix + "zip";
+    Status statusValue = StatusEnumBundlerHolder.INSTANCE.get(prefix + "status", bundle);
+    String cityValue = bundle.getString(prefix + "city");
+    AddressActivityResult.Builder builder = new AddressActivityResult.Builder(cityValue);
+    if (bundle.containsKey(zipKey)) {
+      builder.setZip(bundle.getInt(zipKey));
+    }
+    builder.setStatus(statusValue);
+    return builder.build();
+  }
+
+  private static final class StatusEnumBundler implements CustomBundler<Status> {
+    private static final Status[] VALUES = Status.values();
+
+    @Override
+    public void put(String key, Status value, Bundle bundle) {
+      bundle.putInt(key, value != null ? value.ordinal() : -1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Bundle bundle) {
+      return (T) valueOf(bundle.getInt(key, -1));
+    }
+
+    private static Status valueOf(int ordinal) {
+      return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+  }
+
+  private static final class StatusEnumBundlerHolder {
+    static final StatusEnumBundler INSTANCE = new StatusEnumBundler();
+  }
+
+  public static class Builder {
+    private int zip;
+
+    private Status status;
+
+    private String city;
+
+    private long presence0;
+
+    public Builder(String city) {
+      this.city = city;
+    }
+
+    public Builder setZip(Integer zip) {
+      if (zip != null) {
+        this.zip = zip;
+        presence0 |= 0x1L;
+      } else {
+        this.zip = 0;
+        presence0 &= ~0x1L;
+      }
+      return this;
+    }
+
+    public Builder setStatus(Status status) {
+      this.status = status;
+      return this;
+    }
+
+    public AddressActivityResult build() {
+      AddressActivityResult result = new AddressActivityResult();
+      result.zip = zip;
+      result.status = status;
+      result.city = city;
+      result.presence0 = presence0;
+      return result;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package test;
+
+import android.content.Intent;
+import android.os.Bundle;
+import java.lang.String;
+
+public class LazyActivityResult {
+  private Intent source;
+
+  private boolean countDecoded;
+
+  private int count;
+
+  private boolean titleDecoded;
+
+  private String title;
+
+  private long presence0;
+
+  private LazyActivityResult() {
+  }
+
+  /**
+   * Keeps the Intent and decodes every field on its first access, so the extras of the Intent
+   * must not change until the fields are read. The result is not thread safe: the first access
+   * of a field writes it, so an instance shared between threads needs external synchronization.
+   */
+  public static LazyActivityResult with(Intent intent) {
+    LazyActivityResult result = new LazyActivityResult();
+    result.source = intent;
+    return result;
+  }
+
+  private void decodeCount() {
+    if (!countDecoded) {
+      if (source != null) {
+        if (source.hasExtra("count")) {
+          count = source.getIntExtra("count", 0);
+          presence0 |= 0x1L;
+        }
+      }
+      countDecoded = true;
+    }
+  }
+
+  public final int getCount() {
+    decodeCount();
+    return count;
+  }
+
+  public final boolean hasCount() {
+    decodeCount();
+    return (presence0 & 0x1L) != 0;
+  }
+
+  public final String getTitle() {
+    if (!titleDecoded) {
+      if (source != null) {
+        title = source.getStringExtra("title");
+      }
+      titleDecoded = true;
+    }
+    return title;
+  }
+
+  public Intent toIntent() {
+    android.os.Bundle bundle = new android.os.Bundle();
+    if (hasCount()) {
+      bundle.putInt("count", count);
+    }
+    bundle.putString("title", getTitle());
+    Intent intent = new Intent();
+    intent.putExtras(bundle);
+    return intent;
+  }
+
+  /**
+   * Puts the fields into the bundle with the keys prefixed, to nest this result in another one.
+   */
+  public void writeFlat(String prefix, Bundle bundle) {
+    if (hasCount()) {
+      bundle.putInt(prefix + "count", getCount());
+    }
+    bundle.putString(prefix + "title", getTitle());
+  }
+
+  /**
+   * Reads a result written by {@link #writeFlat(String, Bundle)} with the same prefix.
+   */
+  public static LazyActivityResult readFlat(String prefix, Bundle bundle) {
+    String countKey = prefix + "count";
+    String titleValue = bundle.getString(prefix + "title");
+    LazyActivityResult.Builder builder = new LazyActivityResult.Builder(titleValue);
+    if (bundle.containsKey(countKey)) {
+      builder.setCount(bundle.getInt(countKey));
+    }
+    return builder.build();
+  }
+
+  public static class Builder {
+    private int count;
+
+    private String title;
+
+    private long presence0;
+
+    public Builder(String title) {
+      this.title = title;
+    }
+
+    public Builder setCount(int count) {
+      this.count = count;
+      presence0 |= 0x1L;
+      return this;
+    }
+
+    public LazyActivityResult build() {
+      LazyActivityResult result = new LazyActivityResult();
+      result.count = count;
+      result.title = title;
+      result.presence0 = presence0;
+      return result;
+    }
+  }
+}
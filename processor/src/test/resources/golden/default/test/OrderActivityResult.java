@@ -0,0 +1,183 @@
+package test;
+
+import android.content.Intent;
+import android.os.Bundle;
+import com.rsinukov.activityresult.CustomBundler;
+import java.lang.Override;
+import java.lang.String;
+import java.lang.SuppressWarnings;
+import java.util.Date;
+
+public class OrderActivityResult {
+  private Status[] history;
+
+  private Date when;
+
+  private AddressActivityResult shipping;
+
+  private long id;
+
+  private OrderActivityResult() {
+  }
+
+  public static OrderActivityResult with(Intent intent) {
+    android.os.Bundle bundle = intent.getExtras();
+    OrderActivityResult result = new OrderActivityResult();
+    result.history = StatusArrayEnumBundlerHolder.INSTANCE.get("history", bundle);
+    result.when = DateBundlerHolder.INSTANCE.get("when", bundle);
+    result.shipping = AddressActivityResultFlatBundlerHolder.INSTANCE.get("shipping", bundle);
+    result.id = bundle.getLong("id");
+    return result;
+  }
+
+  public final Status[] getHistory() {
+    return history;
+  }
+
+  public final Date getWhen() {
+    return when;
+  }
+
+  public final AddressActivityResult getShipping() {
+    return shipping;
+  }
+
+  public final long getId() {
+    return id;
+  }
+
+  public Intent toIntent() {
+    android.os.Bundle bundle = new android.os.Bundle();
+    StatusArrayEnumBundlerHolder.INSTANCE.put("history", history, bundle);
+    DateBundlerHolder.INSTANCE.put("when", when, bundle);
+    AddressActivityResultFlatBundlerHolder.INSTANCE.put("shipping", shipping, bundle);
+    bundle.putLong("id", id);
+    Intent intent = new Intent();
+    intent.putExtras(bundle);
+    return intent;
+  }
+
+  /**
+   * Puts the fields into the bundle with the keys prefixed, to nest this result in another one.
+   */
+  public void writeFlat(String prefix, Bundle bundle) {
+    StatusArrayEnumBundlerHolder.INSTANCE.put(prefix + "history", getHistory(), bundle);
+    DateBundlerHolder.INSTANCE.put(prefix + "when", getWhen(), bundle);
+    AddressActivityResultFlatBundlerHolder.INSTANCE.put(prefix + "shipping", getShipping(), bundle);
+    bundle.putLong(prefix + "id", getId());
+  }
+
+  /**
+   * Reads a result written by {@link #writeFlat(String, Bundle)} with the same prefix.
+   */
+  public static OrderActivityResult readFlat(String prefix, Bundle bundle) {
+    Status[] historyValue = StatusArrayEnumBundlerHolder.INSTANCE.get(prefix + "history", bundle);
+    Date whenValue = DateBundlerHolder.INSTANCE.get(prefix + "when", bundle);
+    AddressActivityResult shippingValue = AddressActivityResultFlatBundlerHolder.INSTANCE.get(prefix + "shipping", bundle);
+    long idValue = bundle.getLong(prefix + "id");
+    OrderActivityResult.Builder builder = new OrderActivityResult.Builder(shippingValue, idValue);
+    builder.setHistory(historyValue);
+    builder.setWhen(whenValue);
+    return builder.build();
+  }
+
+  private static final class AddressActivityResultFlatBundler implements CustomBundler<AddressActivityResult> {
+    @Override
+    public void put(String key, AddressActivityResult value, Bundle bundle) {
+      bundle.putBoolean(key, value != null);
+      if (value != null) {
+        value.writeFlat(key + ".", bundle);
+      }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Bundle bundle) {
+      if (!bundle.getBoolean(key)) {
+        return null;
+      }
+      return (T) AddressActivityResult.readFlat(key + ".", bundle);
+    }
+  }
+
+  private static final class StatusArrayEnumBundler implements CustomBundler<Status[]> {
+    private static final Status[] VALUES = Status.values();
+
+    @Override
+    public void put(String key, Status[] value, Bundle bundle) {
+      if (value == null) {
+        bundle.putIntArray(key, null);
+        return;
+      }
+      int[] encoded = new int[value.length];
+      for (int i = 0; i < value.length; i++) {
+        encoded[i] = value[i] != null ? value[i].ordinal() : -1;
+      }
+      bundle.putIntArray(key, encoded);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Bundle bundle) {
+      int[] encoded = bundle.getIntArray(key);
+      if (encoded == null) {
+        return null;
+      }
+      Status[] value = new Status[encoded.length];
+      for (int i = 0; i < encoded.length; i++) {
+        value[i] = valueOf(encoded[i]);
+      }
+      return (T) value;
+    }
+
+    private static Status valueOf(int ordinal) {
+      return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+  }
+
+  private static final class StatusArrayEnumBundlerHolder {
+    static final StatusArrayEnumBundler INSTANCE = new StatusArrayEnumBundler();
+  }
+
+  private static final class DateBundlerHolder {
+    static final DateBundler INSTANCE = new DateBundler();
+  }
+
+  private static final class AddressActivityResultFlatBundlerHolder {
+    static final AddressActivityResultFlatBundler INSTANCE = new AddressActivityResultFlatBundler();
+  }
+
+  public static class Builder {
+    private Status[] history;
+
+    private Date when;
+
+    private AddressActivityResult shipping;
+
+    private long id;
+
+    public Builder(AddressActivityResult shipping, long id) {
+      this.shipping = shipping;
+      this.id = id;
+    }
+
+    public Builder setHistory(Status[] history) {
+      this.history = history;
+      return this;
+    }
+
+    public Builder setWhen(Date when) {
+      this.when = when;
+      return this;
+    }
+
+    public OrderActivityResult build() {
+      OrderActivityResult result = new OrderActivityResult();
+      result.history = history;
+      result.when = when;
+      result.shipping = shipping;
+      result.id = id;
+      return result;
+    }
+  }
+}
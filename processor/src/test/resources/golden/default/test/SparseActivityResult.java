@@ -0,0 +1,123 @@
+package test;
+
+import android.content.Intent;
+import android.os.Bundle;
+import java.lang.String;
+
+public class SparseActivityResult {
+  private boolean flag;
+
+  private String title;
+
+  private long presence0;
+
+  private SparseActivityResult() {
+  }
+
+  public static SparseActivityResult with(Intent intent) {
+    SparseActivityResult result = new SparseActivityResult();
+    if (intent.hasExtra("activityresult.sparseMask0")) {
+      long sparseMask0 = intent.getLongExtra("activityresult.sparseMask0", 0L);
+      if ((sparseMask0 & 0x1L) != 0) {
+        result.flag = intent.getBooleanExtra("flag", false);
+        result.presence0 |= 0x1L;
+      }
+      result.title = intent.getStringExtra("title");
+    } else {
+      Bundle bundle = intent.getExtras();
+      for (String key : bundle.keySet()) {
+        switch (key.hashCode()) {
+          case 3145580:
+            if (key.equals("flag")) {
+              if (bundle.containsKey("flag")) {
+                result.flag = bundle.getBoolean("flag");
+                result.presence0 |= 0x1L;
+              }
+            }
+            break;
+          case 110371416:
+            if (key.equals("title")) {
+              result.title = bundle.getString("title");
+            }
+            break;
+        }
+      }
+    }
+    return result;
+  }
+
+  public final boolean getFlag() {
+    return flag;
+  }
+
+  public final boolean hasFlag() {
+    return (presence0 & 0x1L) != 0;
+  }
+
+  public final String getTitle() {
+    return title;
+  }
+
+  public Intent toIntent() {
+    android.os.Bundle bundle = new android.os.Bundle();
+    long sparseMask0 = 0L;
+    if ((presence0 & 0x1L) != 0) {
+      bundle.putBoolean("flag", flag);
+      sparseMask0 |= 0x1L;
+    }
+    bundle.putString("title", title);
+    bundle.putLong("activityresult.sparseMask0", sparseMask0);
+    Intent intent = new Intent();
+    intent.putExtras(bundle);
+    return intent;
+  }
+
+  /**
+   * Puts the fields into the bundle with the keys prefixed, to nest this result in another one.
+   */
+  public void writeFlat(String prefix, Bundle bundle) {
+    if (hasFlag()) {
+      bundle.putBoolean(prefix + "flag", getFlag());
+    }
+    bundle.putString(prefix + "title", getTitle());
+  }
+
+  /**
+   * Reads a result written by {@link #writeFlat(String, Bundle)} with the same prefix.
+   */
+  public static SparseActivityResult readFlat(String prefix, Bundle bundle) {
+    String flagKey = prefix + "flag";
+    String titleValue = bundle.getString(prefix + "title");
+    SparseActivityResult.Builder builder = new SparseActivityResult.Builder(titleValue);
+    if (bundle.containsKey(flagKey)) {
+      builder.setFlag(bundle.getBoolean(flagKey));
+    }
+    return builder.build();
+  }
+
+  public static class Builder {
+    private boolean flag;
+
+    private String title;
+
+    private long presence0;
+
+    public Builder(String title) {
+      this.title = title;
+    }
+
+    public Builder setFlag(boolean flag) {
+      this.flag = flag;
+      presence0 |= 0x1L;
+      return this;
+    }
+
+    public SparseActivityResult build() {
+      SparseActivityResult result = new SparseActivityResult();
+      result.flag = flag;
+      result.title = title;
+      result.presence0 = presence0;
+      return result;
+    }
+  }
+}
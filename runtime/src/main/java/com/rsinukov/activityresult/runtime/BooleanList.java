@@ -0,0 +1,118 @@
+package com.rsinukov.activityresult.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of booleans backed by a boolean[], so reading and writing it does not box the elements. Result
+ * fields of this type are put into the Bundle as a boolean[]. Null elements are not allowed.
+ */
+public final class BooleanList extends AbstractList<Boolean> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private boolean[] elements;
+    private int size;
+
+    public BooleanList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BooleanList(int capacity) {
+        this(new boolean[capacity], 0);
+    }
+
+    private BooleanList(boolean[] elements, int size) {
+        this.elements = elements;
+        this.size = size;
+    }
+
+    /**
+     * @return a list backed by the array without copying it, null if the array is null.
+     */
+    public static BooleanList wrap(boolean[] elements) {
+        return elements != null ? new BooleanList(elements, elements.length) : null;
+    }
+
+    public boolean getBoolean(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    public boolean setBoolean(int index, boolean value) {
+        checkIndex(index);
+        boolean previous = elements[index];
+        elements[index] = value;
+        return previous;
+    }
+
+    public void addBoolean(boolean value) {
+        ensureCapacity(size + 1);
+        elements[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * @return a copy of the elements.
+     */
+    public boolean[] toBooleanArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public Boolean get(int index) {
+        return getBoolean(index);
+    }
+
+    @Override
+    public Boolean set(int index, Boolean value) {
+        return setBoolean(index, value);
+    }
+
+    @Override
+    public void add(int index, Boolean value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        boolean element = value;
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = element;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Boolean remove(int index) {
+        checkIndex(index);
+        boolean previous = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(elements.length * 2, minCapacity));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+    }
+}
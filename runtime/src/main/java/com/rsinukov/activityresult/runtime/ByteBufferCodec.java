@@ -0,0 +1,379 @@
+package com.rsinukov.activityresult.runtime;
+
+import android.os.Bundle;
+import android.os.Parcel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * Reads and writes the values of the binary format of generated Result classes. The format is
+ * positional: a header with the format version and the schema of the Result class, followed by the
+ * fields sorted by name. Arrays, lists and strings are prefixed with their length, -1 for null.
+ * Values are written in the byte order of the buffer, so both sides must use the same order.
+ * <p>
+ * Parcelables and fields with a custom bundler have no binary encoding and are written as a
+ * marshalled Bundle, which only the same platform version can read. Buffers of Result classes with
+ * such fields suit IPC and caches that are dropped on updates, not persistent storage.
+ */
+public final class ByteBufferCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int NULL_LENGTH = -1;
+
+    private ByteBufferCodec() {
+    }
+
+    public static void writeHeader(ByteBuffer buffer, int schema) {
+        buffer.put(VERSION);
+        buffer.putInt(schema);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the buffer was written with another format version or
+     *                                  another layout of the Result class.
+     */
+    public static void readHeader(ByteBuffer buffer, int schema) {
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported format version " + version);
+        }
+        int bufferSchema = buffer.getInt();
+        if (bufferSchema != schema) {
+            throw new IllegalArgumentException(
+                    String.format("Schema 0x%08x does not match the Result class schema 0x%08x", bufferSchema, schema)
+            );
+        }
+    }
+
+    public static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, UTF_8);
+        }
+        return value;
+    }
+
+    public static void putStringArray(ByteBuffer buffer, String[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            for (String string : value) {
+                putString(buffer, string);
+            }
+        }
+    }
+
+    public static String[] getStringArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        String[] value = new String[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = getString(buffer);
+        }
+        return value;
+    }
+
+    public static void putBooleanArray(ByteBuffer buffer, boolean[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            for (boolean element : value) {
+                buffer.put(element ? (byte) 1 : (byte) 0);
+            }
+        }
+    }
+
+    public static boolean[] getBooleanArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        boolean[] value = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = buffer.get() != 0;
+        }
+        return value;
+    }
+
+    public static void putByteArray(ByteBuffer buffer, byte[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            buffer.put(value);
+        }
+    }
+
+    public static byte[] getByteArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    // the view buffers below copy in bulk but do not move the position of the buffer
+
+    public static void putShortArray(ByteBuffer buffer, short[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            buffer.asShortBuffer().put(value);
+            buffer.position(buffer.position() + 2 * value.length);
+        }
+    }
+
+    public static short[] getShortArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        short[] value = new short[length];
+        buffer.asShortBuffer().get(value);
+        buffer.position(buffer.position() + 2 * length);
+        return value;
+    }
+
+    public static void putCharArray(ByteBuffer buffer, char[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            buffer.asCharBuffer().put(value);
+            buffer.position(buffer.position() + 2 * value.length);
+        }
+    }
+
+    public static char[] getCharArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        char[] value = new char[length];
+        buffer.asCharBuffer().get(value);
+        buffer.position(buffer.position() + 2 * length);
+        return value;
+    }
+
+    public static void putIntArray(ByteBuffer buffer, int[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            buffer.asIntBuffer().put(value);
+            buffer.position(buffer.position() + 4 * value.length);
+        }
+    }
+
+    public static int[] getIntArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        int[] value = new int[length];
+        buffer.asIntBuffer().get(value);
+        buffer.position(buffer.position() + 4 * length);
+        return value;
+    }
+
+    public static void putLongArray(ByteBuffer buffer, long[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            buffer.asLongBuffer().put(value);
+            buffer.position(buffer.position() + 8 * value.length);
+        }
+    }
+
+    public static long[] getLongArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        long[] value = new long[length];
+        buffer.asLongBuffer().get(value);
+        buffer.position(buffer.position() + 8 * length);
+        return value;
+    }
+
+    public static void putFloatArray(ByteBuffer buffer, float[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            buffer.asFloatBuffer().put(value);
+            buffer.position(buffer.position() + 4 * value.length);
+        }
+    }
+
+    public static float[] getFloatArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        float[] value = new float[length];
+        buffer.asFloatBuffer().get(value);
+        buffer.position(buffer.position() + 4 * length);
+        return value;
+    }
+
+    public static void putDoubleArray(ByteBuffer buffer, double[] value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.length)) {
+            buffer.asDoubleBuffer().put(value);
+            buffer.position(buffer.position() + 8 * value.length);
+        }
+    }
+
+    public static double[] getDoubleArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        double[] value = new double[length];
+        buffer.asDoubleBuffer().get(value);
+        buffer.position(buffer.position() + 8 * length);
+        return value;
+    }
+
+    public static void putStringArrayList(ByteBuffer buffer, ArrayList<String> value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.size())) {
+            for (int i = 0; i < value.size(); i++) {
+                putString(buffer, value.get(i));
+            }
+        }
+    }
+
+    public static ArrayList<String> getStringArrayList(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        ArrayList<String> value = new ArrayList<String>(length);
+        for (int i = 0; i < length; i++) {
+            value.add(getString(buffer));
+        }
+        return value;
+    }
+
+    /**
+     * Writes every element after a byte that is 0 for null.
+     */
+    public static void putIntegerArrayList(ByteBuffer buffer, ArrayList<Integer> value) {
+        if (putLength(buffer, value == null ? NULL_LENGTH : value.size())) {
+            for (int i = 0; i < value.size(); i++) {
+                Integer element = value.get(i);
+                buffer.put(element != null ? (byte) 1 : (byte) 0);
+                if (element != null) {
+                    buffer.putInt(element);
+                }
+            }
+        }
+    }
+
+    public static ArrayList<Integer> getIntegerArrayList(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        ArrayList<Integer> value = new ArrayList<Integer>(length);
+        for (int i = 0; i < length; i++) {
+            value.add(buffer.get() != 0 ? Integer.valueOf(buffer.getInt()) : null);
+        }
+        return value;
+    }
+
+    /**
+     * Writes the value with Java serialization, which unlike a marshalled Parcel does not depend on
+     * the platform version.
+     *
+     * @throws IllegalArgumentException if the value can not be serialized.
+     */
+    public static void putSerializable(ByteBuffer buffer, Serializable value) {
+        if (value == null) {
+            buffer.putInt(NULL_LENGTH);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream output = new ObjectOutputStream(bytes);
+            output.writeObject(value);
+            output.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can not serialize " + value.getClass().getName(), e);
+        }
+        putByteArray(buffer, bytes.toByteArray());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value can not be deserialized.
+     */
+    public static Serializable getSerializable(ByteBuffer buffer) {
+        byte[] data = getByteArray(buffer);
+        if (data == null) {
+            return null;
+        }
+        try {
+            ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data));
+            try {
+                return (Serializable) input.readObject();
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can not deserialize the value", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Can not deserialize the value", e);
+        }
+    }
+
+    /**
+     * Writes a Bundle marshalled by a {@link Parcel}, used for values without a binary encoding.
+     * Like any marshalled Parcel, it is only readable by the same platform version, so it must not be
+     * persisted across updates.
+     */
+    public static void putBundle(ByteBuffer buffer, Bundle value) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(value);
+            putByteArray(buffer, parcel.marshall());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    public static Bundle getBundle(ByteBuffer buffer, ClassLoader classLoader) {
+        byte[] data = getByteArray(buffer);
+        if (data == null) {
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(classLoader);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @return false if the value is null and nothing follows the length.
+     */
+    private static boolean putLength(ByteBuffer buffer, int length) {
+        buffer.putInt(length);
+        return length != NULL_LENGTH;
+    }
+}
@@ -0,0 +1,118 @@
+package com.rsinukov.activityresult.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of doubles backed by a double[], so reading and writing it does not box the elements. Result
+ * fields of this type are put into the Bundle as a double[]. Null elements are not allowed.
+ */
+public final class DoubleList extends AbstractList<Double> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private double[] elements;
+    private int size;
+
+    public DoubleList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DoubleList(int capacity) {
+        this(new double[capacity], 0);
+    }
+
+    private DoubleList(double[] elements, int size) {
+        this.elements = elements;
+        this.size = size;
+    }
+
+    /**
+     * @return a list backed by the array without copying it, null if the array is null.
+     */
+    public static DoubleList wrap(double[] elements) {
+        return elements != null ? new DoubleList(elements, elements.length) : null;
+    }
+
+    public double getDouble(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    public double setDouble(int index, double value) {
+        checkIndex(index);
+        double previous = elements[index];
+        elements[index] = value;
+        return previous;
+    }
+
+    public void addDouble(double value) {
+        ensureCapacity(size + 1);
+        elements[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * @return a copy of the elements.
+     */
+    public double[] toDoubleArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public Double get(int index) {
+        return getDouble(index);
+    }
+
+    @Override
+    public Double set(int index, Double value) {
+        return setDouble(index, value);
+    }
+
+    @Override
+    public void add(int index, Double value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        double element = value;
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = element;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Double remove(int index) {
+        checkIndex(index);
+        double previous = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(elements.length * 2, minCapacity));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.rsinukov.activityresult.runtime;
+
+import com.rsinukov.activityresult.CustomBundler;
+
+/**
+ * Describes one field of a compact Result class: its extras key, how it is put into a Bundle and
+ * where its value is kept in {@link ResultValues}. Generated classes declare one array of
+ * descriptors, which {@link ResultCodec} runs through to decode and encode every field.
+ */
+public final class FieldDescriptor {
+
+    // primitive types, kept in the primitive slots unless the field is boxed
+    public static final int INT = 0;
+    public static final int LONG = 1;
+    public static final int DOUBLE = 2;
+    public static final int SHORT = 3;
+    public static final int FLOAT = 4;
+    public static final int BYTE = 5;
+    public static final int BOOLEAN = 6;
+    public static final int CHAR = 7;
+
+    public static final int STRING = 8;
+    public static final int CHAR_SEQUENCE = 9;
+    public static final int BUNDLE = 10;
+    public static final int PARCELABLE = 11;
+    public static final int SERIALIZABLE = 12;
+    public static final int BOOLEAN_ARRAY = 13;
+    public static final int BYTE_ARRAY = 14;
+    public static final int SHORT_ARRAY = 15;
+    public static final int CHAR_ARRAY = 16;
+    public static final int INT_ARRAY = 17;
+    public static final int LONG_ARRAY = 18;
+    public static final int FLOAT_ARRAY = 19;
+    public static final int DOUBLE_ARRAY = 20;
+    public static final int STRING_ARRAY = 21;
+    public static final int CHAR_SEQUENCE_ARRAY = 22;
+    public static final int PARCELABLE_ARRAY = 23;
+    public static final int STRING_ARRAY_LIST = 24;
+    public static final int INTEGER_ARRAY_LIST = 25;
+    public static final int CHAR_SEQUENCE_ARRAY_LIST = 26;
+    public static final int PARCELABLE_ARRAY_LIST = 27;
+    public static final int SPARSE_PARCELABLE_ARRAY = 28;
+    public static final int CUSTOM = 29;
+
+    private static final int NO_PRESENCE_BIT = -1;
+
+    final String key;
+    final int type;
+    final int slot;
+    final int presenceBit;
+    final boolean isBoxed;
+    final CustomBundler<Object> bundler;
+
+    private FieldDescriptor(
+            String key,
+            int type,
+            int slot,
+            int presenceBit,
+            boolean isBoxed,
+            CustomBundler<Object> bundler
+    ) {
+        this.key = key;
+        this.type = type;
+        this.slot = slot;
+        this.presenceBit = presenceBit;
+        this.isBoxed = isBoxed;
+        this.bundler = bundler;
+    }
+
+    /**
+     * A required primitive field in the primitive slot.
+     */
+    public static FieldDescriptor value(String key, int type, int slot) {
+        return new FieldDescriptor(key, checkPrimitive(type), slot, NO_PRESENCE_BIT, false, null);
+    }
+
+    /**
+     * An optional primitive or wrapper field in the primitive slot, present if its bit is set.
+     */
+    public static FieldDescriptor optional(String key, int type, int slot, int presenceBit) {
+        return new FieldDescriptor(key, checkPrimitive(type), slot, presenceBit, false, null);
+    }
+
+    /**
+     * A wrapper field without a presence bit, kept boxed in the object slot.
+     */
+    public static FieldDescriptor boxed(String key, int type, int slot) {
+        return new FieldDescriptor(key, checkPrimitive(type), slot, NO_PRESENCE_BIT, true, null);
+    }
+
+    /**
+     * An object field in the object slot.
+     */
+    public static FieldDescriptor object(String key, int type, int slot) {
+        if (type <= CHAR || type >= CUSTOM) {
+            throw new IllegalArgumentException("Not an object type: " + type);
+        }
+        return new FieldDescriptor(key, type, slot, NO_PRESENCE_BIT, false, null);
+    }
+
+    /**
+     * A field put into the Bundle by a stateless bundler, which is shared by all instances.
+     */
+    @SuppressWarnings("unchecked")
+    public static FieldDescriptor custom(String key, CustomBundler<?> bundler, int slot) {
+        return new FieldDescriptor(key, CUSTOM, slot, NO_PRESENCE_BIT, false, (CustomBundler<Object>) bundler);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return true if the field has no typed Intent extra and is kept in a Bundle.
+     */
+    boolean isBundleOnly() {
+        return bundler != null || type == SPARSE_PARCELABLE_ARRAY;
+    }
+
+    private static int checkPrimitive(int type) {
+        if (type < INT || type > CHAR) {
+            throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+        return type;
+    }
+}
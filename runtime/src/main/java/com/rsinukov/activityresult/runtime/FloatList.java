@@ -0,0 +1,118 @@
+package com.rsinukov.activityresult.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of floats backed by a float[], so reading and writing it does not box the elements. Result
+ * fields of this type are put into the Bundle as a float[]. Null elements are not allowed.
+ */
+public final class FloatList extends AbstractList<Float> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private float[] elements;
+    private int size;
+
+    public FloatList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FloatList(int capacity) {
+        this(new float[capacity], 0);
+    }
+
+    private FloatList(float[] elements, int size) {
+        this.elements = elements;
+        this.size = size;
+    }
+
+    /**
+     * @return a list backed by the array without copying it, null if the array is null.
+     */
+    public static FloatList wrap(float[] elements) {
+        return elements != null ? new FloatList(elements, elements.length) : null;
+    }
+
+    public float getFloat(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    public float setFloat(int index, float value) {
+        checkIndex(index);
+        float previous = elements[index];
+        elements[index] = value;
+        return previous;
+    }
+
+    public void addFloat(float value) {
+        ensureCapacity(size + 1);
+        elements[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * @return a copy of the elements.
+     */
+    public float[] toFloatArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public Float get(int index) {
+        return getFloat(index);
+    }
+
+    @Override
+    public Float set(int index, Float value) {
+        return setFloat(index, value);
+    }
+
+    @Override
+    public void add(int index, Float value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        float element = value;
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = element;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Float remove(int index) {
+        checkIndex(index);
+        float previous = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(elements.length * 2, minCapacity));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.rsinukov.activityresult.runtime;
+
+import android.os.Parcel;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps result values that are too large for a Binder transaction in memory-mapped files, so only a
+ * short token travels in the Intent. Generated Result classes use the installed store for fields
+ * declared with {@code offload = true}. Values are kept for the TTL, so the same Intent can be read
+ * more than once, and the oldest ones are evicted when the store holds more than maxEntries values.
+ * <p>
+ * Results are usually encoded on the main thread, so writing a value only maps and fills its file.
+ * Expired and surplus values are deleted afterwards on a background thread, the store may hold more
+ * than maxEntries values until then.
+ */
+public final class MappedResultStore {
+
+    /**
+     * Suffix of the extra key that holds the token of an offloaded field.
+     */
+    public static final String TOKEN_SUFFIX = "#mapped";
+
+    public static final int DEFAULT_THRESHOLD = 256 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 8;
+
+    private static final String FILE_PREFIX = "result-";
+    private static final int MAX_NUMBER_DIGITS = 19;
+    // the prefix, an int, two longs and the dashes between them
+    private static final int MAX_TOKEN_LENGTH = FILE_PREFIX.length() + 10 + 1 + 19 + 1 + 19;
+    private static final AtomicLong COUNTER = new AtomicLong();
+    private static final Executor CLEANUP_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MappedResultStore-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static volatile MappedResultStore installed;
+
+    private final File directory;
+    private final int threshold;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final AtomicBoolean cleanupScheduled = new AtomicBoolean();
+    private volatile boolean directoryCreated;
+
+    public MappedResultStore(File directory) {
+        this(directory, DEFAULT_THRESHOLD, DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param threshold  minimal estimated size in bytes of a value that is moved to the store.
+     * @param ttlMillis  time after which a stored value is deleted.
+     * @param maxEntries maximal number of stored values.
+     */
+    public MappedResultStore(File directory, int threshold, long ttlMillis, int maxEntries) {
+        if (threshold < 0 || ttlMillis <= 0 || maxEntries < 1) {
+            throw new IllegalArgumentException("threshold must not be negative, ttlMillis and maxEntries positive");
+        }
+        this.directory = directory;
+        this.threshold = threshold;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Makes generated Result classes offload their fields to the store. Pass null to stop offloading.
+     */
+    public static void install(MappedResultStore store) {
+        installed = store;
+    }
+
+    public static MappedResultStore getInstalled() {
+        return installed;
+    }
+
+    /**
+     * Reads a value from the installed store.
+     *
+     * @return null if no store is installed or the value is expired or evicted.
+     */
+    public static Object restore(String token) {
+        MappedResultStore store = installed;
+        return store != null ? store.load(token, MappedResultStore.class.getClassLoader()) : null;
+    }
+
+    /**
+     * Writes the value to the store if it is at least as large as the threshold. The size of strings,
+     * primitive arrays and primitive lists is computed from their length. Other values are not
+     * written to a Parcel just to weigh them: they are always stored, since a field is only offloaded
+     * if it is declared to hold large values.
+     *
+     * @param serializable true to write the value with Java serialization instead of
+     *                     {@link Parcel#writeValue(Object)}.
+     * @return the token of the stored value, null if the value should stay in the Intent.
+     */
+    public String offer(Object value, boolean serializable) {
+        if (value == null) {
+            return null;
+        }
+        int estimatedSize = estimateSimpleSize(value);
+        if (estimatedSize >= 0 && estimatedSize < threshold) {
+            return null;
+        }
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeInt(serializable ? 1 : 0);
+            if (serializable) {
+                parcel.writeSerializable((Serializable) value);
+            } else {
+                parcel.writeValue(value);
+            }
+            return write(parcel.marshall());
+        } catch (IOException e) {
+            // the value goes through the Intent as usual
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @return the value stored with the token, null if it is expired or evicted.
+     */
+    public Object load(String token, ClassLoader classLoader) {
+        if (!isValidToken(token)) {
+            return null;
+        }
+        File file = new File(directory, token);
+        if (isExpired(file, System.currentTimeMillis())) {
+            file.delete();
+            return null;
+        }
+
+        byte[] data;
+        try {
+            data = read(file);
+        } catch (IOException e) {
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            if (parcel.readInt() == 1) {
+                return parcel.readSerializable();
+            }
+            return parcel.readValue(classLoader);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Deletes the expired values, then the oldest ones if the store holds more than maxEntries.
+     * Called on a background thread after every write.
+     */
+    public synchronized void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (File file : listFiles()) {
+            if (isExpired(file, now)) {
+                file.delete();
+            }
+        }
+
+        File[] files = listFiles();
+        if (files.length > maxEntries) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File left, File right) {
+                    long diff = left.lastModified() - right.lastModified();
+                    return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+                }
+            });
+            for (int i = 0; i < files.length - maxEntries; i++) {
+                files[i].delete();
+            }
+        }
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return true if the token has the form written by {@link #write(byte[])}: the prefix, then the
+     * process id, the time and the counter as decimal numbers of at most 19 digits separated by
+     * dashes.
+     */
+    static boolean isValidToken(String token) {
+        if (token == null || !token.startsWith(FILE_PREFIX) || token.length() > MAX_TOKEN_LENGTH) {
+            return false;
+        }
+        int numbers = 0;
+        int digits = 0;
+        for (int i = FILE_PREFIX.length(); i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_NUMBER_DIGITS) {
+                    return false;
+                }
+            } else if (c == '-' && digits > 0) {
+                numbers++;
+                digits = 0;
+            } else {
+                return false;
+            }
+        }
+        return numbers == 2 && digits > 0;
+    }
+
+    /**
+     * @return the estimated number of bytes the value takes in a Parcel, 0 for values that can not
+     * be written to a Parcel. Values other than strings, primitive arrays and lists are written to a
+     * Parcel to weigh them.
+     */
+    public static int estimateSize(Object value) {
+        int size = estimateSimpleSize(value);
+        if (size >= 0) {
+            return size;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeValue(value);
+            return parcel.dataSize();
+        } catch (RuntimeException e) {
+            return 0;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @return the size of values that can be computed without writing them to a Parcel, -1 otherwise.
+     */
+    static int estimateSimpleSize(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof CharSequence) {
+            return 8 + 2 * ((CharSequence) value).length();
+        } else if (value instanceof String[]) {
+            int size = 8;
+            for (String element : (String[]) value) {
+                size += element != null ? 8 + 2 * element.length() : 4;
+            }
+            return size;
+        } else if (value instanceof byte[]) {
+            return 8 + ((byte[]) value).length;
+        } else if (value instanceof int[]) {
+            return 8 + 4 * ((int[]) value).length;
+        } else if (value instanceof long[]) {
+            return 8 + 8 * ((long[]) value).length;
+        } else if (value instanceof double[]) {
+            return 8 + 8 * ((double[]) value).length;
+        } else if (value instanceof float[]) {
+            return 8 + 4 * ((float[]) value).length;
+        } else if (value instanceof boolean[]) {
+            return 8 + 4 * ((boolean[]) value).length;
+        } else if (value instanceof char[]) {
+            return 8 + 4 * ((char[]) value).length;
+        } else if (value instanceof short[]) {
+            return 8 + 4 * ((short[]) value).length;
+        } else if (value instanceof IntList) {
+            return 8 + 4 * ((IntList) value).size();
+        } else if (value instanceof LongList) {
+            return 8 + 8 * ((LongList) value).size();
+        } else if (value instanceof FloatList) {
+            return 8 + 4 * ((FloatList) value).size();
+        } else if (value instanceof DoubleList) {
+            return 8 + 8 * ((DoubleList) value).size();
+        } else if (value instanceof BooleanList) {
+            return 8 + 4 * ((BooleanList) value).size();
+        } else if (value instanceof SparseIntArray) {
+            // written as an int[] of interleaved keys and values
+            return 8 + 8 * ((SparseIntArray) value).size();
+        } else if (value instanceof SparseBooleanArray) {
+            return 8 + 8 * ((SparseBooleanArray) value).size();
+        }
+        return -1;
+    }
+
+    private String write(byte[] data) throws IOException {
+        if (!directoryCreated) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can not create " + directory);
+            }
+            directoryCreated = true;
+        }
+
+        String token = FILE_PREFIX + android.os.Process.myPid() + "-" + System.currentTimeMillis() + "-"
+                + COUNTER.incrementAndGet();
+        RandomAccessFile file = new RandomAccessFile(new File(directory, token), "rw");
+        try {
+            // no force(), the value only has to outlive the process handing it over, not a power loss
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, data.length);
+            buffer.put(data);
+        } finally {
+            file.close();
+        }
+        scheduleCleanup();
+        return token;
+    }
+
+    private void scheduleCleanup() {
+        if (cleanupScheduled.compareAndSet(false, true)) {
+            CLEANUP_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // writes during the cleanup schedule the next one
+                    cleanupScheduled.set(false);
+                    evictExpired();
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the whole file into an array. Parcel only unmarshalls from an array, which it copies
+     * again, so mapping the file would not save a copy.
+     */
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(data);
+            return data;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private File[] listFiles() {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().startsWith(FILE_PREFIX);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    private boolean isExpired(File file, long now) {
+        return !file.exists() || file.lastModified() + ttlMillis < now;
+    }
+}
@@ -0,0 +1,145 @@
+package com.rsinukov.activityresult.runtime;
+
+import android.os.Bundle;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+import com.rsinukov.activityresult.CustomBundler;
+
+/**
+ * Bundlers the processor binds to fields of the primitive collection types that have no other
+ * bundler. Every collection is put into the Bundle as one primitive array under the field key.
+ */
+public final class PrimitiveCollectionBundlers {
+
+    private PrimitiveCollectionBundlers() {
+    }
+
+    public static class IntListBundler implements CustomBundler<IntList> {
+        @Override
+        public void put(String key, IntList value, Bundle bundle) {
+            bundle.putIntArray(key, value != null ? value.toIntArray() : null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key, Bundle bundle) {
+            return (T) IntList.wrap(bundle.getIntArray(key));
+        }
+    }
+
+    public static class LongListBundler implements CustomBundler<LongList> {
+        @Override
+        public void put(String key, LongList value, Bundle bundle) {
+            bundle.putLongArray(key, value != null ? value.toLongArray() : null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key, Bundle bundle) {
+            return (T) LongList.wrap(bundle.getLongArray(key));
+        }
+    }
+
+    public static class FloatListBundler implements CustomBundler<FloatList> {
+        @Override
+        public void put(String key, FloatList value, Bundle bundle) {
+            bundle.putFloatArray(key, value != null ? value.toFloatArray() : null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key, Bundle bundle) {
+            return (T) FloatList.wrap(bundle.getFloatArray(key));
+        }
+    }
+
+    public static class DoubleListBundler implements CustomBundler<DoubleList> {
+        @Override
+        public void put(String key, DoubleList value, Bundle bundle) {
+            bundle.putDoubleArray(key, value != null ? value.toDoubleArray() : null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key, Bundle bundle) {
+            return (T) DoubleList.wrap(bundle.getDoubleArray(key));
+        }
+    }
+
+    public static class BooleanListBundler implements CustomBundler<BooleanList> {
+        @Override
+        public void put(String key, BooleanList value, Bundle bundle) {
+            bundle.putBooleanArray(key, value != null ? value.toBooleanArray() : null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key, Bundle bundle) {
+            return (T) BooleanList.wrap(bundle.getBooleanArray(key));
+        }
+    }
+
+    /**
+     * Puts the keys and values interleaved into one int[].
+     */
+    public static class SparseIntArrayBundler implements CustomBundler<SparseIntArray> {
+        @Override
+        public void put(String key, SparseIntArray value, Bundle bundle) {
+            int[] pairs = null;
+            if (value != null) {
+                pairs = new int[value.size() * 2];
+                for (int i = 0; i < value.size(); i++) {
+                    pairs[2 * i] = value.keyAt(i);
+                    pairs[2 * i + 1] = value.valueAt(i);
+                }
+            }
+            bundle.putIntArray(key, pairs);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key, Bundle bundle) {
+            int[] pairs = bundle.getIntArray(key);
+            if (pairs == null) {
+                return null;
+            }
+            SparseIntArray value = new SparseIntArray(pairs.length / 2);
+            for (int i = 0; i + 1 < pairs.length; i += 2) {
+                value.append(pairs[i], pairs[i + 1]);
+            }
+            return (T) value;
+        }
+    }
+
+    /**
+     * Puts the keys and values interleaved into one int[], with 1 for true.
+     */
+    public static class SparseBooleanArrayBundler implements CustomBundler<SparseBooleanArray> {
+        @Override
+        public void put(String key, SparseBooleanArray value, Bundle bundle) {
+            int[] pairs = null;
+            if (value != null) {
+                pairs = new int[value.size() * 2];
+                for (int i = 0; i < value.size(); i++) {
+                    pairs[2 * i] = value.keyAt(i);
+                    pairs[2 * i + 1] = value.valueAt(i) ? 1 : 0;
+                }
+            }
+            bundle.putIntArray(key, pairs);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key, Bundle bundle) {
+            int[] pairs = bundle.getIntArray(key);
+            if (pairs == null) {
+                return null;
+            }
+            SparseBooleanArray value = new SparseBooleanArray(pairs.length / 2);
+            for (int i = 0; i + 1 < pairs.length; i += 2) {
+                value.append(pairs[i], pairs[i + 1] != 0);
+            }
+            return (T) value;
+        }
+    }
+}
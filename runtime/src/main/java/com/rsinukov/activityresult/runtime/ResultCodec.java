@@ -0,0 +1,506 @@
+package com.rsinukov.activityresult.runtime;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.SparseArray;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Decodes and encodes compact Result classes by running through their field descriptors. Reads
+ * and writes the same extras as the inline code generated for a Result class, so both sides of an
+ * Intent do not have to use the same mode.
+ * <p>
+ * The methods that take an Intent are the ones of the direct Intent mode. They use the typed Intent
+ * extras and keep the fields without one in a Bundle nested under {@link #BUNDLE_EXTRA}.
+ */
+public final class ResultCodec {
+
+    /**
+     * The extra of the nested Bundle in the direct Intent mode, the same as in inline classes.
+     */
+    public static final String BUNDLE_EXTRA = "activityresult.bundle";
+
+    private ResultCodec() {
+    }
+
+    public static void decode(FieldDescriptor[] fields, Bundle bundle, ResultValues values) {
+        for (FieldDescriptor field : fields) {
+            if (field.bundler != null) {
+                values.setObject(field.slot, field.bundler.get(field.key, bundle));
+            } else if (field.type > FieldDescriptor.CHAR) {
+                values.setObject(field.slot, getObject(bundle, field.key, field.type));
+            } else if (field.isBoxed) {
+                values.setObject(field.slot, box(field.type, getBits(bundle, field.key, field.type)));
+            } else if (field.presenceBit >= 0) {
+                // a missing value leaves the bit unset
+                if (bundle.containsKey(field.key)) {
+                    values.setBits(field.slot, getBits(bundle, field.key, field.type));
+                    values.setPresent(field.presenceBit, true);
+                }
+            } else {
+                values.setBits(field.slot, getBits(bundle, field.key, field.type));
+            }
+        }
+    }
+
+    public static Bundle encode(FieldDescriptor[] fields, ResultValues values) {
+        Bundle bundle = new Bundle();
+        for (FieldDescriptor field : fields) {
+            if (field.bundler != null) {
+                field.bundler.put(field.key, values.getObject(field.slot), bundle);
+            } else if (field.type > FieldDescriptor.CHAR) {
+                putObject(bundle, field.key, field.type, values.getObject(field.slot));
+            } else if (field.isBoxed) {
+                putBits(bundle, field.key, field.type, unbox(field.type, values.getObject(field.slot)));
+            } else if (field.presenceBit < 0 || values.has(field.presenceBit)) {
+                putBits(bundle, field.key, field.type, values.getBits(field.slot));
+            }
+        }
+        return bundle;
+    }
+
+    public static void decode(FieldDescriptor[] fields, Intent intent, ResultValues values) {
+        Bundle bundle = null;
+        for (FieldDescriptor field : fields) {
+            if (field.isBundleOnly()) {
+                if (bundle == null) {
+                    bundle = intent.getBundleExtra(BUNDLE_EXTRA);
+                }
+                values.setObject(field.slot, field.bundler != null
+                        ? field.bundler.get(field.key, bundle)
+                        : bundle.getSparseParcelableArray(field.key));
+            } else if (field.type > FieldDescriptor.CHAR) {
+                values.setObject(field.slot, getObjectExtra(intent, field.key, field.type));
+            } else if (field.isBoxed) {
+                values.setObject(field.slot, box(field.type, getBitsExtra(intent, field.key, field.type)));
+            } else if (field.presenceBit >= 0) {
+                if (intent.hasExtra(field.key)) {
+                    values.setBits(field.slot, getBitsExtra(intent, field.key, field.type));
+                    values.setPresent(field.presenceBit, true);
+                }
+            } else {
+                values.setBits(field.slot, getBitsExtra(intent, field.key, field.type));
+            }
+        }
+    }
+
+    public static void encode(FieldDescriptor[] fields, ResultValues values, Intent target) {
+        Bundle bundle = null;
+        for (FieldDescriptor field : fields) {
+            if (field.isBundleOnly()) {
+                if (bundle == null) {
+                    bundle = new Bundle();
+                }
+                if (field.bundler != null) {
+                    field.bundler.put(field.key, values.getObject(field.slot), bundle);
+                } else {
+                    putObject(bundle, field.key, field.type, values.getObject(field.slot));
+                }
+            } else if (field.type > FieldDescriptor.CHAR) {
+                putObjectExtra(target, field.key, field.type, values.getObject(field.slot));
+            } else if (field.isBoxed) {
+                putBitsExtra(target, field.key, field.type, unbox(field.type, values.getObject(field.slot)));
+            } else if (field.presenceBit < 0 || values.has(field.presenceBit)) {
+                putBitsExtra(target, field.key, field.type, values.getBits(field.slot));
+            }
+        }
+        if (bundle != null) {
+            target.putExtra(BUNDLE_EXTRA, bundle);
+        }
+    }
+
+    private static long getBits(Bundle bundle, String key, int type) {
+        switch (type) {
+            case FieldDescriptor.INT:
+                return bundle.getInt(key);
+            case FieldDescriptor.LONG:
+                return bundle.getLong(key);
+            case FieldDescriptor.DOUBLE:
+                return Double.doubleToRawLongBits(bundle.getDouble(key));
+            case FieldDescriptor.SHORT:
+                return bundle.getShort(key);
+            case FieldDescriptor.FLOAT:
+                return Float.floatToRawIntBits(bundle.getFloat(key));
+            case FieldDescriptor.BYTE:
+                return bundle.getByte(key);
+            case FieldDescriptor.BOOLEAN:
+                return bundle.getBoolean(key) ? 1 : 0;
+            case FieldDescriptor.CHAR:
+                return bundle.getChar(key);
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    private static void putBits(Bundle bundle, String key, int type, long bits) {
+        switch (type) {
+            case FieldDescriptor.INT:
+                bundle.putInt(key, (int) bits);
+                break;
+            case FieldDescriptor.LONG:
+                bundle.putLong(key, bits);
+                break;
+            case FieldDescriptor.DOUBLE:
+                bundle.putDouble(key, Double.longBitsToDouble(bits));
+                break;
+            case FieldDescriptor.SHORT:
+                bundle.putShort(key, (short) bits);
+                break;
+            case FieldDescriptor.FLOAT:
+                bundle.putFloat(key, Float.intBitsToFloat((int) bits));
+                break;
+            case FieldDescriptor.BYTE:
+                bundle.putByte(key, (byte) bits);
+                break;
+            case FieldDescriptor.BOOLEAN:
+                bundle.putBoolean(key, bits != 0);
+                break;
+            case FieldDescriptor.CHAR:
+                bundle.putChar(key, (char) bits);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    private static long getBitsExtra(Intent intent, String key, int type) {
+        switch (type) {
+            case FieldDescriptor.INT:
+                return intent.getIntExtra(key, 0);
+            case FieldDescriptor.LONG:
+                return intent.getLongExtra(key, 0L);
+            case FieldDescriptor.DOUBLE:
+                return Double.doubleToRawLongBits(intent.getDoubleExtra(key, 0d));
+            case FieldDescriptor.SHORT:
+                return intent.getShortExtra(key, (short) 0);
+            case FieldDescriptor.FLOAT:
+                return Float.floatToRawIntBits(intent.getFloatExtra(key, 0f));
+            case FieldDescriptor.BYTE:
+                return intent.getByteExtra(key, (byte) 0);
+            case FieldDescriptor.BOOLEAN:
+                return intent.getBooleanExtra(key, false) ? 1 : 0;
+            case FieldDescriptor.CHAR:
+                return intent.getCharExtra(key, (char) 0);
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    private static void putBitsExtra(Intent intent, String key, int type, long bits) {
+        switch (type) {
+            case FieldDescriptor.INT:
+                intent.putExtra(key, (int) bits);
+                break;
+            case FieldDescriptor.LONG:
+                intent.putExtra(key, bits);
+                break;
+            case FieldDescriptor.DOUBLE:
+                intent.putExtra(key, Double.longBitsToDouble(bits));
+                break;
+            case FieldDescriptor.SHORT:
+                intent.putExtra(key, (short) bits);
+                break;
+            case FieldDescriptor.FLOAT:
+                intent.putExtra(key, Float.intBitsToFloat((int) bits));
+                break;
+            case FieldDescriptor.BYTE:
+                intent.putExtra(key, (byte) bits);
+                break;
+            case FieldDescriptor.BOOLEAN:
+                intent.putExtra(key, bits != 0);
+                break;
+            case FieldDescriptor.CHAR:
+                intent.putExtra(key, (char) bits);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    /**
+     * @throws NullPointerException if the value is null, like putting a null wrapper into a Bundle.
+     */
+    private static long unbox(int type, Object value) {
+        switch (type) {
+            case FieldDescriptor.INT:
+                return (Integer) value;
+            case FieldDescriptor.LONG:
+                return (Long) value;
+            case FieldDescriptor.DOUBLE:
+                return Double.doubleToRawLongBits((Double) value);
+            case FieldDescriptor.SHORT:
+                return (Short) value;
+            case FieldDescriptor.FLOAT:
+                return Float.floatToRawIntBits((Float) value);
+            case FieldDescriptor.BYTE:
+                return (Byte) value;
+            case FieldDescriptor.BOOLEAN:
+                return (Boolean) value ? 1 : 0;
+            case FieldDescriptor.CHAR:
+                return (Character) value;
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    private static Object box(int type, long bits) {
+        switch (type) {
+            case FieldDescriptor.INT:
+                return (int) bits;
+            case FieldDescriptor.LONG:
+                return bits;
+            case FieldDescriptor.DOUBLE:
+                return Double.longBitsToDouble(bits);
+            case FieldDescriptor.SHORT:
+                return (short) bits;
+            case FieldDescriptor.FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            case FieldDescriptor.BYTE:
+                return (byte) bits;
+            case FieldDescriptor.BOOLEAN:
+                return bits != 0;
+            case FieldDescriptor.CHAR:
+                return (char) bits;
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    private static Object getObject(Bundle bundle, String key, int type) {
+        switch (type) {
+            case FieldDescriptor.STRING:
+                return bundle.getString(key);
+            case FieldDescriptor.CHAR_SEQUENCE:
+                return bundle.getCharSequence(key);
+            case FieldDescriptor.BUNDLE:
+                return bundle.getBundle(key);
+            case FieldDescriptor.PARCELABLE:
+                return bundle.getParcelable(key);
+            case FieldDescriptor.SERIALIZABLE:
+                return bundle.getSerializable(key);
+            case FieldDescriptor.BOOLEAN_ARRAY:
+                return bundle.getBooleanArray(key);
+            case FieldDescriptor.BYTE_ARRAY:
+                return bundle.getByteArray(key);
+            case FieldDescriptor.SHORT_ARRAY:
+                return bundle.getShortArray(key);
+            case FieldDescriptor.CHAR_ARRAY:
+                return bundle.getCharArray(key);
+            case FieldDescriptor.INT_ARRAY:
+                return bundle.getIntArray(key);
+            case FieldDescriptor.LONG_ARRAY:
+                return bundle.getLongArray(key);
+            case FieldDescriptor.FLOAT_ARRAY:
+                return bundle.getFloatArray(key);
+            case FieldDescriptor.DOUBLE_ARRAY:
+                return bundle.getDoubleArray(key);
+            case FieldDescriptor.STRING_ARRAY:
+                return bundle.getStringArray(key);
+            case FieldDescriptor.CHAR_SEQUENCE_ARRAY:
+                return bundle.getCharSequenceArray(key);
+            case FieldDescriptor.PARCELABLE_ARRAY:
+                return bundle.getParcelableArray(key);
+            case FieldDescriptor.STRING_ARRAY_LIST:
+                return bundle.getStringArrayList(key);
+            case FieldDescriptor.INTEGER_ARRAY_LIST:
+                return bundle.getIntegerArrayList(key);
+            case FieldDescriptor.CHAR_SEQUENCE_ARRAY_LIST:
+                return bundle.getCharSequenceArrayList(key);
+            case FieldDescriptor.PARCELABLE_ARRAY_LIST:
+                return bundle.getParcelableArrayList(key);
+            case FieldDescriptor.SPARSE_PARCELABLE_ARRAY:
+                return bundle.getSparseParcelableArray(key);
+            default:
+                throw new IllegalArgumentException("Not an object type: " + type);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putObject(Bundle bundle, String key, int type, Object value) {
+        switch (type) {
+            case FieldDescriptor.STRING:
+                bundle.putString(key, (String) value);
+                break;
+            case FieldDescriptor.CHAR_SEQUENCE:
+                bundle.putCharSequence(key, (CharSequence) value);
+                break;
+            case FieldDescriptor.BUNDLE:
+                bundle.putBundle(key, (Bundle) value);
+                break;
+            case FieldDescriptor.PARCELABLE:
+                bundle.putParcelable(key, (Parcelable) value);
+                break;
+            case FieldDescriptor.SERIALIZABLE:
+                bundle.putSerializable(key, (Serializable) value);
+                break;
+            case FieldDescriptor.BOOLEAN_ARRAY:
+                bundle.putBooleanArray(key, (boolean[]) value);
+                break;
+            case FieldDescriptor.BYTE_ARRAY:
+                bundle.putByteArray(key, (byte[]) value);
+                break;
+            case FieldDescriptor.SHORT_ARRAY:
+                bundle.putShortArray(key, (short[]) value);
+                break;
+            case FieldDescriptor.CHAR_ARRAY:
+                bundle.putCharArray(key, (char[]) value);
+                break;
+            case FieldDescriptor.INT_ARRAY:
+                bundle.putIntArray(key, (int[]) value);
+                break;
+            case FieldDescriptor.LONG_ARRAY:
+                bundle.putLongArray(key, (long[]) value);
+                break;
+            case FieldDescriptor.FLOAT_ARRAY:
+                bundle.putFloatArray(key, (float[]) value);
+                break;
+            case FieldDescriptor.DOUBLE_ARRAY:
+                bundle.putDoubleArray(key, (double[]) value);
+                break;
+            case FieldDescriptor.STRING_ARRAY:
+                bundle.putStringArray(key, (String[]) value);
+                break;
+            case FieldDescriptor.CHAR_SEQUENCE_ARRAY:
+                bundle.putCharSequenceArray(key, (CharSequence[]) value);
+                break;
+            case FieldDescriptor.PARCELABLE_ARRAY:
+                bundle.putParcelableArray(key, (Parcelable[]) value);
+                break;
+            case FieldDescriptor.STRING_ARRAY_LIST:
+                bundle.putStringArrayList(key, (ArrayList<String>) value);
+                break;
+            case FieldDescriptor.INTEGER_ARRAY_LIST:
+                bundle.putIntegerArrayList(key, (ArrayList<Integer>) value);
+                break;
+            case FieldDescriptor.CHAR_SEQUENCE_ARRAY_LIST:
+                bundle.putCharSequenceArrayList(key, (ArrayList<CharSequence>) value);
+                break;
+            case FieldDescriptor.PARCELABLE_ARRAY_LIST:
+                bundle.putParcelableArrayList(key, (ArrayList<? extends Parcelable>) value);
+                break;
+            case FieldDescriptor.SPARSE_PARCELABLE_ARRAY:
+                bundle.putSparseParcelableArray(key, (SparseArray<? extends Parcelable>) value);
+                break;
+            default:
+                throw new IllegalArgumentException("Not an object type: " + type);
+        }
+    }
+
+    private static Object getObjectExtra(Intent intent, String key, int type) {
+        switch (type) {
+            case FieldDescriptor.STRING:
+                return intent.getStringExtra(key);
+            case FieldDescriptor.CHAR_SEQUENCE:
+                return intent.getCharSequenceExtra(key);
+            case FieldDescriptor.BUNDLE:
+                return intent.getBundleExtra(key);
+            case FieldDescriptor.PARCELABLE:
+                return intent.getParcelableExtra(key);
+            case FieldDescriptor.SERIALIZABLE:
+                return intent.getSerializableExtra(key);
+            case FieldDescriptor.BOOLEAN_ARRAY:
+                return intent.getBooleanArrayExtra(key);
+            case FieldDescriptor.BYTE_ARRAY:
+                return intent.getByteArrayExtra(key);
+            case FieldDescriptor.SHORT_ARRAY:
+                return intent.getShortArrayExtra(key);
+            case FieldDescriptor.CHAR_ARRAY:
+                return intent.getCharArrayExtra(key);
+            case FieldDescriptor.INT_ARRAY:
+                return intent.getIntArrayExtra(key);
+            case FieldDescriptor.LONG_ARRAY:
+                return intent.getLongArrayExtra(key);
+            case FieldDescriptor.FLOAT_ARRAY:
+                return intent.getFloatArrayExtra(key);
+            case FieldDescriptor.DOUBLE_ARRAY:
+                return intent.getDoubleArrayExtra(key);
+            case FieldDescriptor.STRING_ARRAY:
+                return intent.getStringArrayExtra(key);
+            case FieldDescriptor.CHAR_SEQUENCE_ARRAY:
+                return intent.getCharSequenceArrayExtra(key);
+            case FieldDescriptor.PARCELABLE_ARRAY:
+                return intent.getParcelableArrayExtra(key);
+            case FieldDescriptor.STRING_ARRAY_LIST:
+                return intent.getStringArrayListExtra(key);
+            case FieldDescriptor.INTEGER_ARRAY_LIST:
+                return intent.getIntegerArrayListExtra(key);
+            case FieldDescriptor.CHAR_SEQUENCE_ARRAY_LIST:
+                return intent.getCharSequenceArrayListExtra(key);
+            case FieldDescriptor.PARCELABLE_ARRAY_LIST:
+                return intent.getParcelableArrayListExtra(key);
+            default:
+                throw new IllegalArgumentException("Not an Intent extra type: " + type);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putObjectExtra(Intent intent, String key, int type, Object value) {
+        switch (type) {
+            case FieldDescriptor.STRING:
+                intent.putExtra(key, (String) value);
+                break;
+            case FieldDescriptor.CHAR_SEQUENCE:
+                intent.putExtra(key, (CharSequence) value);
+                break;
+            case FieldDescriptor.BUNDLE:
+                intent.putExtra(key, (Bundle) value);
+                break;
+            case FieldDescriptor.PARCELABLE:
+                intent.putExtra(key, (Parcelable) value);
+                break;
+            case FieldDescriptor.SERIALIZABLE:
+                intent.putExtra(key, (Serializable) value);
+                break;
+            case FieldDescriptor.BOOLEAN_ARRAY:
+                intent.putExtra(key, (boolean[]) value);
+                break;
+            case FieldDescriptor.BYTE_ARRAY:
+                intent.putExtra(key, (byte[]) value);
+                break;
+            case FieldDescriptor.SHORT_ARRAY:
+                intent.putExtra(key, (short[]) value);
+                break;
+            case FieldDescriptor.CHAR_ARRAY:
+                intent.putExtra(key, (char[]) value);
+                break;
+            case FieldDescriptor.INT_ARRAY:
+                intent.putExtra(key, (int[]) value);
+                break;
+            case FieldDescriptor.LONG_ARRAY:
+                intent.putExtra(key, (long[]) value);
+                break;
+            case FieldDescriptor.FLOAT_ARRAY:
+                intent.putExtra(key, (float[]) value);
+                break;
+            case FieldDescriptor.DOUBLE_ARRAY:
+                intent.putExtra(key, (double[]) value);
+                break;
+            case FieldDescriptor.STRING_ARRAY:
+                intent.putExtra(key, (String[]) value);
+                break;
+            case FieldDescriptor.CHAR_SEQUENCE_ARRAY:
+                intent.putExtra(key, (CharSequence[]) value);
+                break;
+            case FieldDescriptor.PARCELABLE_ARRAY:
+                intent.putExtra(key, (Parcelable[]) value);
+                break;
+            case FieldDescriptor.STRING_ARRAY_LIST:
+                intent.putStringArrayListExtra(key, (ArrayList<String>) value);
+                break;
+            case FieldDescriptor.INTEGER_ARRAY_LIST:
+                intent.putIntegerArrayListExtra(key, (ArrayList<Integer>) value);
+                break;
+            case FieldDescriptor.CHAR_SEQUENCE_ARRAY_LIST:
+                intent.putCharSequenceArrayListExtra(key, (ArrayList<CharSequence>) value);
+                break;
+            case FieldDescriptor.PARCELABLE_ARRAY_LIST:
+                intent.putParcelableArrayListExtra(key, (ArrayList<? extends Parcelable>) value);
+                break;
+            default:
+                throw new IllegalArgumentException("Not an Intent extra type: " + type);
+        }
+    }
+}
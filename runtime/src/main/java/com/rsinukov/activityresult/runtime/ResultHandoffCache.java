@@ -0,0 +1,216 @@
+package com.rsinukov.activityresult.runtime;
+
+import android.graphics.Bitmap;
+import android.os.Bundle;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands Result objects over by reference between activities of the same process. Generated Result
+ * classes with the handoff mode put themselves into the installed cache in toIntent() and send
+ * only the token and their required fields, and with(Intent) exchanges the token for the same
+ * object instead of decoding the fields. The cache is bounded by the total weight and the number of
+ * its results, evicting the least recently used ones first, and results expire after the TTL.
+ * <p>
+ * A result whose token is gone, because it expired, was evicted or the process was killed in
+ * between, decodes from the required fields alone: its optional fields are lost and read as absent.
+ * Results that must survive process death should not be sent through the cache.
+ */
+public final class ResultHandoffCache {
+
+    /**
+     * Extra key of the token.
+     */
+    public static final String TOKEN_KEY = "activityresult#handoff";
+
+    public static final long DEFAULT_MAX_WEIGHT = 4 * 1024 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+
+    /**
+     * Weight of a value whose size is not known without writing it to a Parcel. The number of
+     * entries is bounded as well, as such values may be much heavier.
+     */
+    public static final int OBJECT_WEIGHT = 64;
+
+    private static volatile ResultHandoffCache installed;
+
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final int maxEntries;
+    // tokens of other processes, e.g. in an Intent restored after process death, never match
+    private final String tokenPrefix = "handoff-" + Long.toHexString(new Random().nextLong()) + "-";
+    private final AtomicLong counter = new AtomicLong();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long weight;
+
+    private static final class Entry {
+        final Object result;
+        final int weight;
+        final long expiresAtNanos;
+
+        Entry(Object result, int weight, long expiresAtNanos) {
+            this.result = result;
+            this.weight = weight;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    public ResultHandoffCache() {
+        this(DEFAULT_MAX_WEIGHT, DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResultHandoffCache(long maxWeight, long ttlMillis) {
+        this(maxWeight, ttlMillis, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxWeight  total weight of the cached results, roughly their size in bytes.
+     * @param ttlMillis  time after which a cached result is dropped.
+     * @param maxEntries maximal number of cached results.
+     */
+    public ResultHandoffCache(long maxWeight, long ttlMillis, int maxEntries) {
+        if (maxWeight <= 0 || ttlMillis <= 0 || maxEntries < 1) {
+            throw new IllegalArgumentException("maxWeight, ttlMillis and maxEntries must be positive");
+        }
+        this.maxWeight = maxWeight;
+        this.ttlNanos = ttlMillis * 1000000;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Makes generated Result classes hand their instances over through the cache. Pass null to
+     * go back to sending every field in the Intent.
+     */
+    public static void install(ResultHandoffCache cache) {
+        installed = cache;
+    }
+
+    public static ResultHandoffCache getInstalled() {
+        return installed;
+    }
+
+    /**
+     * @return the weight of a field value: its Parcel size for strings and primitive arrays, the
+     * pixel memory of bitmaps, the sum of the elements of collections, object arrays and bundles,
+     * and {@link #OBJECT_WEIGHT} for other objects, which are not marshalled to weigh them.
+     */
+    public static int weigh(Object value) {
+        long weight;
+        if (value instanceof Collection) {
+            weight = 8;
+            for (Object element : (Collection<?>) value) {
+                weight += weighElement(element);
+            }
+        } else if (value instanceof Object[]) {
+            weight = 8;
+            for (Object element : (Object[]) value) {
+                weight += weighElement(element);
+            }
+        } else if (value instanceof Bundle) {
+            Bundle bundle = (Bundle) value;
+            weight = 8;
+            for (String key : bundle.keySet()) {
+                weight += 8 + 2 * key.length() + weighElement(bundle.get(key));
+            }
+        } else {
+            weight = weighElement(value);
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    // elements are not weighed recursively, so nested containers count as objects
+    private static long weighElement(Object value) {
+        int size = MappedResultStore.estimateSimpleSize(value);
+        if (size >= 0) {
+            return size;
+        } else if (value instanceof Bitmap) {
+            Bitmap bitmap = (Bitmap) value;
+            return (long) bitmap.getRowBytes() * bitmap.getHeight();
+        }
+        return OBJECT_WEIGHT;
+    }
+
+    /**
+     * Caches the result, evicting expired and least recently used results to make room for it.
+     *
+     * @return the token of the result, null if it is heavier than the cache and should be sent in
+     * the Intent.
+     */
+    public synchronized String put(Object result, int weight) {
+        int entryWeight = Math.max(weight, 1);
+        if (entryWeight > maxWeight) {
+            return null;
+        }
+        long now = System.nanoTime();
+        evictExpired(now);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((this.weight + entryWeight > maxWeight || entries.size() >= maxEntries) && eldest.hasNext()) {
+            this.weight -= eldest.next().weight;
+            eldest.remove();
+        }
+
+        String token = tokenPrefix + counter.incrementAndGet();
+        entries.put(token, new Entry(result, entryWeight, now + ttlNanos));
+        this.weight += entryWeight;
+        return token;
+    }
+
+    /**
+     * @return the result cached with the token, null if the token is null, unknown or expired.
+     */
+    public synchronized Object get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtNanos - System.nanoTime() < 0) {
+            entries.remove(token);
+            weight -= entry.weight;
+            return null;
+        }
+        return entry.result;
+    }
+
+    /**
+     * Drops the expired results.
+     */
+    public synchronized void evictExpired() {
+        evictExpired(System.nanoTime());
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total weight of the cached results.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.expiresAtNanos - now < 0) {
+                weight -= entry.weight;
+                iterator.remove();
+            }
+        }
+    }
+}
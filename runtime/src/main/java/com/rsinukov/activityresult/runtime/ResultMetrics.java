@@ -0,0 +1,25 @@
+package com.rsinukov.activityresult.runtime;
+
+/**
+ * Receives timings of generated Result classes built with the activityresult.metrics processor
+ * option. Install an implementation with {@link ResultMetricsRegistry#install(ResultMetrics)}.
+ * Calls come from the thread that decodes or encodes the result.
+ */
+public interface ResultMetrics {
+
+    /**
+     * Called after with(Intent). Lazy Result classes report the time of with(Intent) only.
+     *
+     * @param bundlerNanos the part of the time spent in custom bundlers.
+     */
+    void onDecode(String resultClass, int fieldCount, long nanos, long bundlerNanos);
+
+    /**
+     * Called after toIntent() or writeTo(Intent).
+     *
+     * @param bundlerNanos the part of the time spent in custom bundlers.
+     * @param bytes        the estimated size of the written extras, -1 if the encoding was not
+     *                     sampled, see {@link ResultMetricsRegistry#install(ResultMetrics, int)}.
+     */
+    void onEncode(String resultClass, int fieldCount, long nanos, long bundlerNanos, int bytes);
+}
@@ -0,0 +1,56 @@
+package com.rsinukov.activityresult.runtime;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the {@link ResultMetrics} generated Result classes report to.
+ */
+public final class ResultMetricsRegistry {
+
+    private static final AtomicInteger ENCODINGS = new AtomicInteger();
+
+    private static volatile ResultMetrics metrics;
+    private static volatile int sizeSampleInterval;
+
+    private ResultMetricsRegistry() {
+    }
+
+    /**
+     * Installs the metrics without size sampling. Pass null to stop reporting.
+     */
+    public static void install(ResultMetrics metrics) {
+        install(metrics, 0);
+    }
+
+    /**
+     * Pass null to stop reporting. Estimating the size walks all fields, so it is only done for every
+     * n-th encoding.
+     *
+     * @param sizeSampleInterval n to report the estimated size of every n-th encoding, 0 to report
+     *                           no sizes.
+     */
+    public static void install(ResultMetrics metrics, int sizeSampleInterval) {
+        if (sizeSampleInterval < 0) {
+            throw new IllegalArgumentException("sizeSampleInterval < 0: " + sizeSampleInterval);
+        }
+        ResultMetricsRegistry.sizeSampleInterval = sizeSampleInterval;
+        ResultMetricsRegistry.metrics = metrics;
+    }
+
+    /**
+     * Called by generated classes once per encoding.
+     *
+     * @return true if the size of the current encoding should be reported.
+     */
+    public static boolean sampleSize() {
+        int interval = sizeSampleInterval;
+        return interval > 0 && (ENCODINGS.incrementAndGet() & Integer.MAX_VALUE) % interval == 0;
+    }
+
+    /**
+     * @return the installed metrics, null if there are none.
+     */
+    public static ResultMetrics get() {
+        return metrics;
+    }
+}
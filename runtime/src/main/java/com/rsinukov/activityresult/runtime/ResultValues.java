@@ -0,0 +1,122 @@
+package com.rsinukov.activityresult.runtime;
+
+/**
+ * Values of a compact Result class. Primitives are kept as raw bits in one long array, objects in
+ * one object array and the presence bits of optional primitives in a bit set, so a Result class
+ * needs no field per value. Slots are assigned by the generated {@link FieldDescriptor}s.
+ */
+public final class ResultValues {
+
+    private final long[] primitives;
+    private final Object[] objects;
+    private final long[] presence;
+
+    public ResultValues(int primitiveCount, int objectCount, int presenceBitCount) {
+        this(new long[primitiveCount], new Object[objectCount], new long[(presenceBitCount + 63) >> 6]);
+    }
+
+    private ResultValues(long[] primitives, Object[] objects, long[] presence) {
+        this.primitives = primitives;
+        this.objects = objects;
+        this.presence = presence;
+    }
+
+    /**
+     * @return a copy that does not change with this instance. Object values are shared.
+     */
+    public ResultValues copy() {
+        return new ResultValues(primitives.clone(), objects.clone(), presence.clone());
+    }
+
+    public boolean has(int bit) {
+        return (presence[bit >> 6] & (1L << bit)) != 0;
+    }
+
+    public void setPresent(int bit, boolean isPresent) {
+        if (isPresent) {
+            presence[bit >> 6] |= 1L << bit;
+        } else {
+            presence[bit >> 6] &= ~(1L << bit);
+        }
+    }
+
+    public int getInt(int slot) {
+        return (int) primitives[slot];
+    }
+
+    public void setInt(int slot, int value) {
+        primitives[slot] = value;
+    }
+
+    public long getLong(int slot) {
+        return primitives[slot];
+    }
+
+    public void setLong(int slot, long value) {
+        primitives[slot] = value;
+    }
+
+    public double getDouble(int slot) {
+        return Double.longBitsToDouble(primitives[slot]);
+    }
+
+    public void setDouble(int slot, double value) {
+        primitives[slot] = Double.doubleToRawLongBits(value);
+    }
+
+    public short getShort(int slot) {
+        return (short) primitives[slot];
+    }
+
+    public void setShort(int slot, short value) {
+        primitives[slot] = value;
+    }
+
+    public float getFloat(int slot) {
+        return Float.intBitsToFloat((int) primitives[slot]);
+    }
+
+    public void setFloat(int slot, float value) {
+        primitives[slot] = Float.floatToRawIntBits(value);
+    }
+
+    public byte getByte(int slot) {
+        return (byte) primitives[slot];
+    }
+
+    public void setByte(int slot, byte value) {
+        primitives[slot] = value;
+    }
+
+    public boolean getBoolean(int slot) {
+        return primitives[slot] != 0;
+    }
+
+    public void setBoolean(int slot, boolean value) {
+        primitives[slot] = value ? 1 : 0;
+    }
+
+    public char getChar(int slot) {
+        return (char) primitives[slot];
+    }
+
+    public void setChar(int slot, char value) {
+        primitives[slot] = value;
+    }
+
+    public Object getObject(int slot) {
+        return objects[slot];
+    }
+
+    public void setObject(int slot, Object value) {
+        objects[slot] = value;
+    }
+
+    long getBits(int slot) {
+        return primitives[slot];
+    }
+
+    void setBits(int slot, long bits) {
+        primitives[slot] = bits;
+    }
+}
@@ -0,0 +1,100 @@
+package com.rsinukov.activityresult.runtime;
+
+import android.os.Bundle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * String column of a generated Result batch. Every distinct string is kept once and rows refer to
+ * it by index, so a batch of results that share values writes each value to the Parcel only once.
+ */
+public final class StringColumn {
+
+    private static final String VALUES_SUFFIX = "#values";
+    private static final int NULL_ROW = -1;
+
+    private int[] rows;
+    private int size;
+    private String[] values;
+    private int valueCount;
+    private Map<String, Integer> valueIndexes;
+
+    public StringColumn(int capacity) {
+        this(new int[Math.max(capacity, 1)], 0, new String[Math.max(capacity, 1)], 0);
+    }
+
+    private StringColumn(int[] rows, int size, String[] values, int valueCount) {
+        this.rows = rows;
+        this.size = size;
+        this.values = values;
+        this.valueCount = valueCount;
+    }
+
+    /**
+     * Appends a row.
+     */
+    public void add(String value) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(size * 2, 1));
+        }
+        rows[size++] = value != null ? indexOf(value) : NULL_ROW;
+    }
+
+    public String get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        int index = rows[row];
+        return index != NULL_ROW ? values[index] : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of distinct strings in the column.
+     */
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    public void writeTo(Bundle bundle, String key) {
+        bundle.putIntArray(key, Arrays.copyOf(rows, size));
+        bundle.putStringArray(key + VALUES_SUFFIX, Arrays.copyOf(values, valueCount));
+    }
+
+    /**
+     * @return the column written with the key, an empty column if the bundle does not contain it.
+     */
+    public static StringColumn readFrom(Bundle bundle, String key) {
+        int[] rows = bundle.getIntArray(key);
+        String[] values = bundle.getStringArray(key + VALUES_SUFFIX);
+        if (rows == null || values == null) {
+            return new StringColumn(0);
+        }
+        return new StringColumn(rows, rows.length, values, values.length);
+    }
+
+    private int indexOf(String value) {
+        if (valueIndexes == null) {
+            // only built once rows are added, a column read from a Bundle usually is not extended
+            valueIndexes = new HashMap<String, Integer>(Math.max(valueCount * 2, 16));
+            for (int i = 0; i < valueCount; i++) {
+                valueIndexes.put(values[i], i);
+            }
+        }
+        Integer index = valueIndexes.get(value);
+        if (index != null) {
+            return index;
+        }
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, Math.max(valueCount * 2, 1));
+        }
+        values[valueCount] = value;
+        valueIndexes.put(value, valueCount);
+        return valueCount++;
+    }
+}
@@ -0,0 +1,64 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces the class of the Android jar, whose methods throw, with a map for the JVM tests. Only
+ * the accessors the tested code calls are declared.
+ */
+public final class Bundle {
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    public Bundle() {
+    }
+
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public void putIntArray(String key, int[] value) {
+        values.put(key, value);
+    }
+
+    public int[] getIntArray(String key) {
+        return (int[]) values.get(key);
+    }
+
+    public void putLongArray(String key, long[] value) {
+        values.put(key, value);
+    }
+
+    public long[] getLongArray(String key) {
+        return (long[]) values.get(key);
+    }
+
+    public void putFloatArray(String key, float[] value) {
+        values.put(key, value);
+    }
+
+    public float[] getFloatArray(String key) {
+        return (float[]) values.get(key);
+    }
+
+    public void putDoubleArray(String key, double[] value) {
+        values.put(key, value);
+    }
+
+    public double[] getDoubleArray(String key) {
+        return (double[]) values.get(key);
+    }
+
+    public void putBooleanArray(String key, boolean[] value) {
+        values.put(key, value);
+    }
+
+    public boolean[] getBooleanArray(String key) {
+        return (boolean[]) values.get(key);
+    }
+}
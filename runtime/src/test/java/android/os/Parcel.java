@@ -0,0 +1,86 @@
+package android.os;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the class of the Android jar, whose methods throw, for the JVM tests. The written values
+ * are kept in a list, which is marshalled with Java serialization. Only the methods the tested code
+ * calls are declared.
+ */
+public final class Parcel {
+
+    private ArrayList<Object> values = new ArrayList<Object>();
+    private int position;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        values = null;
+    }
+
+    public void writeInt(int value) {
+        values.add(value);
+    }
+
+    public int readInt() {
+        return (Integer) values.get(position++);
+    }
+
+    public void writeValue(Object value) {
+        values.add(value);
+    }
+
+    public Object readValue(ClassLoader classLoader) {
+        return values.get(position++);
+    }
+
+    public void writeSerializable(Serializable value) {
+        values.add(value);
+    }
+
+    public Serializable readSerializable() {
+        return (Serializable) values.get(position++);
+    }
+
+    public int dataSize() {
+        return marshall().length;
+    }
+
+    public void setDataPosition(int position) {
+        this.position = position;
+    }
+
+    public byte[] marshall() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream output = new ObjectOutputStream(bytes);
+            output.writeObject(values);
+            output.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void unmarshall(byte[] data, int offset, int length) {
+        try {
+            ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data, offset, length));
+            values = new ArrayList<Object>((List<Object>) input.readObject());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package android.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replaces the class of the Android jar, whose methods throw, for the JVM tests. Keys are kept
+ * sorted like on Android.
+ */
+public class SparseBooleanArray {
+
+    private final TreeMap<Integer, Boolean> values = new TreeMap<Integer, Boolean>();
+
+    public SparseBooleanArray() {
+    }
+
+    public SparseBooleanArray(int initialCapacity) {
+    }
+
+    public void put(int key, boolean value) {
+        values.put(key, value);
+    }
+
+    public void append(int key, boolean value) {
+        values.put(key, value);
+    }
+
+    public boolean get(int key) {
+        Boolean value = values.get(key);
+        return value != null ? value : false;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public int keyAt(int index) {
+        return entries().get(index).getKey();
+    }
+
+    public boolean valueAt(int index) {
+        return entries().get(index).getValue();
+    }
+
+    private List<Map.Entry<Integer, Boolean>> entries() {
+        return new ArrayList<Map.Entry<Integer, Boolean>>(values.entrySet());
+    }
+}
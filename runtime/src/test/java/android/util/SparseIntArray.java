@@ -0,0 +1,50 @@
+package android.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replaces the class of the Android jar, whose methods throw, for the JVM tests. Keys are kept
+ * sorted like on Android.
+ */
+public class SparseIntArray {
+
+    private final TreeMap<Integer, Integer> values = new TreeMap<Integer, Integer>();
+
+    public SparseIntArray() {
+    }
+
+    public SparseIntArray(int initialCapacity) {
+    }
+
+    public void put(int key, int value) {
+        values.put(key, value);
+    }
+
+    public void append(int key, int value) {
+        values.put(key, value);
+    }
+
+    public int get(int key) {
+        Integer value = values.get(key);
+        return value != null ? value : 0;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public int keyAt(int index) {
+        return entries().get(index).getKey();
+    }
+
+    public int valueAt(int index) {
+        return entries().get(index).getValue();
+    }
+
+    private List<Map.Entry<Integer, Integer>> entries() {
+        return new ArrayList<Map.Entry<Integer, Integer>>(values.entrySet());
+    }
+}
@@ -0,0 +1,104 @@
+package com.rsinukov.activityresult.runtime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedResultStoreTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    private File directory;
+    private MappedResultStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("store", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        store = new MappedResultStore(directory, 100, HOUR_MILLIS, 4);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void smallValueStaysInTheIntent() {
+        assertNull(store.offer(new byte[10], false));
+        assertNull(store.offer("short", false));
+        assertNull(store.offer(new String[]{"a", null}, false));
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void largeValueIsStoredAndRestored() {
+        byte[] value = new byte[200];
+        value[199] = 7;
+        String token = store.offer(value, false);
+        assertNotNull(token);
+        assertArrayEquals(value, (byte[]) store.load(token, getClass().getClassLoader()));
+        // the value is kept for the TTL, so the Intent can be read again
+        assertArrayEquals(value, (byte[]) store.load(token, getClass().getClassLoader()));
+    }
+
+    @Test
+    public void valueOfUnknownSizeIsStoredWithoutWeighingIt() {
+        Date value = new Date(5L);
+        String token = store.offer(value, true);
+        assertNotNull(token);
+        assertEquals(value, store.load(token, getClass().getClassLoader()));
+    }
+
+    @Test
+    public void malformedTokenIsRejectedBeforeTheFileIsTouched() throws IOException {
+        String[] tokens = {
+                "result-1-2",
+                "result-1-2-",
+                "result--1-2",
+                "result-1-2-3-4",
+                "result-1-2-3x",
+                "result-1-2-3/../x",
+                "result-1-2-" + "12345678901234567890",
+                "other-1-2-3",
+        };
+        for (String token : tokens) {
+            assertFalse(token, MappedResultStore.isValidToken(token));
+            File file = new File(directory, token.replace('/', '_'));
+            assertTrue(file.createNewFile());
+            assertTrue(file.setLastModified(System.currentTimeMillis() - 2 * HOUR_MILLIS));
+            assertNull(store.load(token.replace('/', '_'), getClass().getClassLoader()));
+            // an expired file would have been deleted if the token had been accepted
+            assertTrue(token, file.exists());
+        }
+        assertFalse(MappedResultStore.isValidToken(null));
+    }
+
+    @Test
+    public void expiredValueIsDeleted() throws IOException {
+        String token = "result-1-2-3";
+        assertTrue(MappedResultStore.isValidToken(token));
+        File file = new File(directory, token);
+        assertTrue(file.createNewFile());
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 2 * HOUR_MILLIS));
+        assertNull(store.load(token, getClass().getClassLoader()));
+        assertFalse(file.exists());
+    }
+}
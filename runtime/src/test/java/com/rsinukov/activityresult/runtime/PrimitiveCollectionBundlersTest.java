@@ -0,0 +1,99 @@
+package com.rsinukov.activityresult.runtime;
+
+import android.os.Bundle;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PrimitiveCollectionBundlersTest {
+
+    @Test
+    public void listsArePutAsArrays() {
+        Bundle bundle = new Bundle();
+        IntList ints = IntList.wrap(new int[]{3, 1, 2});
+        new PrimitiveCollectionBundlers.IntListBundler().put("ints", ints, bundle);
+        assertArrayEquals(new int[]{3, 1, 2}, bundle.getIntArray("ints"));
+        IntList readInts = new PrimitiveCollectionBundlers.IntListBundler().get("ints", bundle);
+        assertEquals(ints, readInts);
+
+        BooleanList booleans = BooleanList.wrap(new boolean[]{true, false});
+        new PrimitiveCollectionBundlers.BooleanListBundler().put("booleans", booleans, bundle);
+        BooleanList readBooleans = new PrimitiveCollectionBundlers.BooleanListBundler().get("booleans", bundle);
+        assertEquals(Arrays.asList(true, false), readBooleans);
+
+        DoubleList doubles = DoubleList.wrap(new double[]{0.5});
+        new PrimitiveCollectionBundlers.DoubleListBundler().put("doubles", doubles, bundle);
+        DoubleList readDoubles = new PrimitiveCollectionBundlers.DoubleListBundler().get("doubles", bundle);
+        assertEquals(doubles, readDoubles);
+    }
+
+    @Test
+    public void nullListsStayNull() {
+        Bundle bundle = new Bundle();
+        new PrimitiveCollectionBundlers.LongListBundler().put("longs", null, bundle);
+        assertTrue(bundle.containsKey("longs"));
+        LongList longs = new PrimitiveCollectionBundlers.LongListBundler().get("longs", bundle);
+        assertNull(longs);
+        FloatList missing = new PrimitiveCollectionBundlers.FloatListBundler().get("missing", bundle);
+        assertNull(missing);
+    }
+
+    @Test
+    public void sparseIntArrayIsInterleaved() {
+        SparseIntArray value = new SparseIntArray();
+        value.put(40, -4);
+        value.put(-3, 30);
+        value.put(7, 0);
+        Bundle bundle = new Bundle();
+        new PrimitiveCollectionBundlers.SparseIntArrayBundler().put("sparse", value, bundle);
+        assertArrayEquals(new int[]{-3, 30, 7, 0, 40, -4}, bundle.getIntArray("sparse"));
+
+        SparseIntArray read = new PrimitiveCollectionBundlers.SparseIntArrayBundler().get("sparse", bundle);
+        assertEquals(3, read.size());
+        assertEquals(30, read.get(-3));
+        assertEquals(0, read.get(7));
+        assertEquals(-4, read.get(40));
+    }
+
+    @Test
+    public void sparseBooleanArrayIsInterleaved() {
+        SparseBooleanArray value = new SparseBooleanArray();
+        value.put(2, true);
+        value.put(1, false);
+        Bundle bundle = new Bundle();
+        new PrimitiveCollectionBundlers.SparseBooleanArrayBundler().put("sparse", value, bundle);
+        assertArrayEquals(new int[]{1, 0, 2, 1}, bundle.getIntArray("sparse"));
+
+        SparseBooleanArray read = new PrimitiveCollectionBundlers.SparseBooleanArrayBundler().get("sparse", bundle);
+        assertEquals(2, read.size());
+        assertFalse(read.get(1));
+        assertTrue(read.get(2));
+    }
+
+    @Test
+    public void emptyAndOddSparseArrays() {
+        Bundle bundle = new Bundle();
+        new PrimitiveCollectionBundlers.SparseIntArrayBundler().put("empty", new SparseIntArray(), bundle);
+        assertArrayEquals(new int[0], bundle.getIntArray("empty"));
+        SparseIntArray empty = new PrimitiveCollectionBundlers.SparseIntArrayBundler().get("empty", bundle);
+        assertEquals(0, empty.size());
+
+        // a dangling key without a value is dropped
+        bundle.putIntArray("odd", new int[]{5, 1, 6});
+        SparseBooleanArray odd = new PrimitiveCollectionBundlers.SparseBooleanArrayBundler().get("odd", bundle);
+        assertEquals(1, odd.size());
+        assertTrue(odd.get(5));
+
+        new PrimitiveCollectionBundlers.SparseBooleanArrayBundler().put("null", null, bundle);
+        SparseBooleanArray nullValue = new PrimitiveCollectionBundlers.SparseBooleanArrayBundler().get("null", bundle);
+        assertNull(nullValue);
+    }
+}
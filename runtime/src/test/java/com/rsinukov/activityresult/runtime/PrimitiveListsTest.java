@@ -0,0 +1,149 @@
+package com.rsinukov.activityresult.runtime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrimitiveListsTest {
+
+    @Test
+    public void intListWrapsWithoutCopying() {
+        int[] elements = {1, 2, 3};
+        IntList list = IntList.wrap(elements);
+        list.setInt(1, 20);
+        assertEquals(20, elements[1]);
+        assertEquals(Arrays.asList(1, 20, 3), list);
+        assertNull(IntList.wrap(null));
+    }
+
+    @Test
+    public void intListGrowsLikeArrayList() {
+        IntList list = new IntList(0);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 25; i++) {
+            list.addInt(i * 3);
+            expected.add(i * 3);
+        }
+        list.add(0, -1);
+        expected.add(0, -1);
+        list.add(list.size(), 99);
+        expected.add(expected.size(), 99);
+        assertEquals(expected.remove(5), list.remove(5));
+        assertListEquals(expected, list);
+
+        int[] copy = list.toIntArray();
+        assertEquals(expected.size(), copy.length);
+        copy[0] = 1000;
+        assertEquals(-1, list.getInt(0));
+    }
+
+    @Test
+    public void longListWrapsAndGrows() {
+        long[] elements = {Long.MIN_VALUE, Long.MAX_VALUE};
+        LongList list = LongList.wrap(elements);
+        list.setLong(0, 5L);
+        assertEquals(5L, elements[0]);
+        assertNull(LongList.wrap(null));
+
+        list.addLong(7L);
+        list.add(1, 6L);
+        assertListEquals(Arrays.asList(5L, 6L, Long.MAX_VALUE, 7L), list);
+        assertArrayEquals(new long[]{5L, 6L, Long.MAX_VALUE, 7L}, list.toLongArray());
+    }
+
+    @Test
+    public void floatListWrapsAndGrows() {
+        float[] elements = {0.5f};
+        FloatList list = FloatList.wrap(elements);
+        list.setFloat(0, 1.5f);
+        assertEquals(1.5f, elements[0], 0f);
+        assertNull(FloatList.wrap(null));
+
+        list.addFloat(Float.NaN);
+        list.add(0, -0f);
+        // Float.equals() treats NaN as equal to itself, like the list
+        assertListEquals(Arrays.asList(-0f, 1.5f, Float.NaN), list);
+        assertFalse(list.equals(Arrays.asList(0f, 1.5f, Float.NaN)));
+        assertArrayEquals(new float[]{-0f, 1.5f, Float.NaN}, list.toFloatArray(), 0f);
+    }
+
+    @Test
+    public void doubleListWrapsAndGrows() {
+        double[] elements = {0.25};
+        DoubleList list = DoubleList.wrap(elements);
+        list.setDouble(0, 2.5);
+        assertEquals(2.5, elements[0], 0);
+        assertNull(DoubleList.wrap(null));
+
+        for (int i = 0; i < 12; i++) {
+            list.addDouble(i);
+        }
+        assertEquals(Double.valueOf(2.5), list.remove(0));
+        List<Double> expected = new ArrayList<Double>();
+        for (int i = 0; i < 12; i++) {
+            expected.add((double) i);
+        }
+        assertListEquals(expected, list);
+    }
+
+    @Test
+    public void booleanListWrapsAndGrows() {
+        boolean[] elements = {true, false};
+        BooleanList list = BooleanList.wrap(elements);
+        list.setBoolean(1, true);
+        assertTrue(elements[1]);
+        assertNull(BooleanList.wrap(null));
+
+        list.addBoolean(false);
+        list.add(3, true);
+        list.clear();
+        assertTrue(list.isEmpty());
+        list.addBoolean(false);
+        assertListEquals(Arrays.asList(false), list);
+        assertTrue(Arrays.equals(new boolean[]{false}, list.toBooleanArray()));
+    }
+
+    @Test
+    public void indexesAreChecked() {
+        IntList list = new IntList();
+        list.addInt(1);
+        try {
+            list.getInt(1);
+            fail("getInt() read past the size");
+        } catch (IndexOutOfBoundsException expected) {
+            // the capacity is larger than the size
+        }
+        try {
+            list.add(2, 1);
+            fail("add() inserted past the size");
+        } catch (IndexOutOfBoundsException expected) {
+            // the index may be the size, not past it
+        }
+    }
+
+    @Test
+    public void nullElementsAreRejected() {
+        try {
+            new LongList().add(null);
+            fail("add() accepted null");
+        } catch (NullPointerException expected) {
+            // the elements are primitives
+        }
+    }
+
+    private static void assertListEquals(List<?> expected, List<?> actual) {
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
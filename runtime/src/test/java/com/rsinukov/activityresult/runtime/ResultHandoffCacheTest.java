@@ -0,0 +1,89 @@
+package com.rsinukov.activityresult.runtime;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResultHandoffCacheTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    @Test
+    public void tokenIsExchangedForTheSameResult() {
+        ResultHandoffCache cache = new ResultHandoffCache(100, HOUR_MILLIS);
+        Object result = new Object();
+        String token = cache.put(result, 10);
+
+        assertNotNull(token);
+        assertSame(result, cache.get(token));
+        assertNull(cache.get(null));
+        assertNull(cache.get(token + "0"));
+    }
+
+    @Test
+    public void tokensOfAnotherCacheAreUnknown() {
+        String token = new ResultHandoffCache(100, HOUR_MILLIS).put(new Object(), 10);
+
+        assertNull(new ResultHandoffCache(100, HOUR_MILLIS).get(token));
+    }
+
+    @Test
+    public void resultHeavierThanTheCacheIsRefused() {
+        ResultHandoffCache cache = new ResultHandoffCache(100, HOUR_MILLIS);
+
+        assertNull(cache.put(new Object(), 101));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedResultsAreEvictedByWeight() {
+        ResultHandoffCache cache = new ResultHandoffCache(100, HOUR_MILLIS);
+        String first = cache.put("first", 40);
+        String second = cache.put("second", 40);
+        cache.get(first);
+        String third = cache.put("third", 40);
+
+        assertEquals("first", cache.get(first));
+        assertNull(cache.get(second));
+        assertEquals("third", cache.get(third));
+        assertEquals(80, cache.getWeight());
+    }
+
+    @Test
+    public void resultsAreEvictedByCount() {
+        ResultHandoffCache cache = new ResultHandoffCache(100, HOUR_MILLIS, 2);
+        String first = cache.put("first", 1);
+        cache.put("second", 1);
+        cache.put("third", 1);
+
+        assertNull(cache.get(first));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void expiredResultsAreDropped() throws InterruptedException {
+        ResultHandoffCache cache = new ResultHandoffCache(100, 1);
+        String token = cache.put("result", 10);
+        Thread.sleep(5);
+
+        assertNull(cache.get(token));
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void valuesAreWeighedWithoutMarshalling() {
+        assertEquals(ResultHandoffCache.OBJECT_WEIGHT, ResultHandoffCache.weigh(new Object()));
+        assertEquals(8 + 2 * ResultHandoffCache.OBJECT_WEIGHT,
+                ResultHandoffCache.weigh(Arrays.asList(new Object(), new Object())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveWeightIsRejected() {
+        new ResultHandoffCache(0, HOUR_MILLIS);
+    }
+}
@@ -0,0 +1,55 @@
+package com.rsinukov.activityresult.runtime;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResultValuesTest {
+
+    @Test
+    public void primitivesKeepTheirBits() {
+        ResultValues values = new ResultValues(4, 0, 0);
+        values.setDouble(0, -0.5d);
+        values.setFloat(1, Float.NaN);
+        values.setLong(2, Long.MIN_VALUE);
+        values.setChar(3, '\uffff');
+
+        assertEquals(-0.5d, values.getDouble(0), 0d);
+        assertTrue(Float.isNaN(values.getFloat(1)));
+        assertEquals(Long.MIN_VALUE, values.getLong(2));
+        assertEquals('\uffff', values.getChar(3));
+    }
+
+    @Test
+    public void presenceBitsSpanSeveralWords() {
+        ResultValues values = new ResultValues(0, 0, 70);
+        values.setPresent(3, true);
+        values.setPresent(69, true);
+        values.setPresent(3, false);
+
+        assertFalse(values.has(3));
+        assertTrue(values.has(69));
+        assertFalse(values.has(5));
+    }
+
+    @Test
+    public void copyDoesNotChangeWithTheOriginal() {
+        ResultValues values = new ResultValues(1, 1, 1);
+        Object object = new Object();
+        values.setInt(0, 1);
+        values.setObject(0, object);
+        values.setPresent(0, true);
+
+        ResultValues copy = values.copy();
+        values.setInt(0, 2);
+        values.setObject(0, null);
+        values.setPresent(0, false);
+
+        assertEquals(1, copy.getInt(0));
+        assertSame(object, copy.getObject(0));
+        assertTrue(copy.has(0));
+    }
+}